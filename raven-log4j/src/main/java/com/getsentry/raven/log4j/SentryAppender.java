@@ -6,10 +6,13 @@ import com.getsentry.raven.config.Lookup;
 import com.getsentry.raven.dsn.Dsn;
 import com.getsentry.raven.dsn.InvalidDsnException;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.LogBreadcrumbRecorder;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.util.CompactCollections;
 import com.getsentry.raven.util.Util;
 import org.apache.log4j.AppenderSkeleton;
 import org.apache.log4j.Level;
@@ -84,6 +87,26 @@ public class SentryAppender extends AppenderSkeleton {
      * Might be empty in which case no mapped tags are set.
      */
     protected Set<String> extraTags = Collections.emptySet();
+    /**
+     * If true, only a snapshot of the logging event is taken on the logging thread, the event is built by the
+     * thread of the Raven connection (when the connection is asynchronous).
+     */
+    protected boolean deferred;
+    /**
+     * If set, only logging events with level = minLevel and up are sent as events.
+     * <p>
+     * Might be null in which case every logging event reaching the appender is sent.
+     */
+    protected Level minLevel;
+    /**
+     * If true, the logging events below {@link #minLevel} are recorded as breadcrumbs of the current
+     * {@link com.getsentry.raven.RavenContext} instead of being discarded.
+     */
+    protected boolean breadcrumbs;
+    /**
+     * Sampling and size limits of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     */
+    protected final LogBreadcrumbRecorder breadcrumbRecorder = new LogBreadcrumbRecorder();
 
     /**
      * Creates an instance of SentryAppender.
@@ -95,6 +118,11 @@ public class SentryAppender extends AppenderSkeleton {
         setServerName(Lookup.lookup("serverName"));
         setTags(Lookup.lookup("tags"));
         setExtraTags(Lookup.lookup("extraTags"));
+        setDeferred(Boolean.parseBoolean(Lookup.lookup("deferred")));
+        setBreadcrumbs(Boolean.parseBoolean(Lookup.lookup("breadcrumbs")));
+        setBreadcrumbSampleRates(Lookup.lookup("breadcrumbSampleRates"));
+        setBreadcrumbMaxBytes(Util.parseInteger(Lookup.lookup("breadcrumbMaxBytes"),
+            LogBreadcrumbRecorder.DEFAULT_MAX_BYTES));
 
         this.addFilter(new DropRavenFilter());
     }
@@ -174,8 +202,24 @@ public class SentryAppender extends AppenderSkeleton {
 
         RavenEnvironment.startManagingThread();
         try {
-            Event event = buildEvent(loggingEvent);
-            raven.sendEvent(event);
+            if (minLevel != null && !loggingEvent.getLevel().isGreaterOrEqual(minLevel)) {
+                if (breadcrumbs) {
+                    recordBreadcrumb(loggingEvent);
+                }
+                return;
+            }
+
+            if (!raven.isSampled(formatLevel(loggingEvent.getLevel()), loggingEvent.getLoggerName())
+                || raven.isThrottled(loggingEvent.getRenderedMessage(), getThrowable(loggingEvent))) {
+                return;
+            }
+
+            if (deferred) {
+                raven.sendEvent(createDeferredEvent(loggingEvent));
+            } else {
+                Event event = buildEvent(loggingEvent);
+                raven.sendEvent(event);
+            }
         } catch (Exception e) {
             getErrorHandler().error("An exception occurred while creating a new event in Raven", e,
                     ErrorCode.WRITE_FAILURE);
@@ -184,6 +228,20 @@ public class SentryAppender extends AppenderSkeleton {
         }
     }
 
+    /**
+     * Records a logging event below {@link #minLevel} as a breadcrumb of the current context, if its logger is
+     * sampled.
+     *
+     * @param loggingEvent Log generated.
+     */
+    protected void recordBreadcrumb(LoggingEvent loggingEvent) {
+        if (breadcrumbRecorder.isSampled(loggingEvent.getLoggerName())) {
+            breadcrumbRecorder.record(raven.getContext(), loggingEvent.getTimeStamp(),
+                formatLevel(loggingEvent.getLevel()), loggingEvent.getLoggerName(),
+                loggingEvent.getRenderedMessage());
+        }
+    }
+
     /**
      * Builds an Event based on the logging event.
      *
@@ -191,8 +249,61 @@ public class SentryAppender extends AppenderSkeleton {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(LoggingEvent loggingEvent) {
-        EventBuilder eventBuilder = new EventBuilder()
-                .withTimestamp(new Date(loggingEvent.getTimeStamp()))
+        EventBuilder eventBuilder = new EventBuilder();
+        fillEventBuilder(eventBuilder, loggingEvent);
+        raven.runBuilderHelpers(eventBuilder);
+        return eventBuilder.build();
+    }
+
+    /**
+     * Takes a snapshot of the logging event and wraps it in an event built later on by the Raven connection.
+     * <p>
+     * Everything depending on the logging thread (rendered message, NDC, MDC, location) is computed right away,
+     * the same way log4j's {@code AsyncAppender} does it.
+     *
+     * @param loggingEvent Log generated.
+     * @return Event built later on with the details provided by the logging system.
+     */
+    protected DeferredEvent createDeferredEvent(final LoggingEvent loggingEvent) {
+        loggingEvent.getNDC();
+        loggingEvent.getThreadName();
+        loggingEvent.getMDCCopy();
+        loggingEvent.getLocationInformation();
+        return new DeferredEvent(formatLevel(loggingEvent.getLevel()), loggingEvent.getRenderedMessage(),
+            getThrowable(loggingEvent)) {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                fillEventBuilder(builder, loggingEvent);
+            }
+        };
+    }
+
+    /**
+     * Returns the exception of a logging event, used to identify the event before building it.
+     *
+     * @param loggingEvent Log generated.
+     * @return the exception of the logging event, null if there is none.
+     */
+    private static Throwable getThrowable(LoggingEvent loggingEvent) {
+        try {
+            ThrowableInformation throwableInformation = loggingEvent.getThrowableInformation();
+            return throwableInformation != null ? throwableInformation.getThrowable() : null;
+        } catch (NullPointerException expected) {
+            return null;
+        }
+    }
+
+    /**
+     * Adds the details provided by the logging system to an {@link EventBuilder}.
+     * <p>
+     * When the appender is {@link #deferred}, this method is called by the thread of the Raven connection, after
+     * the builder helpers, without replacing the values they set.
+     *
+     * @param eventBuilder event builder to fill.
+     * @param loggingEvent Log generated.
+     */
+    protected void fillEventBuilder(EventBuilder eventBuilder, LoggingEvent loggingEvent) {
+        eventBuilder.withTimestamp(new Date(loggingEvent.getTimeStamp()))
                 .withMessage(loggingEvent.getRenderedMessage())
                 .withLogger(loggingEvent.getLoggerName())
                 .withLevel(formatLevel(loggingEvent.getLevel()))
@@ -248,11 +359,7 @@ public class SentryAppender extends AppenderSkeleton {
             }
         }
 
-        for (Map.Entry<String, String> tagEntry : tags.entrySet())
-            eventBuilder.withTag(tagEntry.getKey(), tagEntry.getValue());
-
-        raven.runBuilderHelpers(eventBuilder);
-        return eventBuilder.build();
+        eventBuilder.withBaseTags(tags);
     }
 
     public void setRavenFactory(String ravenFactory) {
@@ -275,13 +382,39 @@ public class SentryAppender extends AppenderSkeleton {
         this.serverName = serverName;
     }
 
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel != null ? Level.toLevel(minLevel) : null;
+    }
+
+    public void setBreadcrumbs(boolean breadcrumbs) {
+        this.breadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Set the sampling rates of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     *
+     * @param breadcrumbSampleRates A String of logger name prefixes and rates between 0 and 1, separated by colon(:),
+     *                              entries are separated by commas(,).
+     */
+    public void setBreadcrumbSampleRates(String breadcrumbSampleRates) {
+        breadcrumbRecorder.setSampleRates(breadcrumbSampleRates);
+    }
+
+    public void setBreadcrumbMaxBytes(int breadcrumbMaxBytes) {
+        breadcrumbRecorder.setMaxBytes(breadcrumbMaxBytes);
+    }
+
     /**
      * Set the tags that should be sent along with the events.
      *
      * @param tags A String of tags. key/values are separated by colon(:) and tags are separated by commas(,).
      */
     public void setTags(String tags) {
-        this.tags = Util.parseTags(tags);
+        this.tags = CompactCollections.freezeMap(Util.parseTags(tags));
     }
 
     /**
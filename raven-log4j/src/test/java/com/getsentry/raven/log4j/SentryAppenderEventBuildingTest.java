@@ -42,6 +42,11 @@ public class SentryAppenderEventBuildingTest {
         sentryAppender.setErrorHandler(mockUpErrorHandler.getMockInstance());
         sentryAppender.setExtraTags(mockExtraTag);
         sentryAppender.activateOptions();
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     private void assertNoErrorsInErrorHandler() throws Exception {
@@ -33,6 +33,11 @@ public class SentryAppenderFailuresTest {
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setErrorHandler(mockUpErrorHandler.getMockInstance());
         sentryAppender.activateOptions();
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     @Test
@@ -6,11 +6,14 @@ import com.getsentry.raven.config.Lookup;
 import com.getsentry.raven.dsn.Dsn;
 import com.getsentry.raven.dsn.InvalidDsnException;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.LogBreadcrumbRecorder;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import com.getsentry.raven.event.interfaces.MessageInterface;
 import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.util.CompactCollections;
 import com.getsentry.raven.util.Util;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.Marker;
@@ -23,6 +26,7 @@ import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 import org.apache.logging.log4j.core.filter.AbstractFilter;
+import org.apache.logging.log4j.core.impl.Log4jLogEvent;
 import org.apache.logging.log4j.message.Message;
 
 import java.util.ArrayList;
@@ -102,6 +106,27 @@ public class SentryAppender extends AbstractAppender {
      * </p>
      */
     protected Set<String> extraTags = Collections.emptySet();
+    /**
+     * If true, only a snapshot of the logging event is taken on the logging thread, the event is built by the
+     * thread of the Raven connection (when the connection is asynchronous).
+     */
+    protected boolean deferred;
+    /**
+     * If set, only logging events with level = minLevel and up are sent as events.
+     * <p>
+     * Might be null in which case every logging event reaching the appender is sent.
+     * </p>
+     */
+    protected Level minLevel;
+    /**
+     * If true, the logging events below {@link #minLevel} are recorded as breadcrumbs of the current
+     * {@link com.getsentry.raven.RavenContext} instead of being discarded.
+     */
+    protected boolean breadcrumbs;
+    /**
+     * Sampling and size limits of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     */
+    protected final LogBreadcrumbRecorder breadcrumbRecorder = new LogBreadcrumbRecorder();
 
     /**
      * Creates an instance of SentryAppender.
@@ -134,9 +159,42 @@ public class SentryAppender extends AbstractAppender {
         setServerName(Lookup.lookup("serverName"));
         setTags(Lookup.lookup("tags"));
         setExtraTags(Lookup.lookup("extraTags"));
+        setDeferred(Boolean.parseBoolean(Lookup.lookup("deferred")));
+        setBreadcrumbs(Boolean.parseBoolean(Lookup.lookup("breadcrumbs")));
+        setBreadcrumbSampleRates(Lookup.lookup("breadcrumbSampleRates"));
+        setBreadcrumbMaxBytes(Util.parseInteger(Lookup.lookup("breadcrumbMaxBytes"),
+            LogBreadcrumbRecorder.DEFAULT_MAX_BYTES));
         this.addFilter(new DropRavenFilter());
     }
 
+    /**
+     * Create a Sentry Appender with the default values of the options added since.
+     *
+     * @param name         The name of the Appender.
+     * @param dsn          Data Source Name to access the Sentry server.
+     * @param ravenFactory Name of the factory to use to build the {@link Raven} instance.
+     * @param release      Release to be sent to Sentry.
+     * @param environment  Environment to be sent to Sentry.
+     * @param serverName   serverName to be sent to Sentry.
+     * @param tags         Tags to add to each event.
+     * @param extraTags    Tags to search through the Thread Context Map.
+     * @param filter       The filter, if any, to use.
+     * @return The SentryAppender.
+     */
+    @SuppressWarnings("checkstyle:parameternumber")
+    public static SentryAppender createAppender(final String name,
+                                                final String dsn,
+                                                final String ravenFactory,
+                                                final String release,
+                                                final String environment,
+                                                final String serverName,
+                                                final String tags,
+                                                final String extraTags,
+                                                final Filter filter) {
+        return createAppender(name, dsn, ravenFactory, release, environment, serverName, tags, extraTags,
+            null, null, null, null, null, filter);
+    }
+
     /**
      * Create a Sentry Appender.
      *
@@ -148,6 +206,11 @@ public class SentryAppender extends AbstractAppender {
      * @param serverName   serverName to be sent to Sentry.
      * @param tags         Tags to add to each event.
      * @param extraTags    Tags to search through the Thread Context Map.
+     * @param deferred     Whether the events should be built by the thread of the Raven connection.
+     * @param minLevel     Minimum level of the logging events sent as events.
+     * @param breadcrumbs  Whether the logging events below minLevel are recorded as breadcrumbs.
+     * @param breadcrumbSampleRates Sampling rates of the breadcrumbs by logger name prefix.
+     * @param breadcrumbMaxBytes    Maximum size of the message of a breadcrumb.
      * @param filter       The filter, if any, to use.
      * @return The SentryAppender.
      */
@@ -161,6 +224,13 @@ public class SentryAppender extends AbstractAppender {
                                                 @PluginAttribute("serverName") final String serverName,
                                                 @PluginAttribute("tags") final String tags,
                                                 @PluginAttribute("extraTags") final String extraTags,
+                                                @PluginAttribute("deferred") final String deferred,
+                                                @PluginAttribute("minLevel") final String minLevel,
+                                                @PluginAttribute("breadcrumbs") final String breadcrumbs,
+                                                @PluginAttribute("breadcrumbSampleRates")
+                                                final String breadcrumbSampleRates,
+                                                @PluginAttribute("breadcrumbMaxBytes")
+                                                final String breadcrumbMaxBytes,
                                                 @PluginElement("filters") final Filter filter) {
 
         if (name == null) {
@@ -180,6 +250,16 @@ public class SentryAppender extends AbstractAppender {
             sentryAppender.setTags(tags);
         if (extraTags != null)
             sentryAppender.setExtraTags(extraTags);
+        if (deferred != null)
+            sentryAppender.setDeferred(Boolean.parseBoolean(deferred));
+        if (minLevel != null)
+            sentryAppender.setMinLevel(minLevel);
+        if (breadcrumbs != null)
+            sentryAppender.setBreadcrumbs(Boolean.parseBoolean(breadcrumbs));
+        if (breadcrumbSampleRates != null)
+            sentryAppender.setBreadcrumbSampleRates(breadcrumbSampleRates);
+        if (breadcrumbMaxBytes != null)
+            sentryAppender.setBreadcrumbMaxBytes(Integer.parseInt(breadcrumbMaxBytes));
         sentryAppender.setRavenFactory(ravenFactory);
         return sentryAppender;
     }
@@ -237,8 +317,22 @@ public class SentryAppender extends AbstractAppender {
             if (raven == null)
                 initRaven();
 
-            Event event = buildEvent(logEvent);
-            raven.sendEvent(event);
+            if (minLevel != null && !logEvent.getLevel().isMoreSpecificThan(minLevel)) {
+                if (breadcrumbs)
+                    recordBreadcrumb(logEvent);
+                return;
+            }
+
+            if (!raven.isSampled(formatLevel(logEvent.getLevel()), logEvent.getLoggerName())
+                || raven.isThrottled(logEvent.getMessage().getFormat(), logEvent.getThrown()))
+                return;
+
+            if (deferred) {
+                raven.sendEvent(createDeferredEvent(logEvent));
+            } else {
+                Event event = buildEvent(logEvent);
+                raven.sendEvent(event);
+            }
         } catch (Exception e) {
             error("An exception occurred while creating a new event in Raven", logEvent, e);
         } finally {
@@ -246,6 +340,20 @@ public class SentryAppender extends AbstractAppender {
         }
     }
 
+    /**
+     * Records a logging event below {@link #minLevel} as a breadcrumb of the current context, if its logger is
+     * sampled.
+     *
+     * @param logEvent The LogEvent.
+     */
+    protected void recordBreadcrumb(LogEvent logEvent) {
+        if (breadcrumbRecorder.isSampled(logEvent.getLoggerName())) {
+            breadcrumbRecorder.record(raven.getContext(), logEvent.getTimeMillis(),
+                formatLevel(logEvent.getLevel()), logEvent.getLoggerName(),
+                logEvent.getMessage().getFormattedMessage());
+        }
+    }
+
     /**
      * Initialises the Raven instance.
      */
@@ -269,9 +377,47 @@ public class SentryAppender extends AbstractAppender {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(LogEvent event) {
+        EventBuilder eventBuilder = new EventBuilder();
+        fillEventBuilder(eventBuilder, event);
+        raven.runBuilderHelpers(eventBuilder);
+        return eventBuilder.build();
+    }
+
+    /**
+     * Takes a snapshot of the logging event and wraps it in an event built later on by the Raven connection.
+     * <p>
+     * The logging event may be reused by log4j2 once appended (asynchronous loggers), an immutable copy is made
+     * right away, including the formatted message and the source location which depend on the logging thread.
+     *
+     * @param event Log generated.
+     * @return Event built later on with the details provided by the logging system.
+     */
+    protected DeferredEvent createDeferredEvent(LogEvent event) {
+        // Computes (and caches) what depends on the logging thread before copying the event
+        event.getMessage().getFormattedMessage();
+        event.getSource();
+        event.getThreadName();
+        final LogEvent snapshot = new Log4jLogEvent.Builder(event).build();
+        return new DeferredEvent(formatLevel(event.getLevel()), event.getMessage().getFormat(), event.getThrown()) {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                fillEventBuilder(builder, snapshot);
+            }
+        };
+    }
+
+    /**
+     * Adds the details provided by the logging system to an {@link EventBuilder}.
+     * <p>
+     * When the appender is {@link #deferred}, this method is called by the thread of the Raven connection, after
+     * the builder helpers, without replacing the values they set.
+     *
+     * @param eventBuilder event builder to fill.
+     * @param event        Log generated.
+     */
+    protected void fillEventBuilder(EventBuilder eventBuilder, LogEvent event) {
         Message eventMessage = event.getMessage();
-        EventBuilder eventBuilder = new EventBuilder()
-                .withTimestamp(new Date(event.getTimeMillis()))
+        eventBuilder.withTimestamp(new Date(event.getTimeMillis()))
                 .withMessage(eventMessage.getFormattedMessage())
                 .withLogger(event.getLoggerName())
                 .withLevel(formatLevel(event.getLevel()))
@@ -326,11 +472,7 @@ public class SentryAppender extends AbstractAppender {
         if (event.getMarker() != null)
             eventBuilder.withTag(LOG4J_MARKER, event.getMarker().getName());
 
-        for (Map.Entry<String, String> tagEntry : tags.entrySet())
-            eventBuilder.withTag(tagEntry.getKey(), tagEntry.getValue());
-
-        raven.runBuilderHelpers(eventBuilder);
-        return eventBuilder.build();
+        eventBuilder.withBaseTags(tags);
     }
 
     public void setDsn(String dsn) {
@@ -353,13 +495,39 @@ public class SentryAppender extends AbstractAppender {
         this.serverName = serverName;
     }
 
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel != null ? Level.toLevel(minLevel) : null;
+    }
+
+    public void setBreadcrumbs(boolean breadcrumbs) {
+        this.breadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Set the sampling rates of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     *
+     * @param breadcrumbSampleRates A String of logger name prefixes and rates between 0 and 1, separated by colon(:),
+     *                              entries are separated by commas(,).
+     */
+    public void setBreadcrumbSampleRates(String breadcrumbSampleRates) {
+        breadcrumbRecorder.setSampleRates(breadcrumbSampleRates);
+    }
+
+    public void setBreadcrumbMaxBytes(int breadcrumbMaxBytes) {
+        breadcrumbRecorder.setMaxBytes(breadcrumbMaxBytes);
+    }
+
     /**
      * Set the tags that should be sent along with the events.
      *
      * @param tags A String of tags. key/values are separated by colon(:) and tags are separated by commas(,).
      */
     public void setTags(String tags) {
-        this.tags = Util.parseTags(tags);
+        this.tags = CompactCollections.freezeMap(Util.parseTags(tags));
     }
 
     /**
@@ -1,6 +1,7 @@
 package com.getsentry.raven.log4j2;
 
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import com.getsentry.raven.Raven;
@@ -41,6 +42,11 @@ public class SentryAppenderEventBuildingTest {
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setHandler(mockUpErrorHandler.getMockInstance());
         sentryAppender.setExtraTags(mockExtraTag);
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     private void assertNoErrorsInErrorHandler() throws Exception {
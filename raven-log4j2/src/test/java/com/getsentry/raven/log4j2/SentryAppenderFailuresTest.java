@@ -32,6 +32,11 @@ public class SentryAppenderFailuresTest {
         sentryAppender = new SentryAppender(mockRaven);
         mockUpErrorHandler = new MockUpErrorHandler();
         sentryAppender.setHandler(mockUpErrorHandler.getMockInstance());
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     @Test
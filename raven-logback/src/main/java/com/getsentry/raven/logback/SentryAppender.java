@@ -4,6 +4,7 @@ import ch.qos.logback.classic.Level;
 import ch.qos.logback.classic.spi.ILoggingEvent;
 import ch.qos.logback.classic.spi.IThrowableProxy;
 import ch.qos.logback.classic.spi.StackTraceElementProxy;
+import ch.qos.logback.classic.spi.ThrowableProxy;
 import ch.qos.logback.core.AppenderBase;
 import ch.qos.logback.core.filter.Filter;
 import ch.qos.logback.core.spi.FilterReply;
@@ -13,12 +14,15 @@ import com.getsentry.raven.config.Lookup;
 import com.getsentry.raven.dsn.Dsn;
 import com.getsentry.raven.dsn.InvalidDsnException;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.LogBreadcrumbRecorder;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import com.getsentry.raven.event.interfaces.MessageInterface;
 import com.getsentry.raven.event.interfaces.SentryException;
 import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.util.CompactCollections;
 import com.getsentry.raven.util.Util;
 
 import java.util.ArrayDeque;
@@ -30,6 +34,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Appender for logback in charge of sending the logged events to a Sentry server.
@@ -44,6 +50,16 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * Name of the {@link Event#extra} property containing the Thread name.
      */
     public static final String THREAD_NAME = "Raven-Threadname";
+    /**
+     * Maximum number of class names kept in {@link #CLASS_NAME_CACHE}.
+     */
+    private static final int CLASS_NAME_CACHE_SIZE = 1000;
+    /**
+     * Package and simple names of the exception classes already encountered, by class name.
+     * <p>
+     * The cache is emptied when it reaches {@link #CLASS_NAME_CACHE_SIZE} entries.
+     */
+    private static final ConcurrentMap<String, String[]> CLASS_NAME_CACHE = new ConcurrentHashMap<>();
     /**
      * Current instance of {@link Raven}.
      *
@@ -96,6 +112,20 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * Extras to use as tags.
      */
     protected Set<String> extraTags = Collections.emptySet();
+    /**
+     * If true, only a snapshot of the logging event is taken on the logging thread, the event is built by the
+     * thread of the Raven connection (when the connection is asynchronous).
+     */
+    protected boolean deferred;
+    /**
+     * If true, the logging events below {@link #minLevel} are recorded as breadcrumbs of the current
+     * {@link com.getsentry.raven.RavenContext} instead of being discarded.
+     */
+    protected boolean breadcrumbs;
+    /**
+     * Sampling and size limits of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     */
+    protected final LogBreadcrumbRecorder breadcrumbRecorder = new LogBreadcrumbRecorder();
 
     /**
      * Creates an instance of SentryAppender.
@@ -107,6 +137,11 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
         setServerName(Lookup.lookup("serverName"));
         setTags(Lookup.lookup("tags"));
         setExtraTags(Lookup.lookup("extraTags"));
+        setDeferred(Boolean.parseBoolean(Lookup.lookup("deferred")));
+        setBreadcrumbs(Boolean.parseBoolean(Lookup.lookup("breadcrumbs")));
+        setBreadcrumbSampleRates(Lookup.lookup("breadcrumbSampleRates"));
+        setBreadcrumbMaxBytes(Util.parseInteger(Lookup.lookup("breadcrumbMaxBytes"),
+            LogBreadcrumbRecorder.DEFAULT_MAX_BYTES));
 
         this.addFilter(new DropRavenFilter());
     }
@@ -176,11 +211,23 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
             }
 
             if (minLevel != null && !iLoggingEvent.getLevel().isGreaterOrEqual(minLevel)) {
+                if (breadcrumbs) {
+                    recordBreadcrumb(iLoggingEvent);
+                }
+                return;
+            }
+
+            if (!raven.isSampled(formatLevel(iLoggingEvent.getLevel()), iLoggingEvent.getLoggerName())
+                || raven.isThrottled(iLoggingEvent.getMessage(), getThrowable(iLoggingEvent))) {
                 return;
             }
 
-            Event event = buildEvent(iLoggingEvent);
-            raven.sendEvent(event);
+            if (deferred) {
+                raven.sendEvent(createDeferredEvent(iLoggingEvent));
+            } else {
+                Event event = buildEvent(iLoggingEvent);
+                raven.sendEvent(event);
+            }
         } catch (Exception e) {
             addError("An exception occurred while creating a new event in Raven", e);
         } finally {
@@ -205,6 +252,20 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
         }
     }
 
+    /**
+     * Records a logging event below {@link #minLevel} as a breadcrumb of the current context, if its logger is
+     * sampled.
+     *
+     * @param iLoggingEvent Log generated.
+     */
+    protected void recordBreadcrumb(ILoggingEvent iLoggingEvent) {
+        if (breadcrumbRecorder.isSampled(iLoggingEvent.getLoggerName())) {
+            breadcrumbRecorder.record(raven.getContext(), iLoggingEvent.getTimeStamp(),
+                formatLevel(iLoggingEvent.getLevel()), iLoggingEvent.getLoggerName(),
+                iLoggingEvent.getFormattedMessage());
+        }
+    }
+
     /**
      * Builds an Event based on the logging event.
      *
@@ -212,8 +273,54 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(ILoggingEvent iLoggingEvent) {
-        EventBuilder eventBuilder = new EventBuilder()
-                .withTimestamp(new Date(iLoggingEvent.getTimeStamp()))
+        EventBuilder eventBuilder = new EventBuilder();
+        fillEventBuilder(eventBuilder, iLoggingEvent);
+        raven.runBuilderHelpers(eventBuilder);
+        return eventBuilder.build();
+    }
+
+    /**
+     * Takes a snapshot of the logging event and wraps it in an event built later on by the Raven connection.
+     * <p>
+     * Everything depending on the logging thread (formatted message, MDC, caller data) is computed right away.
+     *
+     * @param iLoggingEvent Log generated.
+     * @return Event built later on with the details provided by the logging system.
+     */
+    protected DeferredEvent createDeferredEvent(final ILoggingEvent iLoggingEvent) {
+        iLoggingEvent.prepareForDeferredProcessing();
+        iLoggingEvent.getCallerData();
+        return new DeferredEvent(formatLevel(iLoggingEvent.getLevel()), iLoggingEvent.getMessage(),
+            getThrowable(iLoggingEvent)) {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                fillEventBuilder(builder, iLoggingEvent);
+            }
+        };
+    }
+
+    /**
+     * Returns the exception of a logging event, used to identify the event before building it.
+     *
+     * @param iLoggingEvent Log generated.
+     * @return the exception of the logging event, null if there is none or if it isn't available anymore.
+     */
+    private static Throwable getThrowable(ILoggingEvent iLoggingEvent) {
+        IThrowableProxy throwableProxy = iLoggingEvent.getThrowableProxy();
+        return throwableProxy instanceof ThrowableProxy ? ((ThrowableProxy) throwableProxy).getThrowable() : null;
+    }
+
+    /**
+     * Adds the details provided by the logging system to an {@link EventBuilder}.
+     * <p>
+     * When the appender is {@link #deferred}, this method is called by the thread of the Raven connection, after
+     * the builder helpers, without replacing the values they set.
+     *
+     * @param eventBuilder  event builder to fill.
+     * @param iLoggingEvent Log generated.
+     */
+    protected void fillEventBuilder(EventBuilder eventBuilder, ILoggingEvent iLoggingEvent) {
+        eventBuilder.withTimestamp(new Date(iLoggingEvent.getTimeStamp()))
                 .withMessage(iLoggingEvent.getFormattedMessage())
                 .withLogger(iLoggingEvent.getLoggerName())
                 .withLevel(formatLevel(iLoggingEvent.getLevel()))
@@ -266,11 +373,7 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
         if (iLoggingEvent.getMarker() != null)
             eventBuilder.withTag(LOGBACK_MARKER, iLoggingEvent.getMarker().getName());
 
-        for (Map.Entry<String, String> tagEntry : tags.entrySet())
-            eventBuilder.withTag(tagEntry.getKey(), tagEntry.getValue());
-
-        raven.runBuilderHelpers(eventBuilder);
-        return eventBuilder.build();
+        eventBuilder.withBaseTags(tags);
     }
 
     /**
@@ -331,24 +434,40 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
      * @return An array of {@link String}s. The first of which is the package name. The second is the class name.
      */
     protected String[] extractPackageSimpleClassName(String canonicalClassName) {
-        String[] packageNameSimpleName = new String[2];
-        try {
-            Class<?> exceptionClass = Class.forName(canonicalClassName);
-            Package exceptionPackage = exceptionClass.getPackage();
-            packageNameSimpleName[0] = exceptionPackage != null ? exceptionPackage.getName()
-                    : SentryException.DEFAULT_PACKAGE_NAME;
-            packageNameSimpleName[1] = exceptionClass.getSimpleName();
-        } catch (ClassNotFoundException e) {
-            int lastDot = canonicalClassName.lastIndexOf('.');
-            if (lastDot != -1) {
-                packageNameSimpleName[0] = canonicalClassName.substring(0, lastDot);
-                packageNameSimpleName[1] = canonicalClassName.substring(lastDot);
-            } else {
-                packageNameSimpleName[0] = SentryException.DEFAULT_PACKAGE_NAME;
-                packageNameSimpleName[1] = canonicalClassName;
+        String[] packageNameSimpleName = CLASS_NAME_CACHE.get(canonicalClassName);
+        if (packageNameSimpleName == null) {
+            packageNameSimpleName = resolvePackageSimpleClassName(canonicalClassName);
+            if (CLASS_NAME_CACHE.size() >= CLASS_NAME_CACHE_SIZE) {
+                CLASS_NAME_CACHE.clear();
+            }
+            CLASS_NAME_CACHE.put(canonicalClassName, packageNameSimpleName);
+        }
+        return packageNameSimpleName.clone();
+    }
+
+    /**
+     * Splits a class name into its package name and simple name.
+     * <p>
+     * The name is parsed without loading the class, unless it contains a {@code $} in which case it may be a nested,
+     * local or anonymous class whose simple name is only known by the class itself.
+     *
+     * @param className name of the class as returned by {@link Class#getName()}.
+     * @return An array of {@link String}s. The first of which is the package name. The second is the class name.
+     */
+    private static String[] resolvePackageSimpleClassName(String className) {
+        int lastDot = className.lastIndexOf('.');
+        String packageName = lastDot != -1 ? className.substring(0, lastDot) : SentryException.DEFAULT_PACKAGE_NAME;
+        String simpleName = className.substring(lastDot + 1);
+
+        if (simpleName.indexOf('$') != -1) {
+            try {
+                Class<?> exceptionClass = Class.forName(className, false, SentryAppender.class.getClassLoader());
+                simpleName = exceptionClass.getSimpleName();
+            } catch (ClassNotFoundException e) {
+                // The class isn't visible, keep the binary name of the class.
             }
         }
-        return packageNameSimpleName;
+        return new String[]{packageName, simpleName};
     }
 
     /**
@@ -390,17 +509,39 @@ public class SentryAppender extends AppenderBase<ILoggingEvent> {
         this.serverName = serverName;
     }
 
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
     public void setMinLevel(String minLevel) {
         this.minLevel = minLevel != null ? Level.toLevel(minLevel) : null;
     }
 
+    public void setBreadcrumbs(boolean breadcrumbs) {
+        this.breadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Set the sampling rates of the breadcrumbs recorded from the logging events below {@link #minLevel}.
+     *
+     * @param breadcrumbSampleRates A String of logger name prefixes and rates between 0 and 1, separated by colon(:),
+     *                              entries are separated by commas(,).
+     */
+    public void setBreadcrumbSampleRates(String breadcrumbSampleRates) {
+        breadcrumbRecorder.setSampleRates(breadcrumbSampleRates);
+    }
+
+    public void setBreadcrumbMaxBytes(int breadcrumbMaxBytes) {
+        breadcrumbRecorder.setMaxBytes(breadcrumbMaxBytes);
+    }
+
     /**
      * Set the tags that should be sent along with the events.
      *
      * @param tags A String of tags. key/values are separated by colon(:) and tags are separated by commas(,).
      */
     public void setTags(String tags) {
-        this.tags = Util.parseTags(tags);
+        this.tags = CompactCollections.freezeMap(Util.parseTags(tags));
     }
 
     /**
@@ -10,6 +10,7 @@ import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import com.getsentry.raven.Raven;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
@@ -54,6 +55,11 @@ public class SentryAppenderEventBuildingTest {
             mockContext.getStatusManager();
             result = statusManager;
         }};
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     private void assertNoErrorsInStatusManager() throws Exception {
@@ -83,6 +89,49 @@ public class SentryAppenderEventBuildingTest {
         assertNoErrorsInStatusManager();
     }
 
+    @Test
+    public void testDeferredMessageLogging() throws Exception {
+        final String message = "0f3a0d2e-77a3-4bc4-8a0c-1ea2b5b8c3a1";
+        final String loggerName = "a4a37f6b-2b8c-4a3e-a1f1-fb1bbf2ff80a";
+        sentryAppender.setDeferred(true);
+
+        sentryAppender.append(new MockUpLoggingEvent(loggerName, null, Level.WARN, message, null, null)
+            .getMockInstance());
+
+        new Verifications() {{
+            DeferredEvent deferredEvent;
+            mockRaven.sendEvent(deferredEvent = withCapture());
+            mockRaven.sendEvent((Event) any);
+            times = 0;
+            Event event = deferredEvent.build();
+            assertThat(event.getId(), is(deferredEvent.getId()));
+            assertThat(event.getMessage(), is(message));
+            assertThat(event.getLogger(), is(loggerName));
+            assertThat(event.getLevel(), is(Event.Level.WARNING));
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
+    @Test
+    public void testDeferredEventKeepsTheValuesOfTheBuilderHelpers() throws Exception {
+        sentryAppender.setDeferred(true);
+        sentryAppender.setRelease("appender-release");
+
+        sentryAppender.append(new MockUpLoggingEvent("logger", null, Level.WARN, "message", null, null)
+            .getMockInstance());
+
+        new Verifications() {{
+            DeferredEvent deferredEvent;
+            mockRaven.sendEvent(deferredEvent = withCapture());
+            // Set by a builder helper on the logging thread
+            deferredEvent.getEventBuilder().withRelease("helper-release");
+            Event event = deferredEvent.build();
+            assertThat(event.getRelease(), is("helper-release"));
+            assertThat(event.getMessage(), is("message"));
+        }};
+        assertNoErrorsInStatusManager();
+    }
+
     @DataProvider(name = "levels")
     private Object[][] levelConversions() {
         return new Object[][]{
@@ -124,6 +173,26 @@ public class SentryAppenderEventBuildingTest {
         assertNoErrorsInStatusManager();
     }
 
+    @DataProvider(name = "classNames")
+    private Object[][] classNames() {
+        return new Object[][]{
+                {"java.lang.IllegalStateException", "java.lang", "IllegalStateException"},
+                {"java.util.AbstractMap$SimpleEntry", "java.util", "SimpleEntry"},
+                {"com.example.Missing$Inner", "com.example", "Missing$Inner"},
+                {"NoPackageException", SentryException.DEFAULT_PACKAGE_NAME, "NoPackageException"}};
+    }
+
+    @Test(dataProvider = "classNames")
+    public void testPackageAndSimpleClassNameExtraction(String className, String expectedPackageName,
+                                                        String expectedSimpleName) throws Exception {
+        String[] packageNameSimpleName = sentryAppender.extractPackageSimpleClassName(className);
+        // The second lookup is served by the cache
+        String[] cachedPackageNameSimpleName = sentryAppender.extractPackageSimpleClassName(className);
+
+        assertThat(packageNameSimpleName, is(new String[]{expectedPackageName, expectedSimpleName}));
+        assertThat(cachedPackageNameSimpleName, is(packageNameSimpleName));
+    }
+
     @Test
     public void testLogParametrisedMessage() throws Exception {
         final String messagePattern = "Formatted message {} {} {}";
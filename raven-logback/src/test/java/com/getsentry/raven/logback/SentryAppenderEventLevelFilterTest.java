@@ -3,14 +3,23 @@ package com.getsentry.raven.logback;
 import ch.qos.logback.classic.Level;
 import ch.qos.logback.core.Context;
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import com.getsentry.raven.Raven;
+import com.getsentry.raven.RavenContext;
+import com.getsentry.raven.event.Breadcrumb;
 import com.getsentry.raven.event.Event;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
 /**
  * @author Felipe G Almeida
  */
@@ -27,6 +36,11 @@ public class SentryAppenderEventLevelFilterTest {
         new MockUpStatusPrinter();
         sentryAppender = new SentryAppender(mockRaven);
         sentryAppender.setContext(mockContext);
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     @DataProvider(name = "levels")
@@ -74,4 +88,32 @@ public class SentryAppenderEventLevelFilterTest {
         }};
     }
 
+    @Test
+    public void testEventsBelowMinLevelRecordedAsBreadcrumbs() throws Exception {
+        final RavenContext ravenContext = new RavenContext();
+        new NonStrictExpectations() {{
+            mockRaven.getContext();
+            result = ravenContext;
+        }};
+        sentryAppender.setMinLevel("WARN");
+        sentryAppender.setBreadcrumbs(true);
+        sentryAppender.setBreadcrumbSampleRates("com.example.ignored:0");
+
+        sentryAppender.append(new MockUpLoggingEvent("com.example", null, Level.DEBUG, "debug", null, null)
+            .getMockInstance());
+        sentryAppender.append(new MockUpLoggingEvent("com.example.ignored", null, Level.INFO, "ignored", null, null)
+            .getMockInstance());
+        sentryAppender.append(new MockUpLoggingEvent("com.example", null, Level.ERROR, "error", null, null)
+            .getMockInstance());
+
+        List<Breadcrumb> breadcrumbs = ravenContext.getBreadcrumbSnapshot();
+        assertThat(breadcrumbs, hasSize(1));
+        assertThat(breadcrumbs.get(0).getLevel(), is("debug"));
+        assertThat(breadcrumbs.get(0).getCategory(), is("com.example"));
+        assertThat(breadcrumbs.get(0).getMessage(), is("debug"));
+        new Verifications() {{
+            mockRaven.sendEvent((Event) any);
+            times = 1;
+        }};
+    }
 }
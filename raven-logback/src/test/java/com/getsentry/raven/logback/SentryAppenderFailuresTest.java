@@ -37,6 +37,11 @@ public class SentryAppenderFailuresTest {
             mockContext.getStatusManager();
             result = statusManager;
         }};
+
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
     }
 
     @Test
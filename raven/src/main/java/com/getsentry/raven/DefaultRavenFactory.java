@@ -4,11 +4,20 @@ import com.getsentry.raven.buffer.Buffer;
 import com.getsentry.raven.buffer.DiskBuffer;
 import com.getsentry.raven.connection.*;
 import com.getsentry.raven.dsn.Dsn;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventDeduplicator;
+import com.getsentry.raven.event.EventSampler;
+import com.getsentry.raven.event.EventSignature;
+import com.getsentry.raven.event.EventThrottler;
+import com.getsentry.raven.event.HeapPressureGovernor;
 import com.getsentry.raven.event.helper.ContextBuilderHelper;
 import com.getsentry.raven.event.helper.HttpEventBuilderHelper;
 import com.getsentry.raven.event.interfaces.*;
 import com.getsentry.raven.marshaller.Marshaller;
 import com.getsentry.raven.marshaller.json.*;
+import com.getsentry.raven.metrics.EventCostAccountant;
+import com.getsentry.raven.metrics.PipelineListener;
+import com.getsentry.raven.metrics.RavenMetrics;
 import com.getsentry.raven.util.Util;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,10 +26,14 @@ import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -64,6 +77,10 @@ public class DefaultRavenFactory extends RavenFactory {
      * Default number of events to cache offline when network is down.
      */
     public static final int BUFFER_SIZE_DEFAULT = 50;
+    /**
+     * Option for maximum number of bytes of events to cache offline when network is down.
+     */
+    public static final String BUFFER_MAX_BYTES_OPTION = "raven.buffer.maxbytes";
     /**
      * Option for how long to wait between attempts to flush the disk buffer, in milliseconds.
      */
@@ -96,6 +113,51 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option for the number of threads used for the async connection.
      */
     public static final String ASYNC_THREADS_OPTION = "raven.async.threads";
+    /**
+     * Option to size the thread pool of the async connection after the load, between
+     * {@link #ASYNC_MIN_THREADS_OPTION} and {@link #ASYNC_THREADS_OPTION} threads.
+     */
+    public static final String ASYNC_ADAPTIVE_OPTION = "raven.async.adaptive";
+    /**
+     * Option for the minimum number of threads of the adaptive thread pool.
+     */
+    public static final String ASYNC_MIN_THREADS_OPTION = "raven.async.threads.min";
+    /**
+     * Option for the time after which an idle thread of the adaptive thread pool stops, in milliseconds.
+     */
+    public static final String ASYNC_KEEP_ALIVE_OPTION = "raven.async.keepalive";
+    /**
+     * Default time after which an idle thread of the adaptive thread pool stops, in milliseconds.
+     */
+    public static final long ASYNC_KEEP_ALIVE_DEFAULT = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Option for the kind of threads sending the events of the async connection.
+     */
+    public static final String ASYNC_MODE_OPTION = "raven.async.mode";
+    /**
+     * Async mode sending the events with a pool of platform threads.
+     */
+    public static final String ASYNC_MODE_PLATFORM = "platform";
+    /**
+     * Async mode sending the events with virtual threads, on the runtimes supporting them.
+     */
+    public static final String ASYNC_MODE_VIRTUAL = "virtual";
+    /**
+     * Option for the maximum number of events sent at the same time by virtual threads.
+     */
+    public static final String ASYNC_MAX_IN_FLIGHT_OPTION = "raven.async.maxinflight";
+    /**
+     * Default maximum number of events sent at the same time by virtual threads.
+     */
+    public static final int ASYNC_MAX_IN_FLIGHT_DEFAULT = 64;
+    /**
+     * Option to send the events of the async connection with the workers shared by the Raven instances of the JVM.
+     */
+    public static final String ASYNC_SHARED_OPTION = "raven.async.shared";
+    /**
+     * Option for the number of workers shared by the Raven instances of the JVM, set by the first one.
+     */
+    public static final String ASYNC_SHARED_THREADS_OPTION = "raven.async.shared.threads";
     /**
      * Option for the priority of threads used for the async connection.
      */
@@ -108,6 +170,19 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option for what to do when the async executor queue is full.
      */
     public static final String ASYNC_QUEUE_OVERFLOW_OPTION = "raven.async.queue.overflow";
+    /**
+     * Option for whether the async queue orders the events by level instead of by arrival.
+     */
+    public static final String ASYNC_QUEUE_PRIORITY_OPTION = "raven.async.queue.priority";
+    /**
+     * Option for the number of slots of the async queue reserved to errors and fatal events, when the queue orders
+     * the events by level.
+     */
+    public static final String ASYNC_QUEUE_RESERVED_OPTION = "raven.async.queue.reserved";
+    /**
+     * Option for the maximum estimated size of the events in the async queue, in bytes.
+     */
+    public static final String ASYNC_QUEUE_MAX_BYTES_OPTION = "raven.async.queue.maxbytes";
     /**
      * Async executor overflow behavior that will discard old events in the queue.
      */
@@ -122,6 +197,11 @@ public class DefaultRavenFactory extends RavenFactory {
      * current thread.
      */
     public static final String ASYNC_QUEUE_SYNC = "sync";
+    /**
+     * Async executor overflow behavior that will store the new event in the disk buffer, to be sent once the queue
+     * is empty again.
+     */
+    public static final String ASYNC_QUEUE_SPILL = "spill";
     /**
      * Default behavior to use when the async executor queue is full.
      */
@@ -146,10 +226,102 @@ public class DefaultRavenFactory extends RavenFactory {
      * Option to set an HTTP proxy port for Sentry connections.
      */
     public static final String HTTP_PROXY_PORT_OPTION = "raven.http.proxy.port";
+    /**
+     * Option for whether to measure the time spent in each {@link com.getsentry.raven.event.helper.EventBuilderHelper}.
+     */
+    public static final String BUILDER_HELPER_TIMING_OPTION = "raven.builderhelpers.timing";
+    /**
+     * Option for the duration above which a timed builder helper is reported as slow, in milliseconds.
+     */
+    public static final String BUILDER_HELPER_SLOW_THRESHOLD_OPTION = "raven.builderhelpers.slowthreshold";
+    /**
+     * Option for the rate, between 0 and 1, of events sent to Sentry.
+     */
+    public static final String SAMPLE_RATE_OPTION = "raven.sample.rate";
+    /**
+     * Option for the sample rates of some levels, e.g. "warning:0.01,error:1", overriding the global rate.
+     */
+    public static final String SAMPLE_LEVELS_OPTION = "raven.sample.levels";
+    /**
+     * Option for the sample rates by logger name prefix, e.g. "com.example.noisy:0.1".
+     */
+    public static final String SAMPLE_LOGGERS_OPTION = "raven.sample.loggers";
+    /**
+     * Option for the window during which the duplicates of an event are suppressed, in milliseconds (0 to send
+     * every duplicate).
+     */
+    public static final String DEDUP_WINDOW_OPTION = "raven.dedup.window";
+    /**
+     * Option for the maximum number of event signatures tracked to suppress duplicates.
+     */
+    public static final String DEDUP_SIZE_OPTION = "raven.dedup.size";
+    /**
+     * Option for the rate of the events of each signature allowed, in events per second (0 to not throttle them).
+     */
+    public static final String THROTTLE_RATE_OPTION = "raven.throttle.rate";
+    /**
+     * Option for the number of events of each signature which can be sent in a burst.
+     */
+    public static final String THROTTLE_BURST_OPTION = "raven.throttle.burst";
+    /**
+     * Option for the maximum number of event signatures tracked to throttle them.
+     */
+    public static final String THROTTLE_SIZE_OPTION = "raven.throttle.size";
+    /**
+     * Option for the number of in-app frames identifying an event along with its exception and message template.
+     */
+    public static final String SIGNATURE_FRAMES_OPTION = "raven.signature.frames";
+    /**
+     * Option for the ratio of the heap used after a garbage collection at which the events are degraded (unset to
+     * never degrade them).
+     */
+    public static final String HEAP_THRESHOLD_OPTION = "raven.heap.threshold";
+    /**
+     * Option for the ratio of the heap used after a garbage collection under which the events aren't degraded
+     * anymore.
+     */
+    public static final String HEAP_RECOVERY_OPTION = "raven.heap.recovery";
+    /**
+     * Option for the level under which the events are dropped while the heap is under pressure.
+     */
+    public static final String HEAP_LEVEL_OPTION = "raven.heap.level";
+    /**
+     * Option for the number of frames kept in the stack traces while the heap is under pressure.
+     */
+    public static final String HEAP_FRAMES_OPTION = "raven.heap.frames";
+    /**
+     * Option to record the metrics of the pipeline and expose them through JMX (disabled by default).
+     */
+    public static final String METRICS_OPTION = "raven.metrics";
+    /**
+     * Option for the name of the JMX MBeans of the metrics (the project id by default).
+     */
+    public static final String METRICS_NAME_OPTION = "raven.metrics.name";
+    /**
+     * Option to attribute the costs of the events to their logger and culprit (disabled by default).
+     */
+    public static final String ACCOUNTING_OPTION = "raven.accounting";
+    /**
+     * Option for the number of loggers and culprits kept in the cost report.
+     */
+    public static final String ACCOUNTING_TOP_OPTION = "raven.accounting.top";
+    /**
+     * Option for the cost ranking the loggers and culprits (events, build_time, estimated_bytes, payload_bytes or
+     * send_time).
+     */
+    public static final String ACCOUNTING_RANK_OPTION = "raven.accounting.rank";
+    /**
+     * Option for the interval between two cost reports in the logs, in milliseconds (unset to never log them).
+     */
+    public static final String ACCOUNTING_LOG_INTERVAL_OPTION = "raven.accounting.loginterval";
     /**
      * The default async queue size if none is provided.
      */
     public static final int QUEUE_SIZE_DEFAULT = 50;
+    /**
+     * The default fraction (one in N slots) of the async priority queue reserved to errors and fatal events.
+     */
+    public static final int ASYNC_QUEUE_RESERVED_RATIO_DEFAULT = 5;
     /**
      * The default HTTP proxy port to use if an HTTP Proxy hostname is set but port is not.
      */
@@ -157,17 +329,30 @@ public class DefaultRavenFactory extends RavenFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(DefaultRavenFactory.class);
     private static final String FALSE = Boolean.FALSE.toString();
+    private static final String TRUE = Boolean.TRUE.toString();
 
     private static final Map<String, RejectedExecutionHandler> REJECT_EXECUTION_HANDLERS = new HashMap<>();
     static {
         REJECT_EXECUTION_HANDLERS.put(ASYNC_QUEUE_SYNC, new ThreadPoolExecutor.CallerRunsPolicy());
         REJECT_EXECUTION_HANDLERS.put(ASYNC_QUEUE_DISCARDNEW, new ThreadPoolExecutor.DiscardPolicy());
         REJECT_EXECUTION_HANDLERS.put(ASYNC_QUEUE_DISCARDOLD, new ThreadPoolExecutor.DiscardOldestPolicy());
+        REJECT_EXECUTION_HANDLERS.put(ASYNC_QUEUE_SPILL, new AsyncConnection.SpillPolicy());
     }
 
     @Override
     public Raven createRavenInstance(Dsn dsn) {
         Raven raven = new Raven(createConnection(dsn));
+        raven.setBuilderHelperTimingEnabled(getBuilderHelperTimingEnabled(dsn));
+        raven.setSlowBuilderHelperThreshold(getSlowBuilderHelperThreshold(dsn));
+        raven.setSampler(createSampler(dsn));
+        raven.setDeduplicator(createDeduplicator(dsn));
+        raven.setThrottler(createThrottler(dsn));
+        raven.setHeapPressureGovernor(createHeapPressureGovernor(dsn));
+        raven.setMetrics(createMetrics(dsn));
+        for (PipelineListener pipelineListener : createPipelineListeners(dsn)) {
+            raven.addPipelineListener(pipelineListener);
+        }
+        raven.setCostAccountant(createCostAccountant(dsn));
         try {
             // `ServletRequestListener` was added in the Servlet 2.4 API, and
             // is used as part of the `HttpEventBuilderHelper`, see:
@@ -182,6 +367,144 @@ public class DefaultRavenFactory extends RavenFactory {
         return raven;
     }
 
+    /**
+     * Creates the sampler deciding which events are sent to Sentry.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link EventSampler} using the sample rates of the DSN, {@link EventSampler#SAMPLE_ALL} if there
+     * is none.
+     */
+    protected EventSampler createSampler(Dsn dsn) {
+        double sampleRate = getSampleRate(dsn);
+        Map<Event.Level, Double> levelSampleRates = getLevelSampleRates(dsn);
+        Map<String, Double> loggerSampleRates = getLoggerSampleRates(dsn);
+        if (sampleRate == 1 && levelSampleRates.isEmpty() && loggerSampleRates.isEmpty()) {
+            return EventSampler.SAMPLE_ALL;
+        }
+        return new EventSampler(sampleRate, levelSampleRates, loggerSampleRates);
+    }
+
+    /**
+     * Creates the deduplicator suppressing the repeated events.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link EventDeduplicator}, null if the duplicates are sent.
+     */
+    protected EventDeduplicator createDeduplicator(Dsn dsn) {
+        long window = getDedupWindow(dsn);
+        if (window <= 0) {
+            return null;
+        }
+        return new EventDeduplicator(createEventSignature(dsn), window, getDedupSize(dsn));
+    }
+
+    /**
+     * Creates the throttler limiting the rate of the events of each signature.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link EventThrottler}, null if the events aren't throttled.
+     */
+    protected EventThrottler createThrottler(Dsn dsn) {
+        double rate = getThrottleRate(dsn);
+        if (rate <= 0) {
+            return null;
+        }
+        return new EventThrottler(createEventSignature(dsn), rate, getThrottleBurst(dsn), getThrottleSize(dsn));
+    }
+
+    /**
+     * Creates the governor degrading the events while the heap is under pressure.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return a {@link HeapPressureGovernor}, null if the events are never degraded.
+     */
+    protected HeapPressureGovernor createHeapPressureGovernor(Dsn dsn) {
+        double threshold = getHeapThreshold(dsn);
+        if (threshold <= 0) {
+            return null;
+        }
+        return new HeapPressureGovernor(threshold, getHeapRecovery(dsn, threshold), getHeapLevel(dsn),
+            getHeapFrames(dsn));
+    }
+
+    /**
+     * Creates the metrics of the pipeline and registers them as JMX MBeans.
+     * <p>
+     * The metrics are still recorded if they can't be registered, for example when another Raven instance of the JVM
+     * uses the same name.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return {@link RavenMetrics}, {@link RavenMetrics#DISABLED} if the metrics aren't recorded.
+     */
+    protected RavenMetrics createMetrics(Dsn dsn) {
+        if (!getMetricsEnabled(dsn)) {
+            return RavenMetrics.DISABLED;
+        }
+        RavenMetrics metrics = new RavenMetrics();
+        String name = getMetricsName(dsn);
+        try {
+            metrics.register(name);
+        } catch (IllegalStateException | NoClassDefFoundError e) {
+            logger.warn("Couldn't register the metrics '{}' as JMX MBeans.", name, e);
+        }
+        return metrics;
+    }
+
+    /**
+     * Creates the accountant attributing the costs of the events to their logger and culprit, and registers its
+     * report as a JMX MBean.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link EventCostAccountant}, null if the costs aren't attributed.
+     */
+    protected EventCostAccountant createCostAccountant(Dsn dsn) {
+        if (!getAccountingEnabled(dsn)) {
+            return null;
+        }
+        EventCostAccountant costAccountant = new EventCostAccountant(getAccountingTop(dsn), getAccountingRank(dsn),
+            getAccountingLogInterval(dsn));
+        String name = getMetricsName(dsn);
+        try {
+            costAccountant.register(name);
+        } catch (IllegalStateException | NoClassDefFoundError e) {
+            logger.warn("Couldn't register the cost report '{}' as a JMX MBean.", name, e);
+        }
+        return costAccountant;
+    }
+
+    /**
+     * Creates the listeners notified of the stages of the pipeline.
+     * <p>
+     * The listeners are found with the {@link ServiceLoader} system, through the
+     * {@code META-INF/services/com.getsentry.raven.metrics.PipelineListener} files of the classpath.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return the {@link PipelineListener}s to add to the Raven instance.
+     */
+    protected Collection<PipelineListener> createPipelineListeners(Dsn dsn) {
+        Collection<PipelineListener> pipelineListeners = new ArrayList<>();
+        try {
+            for (PipelineListener pipelineListener
+                : ServiceLoader.load(PipelineListener.class, PipelineListener.class.getClassLoader())) {
+                logger.debug("Found the pipeline listener '{}'.", pipelineListener);
+                pipelineListeners.add(pipelineListener);
+            }
+        } catch (ServiceConfigurationError e) {
+            logger.warn("Couldn't load the pipeline listeners.", e);
+        }
+        return pipelineListeners;
+    }
+
+    /**
+     * Creates the calculator of the signatures identifying the occurrences of the same event.
+     *
+     * @param dsn Data Source Name of the Sentry server.
+     * @return an {@link EventSignature} ignoring the frames which aren't in-app.
+     */
+    protected EventSignature createEventSignature(Dsn dsn) {
+        return new EventSignature(getSignatureFrames(dsn), getNotInAppFrames());
+    }
+
     /**
      * Creates a connection to the given DSN by determining the protocol.
      *
@@ -235,17 +558,73 @@ public class DefaultRavenFactory extends RavenFactory {
         int maxThreads = getAsyncThreads(dsn);
         int priority = getAsyncPriority(dsn);
 
-        BlockingDeque<Runnable> queue;
+        BlockingQueue<Runnable> queue;
+        RejectedExecutionHandler rejectedExecutionHandler = getRejectedExecutionHandler(dsn);
+        if (rejectedExecutionHandler instanceof AsyncConnection.SpillPolicy
+            && !(connection instanceof SpillableConnection)) {
+            logger.warn("The '" + ASYNC_QUEUE_SPILL + "' overflow policy needs a disk buffer ('" + BUFFER_DIR_OPTION
+                + "'), the events will be discarded when the queue is full.");
+        }
         int queueSize = getAsyncQueueSize(dsn);
-        if (queueSize == -1) {
+        long queueMaxBytes = getAsyncQueueMaxBytes(dsn);
+        boolean orderByLevel = getAsyncQueuePriorityEnabled(dsn);
+        if (orderByLevel || queueMaxBytes != -1) {
+            // The event queue sheds the oldest events itself, polling the executor queue would drop the most
+            // severe event instead, or not make enough room for a large event
+            boolean discardOld = rejectedExecutionHandler instanceof ThreadPoolExecutor.DiscardOldestPolicy;
+            if (discardOld) {
+                rejectedExecutionHandler = new ThreadPoolExecutor.DiscardPolicy();
+            }
+            queue = new EventPriorityQueue(queueSize == -1 ? Integer.MAX_VALUE : queueSize, queueMaxBytes,
+                orderByLevel ? getAsyncQueueReserved(dsn, queueSize) : 0, discardOld, orderByLevel);
+        } else if (queueSize == -1) {
             queue = new LinkedBlockingDeque<>();
         } else {
             queue = new LinkedBlockingDeque<>(queueSize);
         }
 
-        ExecutorService executorService = new ThreadPoolExecutor(
+        boolean shared = getAsyncSharedEnabled(dsn);
+        ThreadFactory virtualThreadFactory = null;
+        String mode = getAsyncMode(dsn);
+        if (ASYNC_MODE_VIRTUAL.equals(mode) && !shared) {
+            virtualThreadFactory = createVirtualThreadFactory();
+            if (virtualThreadFactory == null) {
+                logger.warn("Virtual threads aren't available on this runtime, the async connection uses platform "
+                    + "threads instead.");
+            }
+        } else if (!ASYNC_MODE_PLATFORM.equals(mode)) {
+            throw new RuntimeException("Async mode not found: '" + mode + "', valid choices are: "
+                + Arrays.toString(new String[] {ASYNC_MODE_PLATFORM, ASYNC_MODE_VIRTUAL}));
+        }
+
+        ExecutorService executorService;
+        if (shared) {
+            if (ASYNC_MODE_VIRTUAL.equals(mode) || getAsyncAdaptiveEnabled(dsn)) {
+                logger.warn("The async connection uses the shared workers ('" + ASYNC_SHARED_OPTION + "'), the '"
+                    + ASYNC_MODE_OPTION + "' and '" + ASYNC_ADAPTIVE_OPTION + "' options are ignored.");
+            }
+            // The number of threads of the connection bounds its share of the workers
+            executorService = SharedDispatcher.newSharedLane(getAsyncSharedThreads(dsn), priority, queue,
+                rejectedExecutionHandler, maxThreads);
+        } else if (virtualThreadFactory != null) {
+            // Each worker is a virtual thread, the number of workers bounds the number of events in flight
+            int maxInFlight = getAsyncMaxInFlight(dsn);
+            long keepAlive = getAsyncKeepAlive(dsn);
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(maxInFlight, maxInFlight,
+                keepAlive, TimeUnit.MILLISECONDS, queue, virtualThreadFactory, rejectedExecutionHandler);
+            if (keepAlive > 0) {
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+            }
+            executorService = threadPoolExecutor;
+        } else if (getAsyncAdaptiveEnabled(dsn)) {
+            int minThreads = Math.min(getAsyncMinThreads(dsn), maxThreads);
+            executorService = new AdaptiveThreadPoolExecutor(minThreads, maxThreads, getAsyncKeepAlive(dsn), queue,
+                new DaemonThreadFactory(priority), rejectedExecutionHandler);
+        } else {
+            executorService = new ThreadPoolExecutor(
                 maxThreads, maxThreads, 0L, TimeUnit.MILLISECONDS, queue,
-                new DaemonThreadFactory(priority), getRejectedExecutionHandler(dsn));
+                new DaemonThreadFactory(priority), rejectedExecutionHandler);
+        }
 
         boolean gracefulShutdown = getAsyncGracefulShutdownEnabled(dsn);
 
@@ -382,6 +761,38 @@ public class DefaultRavenFactory extends RavenFactory {
         return handler;
     }
 
+    /**
+     * Whether the async queue orders the events by level instead of by arrival.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether the async queue orders the events by level instead of by arrival.
+     */
+    protected boolean getAsyncQueuePriorityEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(ASYNC_QUEUE_PRIORITY_OPTION));
+    }
+
+    /**
+     * Maximum estimated size of the events in the async queue, in bytes.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of bytes of events in the async queue, -1 for no limit (the default).
+     */
+    protected long getAsyncQueueMaxBytes(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(ASYNC_QUEUE_MAX_BYTES_OPTION), -1L);
+    }
+
+    /**
+     * Number of slots of the async queue reserved to errors and fatal events.
+     *
+     * @param dsn       Sentry server DSN which may contain options.
+     * @param queueSize size of the async queue, -1 if it is unlimited.
+     * @return Number of slots reserved to errors and fatal events, a fifth of the queue by default.
+     */
+    protected int getAsyncQueueReserved(Dsn dsn, int queueSize) {
+        int defaultReserved = queueSize == -1 ? 0 : queueSize / ASYNC_QUEUE_RESERVED_RATIO_DEFAULT;
+        return Util.parseInteger(dsn.getOptions().get(ASYNC_QUEUE_RESERVED_OPTION), defaultReserved);
+    }
+
     /**
      * Maximum time to wait for {@link BufferedConnection} shutdown when closed, in milliseconds.
      *
@@ -442,6 +853,97 @@ public class DefaultRavenFactory extends RavenFactory {
         return Util.parseInteger(dsn.getOptions().get(ASYNC_QUEUE_SIZE_OPTION), QUEUE_SIZE_DEFAULT);
     }
 
+    /**
+     * Whether the events of the async connection are sent by the workers shared by the Raven instances of the JVM.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether the async connection uses the shared workers.
+     */
+    protected boolean getAsyncSharedEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(ASYNC_SHARED_OPTION));
+    }
+
+    /**
+     * Number of workers shared by the Raven instances of the JVM, only used by the first one.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of workers shared by the Raven instances of the JVM.
+     */
+    protected int getAsyncSharedThreads(Dsn dsn) {
+        return Math.max(1, Util.parseInteger(dsn.getOptions().get(ASYNC_SHARED_THREADS_OPTION),
+            Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Kind of threads sending the events of the async connection.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return {@link #ASYNC_MODE_PLATFORM} or {@link #ASYNC_MODE_VIRTUAL}.
+     */
+    protected String getAsyncMode(Dsn dsn) {
+        String mode = dsn.getOptions().get(ASYNC_MODE_OPTION);
+        return mode != null ? mode.toLowerCase() : ASYNC_MODE_PLATFORM;
+    }
+
+    /**
+     * Maximum number of events sent at the same time by the virtual threads of the async connection.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of events sent at the same time by virtual threads.
+     */
+    protected int getAsyncMaxInFlight(Dsn dsn) {
+        return Math.max(1, Util.parseInteger(dsn.getOptions().get(ASYNC_MAX_IN_FLIGHT_OPTION),
+            ASYNC_MAX_IN_FLIGHT_DEFAULT));
+    }
+
+    /**
+     * Creates a factory of virtual threads, looked up by reflection as they are only available on recent runtimes.
+     *
+     * @return a factory of virtual threads named after Raven, null if the runtime doesn't support them.
+     */
+    protected ThreadFactory createVirtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, "raven-virtual-", 1L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Older runtime, or preview feature not enabled
+            logger.debug("Couldn't create a factory of virtual threads.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Whether the thread pool of the async connection is sized after the load.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether the thread pool of the async connection is sized after the load.
+     */
+    protected boolean getAsyncAdaptiveEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(ASYNC_ADAPTIVE_OPTION));
+    }
+
+    /**
+     * Minimum number of threads of the adaptive thread pool of the async connection.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Minimum number of threads of the adaptive thread pool.
+     */
+    protected int getAsyncMinThreads(Dsn dsn) {
+        return Math.max(1, Util.parseInteger(dsn.getOptions().get(ASYNC_MIN_THREADS_OPTION), 1));
+    }
+
+    /**
+     * Time after which an idle thread of the adaptive thread pool stops, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Time after which an idle thread of the adaptive thread pool stops, in milliseconds.
+     */
+    protected long getAsyncKeepAlive(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(ASYNC_KEEP_ALIVE_OPTION), ASYNC_KEEP_ALIVE_DEFAULT);
+    }
+
     /**
      * Priority of threads used for the async connection.
      *
@@ -503,6 +1005,233 @@ public class DefaultRavenFactory extends RavenFactory {
         return !FALSE.equalsIgnoreCase(dsn.getOptions().get(COMPRESSION_OPTION));
     }
 
+    /**
+     * Whether to measure the time spent in each builder helper.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether to measure the time spent in each builder helper.
+     */
+    protected boolean getBuilderHelperTimingEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(BUILDER_HELPER_TIMING_OPTION));
+    }
+
+    /**
+     * Duration above which a timed builder helper is reported as slow, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Duration above which a timed builder helper is reported as slow, in milliseconds.
+     */
+    protected long getSlowBuilderHelperThreshold(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(BUILDER_HELPER_SLOW_THRESHOLD_OPTION),
+            Raven.SLOW_BUILDER_HELPER_THRESHOLD_DEFAULT);
+    }
+
+    /**
+     * Rate, between 0 and 1, of events sent to Sentry.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Rate, between 0 and 1, of events sent to Sentry.
+     */
+    protected double getSampleRate(Dsn dsn) {
+        String sampleRate = dsn.getOptions().get(SAMPLE_RATE_OPTION);
+        return Util.isNullOrEmpty(sampleRate) ? 1 : Double.parseDouble(sampleRate);
+    }
+
+    /**
+     * Sample rates of the levels overriding the global sample rate.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Sample rates of the levels overriding the global sample rate.
+     */
+    protected Map<Event.Level, Double> getLevelSampleRates(Dsn dsn) {
+        Map<Event.Level, Double> levelSampleRates = new EnumMap<>(Event.Level.class);
+        for (Map.Entry<String, Double> entry
+            : Util.parseSampleRates(dsn.getOptions().get(SAMPLE_LEVELS_OPTION)).entrySet()) {
+            levelSampleRates.put(Event.Level.valueOf(entry.getKey().toUpperCase()), entry.getValue());
+        }
+        return levelSampleRates;
+    }
+
+    /**
+     * Sample rates by logger name prefix.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Sample rates by logger name prefix.
+     */
+    protected Map<String, Double> getLoggerSampleRates(Dsn dsn) {
+        return Util.parseSampleRates(dsn.getOptions().get(SAMPLE_LOGGERS_OPTION));
+    }
+
+    /**
+     * Window during which the duplicates of an event are suppressed, in milliseconds.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Window during which the duplicates of an event are suppressed, 0 to send every duplicate.
+     */
+    protected long getDedupWindow(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(DEDUP_WINDOW_OPTION), 0L);
+    }
+
+    /**
+     * Maximum number of event signatures tracked to suppress duplicates.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of event signatures tracked to suppress duplicates.
+     */
+    protected int getDedupSize(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(DEDUP_SIZE_OPTION), EventDeduplicator.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Number of in-app frames identifying an event.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of in-app frames identifying an event.
+     */
+    protected int getSignatureFrames(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(SIGNATURE_FRAMES_OPTION), EventSignature.DEFAULT_FRAMES);
+    }
+
+    /**
+     * Rate of the events of each signature allowed, in events per second.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Rate of the events of each signature allowed, 0 to not throttle them.
+     */
+    protected double getThrottleRate(Dsn dsn) {
+        String rate = dsn.getOptions().get(THROTTLE_RATE_OPTION);
+        return Util.isNullOrEmpty(rate) ? 0 : Double.parseDouble(rate);
+    }
+
+    /**
+     * Number of events of each signature which can be sent in a burst.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of events of each signature which can be sent in a burst.
+     */
+    protected int getThrottleBurst(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(THROTTLE_BURST_OPTION), EventThrottler.DEFAULT_BURST);
+    }
+
+    /**
+     * Maximum number of event signatures tracked to throttle them.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Maximum number of event signatures tracked to throttle them.
+     */
+    protected int getThrottleSize(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(THROTTLE_SIZE_OPTION), EventThrottler.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Ratio of the heap used after a garbage collection at which the events are degraded.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Ratio of the heap at which the events are degraded, 0 to never degrade them.
+     */
+    protected double getHeapThreshold(Dsn dsn) {
+        String threshold = dsn.getOptions().get(HEAP_THRESHOLD_OPTION);
+        return Util.isNullOrEmpty(threshold) ? 0 : Double.parseDouble(threshold);
+    }
+
+    /**
+     * Ratio of the heap used after a garbage collection under which the events aren't degraded anymore.
+     *
+     * @param dsn       Sentry server DSN which may contain options.
+     * @param threshold ratio of the heap at which the events are degraded.
+     * @return Ratio of the heap under which the events aren't degraded anymore, by default 0.1 under the threshold.
+     */
+    protected double getHeapRecovery(Dsn dsn, double threshold) {
+        String recovery = dsn.getOptions().get(HEAP_RECOVERY_OPTION);
+        return Util.isNullOrEmpty(recovery) ? Math.max(0, threshold - HeapPressureGovernor.DEFAULT_HYSTERESIS)
+            : Double.parseDouble(recovery);
+    }
+
+    /**
+     * Level under which the events are dropped while the heap is under pressure.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Level under which the events are dropped while the heap is under pressure, error by default.
+     */
+    protected Event.Level getHeapLevel(Dsn dsn) {
+        String level = dsn.getOptions().get(HEAP_LEVEL_OPTION);
+        return Util.isNullOrEmpty(level) ? HeapPressureGovernor.DEFAULT_MIN_LEVEL
+            : Event.Level.valueOf(level.toUpperCase());
+    }
+
+    /**
+     * Number of frames kept in the stack traces while the heap is under pressure.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of frames kept in the stack traces while the heap is under pressure.
+     */
+    protected int getHeapFrames(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(HEAP_FRAMES_OPTION), HeapPressureGovernor.DEFAULT_MAX_FRAMES);
+    }
+
+    /**
+     * Whether to record the metrics of the pipeline and expose them through JMX.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether to record the metrics of the pipeline, disabled by default.
+     */
+    protected boolean getMetricsEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(METRICS_OPTION));
+    }
+
+    /**
+     * Name of the JMX MBeans of the metrics, identifying this Raven instance among the others of the JVM.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Name of the JMX MBeans of the metrics, the project id by default.
+     */
+    protected String getMetricsName(Dsn dsn) {
+        String name = dsn.getOptions().get(METRICS_NAME_OPTION);
+        return Util.isNullOrEmpty(name) ? dsn.getProjectId() : name;
+    }
+
+    /**
+     * Whether to attribute the costs of the events to their logger and culprit.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Whether to attribute the costs of the events, disabled by default.
+     */
+    protected boolean getAccountingEnabled(Dsn dsn) {
+        return TRUE.equalsIgnoreCase(dsn.getOptions().get(ACCOUNTING_OPTION));
+    }
+
+    /**
+     * Number of loggers and culprits kept in the cost report.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Number of loggers and culprits kept in the cost report.
+     */
+    protected int getAccountingTop(Dsn dsn) {
+        return Util.parseInteger(dsn.getOptions().get(ACCOUNTING_TOP_OPTION), EventCostAccountant.DEFAULT_TOP);
+    }
+
+    /**
+     * Cost ranking the loggers and culprits in the cost report.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Cost ranking the loggers and culprits, the payload bytes by default.
+     */
+    protected EventCostAccountant.Cost getAccountingRank(Dsn dsn) {
+        String rank = dsn.getOptions().get(ACCOUNTING_RANK_OPTION);
+        return Util.isNullOrEmpty(rank) ? EventCostAccountant.DEFAULT_RANK
+            : EventCostAccountant.Cost.valueOf(rank.toUpperCase());
+    }
+
+    /**
+     * Interval between two cost reports in the logs.
+     *
+     * @param dsn Sentry server DSN which may contain options.
+     * @return Interval between two cost reports in milliseconds, 0 to never log them.
+     */
+    protected long getAccountingLogInterval(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(ACCOUNTING_LOG_INTERVAL_OPTION), 0L);
+    }
+
     /**
      * Whether to hide common stackframes with enclosing exceptions.
      *
@@ -543,7 +1272,7 @@ public class DefaultRavenFactory extends RavenFactory {
     protected Buffer getBuffer(Dsn dsn) {
         String bufferDir = dsn.getOptions().get(BUFFER_DIR_OPTION);
         if (bufferDir != null) {
-            return new DiskBuffer(new File(bufferDir), getBufferSize(dsn));
+            return new DiskBuffer(new File(bufferDir), getBufferSize(dsn), getBufferMaxBytes(dsn));
         }
         return null;
     }
@@ -558,6 +1287,16 @@ public class DefaultRavenFactory extends RavenFactory {
         return Util.parseInteger(dsn.getOptions().get(BUFFER_SIZE_OPTION), BUFFER_SIZE_DEFAULT);
     }
 
+    /**
+     * Get the maximum number of bytes of events to cache offline when network is down.
+     *
+     * @param dsn Dsn passed in by the user.
+     * @return the maximum number of bytes of events to cache offline, -1 for no limit (the default).
+     */
+    protected long getBufferMaxBytes(Dsn dsn) {
+        return Util.parseLong(dsn.getOptions().get(BUFFER_MAX_BYTES_OPTION), -1L);
+    }
+
     /**
      * Thread factory generating daemon threads with a custom priority.
      * <p>
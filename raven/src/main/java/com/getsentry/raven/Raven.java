@@ -1,18 +1,38 @@
 package com.getsentry.raven;
 
+import com.getsentry.raven.connection.AdmissionControlled;
+import com.getsentry.raven.connection.AsyncConnection;
 import com.getsentry.raven.connection.Connection;
+import com.getsentry.raven.connection.FlushableConnection;
+import com.getsentry.raven.connection.SendFuture;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.EventBuilderSupplier;
+import com.getsentry.raven.event.EventDeduplicator;
+import com.getsentry.raven.event.EventSampler;
+import com.getsentry.raven.event.EventSignature;
+import com.getsentry.raven.event.EventThrottler;
+import com.getsentry.raven.event.HeapPressureGovernor;
 import com.getsentry.raven.event.helper.EventBuilderHelper;
+import com.getsentry.raven.event.helper.EventBuilderHelperStats;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.metrics.EventCostAccountant;
+import com.getsentry.raven.metrics.Instrumented;
+import com.getsentry.raven.metrics.PipelineListener;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Raven is a client for Sentry allowing to send an {@link Event} that will be processed and sent to a Sentry server.
@@ -22,7 +42,20 @@ import java.util.concurrent.ConcurrentHashMap;
  * create a sensible instance of Raven.
  */
 public class Raven {
+    /**
+     * Priority given to the {@link EventBuilderHelper}s added without an explicit priority.
+     */
+    public static final int DEFAULT_BUILDER_HELPER_PRIORITY = 0;
+    /**
+     * Default duration, in milliseconds, above which a builder helper is considered slow.
+     */
+    public static final long SLOW_BUILDER_HELPER_THRESHOLD_DEFAULT = 10;
     private static final Logger logger = LoggerFactory.getLogger(Raven.class);
+    /**
+     * Minimum delay between two warnings about the same slow builder helper.
+     */
+    private static final long SLOW_BUILDER_HELPER_WARNING_INTERVAL = TimeUnit.MINUTES.toNanos(1);
+    private static final RegisteredBuilderHelper[] NO_BUILDER_HELPERS = new RegisteredBuilderHelper[0];
     /**
      * The most recently constructed Raven instance, used by static helper methods like {@link Raven#capture(Event)}.
      */
@@ -32,19 +65,56 @@ public class Raven {
      */
     private volatile Connection connection;
     /**
-     * Set of {@link EventBuilderHelper}s. Note that we wrap a {@link ConcurrentHashMap} because there
-     * isn't a concurrent set in the standard library.
+     * {@link EventBuilderHelper}s in the order in which they run.
+     * <p>
+     * The array is never modified once published, adding or removing a helper replaces it with a copy (under
+     * {@link #builderHelpersLock}), so that {@link #runBuilderHelpers(EventBuilder)} can go through it without
+     * locking nor allocating an iterator.
+     */
+    private volatile RegisteredBuilderHelper[] builderHelpers = NO_BUILDER_HELPERS;
+    private final Object builderHelpersLock = new Object();
+    /**
+     * Whether the time spent in each {@link EventBuilderHelper} is measured.
      */
-    private final Set<EventBuilderHelper> builderHelpers =
-        Collections.newSetFromMap(new ConcurrentHashMap<EventBuilderHelper, Boolean>());
-    private final ThreadLocal<RavenContext> context = new ThreadLocal<RavenContext>() {
+    private volatile boolean builderHelperTimingEnabled = false;
+    /**
+     * Duration, in nanoseconds, above which a timed builder helper is reported as slow.
+     */
+    private volatile long slowBuilderHelperThresholdNanos =
+        TimeUnit.MILLISECONDS.toNanos(SLOW_BUILDER_HELPER_THRESHOLD_DEFAULT);
+    /**
+     * Sampler deciding which events are built and sent.
+     */
+    private volatile EventSampler sampler = EventSampler.SAMPLE_ALL;
+    /**
+     * Deduplicator suppressing the repeated events, null if the duplicates are sent.
+     */
+    private volatile EventDeduplicator deduplicator;
+    /**
+     * Throttler limiting the rate of the events of each signature, null if the events aren't throttled.
+     */
+    private volatile EventThrottler throttler;
+    /**
+     * Governor degrading the events while the heap is under pressure, null if the events are never degraded.
+     */
+    private volatile HeapPressureGovernor heapPressureGovernor;
+    /**
+     * Metrics of the pipeline, only dispatching the stages to the pipeline listeners if the metrics aren't recorded.
+     */
+    private volatile RavenMetrics metrics = new RavenMetrics(false);
+    /**
+     * Sends the summaries of the duplicates suppressed by the {@link #deduplicator}.
+     */
+    private final EventDeduplicator.SummaryCallback summaryCallback = new EventDeduplicator.SummaryCallback() {
         @Override
-        protected RavenContext initialValue() {
-            RavenContext ctx = new RavenContext();
-            ctx.activate();
-            return ctx;
+        public void sendSummary(DeferredEvent summary) {
+            dispatch(summary, null);
         }
     };
+    /**
+     * Context of each thread, created and activated by {@link #getContext()} the first time it is used.
+     */
+    private final ThreadLocal<RavenContext> context = new ThreadLocal<>();
 
     /**
      * Constructs a Raven instance.
@@ -76,39 +146,383 @@ public class Raven {
     /**
      * Runs the {@link EventBuilderHelper} against the {@link EventBuilder} to obtain additional information with a
      * MDC-like system.
+     * <p>
+     * Helpers run by ascending priority, helpers with the same priority run in the order they were added.
      *
      * @param eventBuilder event builder containing a not yet finished event.
      */
     public void runBuilderHelpers(EventBuilder eventBuilder) {
-        for (EventBuilderHelper builderHelper : builderHelpers) {
-            builderHelper.helpBuildingEvent(eventBuilder);
+        RegisteredBuilderHelper[] helpers = builderHelpers;
+        if (!builderHelperTimingEnabled) {
+            for (int i = 0; i < helpers.length; i++) {
+                helpers[i].helper.helpBuildingEvent(eventBuilder);
+            }
+            return;
+        }
+
+        long threshold = slowBuilderHelperThresholdNanos;
+        for (int i = 0; i < helpers.length; i++) {
+            RegisteredBuilderHelper registeredHelper = helpers[i];
+            long start = System.nanoTime();
+            try {
+                registeredHelper.helper.helpBuildingEvent(eventBuilder);
+            } finally {
+                registeredHelper.record(System.nanoTime() - start, threshold);
+            }
+        }
+    }
+
+    /**
+     * Decides whether an event with the given level and logger should be built and sent, according to the
+     * {@link EventSampler} of this instance.
+     * <p>
+     * The decision is random for sampled events, it must be made once per event, before building it. While the heap
+     * is under pressure, the events dropped by the {@link HeapPressureGovernor} aren't sampled either.
+     *
+     * @param level  level of the event, may be null.
+     * @param logger logger of the event, may be null.
+     * @return true if the event should be built and sent.
+     */
+    public boolean isSampled(Event.Level level, String logger) {
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null && governor.isDegraded(level)) {
+            governor.recordDropped();
+            return false;
+        }
+        return sampler.isSampled(level, logger);
+    }
+
+    /**
+     * Returns whether an event with the given level and logger would currently be accepted, to skip the work of
+     * gathering its content otherwise.
+     * <p>
+     * The event isn't accepted if it is always excluded by the sampling, if it is dropped because the heap is under
+     * pressure, or if the connection doesn't accept it, for example during a lockdown or when the async queue is
+     * full. Unlike {@link #isSampled(Event.Level, String)}, this doesn't make the random sampling decision, and the
+     * throttling, which depends on the content of the event, isn't taken into account.
+     *
+     * @param level  level of the event, may be null.
+     * @param logger logger of the event, may be null.
+     * @return true if the event is expected to be sent, false if it would certainly be dropped.
+     */
+    public boolean isAccepted(Event.Level level, String logger) {
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null && governor.isDegraded(level)) {
+            return false;
+        }
+        if (sampler.getSampleRate(level, logger) <= 0) {
+            return false;
         }
+        Connection currentConnection = connection;
+        return !(currentConnection instanceof AdmissionControlled)
+            || ((AdmissionControlled) currentConnection).isAccepting(level);
+    }
+
+    /**
+     * Decides whether an event with the given message template and exception exceeds the rate allowed for its
+     * signature by the {@link EventThrottler} of this instance, if any.
+     * <p>
+     * A token is consumed for each call, it must be made once per event, after the sampling and before building it.
+     *
+     * @param messageTemplate message of the event before its parameters are formatted, may be null.
+     * @param throwable       exception of the event, may be null.
+     * @return true if the event must be dropped.
+     */
+    public boolean isThrottled(String messageTemplate, Throwable throwable) {
+        EventThrottler currentThrottler = throttler;
+        return currentThrottler != null && !currentThrottler.tryAcquire(messageTemplate, throwable);
     }
 
     /**
      * Sends a built {@link Event} to the Sentry server.
+     * <p>
+     * The event is sent even if it would have been excluded by the sampling, built events are expected to have been
+     * sampled with {@link #isSampled(Event.Level, String)} before being built.
+     * <p>
+     * When duplicates are suppressed, the event isn't sent if the same event has already been sent recently. While
+     * the heap is under pressure, the event is dropped or sent without its largest details.
      *
      * @param event event to send to Sentry.
      */
     public void sendEvent(Event event) {
+        long start = System.nanoTime();
         try {
-            connection.send(event);
+            sendBuiltEvent(event, null);
+        } finally {
+            metrics.recordCapture(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends a built {@link Event} to the Sentry server like {@link #sendEvent(Event)}, returning the completion of
+     * the sending.
+     *
+     * @param event event to send to Sentry.
+     * @return a future completed once the event is sent, dropped or failed.
+     */
+    public SendFuture submitEvent(Event event) {
+        SendFuture future = new SendFuture();
+        long start = System.nanoTime();
+        try {
+            sendBuiltEvent(event, future);
+        } finally {
+            metrics.recordCapture(System.nanoTime() - start);
+        }
+        return future;
+    }
+
+    private void sendBuiltEvent(Event event, SendFuture future) {
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null) {
+            if (governor.isDegraded(event.getLevel())) {
+                governor.recordDropped();
+                markDropped(future);
+                return;
+            }
+            event = governor.degrade(event);
+        }
+        if (isDuplicate(event)) {
+            markDropped(future);
+            return;
+        }
+        try {
+            Connection currentConnection = connection;
+            if (future != null && currentConnection instanceof AsyncConnection) {
+                ((AsyncConnection) currentConnection).send(event, future);
+            } else {
+                currentConnection.send(event);
+                markSent(future);
+            }
         } catch (Exception e) {
             logger.error("An exception occurred while sending the event to Sentry.", e);
+            markFailed(future, e);
         } finally {
-            context.get().setLastEventId(event.getId());
+            getContext().setLastEventId(event.getId());
         }
     }
 
     /**
      * Builds and sends an {@link Event} to the Sentry server.
+     * <p>
+     * The event is sampled according to the level and logger already set, before running the builder helpers.
      *
      * @param eventBuilder {@link EventBuilder} to send to Sentry.
      */
     public void sendEvent(EventBuilder eventBuilder) {
+        if (!isSampled(eventBuilder.getLevel(), eventBuilder.getLogger())) {
+            return;
+        }
+        sendSampledEvent(eventBuilder);
+    }
+
+    /**
+     * Builds and sends an {@link Event} to the Sentry server, creating its builder only if the event is accepted.
+     * <p>
+     * The supplier isn't called if the event {@link #isAccepted(Event.Level, String) isn't accepted} or isn't
+     * sampled, the level and the logger are set on the builder it returns unless they already are.
+     *
+     * @param level    level of the event, may be null.
+     * @param logger   logger of the event, may be null.
+     * @param supplier supplier of the builder of the event.
+     * @return true if the supplier was called and returned a builder.
+     */
+    public boolean sendEvent(Event.Level level, String logger, EventBuilderSupplier supplier) {
+        if (!isAccepted(level, logger) || !sampler.isSampled(level, logger)) {
+            return false;
+        }
+        EventBuilder eventBuilder = supplier.get();
+        if (eventBuilder == null) {
+            return false;
+        }
+        if (eventBuilder.getLevel() == null) {
+            eventBuilder.withLevel(level);
+        }
+        if (eventBuilder.getLogger() == null) {
+            eventBuilder.withLogger(logger);
+        }
+        sendSampledEvent(eventBuilder);
+        return true;
+    }
+
+    /**
+     * Builds and sends an {@link Event} to the Sentry server like {@link #sendEvent(EventBuilder)}, returning the
+     * completion of the sending.
+     *
+     * @param eventBuilder {@link EventBuilder} to send to Sentry.
+     * @return a future completed once the event is sent, dropped or failed, already dropped if the event isn't
+     * sampled.
+     */
+    public SendFuture submitEvent(EventBuilder eventBuilder) {
+        if (!isSampled(eventBuilder.getLevel(), eventBuilder.getLogger())) {
+            return SendFuture.dropped();
+        }
+        return submitEvent(buildSampledEvent(eventBuilder));
+    }
+
+    private void sendSampledEvent(EventBuilder eventBuilder) {
+        sendEvent(buildSampledEvent(eventBuilder));
+    }
+
+    private Event buildSampledEvent(EventBuilder eventBuilder) {
         runBuilderHelpers(eventBuilder);
+        long start = System.nanoTime();
         Event event = eventBuilder.build();
-        sendEvent(event);
+        metrics.recordBuilt(event, System.nanoTime() - start);
+        return event;
+    }
+
+    /**
+     * Sends an {@link Event} to the Sentry server, letting the connection finish building it.
+     * <p>
+     * The builder helpers run right away on the current thread, the rest of the event is completed and built by the
+     * sending thread when the connection is an {@link AsyncConnection}, or right away otherwise. The values set by
+     * the builder helpers aren't replaced when the event is completed.
+     * <p>
+     * When duplicates are suppressed, the recent duplicates are dropped before running the builder helpers.
+     *
+     * @param deferredEvent event to complete, build and send to Sentry.
+     */
+    public void sendEvent(DeferredEvent deferredEvent) {
+        long start = System.nanoTime();
+        try {
+            sendDeferredEvent(deferredEvent, null);
+        } finally {
+            metrics.recordCapture(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Sends an {@link Event} to the Sentry server like {@link #sendEvent(DeferredEvent)}, returning the completion of
+     * the sending.
+     *
+     * @param deferredEvent event to complete, build and send to Sentry.
+     * @return a future completed once the event is sent, dropped or failed. A duplicate summarized later is dropped.
+     */
+    public SendFuture submitEvent(DeferredEvent deferredEvent) {
+        SendFuture future = new SendFuture();
+        long start = System.nanoTime();
+        try {
+            sendDeferredEvent(deferredEvent, future);
+        } finally {
+            metrics.recordCapture(System.nanoTime() - start);
+        }
+        return future;
+    }
+
+    private void sendDeferredEvent(DeferredEvent deferredEvent, SendFuture future) {
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null) {
+            if (governor.isDegraded(deferredEvent.getEventBuilder().getLevel())) {
+                governor.recordDropped();
+                markDropped(future);
+                return;
+            }
+            governor.degrade(deferredEvent.getEventBuilder());
+            deferredEvent.setHeapPressureGovernor(governor);
+        }
+        EventDeduplicator currentDeduplicator = deduplicator;
+        long signature = EventSignature.NO_SIGNATURE;
+        EventDeduplicator.Decision decision = EventDeduplicator.Decision.SEND;
+        if (currentDeduplicator != null) {
+            signature = currentDeduplicator.getSignature(deferredEvent);
+            decision = currentDeduplicator.offer(signature);
+            if (decision == EventDeduplicator.Decision.DROP) {
+                markDropped(future);
+                return;
+            }
+        }
+        runBuilderHelpers(deferredEvent.getEventBuilder());
+        if (decision == EventDeduplicator.Decision.SUMMARIZE) {
+            currentDeduplicator.summarize(signature, deferredEvent);
+            markDropped(future);
+            return;
+        }
+        try {
+            dispatch(deferredEvent, future);
+        } finally {
+            getContext().setLastEventId(deferredEvent.getId());
+        }
+    }
+
+    /**
+     * Sends a deferred event whose builder helpers have already run.
+     *
+     * @param deferredEvent event to complete, build and send to Sentry.
+     * @param future        future to complete once the event is sent, may be null.
+     */
+    private void dispatch(DeferredEvent deferredEvent, SendFuture future) {
+        try {
+            Connection currentConnection = connection;
+            if (currentConnection instanceof AsyncConnection) {
+                ((AsyncConnection) currentConnection).send(deferredEvent, future);
+            } else {
+                long start = System.nanoTime();
+                Event event = deferredEvent.build();
+                metrics.recordBuilt(event, System.nanoTime() - start);
+                currentConnection.send(event);
+                markSent(future);
+            }
+        } catch (Exception e) {
+            logger.error("An exception occurred while sending the event to Sentry.", e);
+            markFailed(future, e);
+        }
+    }
+
+    private static void markSent(SendFuture future) {
+        if (future != null) {
+            future.markSent();
+        }
+    }
+
+    private static void markDropped(SendFuture future) {
+        if (future != null) {
+            future.markDropped();
+        }
+    }
+
+    private static void markFailed(SendFuture future, Exception e) {
+        if (future != null) {
+            future.markFailed(e);
+        }
+    }
+
+    /**
+     * Waits for the events queued or being sent by the connection to be sent, without closing it.
+     * <p>
+     * Short-lived processes can flush Raven before exiting instead of closing it or sleeping. The events sent while
+     * flushing aren't waited for.
+     *
+     * @param timeout maximum time to wait, in milliseconds.
+     * @return true if the events were sent or dropped in time, false if the timeout expired or the current thread was
+     * interrupted, in which case its interrupted status is set.
+     */
+    public boolean flush(long timeout) {
+        Connection currentConnection = connection;
+        return !(currentConnection instanceof FlushableConnection)
+            || ((FlushableConnection) currentConnection).flush(timeout);
+    }
+
+    /**
+     * Records an occurrence of a built event with the {@link #deduplicator}, if any.
+     *
+     * @param event event about to be sent.
+     * @return true if the event is a duplicate which must not be sent right away.
+     */
+    private boolean isDuplicate(Event event) {
+        EventDeduplicator currentDeduplicator = deduplicator;
+        if (currentDeduplicator == null) {
+            return false;
+        }
+        long signature = currentDeduplicator.getSignature(event);
+        switch (currentDeduplicator.offer(signature)) {
+            case SEND:
+                return false;
+            case SUMMARIZE:
+                currentDeduplicator.summarize(signature, EventDeduplicator.summaryOf(event));
+                return true;
+            default:
+                return true;
+        }
     }
 
     /**
@@ -119,6 +533,9 @@ public class Raven {
      * @param message message to send to Sentry.
      */
     public void sendMessage(String message) {
+        if (!isSampled(Event.Level.INFO, null) || isThrottled(message, null)) {
+            return;
+        }
         EventBuilder eventBuilder = new EventBuilder().withMessage(message)
             .withLevel(Event.Level.INFO);
         runBuilderHelpers(eventBuilder);
@@ -134,6 +551,9 @@ public class Raven {
      * @param throwable exception to send to Sentry.
      */
     public void sendException(Throwable throwable) {
+        if (!isSampled(Event.Level.ERROR, null) || isThrottled(null, throwable)) {
+            return;
+        }
         EventBuilder eventBuilder = new EventBuilder().withMessage(throwable.getMessage())
             .withLevel(Event.Level.ERROR)
             .withSentryInterface(new ExceptionInterface(throwable));
@@ -149,27 +569,135 @@ public class Raven {
      */
     public void removeBuilderHelper(EventBuilderHelper builderHelper) {
         logger.debug("Removing '{}' from the list of builder helpers.", builderHelper);
-        builderHelpers.remove(builderHelper);
+        synchronized (builderHelpersLock) {
+            RegisteredBuilderHelper[] helpers = builderHelpers;
+            int index = indexOf(helpers, builderHelper);
+            if (index < 0) {
+                return;
+            }
+            RegisteredBuilderHelper[] newHelpers = new RegisteredBuilderHelper[helpers.length - 1];
+            System.arraycopy(helpers, 0, newHelpers, 0, index);
+            System.arraycopy(helpers, index + 1, newHelpers, index, newHelpers.length - index);
+            builderHelpers = newHelpers;
+        }
     }
 
     /**
-     * Adds a builder helper.
+     * Adds a builder helper with the {@link #DEFAULT_BUILDER_HELPER_PRIORITY default priority}.
      *
      * @param builderHelper builder helper to add.
      */
     public void addBuilderHelper(EventBuilderHelper builderHelper) {
-        logger.debug("Adding '{}' to the list of builder helpers.", builderHelper);
-        builderHelpers.add(builderHelper);
+        addBuilderHelper(builderHelper, DEFAULT_BUILDER_HELPER_PRIORITY);
     }
 
+    /**
+     * Adds a builder helper running with the given priority.
+     * <p>
+     * Helpers with a lower priority run first, helpers with the same priority run in the order they were added.
+     * Adding a helper which is already registered has no effect.
+     *
+     * @param builderHelper builder helper to add.
+     * @param priority      priority of the builder helper.
+     */
+    public void addBuilderHelper(EventBuilderHelper builderHelper, int priority) {
+        logger.debug("Adding '{}' to the list of builder helpers with the priority {}.", builderHelper, priority);
+        synchronized (builderHelpersLock) {
+            RegisteredBuilderHelper[] helpers = builderHelpers;
+            if (indexOf(helpers, builderHelper) >= 0) {
+                return;
+            }
+            int index = 0;
+            while (index < helpers.length && helpers[index].priority <= priority) {
+                index++;
+            }
+            RegisteredBuilderHelper[] newHelpers = new RegisteredBuilderHelper[helpers.length + 1];
+            System.arraycopy(helpers, 0, newHelpers, 0, index);
+            newHelpers[index] = new RegisteredBuilderHelper(builderHelper, priority);
+            System.arraycopy(helpers, index, newHelpers, index + 1, helpers.length - index);
+            builderHelpers = newHelpers;
+        }
+    }
+
+    private static int indexOf(RegisteredBuilderHelper[] helpers, EventBuilderHelper builderHelper) {
+        for (int i = 0; i < helpers.length; i++) {
+            if (helpers[i].helper.equals(builderHelper)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the builder helpers, in the order in which they run.
+     *
+     * @return an unmodifiable snapshot of the builder helpers.
+     */
     public Set<EventBuilderHelper> getBuilderHelpers() {
-        return Collections.unmodifiableSet(builderHelpers);
+        RegisteredBuilderHelper[] helpers = builderHelpers;
+        Set<EventBuilderHelper> helperSet = new LinkedHashSet<>(helpers.length);
+        for (RegisteredBuilderHelper helper : helpers) {
+            helperSet.add(helper.helper);
+        }
+        return Collections.unmodifiableSet(helperSet);
+    }
+
+    /**
+     * Returns the time spent in each builder helper, in the order in which they run.
+     * <p>
+     * The time is only measured once the builder helper timing has been enabled with
+     * {@link #setBuilderHelperTimingEnabled(boolean)}.
+     *
+     * @return a snapshot of the statistics of each builder helper.
+     */
+    public List<EventBuilderHelperStats> getBuilderHelperStats() {
+        RegisteredBuilderHelper[] helpers = builderHelpers;
+        List<EventBuilderHelperStats> stats = new ArrayList<>(helpers.length);
+        for (RegisteredBuilderHelper helper : helpers) {
+            stats.add(helper.snapshot());
+        }
+        return stats;
+    }
+
+    /**
+     * Enables or disables the measure of the time spent in each builder helper.
+     *
+     * @param builderHelperTimingEnabled whether builder helpers should be timed.
+     */
+    public void setBuilderHelperTimingEnabled(boolean builderHelperTimingEnabled) {
+        this.builderHelperTimingEnabled = builderHelperTimingEnabled;
+    }
+
+    /**
+     * Sets the duration above which a timed builder helper is reported as slow with a warning.
+     * <p>
+     * Warnings about the same helper are logged at most once per minute.
+     *
+     * @param slowBuilderHelperThreshold threshold in milliseconds, 0 or less to never report slow helpers.
+     */
+    public void setSlowBuilderHelperThreshold(long slowBuilderHelperThreshold) {
+        this.slowBuilderHelperThresholdNanos = slowBuilderHelperThreshold > 0
+            ? TimeUnit.MILLISECONDS.toNanos(slowBuilderHelperThreshold) : Long.MAX_VALUE;
     }
 
     /**
      * Closes the connection for the Raven instance.
      */
     public void closeConnection() {
+        EventDeduplicator currentDeduplicator = deduplicator;
+        if (currentDeduplicator != null) {
+            currentDeduplicator.close();
+        }
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null) {
+            governor.close();
+        }
+        RavenMetrics currentMetrics = metrics;
+        currentMetrics.unregister();
+        EventCostAccountant costAccountant = currentMetrics.getCostAccountant();
+        if (costAccountant != null) {
+            costAccountant.close();
+        }
         try {
             connection.close();
         } catch (IOException e) {
@@ -179,12 +707,176 @@ public class Raven {
 
     public void setConnection(Connection connection) {
         this.connection = connection;
+        if (connection instanceof Instrumented) {
+            ((Instrumented) connection).setMetrics(metrics);
+        }
+    }
+
+    public EventSampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Sets the sampler deciding which events are built and sent.
+     *
+     * @param sampler sampler to use, {@link EventSampler#SAMPLE_ALL} to send every event.
+     */
+    public void setSampler(EventSampler sampler) {
+        this.sampler = sampler;
+    }
+
+    public EventDeduplicator getDeduplicator() {
+        return deduplicator;
+    }
+
+    /**
+     * Sets the deduplicator suppressing the repeated events, the previous one is closed.
+     *
+     * @param deduplicator deduplicator to use, null to send every duplicate.
+     */
+    public void setDeduplicator(EventDeduplicator deduplicator) {
+        EventDeduplicator previous = this.deduplicator;
+        if (deduplicator != null) {
+            deduplicator.setSummaryCallback(summaryCallback);
+        }
+        this.deduplicator = deduplicator;
+        if (previous != null && previous != deduplicator) {
+            previous.close();
+        }
+    }
+
+    public EventThrottler getThrottler() {
+        return throttler;
+    }
+
+    /**
+     * Sets the throttler limiting the rate of the events of each signature.
+     *
+     * @param throttler throttler to use, null to send every event.
+     */
+    public void setThrottler(EventThrottler throttler) {
+        this.throttler = throttler;
+    }
+
+    public HeapPressureGovernor getHeapPressureGovernor() {
+        return heapPressureGovernor;
+    }
+
+    /**
+     * Sets the governor degrading the events while the heap is under pressure, the previous one is closed.
+     *
+     * @param heapPressureGovernor governor to use, null to never degrade the events.
+     */
+    public void setHeapPressureGovernor(HeapPressureGovernor heapPressureGovernor) {
+        HeapPressureGovernor previous = this.heapPressureGovernor;
+        this.heapPressureGovernor = heapPressureGovernor;
+        if (previous != null && previous != heapPressureGovernor) {
+            previous.close();
+        }
+    }
+
+    public RavenMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics of the pipeline, passed on to the connection if it is instrumented.
+     * <p>
+     * The pipeline listeners and the cost accountant of the previous metrics are moved to the new ones.
+     *
+     * @param metrics metrics to update, null or {@link RavenMetrics#DISABLED} to not record anything.
+     */
+    public synchronized void setMetrics(RavenMetrics metrics) {
+        if (metrics == null || metrics == RavenMetrics.DISABLED) {
+            metrics = new RavenMetrics(false);
+        }
+        RavenMetrics previous = this.metrics;
+        if (previous != metrics) {
+            for (PipelineListener listener : previous.getPipelineListeners()) {
+                metrics.addPipelineListener(listener);
+            }
+            if (metrics.getCostAccountant() == null) {
+                metrics.setCostAccountant(previous.getCostAccountant());
+            }
+        }
+        this.metrics = metrics;
+        Connection currentConnection = connection;
+        if (currentConnection instanceof Instrumented) {
+            ((Instrumented) currentConnection).setMetrics(this.metrics);
+        }
+    }
+
+    /**
+     * Adds a listener notified as the events go through the stages of the pipeline.
+     *
+     * @param listener listener to add.
+     */
+    public synchronized void addPipelineListener(PipelineListener listener) {
+        metrics.addPipelineListener(listener);
+    }
+
+    /**
+     * Removes a listener of the stages of the pipeline.
+     *
+     * @param listener listener to remove.
+     */
+    public synchronized void removePipelineListener(PipelineListener listener) {
+        metrics.removePipelineListener(listener);
+    }
+
+    public EventCostAccountant getCostAccountant() {
+        return metrics.getCostAccountant();
+    }
+
+    /**
+     * Sets the accountant attributing the costs of the events to their logger and culprit, the previous one is
+     * closed.
+     *
+     * @param costAccountant accountant to use, null to not attribute the costs.
+     */
+    public synchronized void setCostAccountant(EventCostAccountant costAccountant) {
+        EventCostAccountant previous = metrics.getCostAccountant();
+        metrics.setCostAccountant(costAccountant);
+        if (previous != null && previous != costAccountant) {
+            previous.close();
+        }
     }
 
     public RavenContext getContext() {
+        RavenContext ctx = context.get();
+        if (ctx == null) {
+            ctx = new RavenContext();
+            ctx.activate();
+            context.set(ctx);
+        }
+        return ctx;
+    }
+
+    /**
+     * Returns the context of the current thread without creating it.
+     *
+     * @return the context of the current thread, null if it hasn't been used yet.
+     */
+    RavenContext peekContext() {
         return context.get();
     }
 
+    /**
+     * Replaces the context of the current thread, used to propagate contexts to other threads.
+     *
+     * @param ravenContext context to use on the current thread, null to leave the thread without context.
+     * @return the context previously used by the current thread, null if it had none.
+     */
+    RavenContext swapContext(RavenContext ravenContext) {
+        RavenContext previous = context.get();
+        if (ravenContext != null) {
+            context.set(ravenContext);
+        } else {
+            context.remove();
+        }
+        return previous;
+    }
+
     @Override
     public String toString() {
         return "Raven{"
@@ -197,6 +889,15 @@ public class Raven {
     // Static helper methods follow
     // --------------------------------------------------------
 
+    /**
+     * Returns the last statically stored Raven instance, if any.
+     *
+     * @return statically stored {@link Raven} instance, null if none has been constructed yet.
+     */
+    static Raven getStoredInstanceOrNull() {
+        return stored;
+    }
+
     /**
      * Returns the last statically stored Raven instance or throws a {@link NullPointerException}
      * if one hasn't been constructed and stored yet.
@@ -252,4 +953,49 @@ public class Raven {
         stored.sendEvent(eventBuilder);
     }
 
+    /**
+     * {@link EventBuilderHelper} registered on the Raven instance with its priority and timing counters.
+     */
+    private static final class RegisteredBuilderHelper {
+        private final EventBuilderHelper helper;
+        private final int priority;
+        private final AtomicLong invocations = new AtomicLong();
+        private final AtomicLong totalTimeNanos = new AtomicLong();
+        private final AtomicLong maxTimeNanos = new AtomicLong();
+        private final AtomicLong slowInvocations = new AtomicLong();
+        /**
+         * {@link System#nanoTime()} of the last slow helper warning, 0 if there was none.
+         */
+        private final AtomicLong lastWarning = new AtomicLong();
+
+        private RegisteredBuilderHelper(EventBuilderHelper helper, int priority) {
+            this.helper = helper;
+            this.priority = priority;
+        }
+
+        private void record(long elapsedNanos, long thresholdNanos) {
+            invocations.incrementAndGet();
+            totalTimeNanos.addAndGet(elapsedNanos);
+            long max = maxTimeNanos.get();
+            while (elapsedNanos > max && !maxTimeNanos.compareAndSet(max, elapsedNanos)) {
+                max = maxTimeNanos.get();
+            }
+
+            if (elapsedNanos > thresholdNanos) {
+                slowInvocations.incrementAndGet();
+                long now = System.nanoTime();
+                long last = lastWarning.get();
+                if ((last == 0 || now - last >= SLOW_BUILDER_HELPER_WARNING_INTERVAL)
+                    && lastWarning.compareAndSet(last, now)) {
+                    logger.warn("The builder helper '{}' took {}ms to help building an event ({} slow invocations so"
+                            + " far).", helper, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), slowInvocations.get());
+                }
+            }
+        }
+
+        private EventBuilderHelperStats snapshot() {
+            return new EventBuilderHelperStats(helper, priority, invocations.get(), totalTimeNanos.get(),
+                maxTimeNanos.get(), slowInvocations.get());
+        }
+    }
 }
@@ -1,13 +1,13 @@
 package com.getsentry.raven;
 
 import com.getsentry.raven.event.Breadcrumb;
-import com.getsentry.raven.util.CircularFifoQueue;
+import com.getsentry.raven.event.BreadcrumbRing;
 
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.IdentityHashMap;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -18,24 +18,24 @@ import java.util.UUID;
 public class RavenContext implements AutoCloseable {
 
     /**
-     * Thread local set of active context objects. Note that an {@link IdentityHashMap}
-     * is used instead of a Set because there is no identity-set in the Java
-     * standard library.
+     * Thread local set of active context objects, stored as an array of distinct (by identity) contexts.
      *
      * A set of active contexts is required in order to support running multiple Raven
      * clients within a single process. In *most* cases this set will contain a single
      * active context object.
      *
+     * Contexts are activated far less often than breadcrumbs are recorded, the array is replaced (never modified)
+     * when a context is activated or deactivated so that it can be iterated without being copied.
+     *
      * This must be static and {@link ThreadLocal} so that users can retrieve any active
      * context objects globally, without passing context objects all the way down their
      * stacks. See {@link com.getsentry.raven.event.Breadcrumbs} for an example of how this may be used.
      */
-    private static ThreadLocal<IdentityHashMap<RavenContext, RavenContext>> activeContexts =
-        new ThreadLocal<IdentityHashMap<RavenContext, RavenContext>>() {
-            @Override
-            protected IdentityHashMap<RavenContext, RavenContext> initialValue() {
-                return new IdentityHashMap<>();
-            }
+    private static ThreadLocal<RavenContext[]> activeContexts = new ThreadLocal<RavenContext[]>() {
+        @Override
+        protected RavenContext[] initialValue() {
+            return new RavenContext[0];
+        }
     };
 
     /**
@@ -46,9 +46,9 @@ public class RavenContext implements AutoCloseable {
     private UUID lastEventId;
 
     /**
-     * Ring buffer of {@link Breadcrumb} objects.
+     * Ring buffer of {@link Breadcrumb}s.
      */
-    private CircularFifoQueue<Breadcrumb> breadcrumbs;
+    private BreadcrumbRing breadcrumbs;
 
     /**
      * Create a new (empty) RavenContext object with the default Breadcrumb limit.
@@ -63,21 +63,63 @@ public class RavenContext implements AutoCloseable {
      * @param breadcrumbLimit Number of Breadcrumb objects to retain in ring buffer.
      */
     public RavenContext(int breadcrumbLimit) {
-        breadcrumbs = new CircularFifoQueue<>(breadcrumbLimit);
+        breadcrumbs = new BreadcrumbRing(breadcrumbLimit);
     }
 
     /**
      * Add this context to the active contexts for this thread.
      */
     public void activate() {
-        activeContexts.get().put(this, this);
+        RavenContext[] contexts = activeContexts.get();
+        if (indexOf(contexts, this) < 0) {
+            RavenContext[] newContexts = Arrays.copyOf(contexts, contexts.length + 1);
+            newContexts[contexts.length] = this;
+            activeContexts.set(newContexts);
+        }
     }
 
     /**
      * Remove this context from the active contexts for this thread.
      */
     public void deactivate() {
-        activeContexts.get().remove(this);
+        RavenContext[] contexts = activeContexts.get();
+        int index = indexOf(contexts, this);
+        if (index >= 0) {
+            RavenContext[] newContexts = new RavenContext[contexts.length - 1];
+            System.arraycopy(contexts, 0, newContexts, 0, index);
+            System.arraycopy(contexts, index + 1, newContexts, index, newContexts.length - index);
+            activeContexts.set(newContexts);
+        }
+    }
+
+    /**
+     * Returns the active contexts of the current thread without copying them.
+     *
+     * @return the active contexts of the current thread, the array must not be modified.
+     */
+    static RavenContext[] getActiveContextArray() {
+        return activeContexts.get();
+    }
+
+    /**
+     * Replaces the active contexts of the current thread, used to propagate them to other threads.
+     *
+     * @param contexts active contexts to set, the array must not be modified afterwards.
+     * @return the active contexts previously set for the current thread.
+     */
+    static RavenContext[] swapActiveContexts(RavenContext[] contexts) {
+        RavenContext[] previous = activeContexts.get();
+        activeContexts.set(contexts);
+        return previous;
+    }
+
+    private static int indexOf(RavenContext[] contexts, RavenContext context) {
+        for (int i = 0; i < contexts.length; i++) {
+            if (contexts[i] == context) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -102,10 +144,29 @@ public class RavenContext implements AutoCloseable {
      * @return List of active {@link RavenContext} objects.
      */
     public static List<RavenContext> getActiveContexts() {
-        Collection<RavenContext> ravenContexts = activeContexts.get().values();
-        List<RavenContext> list = new ArrayList<>(ravenContexts.size());
-        list.addAll(ravenContexts);
-        return list;
+        return new ArrayList<>(Arrays.asList(activeContexts.get()));
+    }
+
+    /**
+     * Records a {@link Breadcrumb} into all the active contexts for the current thread.
+     * <p>
+     * Unlike going through {@link #getActiveContexts()}, the active contexts aren't copied and no
+     * {@link Breadcrumb} object is needed.
+     *
+     * @param type      type of the breadcrumb, may be null.
+     * @param timestamp time at which the breadcrumb occurred, in milliseconds since the epoch.
+     * @param level     level of the breadcrumb.
+     * @param message   message of the breadcrumb, may be null if there is data.
+     * @param category  category of the breadcrumb.
+     * @param data      data related to the breadcrumb, may be null if there is a message.
+     * @throws IllegalArgumentException if a required field is missing.
+     */
+    public static void recordBreadcrumbInActiveContexts(String type, long timestamp, String level, String message,
+                                                        String category, Map<String, String> data) {
+        RavenContext[] contexts = activeContexts.get();
+        for (int i = 0; i < contexts.length; i++) {
+            contexts[i].breadcrumbs.add(type, timestamp, level, message, category, data);
+        }
     }
 
     /**
@@ -117,6 +178,18 @@ public class RavenContext implements AutoCloseable {
         return breadcrumbs.iterator();
     }
 
+    /**
+     * Return an immutable snapshot of the {@link Breadcrumb}s attached to this RavenContext.
+     * <p>
+     * The snapshot is taken in constant time without copying the breadcrumbs, and isn't affected by the
+     * breadcrumbs recorded afterwards. It can be attached as is to an {@link com.getsentry.raven.event.Event}.
+     *
+     * @return List of {@link Breadcrumb}s, from the oldest to the most recent one.
+     */
+    public List<Breadcrumb> getBreadcrumbSnapshot() {
+        return breadcrumbs.snapshot();
+    }
+
     /**
      * Record a single {@link Breadcrumb} into this context.
      *
@@ -126,6 +199,19 @@ public class RavenContext implements AutoCloseable {
         breadcrumbs.add(breadcrumb);
     }
 
+    /**
+     * Record a breadcrumb with a message into this context without creating a {@link Breadcrumb}.
+     *
+     * @param timestamp time at which the breadcrumb occurred, in milliseconds since the epoch.
+     * @param level     level of the breadcrumb.
+     * @param category  category of the breadcrumb.
+     * @param message   message of the breadcrumb.
+     * @throws IllegalArgumentException if a required field is missing.
+     */
+    public void recordBreadcrumb(long timestamp, String level, String category, String message) {
+        breadcrumbs.add(null, timestamp, level, message, category, null);
+    }
+
     /**
      * Store the UUID of the last sent event by this thread, useful for handling user feedback.
      *
@@ -0,0 +1,98 @@
+package com.getsentry.raven;
+
+import com.getsentry.raven.servlet.RavenServletRequestListener;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Immutable capture of the Raven state bound to a thread, used to propagate it to other threads.
+ * <p>
+ * The captured state is made of:
+ * <ul>
+ * <li>the active {@link RavenContext}s of the thread (where {@link com.getsentry.raven.event.Breadcrumbs} are
+ * recorded),</li>
+ * <li>the context of the stored {@link Raven} instance (see {@link Raven#getContext()}), if the thread has one,</li>
+ * <li>the HTTP request bound by the {@link RavenServletRequestListener}, if servlets are available.</li>
+ * </ul>
+ * The contexts are captured by reference, not copied: a task running with a snapshot records its breadcrumbs in the
+ * same contexts as the thread which captured it. Capturing and restoring a snapshot only swaps references, neither
+ * creates a context: a thread without context of the stored instance gets it on first use, as usual.
+ * <p>
+ * {@link #restore()} returns the state it replaced, which must be restored once the work is done:
+ * <pre>{@code
+ * RavenContextSnapshot previous = snapshot.restore();
+ * try {
+ *     // ...
+ * } finally {
+ *     previous.restore();
+ * }
+ * }</pre>
+ * See the wrappers in {@link com.getsentry.raven.concurrent} to propagate the state to executors.
+ */
+public final class RavenContextSnapshot {
+    private static final boolean SERVLET_AVAILABLE = isServletAvailable();
+    private final RavenContext[] activeContexts;
+    private final Raven raven;
+    private final RavenContext ravenContext;
+    private final Object servletRequest;
+
+    private RavenContextSnapshot(RavenContext[] activeContexts, Raven raven, RavenContext ravenContext,
+                                 Object servletRequest) {
+        this.activeContexts = activeContexts;
+        this.raven = raven;
+        this.ravenContext = ravenContext;
+        this.servletRequest = servletRequest;
+    }
+
+    /**
+     * Captures the Raven state bound to the current thread.
+     *
+     * @return a snapshot of the state of the current thread.
+     */
+    public static RavenContextSnapshot capture() {
+        Raven storedRaven = Raven.getStoredInstanceOrNull();
+        RavenContext storedRavenContext = storedRaven != null ? storedRaven.peekContext() : null;
+        return new RavenContextSnapshot(RavenContext.getActiveContextArray(), storedRaven, storedRavenContext,
+            SERVLET_AVAILABLE ? ServletRequests.get() : null);
+    }
+
+    /**
+     * Binds the captured state to the current thread.
+     *
+     * @return a snapshot of the state replaced, to restore once the work is done.
+     */
+    public RavenContextSnapshot restore() {
+        RavenContext previousRavenContext = null;
+        if (raven != null) {
+            previousRavenContext = raven.swapContext(ravenContext);
+        }
+        RavenContext[] previousActiveContexts = RavenContext.swapActiveContexts(activeContexts);
+        Object previousServletRequest = SERVLET_AVAILABLE ? ServletRequests.swap(servletRequest) : null;
+        return new RavenContextSnapshot(previousActiveContexts, raven, previousRavenContext, previousServletRequest);
+    }
+
+    private static boolean isServletAvailable() {
+        try {
+            Class.forName("javax.servlet.ServletRequestListener", false, RavenContextSnapshot.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Access to the HTTP request of the thread, isolated so that the servlet API is only loaded when available.
+     */
+    private static final class ServletRequests {
+        private ServletRequests() {
+        }
+
+        private static Object get() {
+            return RavenServletRequestListener.getServletRequest();
+        }
+
+        private static Object swap(Object servletRequest) {
+            return RavenServletRequestListener.swapServletRequest((HttpServletRequest) servletRequest);
+        }
+    }
+}
@@ -4,12 +4,14 @@ import com.getsentry.raven.event.Event;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Iterator;
 
 /**
@@ -26,7 +28,15 @@ public class DiskBuffer implements Buffer {
     private static final Logger logger = LoggerFactory.getLogger(DiskBuffer.class);
 
     private int maxEvents;
+    private final long maxBytes;
     private final File bufferDir;
+    /**
+     * Guards {@link #storedEvents} and {@link #storedBytes}, kept up to date by this buffer so that adding an event
+     * doesn't list the directory.
+     */
+    private final Object countLock = new Object();
+    private int storedEvents;
+    private long storedBytes;
 
     /**
      * Construct an DiskBuffer which stores errors in the specified directory on disk.
@@ -35,10 +45,22 @@ public class DiskBuffer implements Buffer {
      * @param maxEvents The maximum number of events to store offline
      */
     public DiskBuffer(File bufferDir, int maxEvents) {
+        this(bufferDir, maxEvents, -1);
+    }
+
+    /**
+     * Construct an DiskBuffer which stores errors in the specified directory on disk, up to a number of bytes.
+     *
+     * @param bufferDir File representing directory to store buffered Events in
+     * @param maxEvents The maximum number of events to store offline
+     * @param maxBytes  The maximum number of bytes of serialized events to store offline, -1 for no limit
+     */
+    public DiskBuffer(File bufferDir, int maxEvents, long maxBytes) {
         super();
 
         this.bufferDir = bufferDir;
         this.maxEvents = maxEvents;
+        this.maxBytes = maxBytes == -1 ? Long.MAX_VALUE : maxBytes;
 
         String errMsg = "Could not create or write to disk buffer dir: " + bufferDir.getAbsolutePath();
         try {
@@ -50,6 +72,7 @@ public class DiskBuffer implements Buffer {
             throw new RuntimeException(errMsg, e);
         }
 
+        recount(bufferDir.listFiles());
         logger.debug(Integer.toString(getNumStoredEvents())
             + " stored events found in dir: "
             + bufferDir.getAbsolutePath());
@@ -58,6 +81,9 @@ public class DiskBuffer implements Buffer {
     /**
      * Store a single event to the add directory. Java serialization is used and each
      * event is stored in a file named by its UUID.
+     * <p>
+     * The event is serialized in memory first, so that it is only stored if its actual
+     * size fits in the remaining number of bytes.
      *
      * @param event Event to store in add directory
      */
@@ -69,19 +95,165 @@ public class DiskBuffer implements Buffer {
             return;
         }
 
+        ByteArrayOutputStream serializedEvent = serialize(event);
+        if (serializedEvent == null || !reserve(event, serializedEvent.size())) {
+            return;
+        }
+
+        write(event, serializedEvent);
+
+        logger.debug(Integer.toString(getNumStoredEvents())
+            + " stored events are now in dir: "
+            + bufferDir.getAbsolutePath());
+    }
+
+    /**
+     * Store several events in a row.
+     * <p>
+     * Used to spill the events still queued when the connection is shut down, the events are written one after the
+     * other until the limits are reached.
+     *
+     * @param events Events to store in add directory
+     * @return the number of events stored
+     */
+    public int addAll(Collection<Event> events) {
+        int added = 0;
+        for (Event event : events) {
+            if (getNumStoredEvents() >= maxEvents) {
+                logger.warn("Not adding " + Integer.toString(events.size() - added) + " Events because at least "
+                    + Integer.toString(maxEvents) + " events are already stored.");
+                break;
+            }
+
+            ByteArrayOutputStream serializedEvent = serialize(event);
+            if (serializedEvent == null || !reserve(event, serializedEvent.size())) {
+                continue;
+            }
+
+            if (write(event, serializedEvent)) {
+                added++;
+            }
+        }
+
+        logger.debug(Integer.toString(added) + " events added to dir: " + bufferDir.getAbsolutePath());
+        return added;
+    }
+
+    /**
+     * Serializes an {@link Event} in memory.
+     *
+     * @param event Event to serialize
+     * @return the serialized Event, or null if it couldn't be serialized
+     */
+    private ByteArrayOutputStream serialize(Event event) {
+        ByteArrayOutputStream serializedEvent = new ByteArrayOutputStream(event.getSizeEstimate());
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(serializedEvent)) {
+            objectOutputStream.writeObject(event);
+        } catch (Exception e) {
+            logger.error("Error serializing Event for offline storage: " + event.getId(), e);
+            return null;
+        }
+        return serializedEvent;
+    }
+
+    /**
+     * Counts a serialized {@link Event} as stored if it fits in the limits.
+     *
+     * @param event Event to store
+     * @param size  size of the serialized Event
+     * @return true if the Event can be written
+     */
+    private boolean reserve(Event event, int size) {
+        synchronized (countLock) {
+            if (storedEvents >= maxEvents) {
+                logger.warn("Not adding Event because at least "
+                    + Integer.toString(maxEvents) + " events are already stored: " + event.getId());
+                return false;
+            }
+            if (storedBytes + size > maxBytes) {
+                logger.warn("Not adding Event of " + Integer.toString(size)
+                    + " bytes because it would exceed the limit of " + Long.toString(maxBytes) + " bytes stored: "
+                    + event.getId());
+                return false;
+            }
+            storedEvents++;
+            storedBytes += size;
+            return true;
+        }
+    }
+
+    /**
+     * Removes an {@link Event} file from the counts of the stored events.
+     *
+     * @param size size of the file
+     */
+    private void release(long size) {
+        synchronized (countLock) {
+            storedEvents = Math.max(0, storedEvents - 1);
+            storedBytes = Math.max(0, storedBytes - size);
+        }
+    }
+
+    /**
+     * Counts the event files among the given files, correcting the counts kept by this buffer for the files added or
+     * deleted by someone else (e.g. another buffer using the same directory).
+     *
+     * @param files files of the buffer directory
+     */
+    private void recount(File[] files) {
+        int count = 0;
+        long bytes = 0;
+        for (File file : files) {
+            if (file.getAbsolutePath().endsWith(FILE_SUFFIX)) {
+                count += 1;
+                bytes += file.length();
+            }
+        }
+        synchronized (countLock) {
+            storedEvents = count;
+            storedBytes = bytes;
+        }
+    }
+
+    /**
+     * Writes a serialized {@link Event} to a file named by its UUID.
+     * <p>
+     * The Event must have been counted by {@link #reserve(Event, int)}, it is removed from the counts if the file
+     * can't be written.
+     *
+     * @param event           Event serialized
+     * @param serializedEvent content of the file
+     * @return true if the file was written
+     */
+    private boolean write(Event event, ByteArrayOutputStream serializedEvent) {
         File eventFile = new File(bufferDir.getAbsolutePath(), event.getId().toString() + FILE_SUFFIX);
         logger.debug("Adding Event to offline storage: " + eventFile.getAbsolutePath());
 
-        try (FileOutputStream fileOutputStream = new FileOutputStream(eventFile);
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(fileOutputStream)) {
-            objectOutputStream.writeObject(event);
+        // The same Event stored again replaces its previous file
+        long previousSize = eventFile.length();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(eventFile)) {
+            serializedEvent.writeTo(fileOutputStream);
         } catch (Exception e) {
             logger.error("Error writing Event to offline storage: " + event.getId(), e);
+            release(serializedEvent.size());
+            return false;
         }
+        if (previousSize > 0) {
+            release(previousSize);
+        }
+        return true;
+    }
 
-        logger.debug(Integer.toString(getNumStoredEvents())
-            + " stored events are now in dir: "
-            + bufferDir.getAbsolutePath());
+    /**
+     * Deletes an {@link Event} file, removing it from the counts of the stored events.
+     *
+     * @param eventFile File to delete
+     */
+    private void delete(File eventFile) {
+        long size = eventFile.length();
+        if (eventFile.delete()) {
+            release(size);
+        }
     }
 
     /**
@@ -94,7 +266,7 @@ public class DiskBuffer implements Buffer {
         File eventFile = new File(bufferDir, event.getId().toString() + FILE_SUFFIX);
         if (eventFile.exists()) {
             logger.debug("Discarding Event from offline storage: " + eventFile.getAbsolutePath());
-            eventFile.delete();
+            delete(eventFile);
         }
     }
 
@@ -114,7 +286,7 @@ public class DiskBuffer implements Buffer {
             eventObj = ois.readObject();
         } catch (Exception e) {
             logger.error("Error reading Event file: " + eventFile.getAbsolutePath(), e);
-            eventFile.delete();
+            delete(eventFile);
             return null;
         }
 
@@ -122,7 +294,7 @@ public class DiskBuffer implements Buffer {
             return (Event) eventObj;
         } catch (Exception e) {
             logger.error("Error casting Object to Event: " + eventFile.getAbsolutePath(), e);
-            eventFile.delete();
+            delete(eventFile);
             return null;
         }
     }
@@ -164,7 +336,9 @@ public class DiskBuffer implements Buffer {
      */
     @Override
     public Iterator<Event> getEvents() {
-        final Iterator<File> files = Arrays.asList(bufferDir.listFiles()).iterator();
+        File[] eventFiles = bufferDir.listFiles();
+        recount(eventFiles);
+        final Iterator<File> files = Arrays.asList(eventFiles).iterator();
 
         return new Iterator<Event>() {
             private Event next = getNextEvent(files);
@@ -188,13 +362,31 @@ public class DiskBuffer implements Buffer {
         };
     }
 
-    private int getNumStoredEvents() {
-        int count = 0;
-        for (File file : bufferDir.listFiles()) {
-            if (file.getAbsolutePath().endsWith(FILE_SUFFIX)) {
-                count += 1;
-            }
+    /**
+     * Returns the size of the events currently stored on disk.
+     * <p>
+     * The size is kept up to date as the events are added and discarded, and recounted from the directory each time
+     * the stored events are listed by {@link #getEvents()}.
+     *
+     * @return the number of bytes of the stored event files.
+     */
+    public long getStoredBytes() {
+        synchronized (countLock) {
+            return storedBytes;
+        }
+    }
+
+    /**
+     * Returns the number of events currently stored on disk.
+     * <p>
+     * The number is kept up to date as the events are added and discarded, and recounted from the directory each
+     * time the stored events are listed by {@link #getEvents()}.
+     *
+     * @return the number of stored event files.
+     */
+    public int getNumStoredEvents() {
+        synchronized (countLock) {
+            return storedEvents;
         }
-        return count;
     }
 }
@@ -0,0 +1,53 @@
+package com.getsentry.raven.concurrent;
+
+import com.getsentry.raven.RavenContextSnapshot;
+
+import java.util.concurrent.Callable;
+
+/**
+ * {@link Callable} calling another callable with the Raven state of the thread which created it.
+ *
+ * @param <V> type of the result of the callable.
+ * @see RavenContextRunnable
+ */
+public class RavenContextCallable<V> implements Callable<V> {
+    private final Callable<V> delegate;
+    private final RavenContextSnapshot snapshot;
+
+    /**
+     * Wraps a callable, capturing the Raven state of the current thread.
+     *
+     * @param delegate callable to call with the Raven state of the current thread.
+     */
+    public RavenContextCallable(Callable<V> delegate) {
+        this(delegate, RavenContextSnapshot.capture());
+    }
+
+    /**
+     * Wraps a callable to call it with the given Raven state.
+     *
+     * @param delegate callable to call with the Raven state.
+     * @param snapshot Raven state to use while calling the callable.
+     */
+    public RavenContextCallable(Callable<V> delegate, RavenContextSnapshot snapshot) {
+        this.delegate = delegate;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public V call() throws Exception {
+        RavenContextSnapshot previous = snapshot.restore();
+        try {
+            return delegate.call();
+        } finally {
+            previous.restore();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RavenContextCallable{"
+            + "delegate=" + delegate
+            + '}';
+    }
+}
@@ -0,0 +1,33 @@
+package com.getsentry.raven.concurrent;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} running the tasks with the Raven state of the thread which submitted them.
+ *
+ * @see RavenContextRunnable
+ */
+public class RavenContextExecutor implements Executor {
+    private final Executor delegate;
+
+    /**
+     * Wraps an executor to propagate the Raven state to its tasks.
+     *
+     * @param delegate executor actually running the tasks.
+     */
+    public RavenContextExecutor(Executor delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(new RavenContextRunnable(command));
+    }
+
+    @Override
+    public String toString() {
+        return "RavenContextExecutor{"
+            + "delegate=" + delegate
+            + '}';
+    }
+}
@@ -0,0 +1,51 @@
+package com.getsentry.raven.concurrent;
+
+import com.getsentry.raven.RavenContextSnapshot;
+
+/**
+ * {@link Runnable} running another runnable with the Raven state of the thread which created it.
+ * <p>
+ * Breadcrumbs recorded and events sent by the wrapped runnable end up in the same contexts as the ones of the
+ * creating thread, and the HTTP request of that thread is available to the builder helpers.
+ */
+public class RavenContextRunnable implements Runnable {
+    private final Runnable delegate;
+    private final RavenContextSnapshot snapshot;
+
+    /**
+     * Wraps a runnable, capturing the Raven state of the current thread.
+     *
+     * @param delegate runnable to run with the Raven state of the current thread.
+     */
+    public RavenContextRunnable(Runnable delegate) {
+        this(delegate, RavenContextSnapshot.capture());
+    }
+
+    /**
+     * Wraps a runnable to run it with the given Raven state.
+     *
+     * @param delegate runnable to run with the Raven state.
+     * @param snapshot Raven state to use while running the runnable.
+     */
+    public RavenContextRunnable(Runnable delegate, RavenContextSnapshot snapshot) {
+        this.delegate = delegate;
+        this.snapshot = snapshot;
+    }
+
+    @Override
+    public void run() {
+        RavenContextSnapshot previous = snapshot.restore();
+        try {
+            delegate.run();
+        } finally {
+            previous.restore();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RavenContextRunnable{"
+            + "delegate=" + delegate
+            + '}';
+    }
+}
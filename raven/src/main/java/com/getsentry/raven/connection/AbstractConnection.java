@@ -2,6 +2,8 @@ package com.getsentry.raven.connection;
 
 import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.metrics.Instrumented;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,7 +22,7 @@ import java.util.concurrent.locks.ReentrantLock;
  * To avoid spamming the network if and when Sentry is down, automatically lock the connection each time a
  * {@link ConnectionException} is caught.
  */
-public abstract class AbstractConnection implements Connection {
+public abstract class AbstractConnection implements Connection, Instrumented, AdmissionControlled {
     /**
      * Current sentry protocol version.
      */
@@ -54,6 +56,7 @@ public abstract class AbstractConnection implements Connection {
      * send events to the Sentry server.
      */
     private Set<EventSendFailureCallback> eventSendFailureCallbacks;
+    private volatile RavenMetrics metrics = RavenMetrics.DISABLED;
 
     /**
      * Creates a connection based on the public and secret keys.
@@ -80,12 +83,15 @@ public abstract class AbstractConnection implements Connection {
 
     @Override
     public final void send(Event event) throws ConnectionException {
+        long start = System.nanoTime();
         try {
             waitIfLockedDown();
 
             doSend(event);
             waitingTime = baseWaitingTime;
+            metrics.recordSent(event, System.nanoTime() - start);
         } catch (ConnectionException e) {
+            metrics.recordFailed(event, System.nanoTime() - start);
             logger.warn("An exception due to the connection occurred, a lockdown will be initiated.", e);
             lockDown();
 
@@ -125,6 +131,7 @@ public abstract class AbstractConnection implements Connection {
     private void lockDown() {
         if (!lockdown.compareAndSet(false, true))
             return;
+        metrics.recordLockdown();
 
         try {
             logger.warn("Lockdown started for {}ms.", waitingTime);
@@ -156,6 +163,25 @@ public abstract class AbstractConnection implements Connection {
      */
     protected abstract void doSend(Event event) throws ConnectionException;
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Events aren't accepted during a lockdown, they would wait for the end of the lockdown and likely fail.
+     */
+    @Override
+    public boolean isAccepting(Event.Level level) {
+        return !lockdown.get();
+    }
+
+    protected RavenMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     public void setMaxWaitingTime(long maxWaitingTime) {
         this.maxWaitingTime = maxWaitingTime;
     }
@@ -0,0 +1,180 @@
+package com.getsentry.raven.connection;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool of an {@link AsyncConnection} sizing its workers between a minimum and a maximum after the load.
+ * <p>
+ * The number of workers needed is estimated periodically with Little's law: the arrival rate of the events times the
+ * moving average of the time taken to send one (mostly the round trip to the Sentry server), plus the workers needed
+ * to drain the events already queued within one period. The core size of the pool follows the estimate: new workers
+ * start right away when it grows, the extra workers stop once they have been idle for the keep alive time when it
+ * shrinks. The maximum number of workers bounds the number of requests in flight to the Sentry server.
+ * <p>
+ * The estimate is updated by the threads submitting and running the events, there is no thread dedicated to it. As
+ * nothing updates it while the pool is idle, every idle worker stops after the keep alive time, including the ones
+ * under the current size, so that an idle pool doesn't keep the workers of the last burst. The next event starts a
+ * worker again.
+ * <p>
+ * The events rejected by the queue aren't counted as arrivals, they aren't sent by the workers.
+ */
+public class AdaptiveThreadPoolExecutor extends ThreadPoolExecutor {
+    private static final long DEFAULT_ADJUSTMENT_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    /**
+     * Weight of the last send time in the moving average, as a right shift: 1/8.
+     */
+    private static final int SEND_TIME_WEIGHT_SHIFT = 3;
+    private final int minThreads;
+    private final int maxThreads;
+    private final long adjustmentInterval;
+    private final AtomicLong arrivals = new AtomicLong();
+    private final AtomicLong averageSendTime = new AtomicLong();
+    private final AtomicLong nextAdjustment;
+    private final ThreadLocal<long[]> sendStart = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+    private long lastAdjustment;
+    private volatile double arrivalRate;
+
+    /**
+     * Creates a pool adjusting its number of workers every second.
+     *
+     * @param minThreads    minimum number of workers, at least 1.
+     * @param maxThreads    maximum number of workers, the maximum number of events sent at the same time.
+     * @param keepAliveTime time after which an idle worker stops, in milliseconds.
+     * @param queue         queue of the events waiting for a worker.
+     * @param threadFactory factory creating the workers.
+     * @param handler       handler of the events rejected by the queue.
+     */
+    public AdaptiveThreadPoolExecutor(int minThreads, int maxThreads, long keepAliveTime, BlockingQueue<Runnable> queue,
+                                      ThreadFactory threadFactory, RejectedExecutionHandler handler) {
+        this(minThreads, maxThreads, keepAliveTime, queue, threadFactory, handler, DEFAULT_ADJUSTMENT_INTERVAL);
+    }
+
+    AdaptiveThreadPoolExecutor(int minThreads, int maxThreads, long keepAliveTime, BlockingQueue<Runnable> queue,
+                               ThreadFactory threadFactory, RejectedExecutionHandler handler,
+                               long adjustmentInterval) {
+        super(minThreads, maxThreads, keepAliveTime, TimeUnit.MILLISECONDS, queue, threadFactory, handler);
+        if (minThreads < 1 || maxThreads < minThreads) {
+            throw new IllegalArgumentException("The number of threads must be between 1 <= " + minThreads + " <= "
+                + maxThreads);
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.adjustmentInterval = adjustmentInterval;
+        setRejectedExecutionHandler(handler);
+        if (keepAliveTime > 0) {
+            allowCoreThreadTimeOut(true);
+        }
+        this.lastAdjustment = System.nanoTime();
+        this.nextAdjustment = new AtomicLong(lastAdjustment + adjustmentInterval);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        arrivals.incrementAndGet();
+        adjustIfDue();
+        super.execute(command);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The handler is wrapped to not count the rejected events as arrivals, {@link #getRejectedExecutionHandler()}
+     * still returns the handler set.
+     */
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new RejectionCounter(handler));
+    }
+
+    @Override
+    public RejectedExecutionHandler getRejectedExecutionHandler() {
+        RejectedExecutionHandler handler = super.getRejectedExecutionHandler();
+        return handler instanceof RejectionCounter ? ((RejectionCounter) handler).delegate : handler;
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        sendStart.get()[0] = System.nanoTime();
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        long sendTime = System.nanoTime() - sendStart.get()[0];
+        long average;
+        long newAverage;
+        do {
+            average = averageSendTime.get();
+            newAverage = average == 0 ? sendTime : average + ((sendTime - average) >> SEND_TIME_WEIGHT_SHIFT);
+        } while (!averageSendTime.compareAndSet(average, newAverage));
+        adjustIfDue();
+    }
+
+    private void adjustIfDue() {
+        long now = System.nanoTime();
+        long next = nextAdjustment.get();
+        if (now - next >= 0 && nextAdjustment.compareAndSet(next, now + adjustmentInterval)) {
+            adjust(now);
+        }
+    }
+
+    private synchronized void adjust(long now) {
+        double elapsedSeconds = Math.max(1, now - lastAdjustment) / NANOS_PER_SECOND;
+        lastAdjustment = now;
+        double currentRate = (arrivalRate + Math.max(0, arrivals.getAndSet(0)) / elapsedSeconds) / 2;
+        arrivalRate = currentRate;
+
+        double sendSeconds = averageSendTime.get() / NANOS_PER_SECOND;
+        double drainSeconds = adjustmentInterval / NANOS_PER_SECOND;
+        double neededThreads = currentRate * sendSeconds + getQueue().size() * sendSeconds / drainSeconds;
+        int targetThreads = (int) Math.max(minThreads, Math.min(maxThreads, Math.ceil(neededThreads)));
+        if (targetThreads != getCorePoolSize()) {
+            setCorePoolSize(targetThreads);
+        }
+    }
+
+    /**
+     * Returns the moving average of the arrival rate of the events, updated at each adjustment.
+     *
+     * @return the number of events submitted per second.
+     */
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    /**
+     * Returns the moving average of the time taken by a worker to send an event.
+     *
+     * @return the average send time in nanoseconds, 0 if no event was sent yet.
+     */
+    public long getAverageSendTime() {
+        return averageSendTime.get();
+    }
+
+    /**
+     * Handler of the rejected events removing them from the arrivals before handing them over.
+     */
+    private final class RejectionCounter implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        private RejectionCounter(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            arrivals.decrementAndGet();
+            delegate.rejectedExecution(runnable, executor);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+
+/**
+ * Component of the pipeline which can tell beforehand whether it would accept an event, used by
+ * {@link com.getsentry.raven.Raven#isAccepted(Event.Level, String)} to let applications skip the work of building
+ * events which would be dropped.
+ */
+public interface AdmissionControlled {
+    /**
+     * Returns whether an event with the given level would currently be accepted.
+     * <p>
+     * The answer is only a hint: it must be cheap, doesn't reserve anything and may be outdated by the time the
+     * event is sent.
+     *
+     * @param level level of the event, may be null.
+     * @return true if the event is expected to be delivered, false if it would be rejected or dropped.
+     */
+    boolean isAccepting(Event.Level level);
+}
@@ -1,15 +1,26 @@
 package com.getsentry.raven.connection;
 
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.metrics.Instrumented;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.NavigableSet;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Asynchronous usage of a connection.
@@ -17,7 +28,7 @@ import java.util.concurrent.TimeUnit;
  * Instead of synchronously sending each event to a connection, use a ThreadPool to establish the connection
  * and submit the event.
  */
-public class AsyncConnection implements Connection {
+public class AsyncConnection implements FlushableConnection, Instrumented, AdmissionControlled {
     private static final Logger logger = LoggerFactory.getLogger(AsyncConnection.class);
     /**
      * Timeout of the {@link #executorService}, in milliseconds.
@@ -43,6 +54,31 @@ public class AsyncConnection implements Connection {
      * Boolean used to check whether the connection is still open or not.
      */
     private volatile boolean closed;
+    /**
+     * Metrics updated when events are queued, dropped and taken from the queue.
+     */
+    private volatile RavenMetrics metrics = RavenMetrics.DISABLED;
+    /**
+     * Guards {@link #nextTicket}, so that a ticket is pending as soon as it is taken (see {@link #newTicket()}).
+     */
+    private final Object ticketLock = new Object();
+    /**
+     * Ticket of the next event submitted, the events are numbered in the order they are submitted.
+     */
+    private long nextTicket;
+    /**
+     * Tickets of the events queued or being sent.
+     */
+    private final NavigableSet<Long> pendingTickets = new ConcurrentSkipListSet<>();
+    /**
+     * Monitor notified when a pending event is done, while {@link #flushWaiters} threads are flushing.
+     */
+    private final Object flushMonitor = new Object();
+    private volatile int flushWaiters;
+    /**
+     * Whether events were spilled to the actual connection since it was last asked to replay them.
+     */
+    private final AtomicBoolean eventsSpilled = new AtomicBoolean();
 
     /**
      * Creates a connection which will rely on an executor to send events.
@@ -62,6 +98,14 @@ public class AsyncConnection implements Connection {
             this.executorService = Executors.newSingleThreadExecutor();
         else
             this.executorService = executorService;
+        if (this.executorService instanceof ThreadPoolExecutor) {
+            ThreadPoolExecutor threadPoolExecutor = (ThreadPoolExecutor) this.executorService;
+            threadPoolExecutor.setRejectedExecutionHandler(
+                new RejectedEventHandler(threadPoolExecutor.getRejectedExecutionHandler(), null));
+        } else if (this.executorService instanceof SharedDispatcher.Lane) {
+            SharedDispatcher.Lane lane = (SharedDispatcher.Lane) this.executorService;
+            lane.setRejectionHandler(new RejectedEventHandler(lane.getOverflowPolicy(), lane.getRejectionHandler()));
+        }
         if (gracefulShutdown) {
             this.gracefulShutdown = gracefulShutdown;
             addShutdownHook();
@@ -84,8 +128,248 @@ public class AsyncConnection implements Connection {
      */
     @Override
     public void send(Event event) {
-        if (!closed)
-            executorService.execute(new EventSubmitter(event));
+        submit(new EventSubmitter(event, null));
+    }
+
+    /**
+     * Adds an event to the queue, completing the future once the event is sent, dropped or failed.
+     *
+     * @param event  event to send.
+     * @param future future completed by the thread sending the event.
+     */
+    public void send(Event event, SendFuture future) {
+        submit(new EventSubmitter(event, future));
+    }
+
+    /**
+     * Adds an event to the queue, the event will be completed, built and sent by a separate {@code Thread} later on.
+     *
+     * @param deferredEvent event to build and send.
+     */
+    public void send(DeferredEvent deferredEvent) {
+        submit(new EventSubmitter(deferredEvent, null));
+    }
+
+    /**
+     * Adds an event to the queue to be built and sent later on, completing the future once the event is sent, dropped
+     * or failed.
+     *
+     * @param deferredEvent event to build and send.
+     * @param future        future completed by the thread sending the event.
+     */
+    public void send(DeferredEvent deferredEvent, SendFuture future) {
+        submit(new EventSubmitter(deferredEvent, future));
+    }
+
+    private void submit(EventSubmitter submitter) {
+        if (closed) {
+            submitter.dropped();
+            return;
+        }
+        metrics.recordEnqueued();
+        try {
+            executorService.execute(submitter);
+        } catch (RuntimeException e) {
+            submitter.failed(e);
+            throw e;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Waits for the events submitted before the flush to be sent or dropped, then flushes the actual connection. The
+     * events submitted in the meantime are numbered after the flush, so that a steady flow of events doesn't keep it
+     * waiting.
+     */
+    @Override
+    public boolean flush(long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        long flushTicket;
+        synchronized (ticketLock) {
+            flushTicket = nextTicket;
+        }
+        synchronized (flushMonitor) {
+            flushWaiters++;
+            try {
+                while (pendingTickets.lower(flushTicket) != null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(flushMonitor, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                flushWaiters--;
+            }
+        }
+        if (actualConnection instanceof FlushableConnection) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            // Less than a millisecond left is still some time to flush the actual connection
+            long remainingMillis = Math.max(1L, TimeUnit.NANOSECONDS.toMillis(remaining));
+            return ((FlushableConnection) actualConnection).flush(remainingMillis);
+        }
+        return true;
+    }
+
+    /**
+     * Numbers a new event and adds it to the pending events at once, so that a flush numbered after it waits for it.
+     *
+     * @return the ticket of the event.
+     */
+    private long newTicket() {
+        synchronized (ticketLock) {
+            long ticket = nextTicket++;
+            pendingTickets.add(ticket);
+            return ticket;
+        }
+    }
+
+    /**
+     * Records the end of a pending event, sent or dropped, and wakes up the flushing threads which may wait for it.
+     *
+     * @param ticket ticket of the event.
+     */
+    private void eventFinished(long ticket) {
+        pendingTickets.remove(ticket);
+        if (flushWaiters > 0) {
+            synchronized (flushMonitor) {
+                flushMonitor.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Asks the actual connection to replay the events spilled by the {@link SpillPolicy} once the queue is empty.
+     */
+    private void replaySpilledEvents() {
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+        if (eventsSpilled.get() && (queue == null || queue.isEmpty()) && eventsSpilled.compareAndSet(true, false)) {
+            ((SpillableConnection) actualConnection).replay();
+        }
+    }
+
+    /**
+     * Returns the estimated size of the events waiting to be sent.
+     * <p>
+     * The size is tracked by an {@link EventPriorityQueue}, with other queues it is added up from the queued events.
+     *
+     * @return the number of bytes queued, 0 if the queue of the executor can't be inspected.
+     */
+    public long getQueuedBytes() {
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+        if (queue == null) {
+            return 0;
+        }
+        if (queue instanceof EventPriorityQueue) {
+            return ((EventPriorityQueue) queue).getQueuedBytes();
+        }
+        long queuedBytes = 0;
+        for (Runnable runnable : queue) {
+            if (runnable instanceof EventSubmitter) {
+                queuedBytes += ((EventSubmitter) runnable).getSizeEstimate();
+            }
+        }
+        return queuedBytes;
+    }
+
+    /**
+     * Returns the queue of the executor, for the executors whose queue can be inspected.
+     *
+     * @return the queue of the events waiting to be sent, null if it can't be inspected.
+     */
+    private BlockingQueue<Runnable> getExecutorQueue() {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue();
+        } else if (executorService instanceof SharedDispatcher.Lane) {
+            return ((SharedDispatcher.Lane) executorService).getQueue();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the overflow policy of the executor, as configured before being wrapped by this connection.
+     *
+     * @return the policy applied to the events rejected by the queue, null if it can't be inspected.
+     */
+    private RejectedExecutionHandler getOverflowPolicy() {
+        RejectedExecutionHandler handler = null;
+        if (executorService instanceof ThreadPoolExecutor) {
+            handler = ((ThreadPoolExecutor) executorService).getRejectedExecutionHandler();
+        } else if (executorService instanceof SharedDispatcher.Lane) {
+            handler = ((SharedDispatcher.Lane) executorService).getOverflowPolicy();
+        }
+        if (handler instanceof RejectedEventHandler) {
+            handler = ((RejectedEventHandler) handler).delegate;
+        }
+        return handler;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Events are accepted if the queue has room for them, or if the executor makes room for them, runs them in the
+     * caller thread or spills them when the queue is full, and if the actual connection accepts them.
+     */
+    @Override
+    public boolean isAccepting(Event.Level level) {
+        if (closed) {
+            return false;
+        }
+        BlockingQueue<Runnable> queue = getExecutorQueue();
+        if (queue != null) {
+            RejectedExecutionHandler handler = getOverflowPolicy();
+            boolean overflowAccepted = handler instanceof ThreadPoolExecutor.CallerRunsPolicy
+                || handler instanceof ThreadPoolExecutor.DiscardOldestPolicy
+                || handler instanceof SpillPolicy && actualConnection instanceof SpillableConnection;
+            boolean queueAccepting = queue instanceof AdmissionControlled
+                ? ((AdmissionControlled) queue).isAccepting(level) : queue.remainingCapacity() > 0;
+            if (!queueAccepting && !overflowAccepted) {
+                return false;
+            }
+        }
+        return !(actualConnection instanceof AdmissionControlled)
+            || ((AdmissionControlled) actualConnection).isAccepting(level);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The depth and the size of the queue are exposed as gauges, the events rejected by the executor are counted by
+     * its {@link RejectedExecutionHandler}. The metrics are passed on to the queue if it sheds events itself, and to
+     * the actual connection.
+     */
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        this.metrics = metrics;
+        final BlockingQueue<Runnable> queue = getExecutorQueue();
+        if (queue != null) {
+            metrics.setQueueDepth(new RavenMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return queue.size();
+                }
+            });
+            metrics.setQueuedBytes(new RavenMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return getQueuedBytes();
+                }
+            });
+            if (queue instanceof Instrumented) {
+                // Events shed to make room for another one never reach the rejected execution handler
+                ((Instrumented) queue).setMetrics(metrics);
+            }
+        }
+        if (actualConnection instanceof Instrumented) {
+            ((Instrumented) actualConnection).setMetrics(metrics);
+        }
     }
 
     @Override
@@ -134,40 +418,282 @@ public class AsyncConnection implements Connection {
                 logger.warn("Graceful shutdown took too much time, forcing the shutdown.");
                 List<Runnable> tasks = executorService.shutdownNow();
                 logger.info("{} tasks failed to execute before the shutdown.", tasks.size());
+                spillAll(tasks);
             }
             logger.info("Shutdown finished.");
         } catch (InterruptedException e) {
             logger.error("Graceful shutdown interrupted, forcing the shutdown.");
             List<Runnable> tasks = executorService.shutdownNow();
             logger.info("{} tasks failed to execute before the shutdown.", tasks.size());
+            spillAll(tasks);
         } finally {
             actualConnection.close();
         }
     }
 
+    /**
+     * Spills the events which couldn't be sent before the shutdown to the actual connection if it can store them,
+     * otherwise they are lost.
+     *
+     * @param tasks tasks left in the queue of the executor.
+     */
+    private void spillAll(List<Runnable> tasks) {
+        List<EventSubmitter> submitters = new ArrayList<>(tasks.size());
+        for (Runnable task : tasks) {
+            if (task instanceof EventSubmitter) {
+                submitters.add((EventSubmitter) task);
+            }
+        }
+        if (!submitters.isEmpty() && actualConnection instanceof SpillableConnection) {
+            List<Event> events = new ArrayList<>(submitters.size());
+            for (EventSubmitter submitter : submitters) {
+                Event spilledEvent = submitter.toEvent();
+                if (spilledEvent != null) {
+                    events.add(spilledEvent);
+                }
+            }
+            try {
+                int spilled = ((SpillableConnection) actualConnection).spill(events);
+                logger.info("{} events stored to be sent later.", spilled);
+            } catch (RuntimeException e) {
+                logger.error("Couldn't store the events left in the queue.", e);
+            }
+        }
+        for (EventSubmitter submitter : submitters) {
+            submitter.dropped();
+        }
+    }
+
     /**
      * Simple runnable using the {@link #send(com.getsentry.raven.event.Event)} method of the
-     * {@link #actualConnection}.
+     * {@link #actualConnection}, building the event first if it has been deferred.
+     * <p>
+     * The event is pending from the creation of the submitter until it is sent or dropped.
      */
-    private final class EventSubmitter implements Runnable {
+    final class EventSubmitter implements Runnable {
         private final Event event;
+        private final DeferredEvent deferredEvent;
+        private final SendFuture future;
+        private final long enqueuedAt = System.nanoTime();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final long ticket;
+
+        EventSubmitter(Event event) {
+            this(event, null);
+        }
+
+        EventSubmitter(Event event, SendFuture future) {
+            this(event, null, future);
+        }
 
-        private EventSubmitter(Event event) {
+        EventSubmitter(DeferredEvent deferredEvent, SendFuture future) {
+            this(null, deferredEvent, future);
+        }
+
+        private EventSubmitter(Event event, DeferredEvent deferredEvent, SendFuture future) {
             this.event = event;
+            this.deferredEvent = deferredEvent;
+            this.future = future;
+            // Pending before the submitter can be handed to the executor
+            this.ticket = newTicket();
+        }
+
+        /**
+         * Drops the event without sending it.
+         */
+        void dropped() {
+            if (finish() && future != null) {
+                future.markDropped();
+            }
+        }
+
+        /**
+         * Gives up the event after a failure to queue it.
+         */
+        private void failed(Exception e) {
+            if (finish() && future != null) {
+                future.markFailed(e);
+            }
+        }
+
+        private boolean finish() {
+            if (!finished.compareAndSet(false, true)) {
+                return false;
+            }
+            eventFinished(ticket);
+            return true;
+        }
+
+        /**
+         * Returns the event to store instead of sending it, building it if it has been deferred.
+         *
+         * @return the event, null if it couldn't be built.
+         */
+        Event toEvent() {
+            if (event != null) {
+                return event;
+            }
+            try {
+                return deferredEvent.build();
+            } catch (RuntimeException e) {
+                logger.error("An exception occurred while building the event to store it.", e);
+                return null;
+            }
+        }
+
+        /**
+         * Returns the level of the event, known before the event is built for the deferred events.
+         *
+         * @return the level of the event, null if it isn't set.
+         */
+        Event.Level getLevel() {
+            return event != null ? event.getLevel() : deferredEvent.getEventBuilder().getLevel();
+        }
+
+        /**
+         * Returns the estimated size of the event, known before the event is built for the deferred events.
+         *
+         * @return the estimated size of the event in bytes.
+         */
+        int getSizeEstimate() {
+            return event != null ? event.getSizeEstimate() : deferredEvent.getSizeEstimate();
         }
 
         @Override
         public void run() {
+            RavenMetrics currentMetrics = metrics;
+            currentMetrics.recordQueueWait(System.nanoTime() - enqueuedAt);
             RavenEnvironment.startManagingThread();
             try {
                 // The current thread is managed by raven
-                actualConnection.send(event);
+                Event builtEvent = event;
+                if (builtEvent == null) {
+                    long start = System.nanoTime();
+                    builtEvent = deferredEvent.build();
+                    currentMetrics.recordBuilt(builtEvent, System.nanoTime() - start);
+                }
+                actualConnection.send(builtEvent);
+                if (future != null) {
+                    future.markSent();
+                }
             } catch (Exception e) {
                 logger.error("An exception occurred while sending the event to Sentry.", e);
+                if (future != null) {
+                    future.markFailed(e);
+                }
             } finally {
                 RavenEnvironment.stopManagingThread();
+                replaySpilledEvents();
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Rejected execution handler recording the events dropped by the configured policy, so that they are counted
+     * and that their futures are completed.
+     * <p>
+     * Handles the events rejected by a {@link ThreadPoolExecutor} as well as by a lane of the
+     * {@link SharedDispatcher}, which applies the same policies.
+     */
+    private final class RejectedEventHandler
+        implements RejectedExecutionHandler, SharedDispatcher.LaneRejectionHandler {
+        private final RejectedExecutionHandler delegate;
+        private final SharedDispatcher.LaneRejectionHandler laneDelegate;
+
+        /**
+         * @param delegate     configured policy.
+         * @param laneDelegate handler applying the policy to a lane, null for a {@link ThreadPoolExecutor}.
+         */
+        private RejectedEventHandler(RejectedExecutionHandler delegate,
+                                     SharedDispatcher.LaneRejectionHandler laneDelegate) {
+            this.delegate = delegate;
+            this.laneDelegate = laneDelegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+            if (delegate instanceof ThreadPoolExecutor.CallerRunsPolicy) {
+                delegate.rejectedExecution(runnable, executor);
+            } else if (!handled(runnable, executor, executor.getQueue())) {
+                drop(runnable);
+                delegate.rejectedExecution(runnable, executor);
             }
         }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, SharedDispatcher.Lane lane) {
+            if (delegate instanceof ThreadPoolExecutor.CallerRunsPolicy) {
+                laneDelegate.rejectedExecution(runnable, lane);
+            } else if (!handled(runnable, lane, lane.getQueue())) {
+                drop(runnable);
+                laneDelegate.rejectedExecution(runnable, lane);
+            }
+        }
+
+        /**
+         * Applies the policies whose dropped events are known.
+         *
+         * @return false if the policy is to be applied by the delegate, once the event is dropped.
+         */
+        private boolean handled(Runnable runnable, ExecutorService executor, BlockingQueue<Runnable> queue) {
+            if (delegate instanceof SpillPolicy && !executor.isShutdown()) {
+                spill(runnable);
+            } else if (delegate instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+                // Same as the policy, knowing which event is discarded
+                if (!executor.isShutdown()) {
+                    drop(queue.poll());
+                    executor.execute(runnable);
+                } else {
+                    drop(runnable);
+                }
+            } else {
+                return false;
+            }
+            return true;
+        }
+
+        private void spill(Runnable runnable) {
+            if (!(runnable instanceof EventSubmitter) || !(actualConnection instanceof SpillableConnection)) {
+                drop(runnable);
+                return;
+            }
+            EventSubmitter submitter = (EventSubmitter) runnable;
+            Event spilledEvent = submitter.toEvent();
+            int spilled = 0;
+            if (spilledEvent != null) {
+                try {
+                    spilled = ((SpillableConnection) actualConnection).spill(Collections.singletonList(spilledEvent));
+                } catch (RuntimeException e) {
+                    logger.error("Couldn't store the event rejected by the full queue.", e);
+                }
+            }
+            if (spilled > 0) {
+                eventsSpilled.set(true);
+                submitter.dropped();
+            } else {
+                drop(runnable);
+            }
+        }
+
+        private void drop(Runnable runnable) {
+            if (runnable instanceof EventSubmitter) {
+                metrics.recordDropped();
+                ((EventSubmitter) runnable).dropped();
+            }
+        }
+    }
+
+    /**
+     * Overflow policy storing the events rejected by the full queue in the actual connection when it is a
+     * {@link SpillableConnection}, instead of blocking the caller or discarding them. The actual connection replays
+     * them once the queue is empty again. Without a spillable connection, the events are discarded.
+     * <p>
+     * The policy is a marker: the events are spilled by the {@link AsyncConnection} owning the executor, which knows
+     * the actual connection and replaces the handler of the executor with its own. Used by an executor outside of an
+     * {@code AsyncConnection}, the policy discards the events as a {@link ThreadPoolExecutor.DiscardPolicy}.
+     */
+    public static final class SpillPolicy extends ThreadPoolExecutor.DiscardPolicy {
     }
 
     private final class ShutDownHook extends Thread {
@@ -1,23 +1,30 @@
 package com.getsentry.raven.connection;
 
 import com.getsentry.raven.buffer.Buffer;
+import com.getsentry.raven.buffer.DiskBuffer;
 import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.metrics.Instrumented;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Connection wrapper that sends Events to an Buffer when send fails.
  */
-public class BufferedConnection implements Connection {
+public class BufferedConnection implements FlushableConnection, SpillableConnection, Instrumented,
+    AdmissionControlled {
 
     private static final Logger logger = LoggerFactory.getLogger(BufferedConnection.class);
 
@@ -38,6 +45,10 @@ public class BufferedConnection implements Connection {
                 return thread;
             }
         });
+    /**
+     * Task sending the buffered events, run periodically and when the connection is flushed.
+     */
+    private final Flusher flusher = new Flusher();
     /**
      * Connection used to actually send the events.
      */
@@ -58,6 +69,10 @@ public class BufferedConnection implements Connection {
      * Boolean used to check whether the connection is still open or not.
      */
     private volatile boolean closed = false;
+    /**
+     * Metrics updated when events are buffered and replayed.
+     */
+    private volatile RavenMetrics metrics = RavenMetrics.DISABLED;
 
     /**
      * Construct a BufferedConnection that will store events that failed to send to the provided
@@ -81,7 +96,6 @@ public class BufferedConnection implements Connection {
             Runtime.getRuntime().addShutdownHook(shutDownHook);
         }
 
-        Flusher flusher = new BufferedConnection.Flusher();
         executorService.scheduleWithFixedDelay(flusher, flushtime, flushtime, TimeUnit.MILLISECONDS);
     }
 
@@ -94,10 +108,119 @@ public class BufferedConnection implements Connection {
         } catch (Exception e) {
             // failure: buffer the event
             buffer.add(event);
+            metrics.recordBuffered();
             throw e;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Flushes the actual connection, then sends the buffered events right away instead of waiting for the next run of
+     * the flusher. The buffer may still hold events afterwards if the actual connection fails to send them.
+     *
+     * @return true if the buffer is empty after the flush.
+     */
+    @Override
+    public boolean flush(long timeout) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        if (actualConnection instanceof FlushableConnection
+            && !((FlushableConnection) actualConnection).flush(timeout)) {
+            return false;
+        }
+        if (closed) {
+            return !buffer.getEvents().hasNext();
+        }
+        try {
+            executorService.submit(flusher).get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (TimeoutException | ExecutionException | RejectedExecutionException e) {
+            logger.debug("Couldn't flush the buffered events.", e);
+            return false;
+        }
+        return !buffer.getEvents().hasNext();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The events are added to the buffer, in a single pass with a {@link DiskBuffer}, and sent by the flusher once
+     * the connection is created again if it is closed in the meantime.
+     */
+    @Override
+    public int spill(List<Event> events) {
+        int spilled;
+        if (buffer instanceof DiskBuffer) {
+            spilled = ((DiskBuffer) buffer).addAll(events);
+        } else {
+            for (Event event : events) {
+                buffer.add(event);
+            }
+            spilled = events.size();
+        }
+        for (int i = 0; i < spilled; i++) {
+            metrics.recordBuffered();
+        }
+        return spilled;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The flusher is run right away on its own thread, unless the connection is closed.
+     */
+    @Override
+    public void replay() {
+        if (closed) {
+            return;
+        }
+        try {
+            executorService.execute(flusher);
+        } catch (RejectedExecutionException e) {
+            logger.debug("Couldn't replay the buffered events.", e);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Events are always accepted, they are buffered if the actual connection fails to send them.
+     */
+    @Override
+    public boolean isAccepting(Event.Level level) {
+        return !closed;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The content of a {@link DiskBuffer} is exposed as gauges. The metrics are passed on to the actual connection.
+     */
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        this.metrics = metrics;
+        if (buffer instanceof DiskBuffer) {
+            final DiskBuffer diskBuffer = (DiskBuffer) buffer;
+            metrics.setBufferSize(new RavenMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return diskBuffer.getNumStoredEvents();
+                }
+            });
+            metrics.setBufferBytes(new RavenMetrics.Gauge() {
+                @Override
+                public long getValue() {
+                    return diskBuffer.getStoredBytes();
+                }
+            });
+        }
+        if (actualConnection instanceof Instrumented) {
+            ((Instrumented) actualConnection).setMetrics(metrics);
+        }
+    }
+
     @Override
     public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
         actualConnection.addEventSendFailureCallback(eventSendFailureCallback);
@@ -160,6 +283,7 @@ public class BufferedConnection implements Connection {
                     try {
                         logger.trace("Flusher attempting to send Event: " + event.getId());
                         send(event);
+                        metrics.recordReplayed();
                         logger.trace("Flusher successfully sent Event: " + event.getId());
                     } catch (Exception e) {
                         logger.debug("Flusher failed to send Event: " + event.getId(), e);
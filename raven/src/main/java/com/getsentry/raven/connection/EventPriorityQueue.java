@@ -0,0 +1,544 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.metrics.Instrumented;
+import com.getsentry.raven.metrics.RavenMetrics;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Work queue of an {@link AsyncConnection} ordering the events by level instead of by arrival.
+ * <p>
+ * Events are stored in one lane per level, dequeued with a weighted round robin: each round takes up to
+ * {@link #WEIGHTS 16} fatal events, 8 errors, 4 warnings, 2 infos and 1 debug event, so that the most severe events
+ * are sent first without starving the others.
+ * <p>
+ * When the queue is full, the oldest event of the lowest level is shed to make room for a more severe one. The last
+ * {@code reservedCapacity} slots can only be used by errors and fatal events, which keeps room for them even when the
+ * queue is saturated by less severe events. If there is nothing less severe to shed, the new event is rejected,
+ * unless {@code shedSameLevel} is set in which case the oldest event of the same level is shed instead.
+ * <p>
+ * The queue can also be bounded by the {@link Event#getSizeEstimate() estimated size} of its events: an event is
+ * admitted only if both the number of events and the number of bytes queued stay within their limits, and events are
+ * shed the same way until there is enough room for the new one. The reserved capacity applies to the bytes in the
+ * same proportion. An event larger than the whole byte budget is always rejected.
+ * <p>
+ * The lanes share the capacity of the queue rather than having a bound each, so that the room left by a quiet level
+ * can be used by the others, the reserved capacity keeping room for the most severe events.
+ * <p>
+ * Without ordering by level, every event goes to a single lane: the queue is a plain FIFO which can only shed its
+ * oldest events, which allows bounding the queue by bytes without changing the order of the events.
+ * <p>
+ * {@link #offer(Runnable)}, used by the executor, never waits. {@link #put(Runnable)} and
+ * {@link #offer(Runnable, long, TimeUnit)} shed the same events, and wait for room when there is nothing to shed.
+ * <p>
+ * Events without level are handled as errors, tasks which aren't events are handled as infos and don't count in the
+ * byte budget.
+ */
+public class EventPriorityQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable>,
+    Instrumented, AdmissionControlled {
+    /**
+     * Number of events dequeued in a round for each level, by {@link Event.Level#ordinal()}.
+     */
+    @SuppressWarnings("checkstyle:magicnumber")
+    private static final int[] WEIGHTS = {16, 8, 4, 2, 1};
+    private static final int LANES = Event.Level.values().length;
+    private static final int LOWEST_RESERVED_LANE = Event.Level.ERROR.ordinal();
+    private final int capacity;
+    private final int reservedCapacity;
+    private final long maxBytes;
+    private final long reservedBytes;
+    private final boolean shedSameLevel;
+    private final boolean orderByLevel;
+    private final ArrayDeque<Runnable>[] lanes;
+    /**
+     * Estimated size of the events in each lane, in bytes.
+     */
+    private final long[] laneBytes = new long[LANES];
+    /**
+     * Events which can still be dequeued from each lane in the current round.
+     */
+    private final int[] credits = new int[LANES];
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicLong shedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    /**
+     * Metrics recording the events shed, the rejected events are recorded by the executor.
+     */
+    private volatile RavenMetrics metrics = RavenMetrics.DISABLED;
+    private int count;
+    private long bytes;
+
+    /**
+     * Creates a priority queue bounded by the number of events only.
+     *
+     * @param capacity         maximum number of events in the queue.
+     * @param reservedCapacity number of slots which can only be used by errors and fatal events.
+     * @param shedSameLevel    whether a new event may shed the oldest event of its own level when the queue is full.
+     */
+    public EventPriorityQueue(int capacity, int reservedCapacity, boolean shedSameLevel) {
+        this(capacity, -1, reservedCapacity, shedSameLevel, true);
+    }
+
+    /**
+     * Creates a queue bounded by the number of events and their estimated size.
+     *
+     * @param capacity         maximum number of events in the queue.
+     * @param maxBytes         maximum estimated size of the events in the queue, in bytes, -1 for no limit.
+     * @param reservedCapacity number of slots which can only be used by errors and fatal events, ignored without
+     *                         ordering by level.
+     * @param shedSameLevel    whether a new event may shed the oldest event of its own level when the queue is full,
+     *                         without ordering by level whether it may shed the oldest event of the queue.
+     * @param orderByLevel     whether the events are dequeued by level rather than by arrival.
+     */
+    @SuppressWarnings("unchecked")
+    public EventPriorityQueue(int capacity, long maxBytes, int reservedCapacity, boolean shedSameLevel,
+                              boolean orderByLevel) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity of the queue must be at least 1, got " + capacity);
+        }
+        if (reservedCapacity < 0 || reservedCapacity > capacity) {
+            throw new IllegalArgumentException("The reserved capacity must be between 0 and the capacity of the queue ("
+                + capacity + "), got " + reservedCapacity);
+        }
+        if (maxBytes == 0 || maxBytes < -1) {
+            throw new IllegalArgumentException("The maximum size of the queue must be positive or -1, got " + maxBytes);
+        }
+        this.capacity = capacity;
+        this.reservedCapacity = orderByLevel ? reservedCapacity : 0;
+        this.maxBytes = maxBytes == -1 ? Long.MAX_VALUE : maxBytes;
+        this.reservedBytes = maxBytes == -1 ? 0 : (long) (this.maxBytes * ((double) this.reservedCapacity / capacity));
+        this.shedSameLevel = shedSameLevel;
+        this.orderByLevel = orderByLevel;
+        this.lanes = new ArrayDeque[LANES];
+        for (int i = 0; i < LANES; i++) {
+            lanes[i] = new ArrayDeque<>();
+        }
+        System.arraycopy(WEIGHTS, 0, credits, 0, LANES);
+    }
+
+    private static int laneOf(Runnable runnable) {
+        if (!(runnable instanceof AsyncConnection.EventSubmitter)) {
+            return Event.Level.INFO.ordinal();
+        }
+        Event.Level level = ((AsyncConnection.EventSubmitter) runnable).getLevel();
+        return level != null ? level.ordinal() : Event.Level.ERROR.ordinal();
+    }
+
+    private static int sizeOf(Object task) {
+        if (!(task instanceof AsyncConnection.EventSubmitter)) {
+            return 0;
+        }
+        return ((AsyncConnection.EventSubmitter) task).getSizeEstimate();
+    }
+
+    /**
+     * Returns the estimated size of the events currently in the queue.
+     *
+     * @return the number of bytes queued.
+     */
+    public long getQueuedBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of events shed or rejected because the queue was full.
+     *
+     * @return the number of events dropped by this queue.
+     */
+    public long getShedCount() {
+        return shedCount.get();
+    }
+
+    /**
+     * Returns the number of new events rejected because the queue was full, they are handed over to the rejected
+     * execution handler of the executor.
+     *
+     * @return the number of events rejected by this queue, included in {@link #getShedCount()}.
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    @Override
+    public void setMetrics(RavenMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * An event is accepted if there is room for it in its lane, or if less severe events could be shed to make room.
+     * The byte budget is checked without the size of the new event.
+     */
+    @Override
+    public boolean isAccepting(Event.Level level) {
+        int lane = 0;
+        if (orderByLevel) {
+            lane = level != null ? level.ordinal() : Event.Level.ERROR.ordinal();
+        }
+        lock.lock();
+        try {
+            int laneCapacity = laneCapacity(lane);
+            long laneMaxBytes = laneMaxBytes(lane);
+            if (count < laneCapacity && bytes < laneMaxBytes) {
+                return true;
+            }
+            int sheddable = 0;
+            long sheddableBytes = 0;
+            for (int i = shedSameLevel ? lane : lane + 1; i < LANES; i++) {
+                sheddable += lanes[i].size();
+                sheddableBytes += laneBytes[i];
+            }
+            return count - sheddable < laneCapacity && bytes - sheddableBytes < laneMaxBytes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable runnable) {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        int lane = orderByLevel ? laneOf(runnable) : 0;
+        int size = sizeOf(runnable);
+        lock.lock();
+        try {
+            if (!enqueue(runnable, lane, size)) {
+                rejected();
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Less severe events are shed to make room as with {@link #offer(Runnable)}, the call waits for room only when
+     * there is nothing to shed.
+     *
+     * @throws IllegalArgumentException if the event is larger than the byte budget of its lane, it would never fit.
+     */
+    @Override
+    public void put(Runnable runnable) throws InterruptedException {
+        offer(runnable, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Less severe events are shed to make room as with {@link #offer(Runnable)}, the call waits for room only when
+     * there is nothing to shed.
+     *
+     * @throws IllegalArgumentException if the event is larger than the byte budget of its lane, it would never fit.
+     */
+    @Override
+    public boolean offer(Runnable runnable, long timeout, TimeUnit unit) throws InterruptedException {
+        if (runnable == null) {
+            throw new NullPointerException();
+        }
+        int lane = orderByLevel ? laneOf(runnable) : 0;
+        int size = sizeOf(runnable);
+        if (size > laneMaxBytes(lane)) {
+            throw new IllegalArgumentException("The event of " + size + " bytes is larger than the "
+                + laneMaxBytes(lane) + " bytes the queue can hold for its level");
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (!enqueue(runnable, lane, size)) {
+                if (nanos <= 0) {
+                    rejected();
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int laneCapacity(int lane) {
+        return lane <= LOWEST_RESERVED_LANE ? capacity : capacity - reservedCapacity;
+    }
+
+    private long laneMaxBytes(int lane) {
+        return lane <= LOWEST_RESERVED_LANE ? maxBytes : maxBytes - reservedBytes;
+    }
+
+    /**
+     * Adds an event to its lane if there is room for it, shedding less severe events if needed.
+     *
+     * @return false if there is nothing to shed to make room for the event.
+     */
+    private boolean enqueue(Runnable runnable, int lane, int size) {
+        int laneCapacity = laneCapacity(lane);
+        long laneMaxBytes = laneMaxBytes(lane);
+        if (count >= laneCapacity || bytes + size > laneMaxBytes) {
+            int lowestSheddableLane = shedSameLevel ? lane : lane + 1;
+            int sheddable = 0;
+            long sheddableBytes = 0;
+            for (int i = lowestSheddableLane; i < LANES; i++) {
+                sheddable += lanes[i].size();
+                sheddableBytes += laneBytes[i];
+            }
+            if (count - sheddable >= laneCapacity || bytes - sheddableBytes + size > laneMaxBytes) {
+                return false;
+            }
+            while (count >= laneCapacity || bytes + size > laneMaxBytes) {
+                shed(lowestSheddableLane);
+            }
+        }
+        lanes[lane].addLast(runnable);
+        count++;
+        laneBytes[lane] += size;
+        bytes += size;
+        notEmpty.signal();
+        return true;
+    }
+
+    private void rejected() {
+        shedCount.incrementAndGet();
+        rejectedCount.incrementAndGet();
+    }
+
+    /**
+     * Removes the oldest event of the lowest level, not more severe than the given lane.
+     */
+    private void shed(int lowestSheddableLane) {
+        for (int i = LANES - 1; i >= lowestSheddableLane; i--) {
+            if (!lanes[i].isEmpty()) {
+                Runnable runnable = lanes[i].pollFirst();
+                removed(i, runnable);
+                shedCount.incrementAndGet();
+                metrics.recordDropped();
+                if (runnable instanceof AsyncConnection.EventSubmitter) {
+                    ((AsyncConnection.EventSubmitter) runnable).dropped();
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                notEmpty.await();
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count == 0) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next event of the weighted round robin, starting a new round if every non empty lane has used its
+     * credits.
+     */
+    private Runnable dequeue() {
+        if (count == 0) {
+            return null;
+        }
+        while (true) {
+            for (int i = 0; i < LANES; i++) {
+                if (credits[i] > 0 && !lanes[i].isEmpty()) {
+                    credits[i]--;
+                    return removed(i, lanes[i].pollFirst());
+                }
+            }
+            System.arraycopy(WEIGHTS, 0, credits, 0, LANES);
+        }
+    }
+
+    private Runnable removed(int lane, Runnable runnable) {
+        int size = sizeOf(runnable);
+        count--;
+        laneBytes[lane] -= size;
+        bytes -= size;
+        // The waiting events may need room in different lanes
+        notFull.signalAll();
+        return runnable;
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (int i = 0; i < LANES; i++) {
+                if (credits[i] > 0 && !lanes[i].isEmpty()) {
+                    return lanes[i].peekFirst();
+                }
+            }
+            for (int i = 0; i < LANES; i++) {
+                if (!lanes[i].isEmpty()) {
+                    return lanes[i].peekFirst();
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        lock.lock();
+        try {
+            for (int i = 0; i < LANES; i++) {
+                if (lanes[i].removeFirstOccurrence(o)) {
+                    removed(i, (Runnable) o);
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        lock.lock();
+        try {
+            int drained = 0;
+            while (drained < maxElements && count > 0) {
+                c.add(dequeue());
+                drained++;
+            }
+            return drained;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the queue, from the most to the least severe events.
+     * <p>
+     * Removing an element through the iterator removes it from the queue.
+     *
+     * @return an iterator over the events in the queue.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final List<Runnable> snapshot = new ArrayList<>();
+        lock.lock();
+        try {
+            for (ArrayDeque<Runnable> lane : lanes) {
+                snapshot.addAll(lane);
+            }
+        } finally {
+            lock.unlock();
+        }
+        final Iterator<Runnable> snapshotIterator = snapshot.iterator();
+        return new Iterator<Runnable>() {
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return snapshotIterator.hasNext();
+            }
+
+            @Override
+            public Runnable next() {
+                last = snapshotIterator.next();
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                EventPriorityQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return "EventPriorityQueue{"
+            + "capacity=" + capacity
+            + ", maxBytes=" + maxBytes
+            + ", reservedCapacity=" + reservedCapacity
+            + ", orderByLevel=" + orderByLevel
+            + ", size=" + size()
+            + '}';
+    }
+}
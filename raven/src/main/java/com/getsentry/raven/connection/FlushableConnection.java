@@ -0,0 +1,17 @@
+package com.getsentry.raven.connection;
+
+/**
+ * Connection holding events to send later, which can wait for them to be sent without being closed.
+ */
+public interface FlushableConnection extends Connection {
+    /**
+     * Waits for the events held by the connection to be sent, and for the events being sent.
+     * <p>
+     * The connection stays open, new events can still be sent while flushing but aren't waited for.
+     *
+     * @param timeout maximum time to wait, in milliseconds.
+     * @return true if every event held was sent or dropped in time, false if the timeout expired or the current thread
+     * was interrupted, in which case its interrupted status is set.
+     */
+    boolean flush(long timeout);
+}
@@ -3,6 +3,7 @@ package com.getsentry.raven.connection;
 import com.getsentry.raven.environment.RavenEnvironment;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.marshaller.Marshaller;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -140,13 +141,18 @@ public class HttpConnection extends AbstractConnection {
 
     @Override
     protected void doSend(Event event) throws ConnectionException {
+        RavenMetrics metrics = getMetrics();
+        long start = System.nanoTime();
         HttpURLConnection connection = getConnection();
         try {
             connection.connect();
-            OutputStream outputStream = connection.getOutputStream();
+            CountingOutputStream outputStream = new CountingOutputStream(connection.getOutputStream());
+            long marshallingStart = System.nanoTime();
             marshaller.marshall(event, outputStream);
             outputStream.close();
+            metrics.recordMarshalling(event, System.nanoTime() - marshallingStart, outputStream.count);
             connection.getInputStream().close();
+            metrics.recordHttpRoundTrip(System.nanoTime() - start);
         } catch (IOException e) {
             String errorMessage = null;
             final InputStream errorStream = connection.getErrorStream();
@@ -195,4 +201,27 @@ public class HttpConnection extends AbstractConnection {
     @Override
     public void close() throws IOException {
     }
+
+    /**
+     * Stream counting the bytes written by the marshaller.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
 }
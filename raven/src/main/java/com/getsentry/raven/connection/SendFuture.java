@@ -0,0 +1,147 @@
+package com.getsentry.raven.connection;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Completion of the sending of an event, returned by {@link com.getsentry.raven.Raven#submitEvent}.
+ * <p>
+ * The future is completed once, by the thread sending the event: it is sent when the connection sent it without
+ * error, dropped when the event was discarded before being sent (sampling, duplicates, full queue, shutdown) and
+ * failed when the connection threw an exception. A failed event may still be sent later from the buffer, as well as
+ * a dropped event spilled to the buffer by the async connection.
+ * <p>
+ * {@link #get()} returns true if the event was sent and false if it was dropped, it throws an
+ * {@link ExecutionException} holding the exception of the connection if the event failed. The sending can't be
+ * cancelled.
+ */
+public final class SendFuture implements Future<Boolean> {
+    private static final int PENDING = 0;
+    private static final int SENT = 1;
+    private static final int DROPPED = 2;
+    private static final int FAILED = 3;
+    private int state = PENDING;
+    private Throwable failure;
+
+    /**
+     * Creates a future already completed with a dropped event.
+     *
+     * @return a future of a dropped event.
+     */
+    public static SendFuture dropped() {
+        SendFuture future = new SendFuture();
+        future.markDropped();
+        return future;
+    }
+
+    /**
+     * Completes the future with an event sent, does nothing if it is already completed.
+     */
+    public void markSent() {
+        complete(SENT, null);
+    }
+
+    /**
+     * Completes the future with an event dropped, does nothing if it is already completed.
+     */
+    public void markDropped() {
+        complete(DROPPED, null);
+    }
+
+    /**
+     * Completes the future with an event which couldn't be sent, does nothing if it is already completed.
+     *
+     * @param throwable exception thrown by the connection.
+     */
+    public void markFailed(Throwable throwable) {
+        complete(FAILED, throwable);
+    }
+
+    private synchronized void complete(int newState, Throwable throwable) {
+        if (state != PENDING) {
+            return;
+        }
+        state = newState;
+        failure = throwable;
+        notifyAll();
+    }
+
+    /**
+     * Returns whether the event was sent.
+     *
+     * @return true if the connection sent the event without error.
+     */
+    public synchronized boolean isSent() {
+        return state == SENT;
+    }
+
+    /**
+     * Returns whether the event was discarded before being sent.
+     *
+     * @return true if the event was dropped.
+     */
+    public synchronized boolean isDropped() {
+        return state == DROPPED;
+    }
+
+    /**
+     * Returns the exception of the connection if the event couldn't be sent.
+     *
+     * @return the exception thrown by the connection, null if the event didn't fail or isn't completed yet.
+     */
+    public synchronized Throwable getFailure() {
+        return failure;
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return false;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return state != PENDING;
+    }
+
+    @Override
+    public synchronized Boolean get() throws InterruptedException, ExecutionException {
+        while (state == PENDING) {
+            wait();
+        }
+        return result();
+    }
+
+    @Override
+    public synchronized Boolean get(long timeout, TimeUnit unit)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (state == PENDING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                throw new TimeoutException("The event wasn't sent in time");
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private Boolean result() throws ExecutionException {
+        if (state == FAILED) {
+            throw new ExecutionException(failure);
+        }
+        return state == SENT;
+    }
+
+    @Override
+    public synchronized String toString() {
+        String[] states = {"pending", "sent", "dropped", "failed"};
+        return "SendFuture{" + states[state] + '}';
+    }
+}
@@ -0,0 +1,433 @@
+package com.getsentry.raven.connection;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of workers shared by the async connections of several Raven instances, instead of a pool per connection.
+ * <p>
+ * Each connection gets a {@link Lane}: an executor with its own queue and overflow policy, whose events are sent by the
+ * shared workers. The workers take the events of the lanes in turn, one at a time, and a lane never has more than its
+ * own maximum number of events in flight, so that a busy or slow Sentry server can't take all the workers from the
+ * other ones.
+ * <p>
+ * The workers are daemon threads, stopped once the last lane of the dispatcher is terminated. The lanes created by
+ * {@link #newSharedLane} share the same dispatcher as long as one of them is running, a new one is started for the
+ * next lane afterwards. The dispatcher is shared by the connections loaded by the same class loader: with a copy of
+ * Raven in each web application, each application has its own dispatcher, stopped when its connections are closed.
+ */
+public final class SharedDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(SharedDispatcher.class);
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger(1);
+    private static SharedDispatcher instance;
+    private final List<Thread> workers = new ArrayList<>();
+    /**
+     * One permit per event queued, and per event left in a lane at its limit when another one is done.
+     */
+    private final Semaphore permits = new Semaphore(0);
+    private final AtomicInteger nextLane = new AtomicInteger();
+    private final int threads;
+    private volatile Lane[] lanes = new Lane[0];
+    private volatile boolean stopped;
+
+    /**
+     * Creates a dispatcher and starts its workers, which stop once the last lane created is terminated.
+     *
+     * @param threads  number of workers.
+     * @param priority priority of the workers.
+     */
+    public SharedDispatcher(int threads, int priority) {
+        this.threads = threads;
+        String namePrefix = "raven-shared-" + POOL_NUMBER.getAndIncrement() + "-thread-";
+        for (int i = 1; i <= threads; i++) {
+            Thread thread = new Thread(new Worker(), namePrefix + i);
+            thread.setDaemon(true);
+            thread.setPriority(priority);
+            // Don't keep the class loader of the application which happened to start the dispatcher
+            thread.setContextClassLoader(SharedDispatcher.class.getClassLoader());
+            workers.add(thread);
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Creates a lane of the dispatcher shared in the JVM, starting the dispatcher with the settings of the connection
+     * if no other lane is running.
+     *
+     * @param threads     number of workers if the dispatcher is started.
+     * @param priority    priority of the workers if the dispatcher is started.
+     * @param queue       queue of the events of the lane, bounded to limit the events waiting for a worker.
+     * @param handler     overflow policy applied to the events rejected by the queue.
+     * @param maxInFlight maximum number of events of the lane sent at the same time.
+     * @return a new lane of the shared dispatcher.
+     */
+    public static synchronized Lane newSharedLane(int threads, int priority, BlockingQueue<Runnable> queue,
+                                                  RejectedExecutionHandler handler, int maxInFlight) {
+        Lane lane = instance != null ? instance.tryNewLane(queue, handler, maxInFlight) : null;
+        if (lane == null) {
+            instance = new SharedDispatcher(threads, priority);
+            lane = instance.tryNewLane(queue, handler, maxInFlight);
+        } else if (instance.threads != threads) {
+            logger.debug("The shared dispatcher already runs {} threads, ignoring the {} threads requested.",
+                instance.threads, threads);
+        }
+        return lane;
+    }
+
+    private static synchronized void stopped(SharedDispatcher dispatcher) {
+        if (instance == dispatcher) {
+            instance = null;
+        }
+    }
+
+    /**
+     * Creates a lane of the dispatcher for a connection.
+     *
+     * @param queue       queue of the events of the lane, bounded to limit the events waiting for a worker.
+     * @param handler     overflow policy applied to the events rejected by the queue.
+     * @param maxInFlight maximum number of events of the lane sent at the same time.
+     * @return a new lane.
+     * @throws IllegalStateException if the workers of the dispatcher are stopped.
+     */
+    public Lane newLane(BlockingQueue<Runnable> queue, RejectedExecutionHandler handler, int maxInFlight) {
+        Lane lane = tryNewLane(queue, handler, maxInFlight);
+        if (lane == null) {
+            throw new IllegalStateException("The workers of the dispatcher are stopped");
+        }
+        return lane;
+    }
+
+    private synchronized Lane tryNewLane(BlockingQueue<Runnable> queue, RejectedExecutionHandler handler,
+                                         int maxInFlight) {
+        if (stopped) {
+            return null;
+        }
+        Lane lane = new Lane(queue, handler, maxInFlight);
+        Lane[] newLanes = Arrays.copyOf(lanes, lanes.length + 1);
+        newLanes[lanes.length] = lane;
+        lanes = newLanes;
+        return lane;
+    }
+
+    /**
+     * Removes a terminated lane, stopping the workers if it was the last one.
+     *
+     * @param lane lane terminated.
+     */
+    private void removeLane(Lane lane) {
+        synchronized (this) {
+            List<Lane> newLanes = new ArrayList<>(Arrays.asList(lanes));
+            if (!newLanes.remove(lane)) {
+                return;
+            }
+            lanes = newLanes.toArray(new Lane[newLanes.size()]);
+            if (!newLanes.isEmpty()) {
+                return;
+            }
+            stopped = true;
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        // Outside of the lock of the dispatcher, newSharedLane takes it while holding the lock of the class
+        stopped(this);
+    }
+
+    /**
+     * Whether the workers of the dispatcher are stopped, once the last lane created is terminated.
+     *
+     * @return true if the workers are stopped.
+     */
+    public boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Returns the number of lanes of the dispatcher.
+     *
+     * @return the number of lanes not terminated yet.
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * Runs the next event of the lanes, starting from the lane after the one where the last worker started.
+     */
+    private void runNextTask() {
+        Lane[] current = lanes;
+        int start = nextLane.getAndIncrement() & Integer.MAX_VALUE;
+        for (int i = 0; i < current.length; i++) {
+            Lane lane = current[(start + i) % current.length];
+            Runnable task = lane.poll();
+            if (task != null) {
+                lane.run(task);
+                return;
+            }
+        }
+    }
+
+    private final class Worker implements Runnable {
+        @Override
+        public void run() {
+            while (!stopped) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    // Stopped once the last lane is terminated
+                    continue;
+                }
+                runNextTask();
+            }
+        }
+    }
+
+    /**
+     * Handler of the events rejected by the queue of a {@link Lane}, the counterpart of a
+     * {@link RejectedExecutionHandler} for the lanes, which aren't {@link ThreadPoolExecutor}s.
+     */
+    public interface LaneRejectionHandler {
+        /**
+         * Handles an event which can't be queued, either because the queue is full or because the lane is shut down.
+         *
+         * @param runnable event rejected.
+         * @param lane     lane rejecting the event.
+         */
+        void rejectedExecution(Runnable runnable, Lane lane);
+    }
+
+    /**
+     * Executor of a connection sending its events with the workers of the dispatcher.
+     * <p>
+     * The lane has no threads of its own but handles its queue, overflow policy and shutdown as a pool of its own: the
+     * events rejected by the queue go to its {@link LaneRejectionHandler}, a shut down lane lets the workers send the
+     * events already queued, and {@link #shutdownNow()} interrupts the workers sending its events.
+     */
+    public final class Lane extends AbstractExecutorService {
+        private final BlockingQueue<Runnable> queue;
+        private final RejectedExecutionHandler overflowPolicy;
+        private final int maxInFlight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /**
+         * Workers sending the events of the lane, only interrupted while they hold the lock of the set so that a worker
+         * done with the lane can't be interrupted while it sends the events of another lane.
+         */
+        private final Set<Thread> runningThreads = new HashSet<>();
+        private final AtomicBoolean terminating = new AtomicBoolean();
+        private final Object terminationMonitor = new Object();
+        private volatile LaneRejectionHandler rejectionHandler;
+        private volatile boolean shutdown;
+        private volatile boolean terminated;
+
+        private Lane(BlockingQueue<Runnable> queue, RejectedExecutionHandler overflowPolicy, int maxInFlight) {
+            this.queue = queue;
+            this.overflowPolicy = overflowPolicy;
+            this.maxInFlight = maxInFlight;
+            this.rejectionHandler = new PolicyRejectionHandler(overflowPolicy);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            if (shutdown || !queue.offer(command)) {
+                rejectionHandler.rejectedExecution(command, this);
+                return;
+            }
+            if (shutdown && queue.remove(command)) {
+                // Shut down while queuing the event, the lane may already be terminated
+                rejectionHandler.rejectedExecution(command, this);
+                return;
+            }
+            permits.release();
+        }
+
+        /**
+         * Takes the next event of the lane for the current worker, if the lane has less events in flight than its
+         * maximum.
+         *
+         * @return the next event, null if the lane is empty or at its maximum.
+         */
+        private Runnable poll() {
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= maxInFlight) {
+                    return null;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+            Runnable task = queue.poll();
+            if (task == null) {
+                finished();
+            }
+            return task;
+        }
+
+        private void run(Runnable task) {
+            Thread thread = Thread.currentThread();
+            synchronized (runningThreads) {
+                runningThreads.add(thread);
+            }
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                logger.error("An exception occurred while running a task of the shared dispatcher.", e);
+            } finally {
+                synchronized (runningThreads) {
+                    runningThreads.remove(thread);
+                    // Interruption from the shutdown of the lane, not to be seen by the next task of the worker
+                    Thread.interrupted();
+                }
+                finished();
+            }
+        }
+
+        private void finished() {
+            inFlight.decrementAndGet();
+            if (!queue.isEmpty()) {
+                // The lane may have been skipped while at its maximum
+                permits.release();
+            } else if (shutdown) {
+                tryTerminate();
+            }
+        }
+
+        private void tryTerminate() {
+            if (inFlight.get() > 0 || !queue.isEmpty() || !terminating.compareAndSet(false, true)) {
+                return;
+            }
+            // Removed before being seen as terminated, so that the dispatcher is stopped once the last lane is awaited
+            removeLane(this);
+            synchronized (terminationMonitor) {
+                terminated = true;
+                terminationMonitor.notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+            tryTerminate();
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> tasks = new ArrayList<>();
+            queue.drainTo(tasks);
+            synchronized (runningThreads) {
+                for (Thread thread : runningThreads) {
+                    thread.interrupt();
+                }
+            }
+            tryTerminate();
+            return tasks;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return terminated;
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            synchronized (terminationMonitor) {
+                while (!terminated) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(terminationMonitor, remaining);
+                }
+                return true;
+            }
+        }
+
+        /**
+         * Returns the queue of the events waiting for a worker.
+         *
+         * @return the queue of the lane.
+         */
+        public BlockingQueue<Runnable> getQueue() {
+            return queue;
+        }
+
+        /**
+         * Returns the overflow policy the lane has been created with.
+         *
+         * @return the policy applied to the events rejected by the queue, unless the rejection handler is replaced.
+         */
+        public RejectedExecutionHandler getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public LaneRejectionHandler getRejectionHandler() {
+            return rejectionHandler;
+        }
+
+        public void setRejectionHandler(LaneRejectionHandler rejectionHandler) {
+            this.rejectionHandler = rejectionHandler;
+        }
+
+        /**
+         * Returns the number of events of the lane being sent.
+         *
+         * @return the number of events in flight.
+         */
+        public int getInFlightCount() {
+            return Math.max(0, inFlight.get());
+        }
+    }
+
+    /**
+     * Applies an overflow policy of the {@link ThreadPoolExecutor}s to a lane.
+     * <p>
+     * The policies of the JDK are applied the same way as by a pool, including the {@link AsyncConnection.SpillPolicy}
+     * which discards the events when the lane isn't used by an {@link AsyncConnection}, any other policy aborts.
+     */
+    private static final class PolicyRejectionHandler implements LaneRejectionHandler {
+        private final RejectedExecutionHandler policy;
+
+        private PolicyRejectionHandler(RejectedExecutionHandler policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable runnable, Lane lane) {
+            if (policy instanceof ThreadPoolExecutor.CallerRunsPolicy) {
+                if (!lane.isShutdown()) {
+                    runnable.run();
+                }
+            } else if (policy instanceof ThreadPoolExecutor.DiscardOldestPolicy) {
+                if (!lane.isShutdown()) {
+                    lane.getQueue().poll();
+                    lane.execute(runnable);
+                }
+            } else if (!(policy instanceof ThreadPoolExecutor.DiscardPolicy)) {
+                throw new RejectedExecutionException("Task " + runnable + " rejected from a lane of the shared "
+                    + "dispatcher");
+            }
+        }
+    }
+}
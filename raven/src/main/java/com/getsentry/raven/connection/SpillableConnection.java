@@ -0,0 +1,25 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+
+import java.util.List;
+
+/**
+ * Connection able to store events for later instead of sending them, used by the {@link AsyncConnection} to keep the
+ * events still queued when it's forced to shut down, and the events rejected by its full queue with the
+ * {@link AsyncConnection.SpillPolicy}.
+ */
+public interface SpillableConnection extends Connection {
+    /**
+     * Stores events to be sent later, without trying to send them now.
+     *
+     * @param events events to store, in the order in which they were queued.
+     * @return the number of events stored.
+     */
+    int spill(List<Event> events);
+
+    /**
+     * Sends the stored events in the background, without waiting for the next attempt.
+     */
+    void replay();
+}
@@ -1,5 +1,6 @@
 package com.getsentry.raven.event;
 
+import java.io.Serializable;
 import java.util.Date;
 import java.util.Map;
 
@@ -8,7 +9,8 @@ import java.util.Map;
  * of breadcrumbs that help users re-create the path of actions that occurred
  * which lead to the Event happening.
  */
-public class Breadcrumb {
+public class Breadcrumb implements Serializable {
+    private static final long serialVersionUID = 7330542127373843407L;
 
     /**
      * (Optional) Type of the breadcrumb.
@@ -52,12 +54,7 @@ public class Breadcrumb {
             timestamp = new Date();
         }
 
-        checkNotNull(level, "level");
-        checkNotNull(category, "category");
-
-        if (message == null && (data == null || data.size() < 1)) {
-            throw new IllegalArgumentException("one of 'message' or 'data' must be set");
-        }
+        checkValid(level, message, category, data);
 
         this.type = type;
         this.timestamp = timestamp;
@@ -67,7 +64,25 @@ public class Breadcrumb {
         this.data = data;
     }
 
-    private void checkNotNull(String str, String name) {
+    /**
+     * Checks that the given fields can make a valid breadcrumb.
+     *
+     * @param level    level of the breadcrumb.
+     * @param message  message of the breadcrumb.
+     * @param category category of the breadcrumb.
+     * @param data     data related to the breadcrumb.
+     * @throws IllegalArgumentException if a required field is missing.
+     */
+    static void checkValid(String level, String message, String category, Map<String, String> data) {
+        checkNotNull(level, "level");
+        checkNotNull(category, "category");
+
+        if (message == null && (data == null || data.size() < 1)) {
+            throw new IllegalArgumentException("one of 'message' or 'data' must be set");
+        }
+    }
+
+    private static void checkNotNull(String str, String name) {
         if (str == null) {
             throw new IllegalArgumentException("field '" + name + "' is required but got null");
         }
@@ -97,4 +112,27 @@ public class Breadcrumb {
         return data;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Breadcrumb that = (Breadcrumb) o;
+        return timestamp.equals(that.timestamp)
+            && level.equals(that.level)
+            && category.equals(that.category)
+            && (type != null ? type.equals(that.type) : that.type == null)
+            && (message != null ? message.equals(that.message) : that.message == null)
+            && (data != null ? data.equals(that.data) : that.data == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = timestamp.hashCode();
+        result = 31 * result + level.hashCode();
+        result = 31 * result + category.hashCode();
+        result = 31 * result + (message != null ? message.hashCode() : 0);
+        return result;
+    }
+
 }
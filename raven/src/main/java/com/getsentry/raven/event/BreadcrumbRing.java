@@ -0,0 +1,255 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.util.CompactCollections;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * Fixed size ring buffer of breadcrumbs, keeping the most recent ones.
+ * <p>
+ * Breadcrumbs are usually recorded far more often than events are sent (one for each SQL query or HTTP call for
+ * example). Instead of keeping a {@link Breadcrumb} (and its {@link Date}) for each of them, the fields are stored
+ * in preallocated arrays: the timestamp as a primitive and the other fields as references to the strings given by
+ * the caller. {@link Breadcrumb} objects are only created when the ring is read, usually while building an event.
+ * <p>
+ * The slots are split in two segments of {@code capacity} slots which are only ever appended to. Once the current
+ * segment is full, the previous one (which doesn't hold any breadcrumb of the window anymore) becomes the current
+ * segment again. Segments referenced by a {@link #snapshot()} are never reused, a new segment is allocated instead,
+ * which is what allows snapshots to be taken in constant time without copying anything.
+ * <p>
+ * The ring is usually only used by the thread owning a {@link com.getsentry.raven.RavenContext}, but contexts can
+ * be propagated to other threads (see {@link com.getsentry.raven.RavenContextSnapshot}), so its methods are
+ * synchronized. Snapshots are immutable and are read without locking.
+ */
+public final class BreadcrumbRing {
+    private final int capacity;
+    /**
+     * Segment in which the breadcrumbs are currently written.
+     */
+    private Segment current;
+    /**
+     * Segment filled before {@link #current}, null if {@link #current} is the first one.
+     */
+    private Segment previous;
+    /**
+     * Number of breadcrumbs written in {@link #current}.
+     */
+    private int written = 0;
+
+    /**
+     * Creates an empty ring keeping at most {@code capacity} breadcrumbs.
+     *
+     * @param capacity maximum number of breadcrumbs kept, must be strictly positive.
+     */
+    public BreadcrumbRing(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("The capacity of the ring must be strictly positive.");
+        }
+        this.capacity = capacity;
+        this.current = new Segment(capacity);
+    }
+
+    /**
+     * Adds a breadcrumb to the ring, evicting the oldest one if the ring is full.
+     *
+     * @param breadcrumb breadcrumb to add.
+     */
+    public void add(Breadcrumb breadcrumb) {
+        add(breadcrumb.getType(), breadcrumb.getTimestamp().getTime(), breadcrumb.getLevel(), breadcrumb.getMessage(),
+            breadcrumb.getCategory(), breadcrumb.getData());
+    }
+
+    /**
+     * Adds a breadcrumb to the ring without creating a {@link Breadcrumb}, evicting the oldest one if the ring is full.
+     *
+     * @param type      type of the breadcrumb, may be null.
+     * @param timestamp time at which the breadcrumb occurred, in milliseconds since the epoch.
+     * @param level     level of the breadcrumb.
+     * @param message   message of the breadcrumb, may be null if there is data.
+     * @param category  category of the breadcrumb.
+     * @param dataMap   data related to the breadcrumb, may be null if there is a message.
+     * @throws IllegalArgumentException if a required field is missing.
+     */
+    public synchronized void add(String type, long timestamp, String level, String message, String category,
+                                 Map<String, String> dataMap) {
+        Breadcrumb.checkValid(level, message, category, dataMap);
+        if (written == capacity) {
+            Segment next = previous != null && !previous.shared ? previous : new Segment(capacity);
+            previous = current;
+            current = next;
+            written = 0;
+        }
+        current.set(written++, type, timestamp, level, message, category, dataMap);
+    }
+
+    /**
+     * Removes every breadcrumb from the ring.
+     */
+    public synchronized void clear() {
+        if (current.shared) {
+            current = new Segment(capacity);
+        } else {
+            current.clear();
+        }
+        previous = null;
+        written = 0;
+    }
+
+    /**
+     * Returns the number of breadcrumbs currently in the ring.
+     *
+     * @return the number of breadcrumbs, at most the capacity of the ring.
+     */
+    public synchronized int size() {
+        return previous != null ? capacity : written;
+    }
+
+    /**
+     * Creates the {@link Breadcrumb} at the given position of the ring.
+     *
+     * @param index position of the breadcrumb, 0 being the oldest breadcrumb.
+     * @return a new breadcrumb with the content of the slot.
+     */
+    public synchronized Breadcrumb get(int index) {
+        return get(previous, current, written, size(), index);
+    }
+
+    /**
+     * Returns an immutable view of the breadcrumbs currently in the ring, from the oldest to the most recent one.
+     * <p>
+     * The view is created in constant time and isn't affected by the breadcrumbs added to the ring afterwards.
+     * The breadcrumbs are created when the view is read, each call to {@link List#get(int)} returns a new
+     * {@link Breadcrumb}.
+     *
+     * @return a snapshot of the breadcrumbs, the shared empty list if the ring is empty.
+     */
+    public synchronized List<Breadcrumb> snapshot() {
+        int size = size();
+        if (size == 0) {
+            return Collections.emptyList();
+        }
+        current.shared = true;
+        if (previous != null) {
+            previous.shared = true;
+        }
+        return new Snapshot(previous, current, written, size);
+    }
+
+    /**
+     * Returns an iterator creating the breadcrumbs of the ring, from the oldest to the most recent one.
+     * <p>
+     * The iterator goes through a {@link #snapshot()} of the ring, it isn't affected by later modifications.
+     *
+     * @return an iterator over the breadcrumbs of the ring.
+     */
+    public Iterator<Breadcrumb> iterator() {
+        return snapshot().iterator();
+    }
+
+    private static Breadcrumb get(Segment previous, Segment current, int inCurrent, int size, int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        int inPrevious = size - inCurrent;
+        if (index < inPrevious) {
+            return previous.get(previous.timestamps.length - inPrevious + index);
+        }
+        return current.get(index - inPrevious);
+    }
+
+    /**
+     * Fixed size, append-only, storage of the fields of the breadcrumbs.
+     */
+    private static final class Segment {
+        private final long[] timestamps;
+        private final String[] types;
+        private final String[] levels;
+        private final String[] messages;
+        private final String[] categories;
+        private final Object[] data;
+        /**
+         * Whether the segment is referenced by a snapshot, in which case it must never be written again.
+         */
+        private boolean shared;
+
+        private Segment(int capacity) {
+            timestamps = new long[capacity];
+            types = new String[capacity];
+            levels = new String[capacity];
+            messages = new String[capacity];
+            categories = new String[capacity];
+            data = new Object[capacity];
+        }
+
+        private void set(int slot, String type, long timestamp, String level, String message, String category,
+                         Map<String, String> dataMap) {
+            timestamps[slot] = timestamp;
+            types[slot] = type;
+            levels[slot] = level;
+            messages[slot] = message;
+            categories[slot] = category;
+            data[slot] = dataMap;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Breadcrumb get(int slot) {
+            return new Breadcrumb(types[slot], new Date(timestamps[slot]), levels[slot], messages[slot],
+                categories[slot], (Map<String, String>) data[slot]);
+        }
+
+        private void clear() {
+            for (int i = 0; i < timestamps.length; i++) {
+                types[i] = null;
+                levels[i] = null;
+                messages[i] = null;
+                categories[i] = null;
+                data[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Immutable view of the breadcrumbs of a ring at a given time, spanning the end of the previous segment and
+     * the beginning of the current one.
+     * <p>
+     * The view is serialized as a plain list of breadcrumbs.
+     */
+    private static final class Snapshot extends AbstractList<Breadcrumb>
+        implements RandomAccess, Serializable, CompactCollections.Frozen {
+        private static final long serialVersionUID = -4265093016632941234L;
+        private final transient Segment previous;
+        private final transient Segment current;
+        private final int inCurrent;
+        private final int size;
+
+        private Snapshot(Segment previous, Segment current, int inCurrent, int size) {
+            this.previous = previous;
+            this.current = current;
+            this.inCurrent = inCurrent;
+            this.size = size;
+        }
+
+        @Override
+        public Breadcrumb get(int index) {
+            return BreadcrumbRing.get(previous, current, inCurrent, size, index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private Object writeReplace() throws ObjectStreamException {
+            return CompactCollections.freezeList(new ArrayList<>(this));
+        }
+    }
+}
@@ -2,6 +2,8 @@ package com.getsentry.raven.event;
 
 import com.getsentry.raven.RavenContext;
 
+import java.util.Map;
+
 /**
  * Helpers for dealing with {@link Breadcrumb}s.
  */
@@ -20,9 +22,39 @@ public final class Breadcrumbs {
      * @param breadcrumb Breadcrumb to record
      */
     public static void record(Breadcrumb breadcrumb) {
-        for (RavenContext context : RavenContext.getActiveContexts()) {
-            context.recordBreadcrumb(breadcrumb);
-        }
+        RavenContext.recordBreadcrumbInActiveContexts(breadcrumb.getType(), breadcrumb.getTimestamp().getTime(),
+            breadcrumb.getLevel(), breadcrumb.getMessage(), breadcrumb.getCategory(), breadcrumb.getData());
+    }
+
+    /**
+     * Record a breadcrumb with a message into all of this thread's active contexts, timestamped now.
+     * <p>
+     * No {@link Breadcrumb} object is created, which makes it the cheapest way to record breadcrumbs often.
+     *
+     * @param level    level of the breadcrumb.
+     * @param category category of the breadcrumb.
+     * @param message  message of the breadcrumb.
+     */
+    public static void record(String level, String category, String message) {
+        RavenContext.recordBreadcrumbInActiveContexts(null, System.currentTimeMillis(), level, message, category,
+            null);
+    }
+
+    /**
+     * Record a breadcrumb into all of this thread's active contexts, timestamped now.
+     * <p>
+     * No {@link Breadcrumb} object is created, which makes it the cheapest way to record breadcrumbs often.
+     *
+     * @param type     type of the breadcrumb, may be null.
+     * @param level    level of the breadcrumb.
+     * @param category category of the breadcrumb.
+     * @param message  message of the breadcrumb, may be null if there is data.
+     * @param data     data related to the breadcrumb, may be null if there is a message.
+     */
+    public static void record(String type, String level, String category, String message,
+                              Map<String, String> data) {
+        RavenContext.recordBreadcrumbInActiveContexts(type, System.currentTimeMillis(), level, message, category,
+            data);
     }
 
 }
@@ -0,0 +1,133 @@
+package com.getsentry.raven.event;
+
+import java.util.UUID;
+
+/**
+ * Event whose construction is finished after it has been handed over to {@link com.getsentry.raven.Raven}.
+ * <p>
+ * When the connection is an {@link com.getsentry.raven.connection.AsyncConnection}, the event is completed and
+ * built by the thread sending it instead of the thread which captured it, which keeps the cost of converting
+ * exceptions, stacktraces and extras off the application threads.
+ * <p>
+ * The {@link EventBuilder} is created upfront so that the {@link com.getsentry.raven.event.helper.EventBuilderHelper}s,
+ * which rely on the state bound to the current thread (HTTP request, {@link com.getsentry.raven.RavenContext}), can
+ * still run on the capturing thread. The values they set are kept when the event is completed, as if they had run
+ * last like with {@link com.getsentry.raven.Raven#sendEvent(EventBuilder)}.<br>
+ * Everything used by {@link #completeEvent(EventBuilder)} must be safe to access from another thread, which
+ * usually means taking a snapshot of the thread bound state (MDC, caller data) before creating the deferred event.
+ */
+public abstract class DeferredEvent {
+    private final UUID id = UUID.randomUUID();
+    private final EventBuilder eventBuilder = new EventBuilder(id);
+    private final String messageTemplate;
+    private final Throwable throwable;
+    private int sizeEstimate;
+    private volatile HeapPressureGovernor heapPressureGovernor;
+
+    /**
+     * Creates a deferred event which can't be identified before being built.
+     */
+    protected DeferredEvent() {
+        this(null, null, null);
+    }
+
+    /**
+     * Creates a deferred event identified by its level, its message template and its exception.
+     * <p>
+     * The level is set on the event builder right away so that the event can be prioritised before being built, the
+     * message template and the exception are used to compute the {@link EventSignature} of the event.
+     *
+     * @param level           level of the event, may be null.
+     * @param messageTemplate message of the event before its parameters are formatted, may be null.
+     * @param throwable       exception of the event, may be null.
+     */
+    protected DeferredEvent(Event.Level level, String messageTemplate, Throwable throwable) {
+        eventBuilder.withLevel(level);
+        this.messageTemplate = messageTemplate;
+        this.throwable = throwable;
+    }
+
+    /**
+     * Returns the identifier of the event, available before the event is built.
+     *
+     * @return the unique identifier of the future event.
+     */
+    public UUID getId() {
+        return id;
+    }
+
+    public String getMessageTemplate() {
+        return messageTemplate;
+    }
+
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * Returns a cheap estimate of the size of the event, available before the event is built.
+     * <p>
+     * Only the message template and the exception are measured, the estimate is then lower than the one of the built
+     * event.
+     *
+     * @return the estimated size of the event in bytes.
+     * @see EventSizeEstimator#estimate(String, Throwable)
+     */
+    public int getSizeEstimate() {
+        if (sizeEstimate == 0) {
+            sizeEstimate = EventSizeEstimator.estimate(messageTemplate, throwable);
+        }
+        return sizeEstimate;
+    }
+
+    /**
+     * Returns the builder of the event, for the builder helpers to run on the capturing thread.
+     *
+     * @return the event builder of the future event.
+     */
+    public EventBuilder getEventBuilder() {
+        return eventBuilder;
+    }
+
+    /**
+     * Sets the governor degrading the event when it is built, if the heap is under pressure at that time.
+     *
+     * @param heapPressureGovernor governor of the {@link com.getsentry.raven.Raven} instance sending the event.
+     */
+    public void setHeapPressureGovernor(HeapPressureGovernor heapPressureGovernor) {
+        this.heapPressureGovernor = heapPressureGovernor;
+    }
+
+    /**
+     * Completes and builds the event.
+     * <p>
+     * This method can only be called once.
+     *
+     * @return the built event, degraded if the heap is under pressure.
+     */
+    public Event build() {
+        HeapPressureGovernor governor = heapPressureGovernor;
+        if (governor != null) {
+            governor.degrade(eventBuilder);
+        }
+        // The values set by the builder helpers take precedence, as if the helpers ran last
+        eventBuilder.setKeepingValues(true);
+        try {
+            completeEvent(eventBuilder);
+        } finally {
+            eventBuilder.setKeepingValues(false);
+        }
+        Event event = eventBuilder.build();
+        return governor != null ? governor.degrade(event) : event;
+    }
+
+    /**
+     * Adds the details of the event which were deferred to the event builder.
+     * <p>
+     * This method is usually called from a different thread than the one which created the deferred event.
+     *
+     * @param builder event builder to complete; the builder helpers have already been run against it, the values
+     *                they set are kept.
+     */
+    protected abstract void completeEvent(EventBuilder builder);
+}
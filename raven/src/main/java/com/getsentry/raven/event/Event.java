@@ -1,6 +1,7 @@
 package com.getsentry.raven.event;
 
 import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.util.CompactCollections;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
@@ -104,6 +105,12 @@ public class Event implements Serializable {
      * Automatically created with a Map that is made unmodifiable by the {@link EventBuilder}.
      */
     private Map<String, SentryInterface> sentryInterfaces = new HashMap<>();
+    /**
+     * Estimated size of the serialised event in bytes, computed by the {@link EventBuilder}.
+     * <p>
+     * Not serialised, it is computed again when needed by an event read from a buffer.
+     */
+    private transient int sizeEstimate;
 
     /**
      * Creates a new Event (should be called only through {@link EventBuilder} with the specified identifier.
@@ -240,11 +247,28 @@ public class Event implements Serializable {
         this.sentryInterfaces = sentryInterfaces;
     }
 
+    /**
+     * Returns a cheap estimate of the number of bytes taken by the event once serialised.
+     *
+     * @return the estimated size of the event in bytes.
+     * @see EventSizeEstimator
+     */
+    public int getSizeEstimate() {
+        if (sizeEstimate == 0) {
+            sizeEstimate = EventSizeEstimator.estimate(this);
+        }
+        return sizeEstimate;
+    }
+
+    void setSizeEstimate(int sizeEstimate) {
+        this.sizeEstimate = sizeEstimate;
+    }
+
     @SuppressWarnings("unchecked")
     private void readObject(ObjectInputStream stream)
             throws IOException, ClassNotFoundException {
         stream.defaultReadObject();
-        extra = (Map<String, Object>) stream.readObject();
+        extra = CompactCollections.freezeMap((Map<String, Object>) stream.readObject());
     }
 
     private void writeObject(ObjectOutputStream stream)
@@ -1,6 +1,8 @@
 package com.getsentry.raven.event;
 
+import com.getsentry.raven.event.interfaces.HttpInterface;
 import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.util.CompactCollections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -10,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.Callable;
 import java.util.concurrent.FutureTask;
@@ -39,6 +42,22 @@ public class EventBuilder {
     private static final HostnameCache HOSTNAME_CACHE = new HostnameCache(HOSTNAME_CACHE_DURATION);
     private final Event event;
     private boolean alreadyBuilt = false;
+    /**
+     * Tags shared with other events, the tags added to this event are layered on top of them.
+     */
+    private Map<String, String> baseTags = Collections.emptyMap();
+    /**
+     * Extras shared with other events, the extras added to this event are layered on top of them.
+     */
+    private Map<String, Object> baseExtras = Collections.emptyMap();
+    /**
+     * Whether the breadcrumbs, extras and HTTP data added to the event are ignored.
+     */
+    private boolean detailsSkipped = false;
+    /**
+     * Whether the values already set are kept instead of being replaced, see {@link #setKeepingValues(boolean)}.
+     */
+    private boolean keepingValues = false;
 
     /**
      * Creates a new EventBuilder to prepare a new {@link Event}.
@@ -92,21 +111,26 @@ public class EventBuilder {
 
     /**
      * Ensures that every field in the {@code Event} are immutable to avoid confusion later.
+     * <p>
+     * The collections are replaced by compact frozen copies (see {@link CompactCollections}) rather than wrapped,
+     * as the built event may be kept in memory for a while (async queue, buffer) long after the builder is gone.
      *
      * @param event event to make immutable.
+     * @param baseTags shared tags on top of which the tags of the event are layered.
+     * @param baseExtras shared extras on top of which the extras of the event are layered.
      */
-    private static void makeImmutable(Event event) {
+    private static void makeImmutable(Event event, Map<String, String> baseTags, Map<String, Object> baseExtras) {
         // Make the tags unmodifiable
-        event.setTags(Collections.unmodifiableMap(event.getTags()));
+        event.setTags(CompactCollections.layerMaps(baseTags, CompactCollections.freezeMap(event.getTags())));
 
         // Make the breadcrumbs unmodifiable
-        event.setBreadcrumbs(Collections.unmodifiableList(event.getBreadcrumbs()));
+        event.setBreadcrumbs(CompactCollections.freezeList(event.getBreadcrumbs()));
 
         // Make the extra properties unmodifiable (everything in it is still mutable though)
-        event.setExtra(Collections.unmodifiableMap(event.getExtra()));
+        event.setExtra(CompactCollections.layerMaps(baseExtras, CompactCollections.freezeMap(event.getExtra())));
 
         // Make the SentryInterfaces unmodifiable
-        event.setSentryInterfaces(Collections.unmodifiableMap(event.getSentryInterfaces()));
+        event.setSentryInterfaces(CompactCollections.freezeMap(event.getSentryInterfaces()));
     }
 
     /**
@@ -116,7 +140,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withMessage(String message) {
-        event.setMessage(message);
+        if (!isKept(event.getMessage()))
+            event.setMessage(message);
         return this;
     }
 
@@ -127,7 +152,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withTimestamp(Date timestamp) {
-        event.setTimestamp(timestamp);
+        if (!isKept(event.getTimestamp()))
+            event.setTimestamp(timestamp);
         return this;
     }
 
@@ -138,7 +164,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withLevel(Event.Level level) {
-        event.setLevel(level);
+        if (!isKept(event.getLevel()))
+            event.setLevel(level);
         return this;
     }
 
@@ -149,7 +176,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withRelease(String release) {
-        event.setRelease(release);
+        if (!isKept(event.getRelease()))
+            event.setRelease(release);
         return this;
     }
 
@@ -160,7 +188,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withEnvironment(String environment) {
-        event.setEnvironment(environment);
+        if (!isKept(event.getEnvironment()))
+            event.setEnvironment(environment);
         return this;
     }
 
@@ -171,7 +200,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withLogger(String logger) {
-        event.setLogger(logger);
+        if (!isKept(event.getLogger()))
+            event.setLogger(logger);
         return this;
     }
 
@@ -182,7 +212,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withPlatform(String platform) {
-        event.setPlatform(platform);
+        if (!isKept(event.getPlatform()))
+            event.setPlatform(platform);
         return this;
     }
 
@@ -217,7 +248,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withCulprit(String culprit) {
-        event.setCulprit(culprit);
+        if (!isKept(event.getCulprit()))
+            event.setCulprit(culprit);
         return this;
     }
 
@@ -231,7 +263,24 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withTag(String tagKey, String tagValue) {
-        event.getTags().put(tagKey, tagValue);
+        if (!keepingValues || !event.getTags().containsKey(tagKey))
+            event.getTags().put(tagKey, tagValue);
+        return this;
+    }
+
+    /**
+     * Sets the tags shared by many events, such as the static tags of an appender.
+     * <p>
+     * The shared tags aren't copied into the event, the tags added with {@link #withTag(String, String)} are
+     * layered on top of them (and take precedence) when the event is built.
+     *
+     * @param tags tags shared with other events, frozen with {@link CompactCollections#freezeMap(Map)} so
+     *             that they can be reused as is.
+     * @return the current {@code EventBuilder} for chained calls.
+     */
+    public EventBuilder withBaseTags(Map<String, String> tags) {
+        if (!keepingValues || baseTags.isEmpty())
+            baseTags = CompactCollections.freezeMap(tags);
         return this;
     }
 
@@ -242,7 +291,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withBreadcrumbs(List<Breadcrumb> breadcrumbs) {
-        event.setBreadcrumbs(breadcrumbs);
+        if (!detailsSkipped && (!keepingValues || event.getBreadcrumbs().isEmpty()))
+            event.setBreadcrumbs(breadcrumbs);
         return this;
     }
 
@@ -253,7 +303,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withServerName(String serverName) {
-        event.setServerName(serverName);
+        if (!isKept(event.getServerName()))
+            event.setServerName(serverName);
         return this;
     }
 
@@ -265,7 +316,24 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withExtra(String extraName, Object extraValue) {
-        event.getExtra().put(extraName, extraValue);
+        if (!detailsSkipped && (!keepingValues || !event.getExtra().containsKey(extraName)))
+            event.getExtra().put(extraName, extraValue);
+        return this;
+    }
+
+    /**
+     * Sets the extra properties shared by many events.
+     * <p>
+     * The shared extras aren't copied into the event, the extras added with {@link #withExtra(String, Object)} are
+     * layered on top of them (and take precedence) when the event is built.
+     *
+     * @param extras extra properties shared with other events, frozen with
+     *               {@link CompactCollections#freezeMap(Map)} so that they can be reused as is.
+     * @return the current {@code EventBuilder} for chained calls.
+     */
+    public EventBuilder withBaseExtras(Map<String, Object> extras) {
+        if (!detailsSkipped && (!keepingValues || baseExtras.isEmpty()))
+            baseExtras = CompactCollections.freezeMap(extras);
         return this;
     }
 
@@ -276,6 +344,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withFingerprint(String... fingerprint) {
+        if (isKept(event.getFingerprint()))
+            return this;
         List<String> list = new ArrayList<>(fingerprint.length);
         Collections.addAll(list, fingerprint);
         event.setFingerprint(list);
@@ -289,7 +359,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withFingerprint(List<String> fingerprint) {
-        event.setFingerprint(fingerprint);
+        if (!isKept(event.getFingerprint()))
+            event.setFingerprint(fingerprint);
         return this;
     }
 
@@ -312,7 +383,8 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withChecksum(String checksum) {
-        event.setChecksum(checksum);
+        if (!isKept(event.getChecksum()))
+            event.setChecksum(checksum);
         return this;
     }
 
@@ -341,11 +413,71 @@ public class EventBuilder {
      * @return the current {@code EventBuilder} for chained calls.
      */
     public EventBuilder withSentryInterface(SentryInterface sentryInterface, boolean replace) {
-        if (replace || !event.getSentryInterfaces().containsKey(sentryInterface.getInterfaceName()))
+        if (detailsSkipped && sentryInterface instanceof HttpInterface)
+            return this;
+        if ((replace && !keepingValues) || !event.getSentryInterfaces().containsKey(sentryInterface.getInterfaceName()))
             event.getSentryInterfaces().put(sentryInterface.getInterfaceName(), sentryInterface);
         return this;
     }
 
+    /**
+     * Removes the breadcrumbs, extras and HTTP data of the event and ignores the ones added from now on, to avoid
+     * gathering them when they wouldn't be sent anyway.
+     *
+     * @return the current {@code EventBuilder} for chained calls.
+     */
+    public EventBuilder withoutDetails() {
+        detailsSkipped = true;
+        event.setBreadcrumbs(Collections.<Breadcrumb>emptyList());
+        event.getExtra().clear();
+        baseExtras = Collections.emptyMap();
+        event.getSentryInterfaces().remove(HttpInterface.HTTP_INTERFACE);
+        return this;
+    }
+
+    /**
+     * Returns whether the breadcrumbs, extras and HTTP data added to the event are ignored.
+     *
+     * @return true if {@link #withoutDetails()} was called.
+     */
+    public boolean isSkippingDetails() {
+        return detailsSkipped;
+    }
+
+    /**
+     * Sets whether the values already set are kept by the {@code with*} methods instead of being replaced.
+     * <p>
+     * Used to complete a {@link DeferredEvent} after its builder helpers ran, so that the values set by the helpers
+     * take precedence as if they had run last.
+     *
+     * @param keepingValues true to only set the values which aren't set yet.
+     */
+    void setKeepingValues(boolean keepingValues) {
+        this.keepingValues = keepingValues;
+    }
+
+    private boolean isKept(Object currentValue) {
+        return keepingValues && currentValue != null;
+    }
+
+    /**
+     * Returns the level set so far, allowing to decide whether to send the event before finishing it.
+     *
+     * @return the level of the event, null if it hasn't been set.
+     */
+    public Event.Level getLevel() {
+        return event.getLevel();
+    }
+
+    /**
+     * Returns the logger set so far, allowing to decide whether to send the event before finishing it.
+     *
+     * @return the logger of the event, null if it hasn't been set.
+     */
+    public String getLogger() {
+        return event.getLogger();
+    }
+
     /**
      * Finalises the {@link Event} and returns it.
      * <p>
@@ -358,7 +490,8 @@ public class EventBuilder {
             throw new IllegalStateException("A message can't be built twice");
 
         autoSetMissingValues(event);
-        makeImmutable(event);
+        makeImmutable(event, baseTags, baseExtras);
+        event.setSizeEstimate(EventSizeEstimator.estimate(event));
 
         // Lock it only when everything has been set, in case of exception it should be possible to try to build again.
         alreadyBuilt = true;
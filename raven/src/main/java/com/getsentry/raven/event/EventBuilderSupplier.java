@@ -0,0 +1,16 @@
+package com.getsentry.raven.event;
+
+/**
+ * Lazily creates the {@link EventBuilder} of an event, so that the work of gathering its content is only done if
+ * the event is going to be sent.
+ *
+ * @see com.getsentry.raven.Raven#sendEvent(Event.Level, String, EventBuilderSupplier)
+ */
+public interface EventBuilderSupplier {
+    /**
+     * Creates the builder of the event.
+     *
+     * @return the builder of the event, null to not send any event.
+     */
+    EventBuilder get();
+}
@@ -0,0 +1,407 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Suppresses the duplicates of an event occurring within a time window, before they are built and queued.
+ * <p>
+ * Events are identified by their {@link EventSignature}. The first occurrence of a signature is sent and opens a
+ * window during which the following occurrences are only counted; when the window closes, a single summary event,
+ * the first duplicate with a {@value #REPEAT_COUNT} extra, is sent in their place.
+ * <p>
+ * The signatures are kept in a bounded LRU split in segments locked independently, evicting a signature sends its
+ * summary right away. A window closed before its first duplicate is handed over sends its summary as soon as it is.
+ */
+public final class EventDeduplicator implements Closeable {
+    /**
+     * Name of the extra holding the number of duplicates represented by a summary event.
+     */
+    public static final String REPEAT_COUNT = "repeat_count";
+    /**
+     * Default duration of the window, in milliseconds.
+     */
+    public static final long DEFAULT_WINDOW = TimeUnit.MINUTES.toMillis(1);
+    /**
+     * Default maximum number of signatures tracked.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+    private static final Logger logger = LoggerFactory.getLogger(EventDeduplicator.class);
+    private static final int SEGMENTS = 16;
+    /**
+     * Number of windows after which a closed window still waiting for its summary is given up.
+     */
+    private static final int SUMMARY_WAIT_WINDOWS = 2;
+    private final EventSignature eventSignature;
+    private final long windowNanos;
+    private final Segment[] segments;
+    /**
+     * Sweeper closing the expired windows, created in a verbose way to use daemon threads so that it doesn't keep
+     * the JVM running after main() exits.
+     */
+    private final ScheduledExecutorService executorService =
+        Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "raven-dedup-sweeper");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    private final AtomicLong lostDuplicates = new AtomicLong();
+    private volatile SummaryCallback summaryCallback;
+
+    /**
+     * Creates a deduplicator.
+     *
+     * @param eventSignature calculator of the signatures of the events.
+     * @param window         duration of the window during which the duplicates are suppressed, in milliseconds.
+     * @param capacity       maximum number of signatures tracked.
+     */
+    public EventDeduplicator(EventSignature eventSignature, long window, int capacity) {
+        this.eventSignature = eventSignature;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(window);
+        this.segments = new Segment[SEGMENTS];
+        int segmentCapacity = Math.max(1, (capacity + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+        executorService.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sendSummaries(closeWindows(false));
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Computes the signature of an event which isn't built yet.
+     *
+     * @param deferredEvent event to identify.
+     * @return the signature, {@link EventSignature#NO_SIGNATURE} if the event can't be identified.
+     */
+    public long getSignature(DeferredEvent deferredEvent) {
+        return eventSignature.compute(deferredEvent.getMessageTemplate(), deferredEvent.getThrowable());
+    }
+
+    /**
+     * Computes the signature of a built event.
+     *
+     * @param event event to identify.
+     * @return the signature, {@link EventSignature#NO_SIGNATURE} if the event can't be identified.
+     */
+    public long getSignature(Event event) {
+        return eventSignature.compute(event);
+    }
+
+    /**
+     * Records an occurrence of an event and decides what to do with it.
+     *
+     * @param signature signature of the event.
+     * @return the decision for this occurrence, {@link Decision#SEND} if the event can't be identified.
+     */
+    public Decision offer(long signature) {
+        if (signature == EventSignature.NO_SIGNATURE) {
+            return Decision.SEND;
+        }
+        Segment segment = segmentFor(signature);
+        Entry expired = null;
+        Entry evicted = null;
+        Decision decision;
+        synchronized (segment) {
+            long now = System.nanoTime();
+            Entry entry = segment.get(signature);
+            if (entry == null || now - entry.windowStart >= windowNanos) {
+                if (entry != null) {
+                    expired = closeWindow(segment, signature, entry);
+                }
+                segment.put(signature, new Entry(now));
+                if (segment.size() > segment.capacity) {
+                    Iterator<Map.Entry<Long, Entry>> iterator = segment.entrySet().iterator();
+                    Map.Entry<Long, Entry> eldest = iterator.next();
+                    iterator.remove();
+                    evicted = closeWindow(segment, eldest.getKey(), eldest.getValue());
+                }
+                decision = Decision.SEND;
+            } else {
+                entry.count++;
+                if (entry.count == 1) {
+                    entry.awaitingSummary = true;
+                    decision = Decision.SUMMARIZE;
+                } else {
+                    decision = Decision.DROP;
+                }
+            }
+        }
+        if (expired != null) {
+            sendSummary(expired);
+        }
+        if (evicted != null) {
+            sendSummary(evicted);
+        }
+        return decision;
+    }
+
+    /**
+     * Hands over the first duplicate of a signature, sent with the number of duplicates when the window closes.
+     *
+     * @param signature signature of the event.
+     * @param summary   event to send as the summary, whose builder helpers have already run.
+     */
+    public void summarize(long signature, DeferredEvent summary) {
+        Segment segment = segmentFor(signature);
+        Entry closed;
+        synchronized (segment) {
+            closed = segment.closedWindows.remove(signature);
+            if (closed == null) {
+                Entry entry = segment.get(signature);
+                if (entry != null && entry.awaitingSummary) {
+                    entry.summary = summary;
+                    entry.awaitingSummary = false;
+                    return;
+                }
+            }
+        }
+        if (closed != null) {
+            closed.summary = summary;
+            sendSummary(closed);
+            return;
+        }
+        logger.debug("The window of the event signature {} closed before its summary was available.", signature);
+    }
+
+    /**
+     * Creates a summary event from a built event, to be handed over with {@link #summarize(long, DeferredEvent)}.
+     *
+     * @param event first duplicate of a signature.
+     * @return a copy of the event, with a new identifier.
+     */
+    public static DeferredEvent summaryOf(final Event event) {
+        return new DeferredEvent(event.getLevel(), null, null) {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                builder.withMessage(event.getMessage())
+                    .withTimestamp(event.getTimestamp())
+                    .withLevel(event.getLevel())
+                    .withLogger(event.getLogger())
+                    .withPlatform(event.getPlatform())
+                    .withCulprit(event.getCulprit())
+                    .withBaseTags(event.getTags())
+                    .withBreadcrumbs(event.getBreadcrumbs())
+                    .withServerName(event.getServerName())
+                    .withRelease(event.getRelease())
+                    .withEnvironment(event.getEnvironment())
+                    .withBaseExtras(event.getExtra())
+                    .withChecksum(event.getChecksum());
+                if (event.getFingerprint() != null) {
+                    builder.withFingerprint(event.getFingerprint());
+                }
+                for (Map.Entry<String, SentryInterface> sentryInterface : event.getSentryInterfaces().entrySet()) {
+                    builder.withSentryInterface(sentryInterface.getValue());
+                }
+            }
+        };
+    }
+
+    /**
+     * Sets the callback sending the summary events.
+     *
+     * @param summaryCallback callback sending the summaries, the summaries are dropped if it is null.
+     */
+    public void setSummaryCallback(SummaryCallback summaryCallback) {
+        this.summaryCallback = summaryCallback;
+    }
+
+    /**
+     * Returns the number of duplicates which were never reported, because the first duplicate of their window wasn't
+     * handed over in time.
+     *
+     * @return the number of duplicates lost.
+     */
+    public long getLostDuplicateCount() {
+        return lostDuplicates.get();
+    }
+
+    /**
+     * Stops the sweeper and sends the summaries of all the open windows.
+     * <p>
+     * The summaries of the windows still waiting for their first duplicate are sent when it is handed over.
+     */
+    @Override
+    public void close() {
+        executorService.shutdownNow();
+        sendSummaries(closeWindows(true));
+    }
+
+    private Segment segmentFor(long signature) {
+        return segments[(int) (signature ^ (signature >>> Integer.SIZE)) & (SEGMENTS - 1)];
+    }
+
+    /**
+     * Removes the expired entries (or every entry) and returns those with duplicates to summarize.
+     */
+    private List<Entry> closeWindows(boolean all) {
+        List<Entry> closed = new ArrayList<>();
+        long now = System.nanoTime();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                Iterator<Map.Entry<Long, Entry>> iterator = segment.entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Map.Entry<Long, Entry> entry = iterator.next();
+                    Entry window = entry.getValue();
+                    if (!all && now - window.windowStart < windowNanos) {
+                        continue;
+                    }
+                    iterator.remove();
+                    Entry summarized = closeWindow(segment, entry.getKey(), window);
+                    if (summarized != null) {
+                        closed.add(summarized);
+                    }
+                }
+                if (!all) {
+                    giveUpSummaries(segment, now);
+                }
+            }
+        }
+        return closed;
+    }
+
+    /**
+     * Returns the entry of a window removed from a segment if its summary can be sent, or keeps it aside until its
+     * first duplicate is handed over.
+     */
+    private static Entry closeWindow(Segment segment, long signature, Entry entry) {
+        if (entry.count == 0) {
+            return null;
+        } else if (entry.awaitingSummary) {
+            // The summary of an older window is handed over first, it reports the duplicates of both
+            Entry previous = segment.closedWindows.get(signature);
+            if (previous != null) {
+                previous.count += entry.count;
+            } else {
+                segment.closedWindows.put(signature, entry);
+            }
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Forgets the closed windows whose first duplicate was never handed over, counting their duplicates as lost.
+     */
+    private void giveUpSummaries(Segment segment, long now) {
+        Iterator<Map.Entry<Long, Entry>> iterator = segment.closedWindows.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Entry> entry = iterator.next();
+            if (now - entry.getValue().windowStart >= SUMMARY_WAIT_WINDOWS * windowNanos) {
+                iterator.remove();
+                lostDuplicates.addAndGet(entry.getValue().count);
+                logger.debug("The summary of {} duplicates of the event signature {} was never handed over.",
+                    entry.getValue().count, entry.getKey());
+            }
+        }
+    }
+
+    private void sendSummaries(List<Entry> entries) {
+        for (Entry entry : entries) {
+            sendSummary(entry);
+        }
+    }
+
+    private void sendSummary(Entry entry) {
+        SummaryCallback callback = summaryCallback;
+        if (entry.summary == null || callback == null) {
+            lostDuplicates.addAndGet(entry.count);
+            return;
+        }
+        entry.summary.getEventBuilder().withExtra(REPEAT_COUNT, entry.count);
+        try {
+            callback.sendSummary(entry.summary);
+        } catch (Exception e) {
+            logger.error("An exception occurred while sending a summary of duplicate events.", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EventDeduplicator{"
+            + "windowNanos=" + windowNanos
+            + '}';
+    }
+
+    /**
+     * Decision taken for an occurrence of an event.
+     */
+    public enum Decision {
+        /**
+         * The event is the first occurrence of its signature within the window and must be sent.
+         */
+        SEND,
+        /**
+         * The event is the first duplicate within the window, it must be handed over with
+         * {@link #summarize(long, DeferredEvent)} to be sent when the window closes.
+         */
+        SUMMARIZE,
+        /**
+         * The event is a duplicate already counted in the summary, it must be dropped.
+         */
+        DROP
+    }
+
+    /**
+     * Callback sending the summary events once the window of their signature is closed.
+     */
+    public interface SummaryCallback {
+        /**
+         * Sends a summary event.
+         *
+         * @param summary first duplicate of a signature, with the {@value EventDeduplicator#REPEAT_COUNT} extra.
+         */
+        void sendSummary(DeferredEvent summary);
+    }
+
+    /**
+     * Window of a signature.
+     */
+    private static final class Entry {
+        private final long windowStart;
+        private int count;
+        private boolean awaitingSummary;
+        private DeferredEvent summary;
+
+        private Entry(long windowStart) {
+            this.windowStart = windowStart;
+        }
+    }
+
+    /**
+     * Part of the LRU of the signatures, guarded by its own monitor.
+     */
+    private static final class Segment extends LinkedHashMap<Long, Entry> {
+        private static final float LOAD_FACTOR = 0.75f;
+        private final int capacity;
+        /**
+         * Windows closed while their first duplicate was being prepared, until it is handed over.
+         */
+        private final Map<Long, Entry> closedWindows = new HashMap<>();
+
+        private Segment(int capacity) {
+            super(capacity, LOAD_FACTOR, true);
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.util.LoggerPrefixMap;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which events are sent to Sentry, before they are built.
+ * <p>
+ * The sample rate of an event is the rate of its level (or the global rate if its level has no rate) multiplied by
+ * the rate of its logger. The rate of a logger is the one configured for its longest prefix, 1 if there is none:
+ * with the global rate at 1, "warning" at 0.01 and "com.example.noisy" at 0.1, 1% of the warnings are sent, all the
+ * errors except those of {@code com.example.noisy} loggers of which 10% are sent.
+ * <p>
+ * Samplers are immutable and meant to be checked for every event, the rates of each level are precomputed and the
+ * rates of the loggers are cached.
+ */
+public final class EventSampler {
+    private static final Event.Level[] LEVELS = Event.Level.values();
+    /**
+     * Sampler keeping every event.
+     * <p>
+     * Declared after {@link #LEVELS}, which the constructor uses.
+     */
+    @SuppressWarnings("checkstyle:declarationorder")
+    public static final EventSampler SAMPLE_ALL = new EventSampler(1, Collections.<Event.Level, Double>emptyMap(),
+        Collections.<String, Double>emptyMap());
+    private final double sampleRate;
+    /**
+     * Rate of each level, indexed by {@link Event.Level#ordinal()}, the global rate for the levels without rate.
+     */
+    private final double[] levelSampleRates;
+    private final LoggerPrefixMap<Double> loggerSampleRates;
+    /**
+     * Whether every rate is 1, in which case no random number needs to be drawn.
+     */
+    private final boolean sampleAll;
+
+    /**
+     * Creates a sampler.
+     *
+     * @param sampleRate        global rate between 0 and 1, used for the levels without rate.
+     * @param levelSampleRates  rates between 0 and 1 of some levels.
+     * @param loggerSampleRates rates between 0 and 1 by logger name prefix.
+     * @throws IllegalArgumentException if a rate isn't between 0 and 1.
+     */
+    public EventSampler(double sampleRate, Map<Event.Level, Double> levelSampleRates,
+                        Map<String, Double> loggerSampleRates) {
+        this.sampleRate = checkRate(sampleRate);
+        this.levelSampleRates = new double[LEVELS.length];
+        boolean allOnes = sampleRate == 1;
+        for (Event.Level level : LEVELS) {
+            Double levelSampleRate = levelSampleRates.get(level);
+            double rate = levelSampleRate != null ? checkRate(levelSampleRate) : sampleRate;
+            this.levelSampleRates[level.ordinal()] = rate;
+            allOnes &= rate == 1;
+        }
+        for (Double loggerSampleRate : loggerSampleRates.values()) {
+            allOnes &= checkRate(loggerSampleRate) == 1;
+        }
+        this.loggerSampleRates = new LoggerPrefixMap<>(loggerSampleRates, 1d);
+        this.sampleAll = allOnes;
+    }
+
+    private static double checkRate(double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException("The sample rate must be between 0 and 1, got " + rate);
+        }
+        return rate;
+    }
+
+    /**
+     * Decides whether an event with the given level and logger is sent.
+     *
+     * @param level  level of the event, may be null.
+     * @param logger logger of the event, may be null.
+     * @return true if the event should be built and sent.
+     */
+    public boolean isSampled(Event.Level level, String logger) {
+        if (sampleAll) {
+            return true;
+        }
+        double rate = getSampleRate(level, logger);
+        if (rate >= 1) {
+            return true;
+        } else if (rate <= 0) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    /**
+     * Returns the sample rate of the events with the given level and logger.
+     *
+     * @param level  level of the event, may be null.
+     * @param logger logger of the event, may be null.
+     * @return the rate between 0 and 1.
+     */
+    public double getSampleRate(Event.Level level, String logger) {
+        double levelRate = level != null ? levelSampleRates[level.ordinal()] : sampleRate;
+        return loggerSampleRates.isEmpty() ? levelRate : levelRate * loggerSampleRates.get(logger);
+    }
+
+    @Override
+    public String toString() {
+        return "EventSampler{"
+            + "sampleRate=" + sampleRate
+            + ", loggerSampleRates=" + loggerSampleRates
+            + '}';
+    }
+}
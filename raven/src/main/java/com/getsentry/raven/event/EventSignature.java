@@ -0,0 +1,166 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+
+import java.util.Collection;
+import java.util.Deque;
+
+/**
+ * Computes a cheap signature identifying the occurrences of the same problem, before or after building the event.
+ * <p>
+ * The signature is a 64 bits hash of the class of the exception, of the top in-app frames of its stacktrace and of
+ * the template of the message (the message before its parameters are formatted), so that the same exception thrown
+ * from the same place with different parameters has the same signature. Neither the message is formatted nor the
+ * exception converted to compute it.
+ */
+public final class EventSignature {
+    /**
+     * Signature of the events which can't be identified (no message nor exception).
+     */
+    public static final long NO_SIGNATURE = 0;
+    /**
+     * Default number of in-app frames taken into account.
+     */
+    public static final int DEFAULT_FRAMES = 3;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char SEPARATOR = '\n';
+    private final int frames;
+    private final String[] notInAppFrames;
+
+    /**
+     * Creates a signature calculator.
+     *
+     * @param frames         number of in-app frames of the stacktrace taken into account.
+     * @param notInAppFrames prefixes of the classes which aren't part of the application.
+     */
+    public EventSignature(int frames, Collection<String> notInAppFrames) {
+        this.frames = frames;
+        this.notInAppFrames = notInAppFrames.toArray(new String[notInAppFrames.size()]);
+    }
+
+    /**
+     * Computes the signature of an event which isn't built yet.
+     *
+     * @param messageTemplate message of the event before its parameters are formatted, may be null.
+     * @param throwable       exception of the event, may be null.
+     * @return the signature, {@link #NO_SIGNATURE} if both the message and the exception are null.
+     */
+    public long compute(String messageTemplate, Throwable throwable) {
+        if (messageTemplate == null && throwable == null) {
+            return NO_SIGNATURE;
+        }
+        long hash = hash(FNV_OFFSET_BASIS, messageTemplate);
+        if (throwable != null) {
+            Package exceptionPackage = throwable.getClass().getPackage();
+            if (exceptionPackage != null) {
+                hash = hashChars(hash, exceptionPackage.getName());
+                hash = hashChar(hash, '.');
+            }
+            hash = hash(hash, throwable.getClass().getSimpleName());
+            hash = hashFrames(hash, throwable.getStackTrace());
+        }
+        return nonZero(hash);
+    }
+
+    /**
+     * Computes the signature of a built event.
+     * <p>
+     * The signature is the same as the one computed by {@link #compute(String, Throwable)} for the message template
+     * and the exception the event has been built from. The outermost exception of the chain is the first one of the
+     * {@link ExceptionInterface} built from a {@code Throwable}, but the appenders converting the exceptions of their
+     * logging system may stack the chain the other way round; the outermost exception is then the last one, the
+     * only one without frames in common with an enclosing exception.
+     *
+     * @param event built event.
+     * @return the signature, {@link #NO_SIGNATURE} if the event has neither a message nor an exception.
+     */
+    public long compute(Event event) {
+        String messageTemplate = event.getMessage();
+        SentryInterface messageInterface = event.getSentryInterfaces().get(MessageInterface.MESSAGE_INTERFACE);
+        if (messageInterface instanceof MessageInterface) {
+            messageTemplate = ((MessageInterface) messageInterface).getMessage();
+        }
+        SentryException exception = null;
+        SentryInterface exceptionInterface = event.getSentryInterfaces().get(ExceptionInterface.EXCEPTION_INTERFACE);
+        if (exceptionInterface instanceof ExceptionInterface) {
+            exception = outermostException(((ExceptionInterface) exceptionInterface).getExceptions());
+        }
+        if (messageTemplate == null && exception == null) {
+            return NO_SIGNATURE;
+        }
+        long hash = hash(FNV_OFFSET_BASIS, messageTemplate);
+        if (exception != null) {
+            if (!SentryException.DEFAULT_PACKAGE_NAME.equals(exception.getExceptionPackageName())) {
+                hash = hashChars(hash, exception.getExceptionPackageName());
+                hash = hashChar(hash, '.');
+            }
+            hash = hash(hash, exception.getExceptionClassName());
+            if (exception.getStackTraceInterface() != null) {
+                hash = hashFrames(hash, exception.getStackTraceInterface().getStackTrace());
+            }
+        }
+        return nonZero(hash);
+    }
+
+    private static SentryException outermostException(Deque<SentryException> exceptions) {
+        SentryException first = exceptions.peekFirst();
+        if (first != null && first.getStackTraceInterface() != null
+            && first.getStackTraceInterface().getFramesCommonWithEnclosing() > 0) {
+            return exceptions.peekLast();
+        }
+        return first;
+    }
+
+    private long hashFrames(long hash, StackTraceElement[] stackTrace) {
+        int remainingFrames = frames;
+        for (int i = 0; i < stackTrace.length && remainingFrames > 0; i++) {
+            StackTraceElement frame = stackTrace[i];
+            if (isInApp(frame.getClassName())) {
+                hash = hash(hash, frame.getClassName());
+                hash = hash(hash, frame.getMethodName());
+                hash = hashInt(hash, frame.getLineNumber());
+                remainingFrames--;
+            }
+        }
+        return hash;
+    }
+
+    private boolean isInApp(String className) {
+        for (String notInAppFrame : notInAppFrames) {
+            if (className.startsWith(notInAppFrame)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static long hash(long hash, String value) {
+        return hashChar(hashChars(hash, value), SEPARATOR);
+    }
+
+    private static long hashChars(long hash, String value) {
+        if (value == null) {
+            return hash;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            hash = hashChar(hash, value.charAt(i));
+        }
+        return hash;
+    }
+
+    private static long hashInt(long hash, int value) {
+        return hashChar(hashChar(hash, (char) (value >>> Character.SIZE)), (char) value);
+    }
+
+    private static long hashChar(long hash, char c) {
+        return (hash ^ c) * FNV_PRIME;
+    }
+
+    private static long nonZero(long hash) {
+        return hash != NO_SIGNATURE ? hash : 1;
+    }
+}
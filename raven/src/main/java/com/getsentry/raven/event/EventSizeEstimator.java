@@ -0,0 +1,180 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cheap estimate of the number of bytes an event takes once serialised, used to budget the queues by size rather
+ * than by number of events.
+ * <p>
+ * The estimate only adds up the length of the strings and a fixed cost per frame, breadcrumb and entry, it doesn't
+ * marshal anything. It is expected to be in the right order of magnitude, not exact.
+ */
+public final class EventSizeEstimator {
+    /**
+     * Bytes taken by the identifier, timestamp, platform, SDK and structure of any event.
+     */
+    static final int EVENT_OVERHEAD = 512;
+    /**
+     * Bytes taken by a stack frame: module, function, filename, line number and structure.
+     */
+    static final int FRAME_SIZE = 160;
+    /**
+     * Bytes taken by the structure of a breadcrumb, without its message and data.
+     */
+    static final int BREADCRUMB_OVERHEAD = 96;
+    /**
+     * Bytes taken by the structure of an entry in a map or a list.
+     */
+    static final int ENTRY_OVERHEAD = 8;
+    /**
+     * Bytes assumed for an extra value which isn't a string.
+     */
+    static final int OBJECT_SIZE = 64;
+    /**
+     * Bytes assumed for an interface which isn't known.
+     */
+    static final int INTERFACE_SIZE = 256;
+    /**
+     * Maximum number of causes measured, which also protects against circular causes.
+     */
+    private static final int MAX_CAUSES = 16;
+
+    // Hide the constructor.
+    private EventSizeEstimator() {
+
+    }
+
+    /**
+     * Estimates the size of a built event.
+     *
+     * @param event event to measure.
+     * @return the estimated number of bytes of the serialised event.
+     */
+    public static int estimate(Event event) {
+        long size = EVENT_OVERHEAD
+            + length(event.getMessage())
+            + length(event.getLogger())
+            + length(event.getCulprit())
+            + length(event.getRelease())
+            + length(event.getEnvironment())
+            + length(event.getServerName())
+            + length(event.getChecksum())
+            + length(event.getFingerprint())
+            + stringMapLength(event.getTags());
+        Map<String, Object> extra = event.getExtra();
+        if (extra != null) {
+            for (Map.Entry<String, Object> entry : extra.entrySet()) {
+                Object value = entry.getValue();
+                size += ENTRY_OVERHEAD + length(entry.getKey())
+                    + (value instanceof String ? ((String) value).length() : OBJECT_SIZE);
+            }
+        }
+        List<Breadcrumb> breadcrumbs = event.getBreadcrumbs();
+        if (breadcrumbs != null) {
+            for (Breadcrumb breadcrumb : breadcrumbs) {
+                size += BREADCRUMB_OVERHEAD + length(breadcrumb.getMessage()) + length(breadcrumb.getCategory())
+                    + stringMapLength(breadcrumb.getData());
+            }
+        }
+        Map<String, SentryInterface> sentryInterfaces = event.getSentryInterfaces();
+        if (sentryInterfaces != null) {
+            for (SentryInterface sentryInterface : sentryInterfaces.values()) {
+                size += estimate(sentryInterface);
+            }
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Estimates the size of an event which isn't built yet from its message template and its exception.
+     * <p>
+     * The parameters of the message and the details added when the event is completed aren't known, the estimate is
+     * then lower than the one of the built event.
+     *
+     * @param messageTemplate message of the event before its parameters are formatted, may be null.
+     * @param throwable       exception of the event, may be null.
+     * @return the estimated number of bytes of the serialised event.
+     */
+    public static int estimate(String messageTemplate, Throwable throwable) {
+        long size = EVENT_OVERHEAD + 2L * length(messageTemplate);
+        int causes = 0;
+        while (throwable != null && causes++ < MAX_CAUSES) {
+            size += ENTRY_OVERHEAD + length(throwable.getMessage()) + throwable.getClass().getName().length()
+                + (long) FRAME_SIZE * throwable.getStackTrace().length;
+            throwable = throwable.getCause();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private static long estimate(SentryInterface sentryInterface) {
+        if (sentryInterface instanceof ExceptionInterface) {
+            long size = 0;
+            for (SentryException exception : ((ExceptionInterface) sentryInterface).getExceptions()) {
+                size += ENTRY_OVERHEAD + length(exception.getExceptionMessage())
+                    + length(exception.getExceptionClassName()) + length(exception.getExceptionPackageName())
+                    + estimate(exception.getStackTraceInterface());
+            }
+            return size;
+        } else if (sentryInterface instanceof StackTraceInterface) {
+            StackTraceInterface stackTraceInterface = (StackTraceInterface) sentryInterface;
+            return (long) FRAME_SIZE * stackTraceInterface.getStackTrace().length;
+        } else if (sentryInterface instanceof MessageInterface) {
+            MessageInterface messageInterface = (MessageInterface) sentryInterface;
+            return length(messageInterface.getMessage()) + length(messageInterface.getParameters())
+                + length(messageInterface.getFormatted());
+        } else if (sentryInterface instanceof HttpInterface) {
+            HttpInterface httpInterface = (HttpInterface) sentryInterface;
+            return INTERFACE_SIZE + length(httpInterface.getRequestUrl()) + length(httpInterface.getQueryString())
+                + stringMapLength(httpInterface.getCookies()) + multiMapLength(httpInterface.getHeaders())
+                + multiMapLength(httpInterface.getParameters());
+        }
+        return INTERFACE_SIZE;
+    }
+
+    private static long estimate(StackTraceInterface stackTraceInterface) {
+        return stackTraceInterface != null ? (long) FRAME_SIZE * stackTraceInterface.getStackTrace().length : 0;
+    }
+
+    private static int length(String string) {
+        return string != null ? string.length() : 0;
+    }
+
+    private static long length(Collection<String> strings) {
+        long size = 0;
+        if (strings != null) {
+            for (String string : strings) {
+                size += ENTRY_OVERHEAD + length(string);
+            }
+        }
+        return size;
+    }
+
+    private static long stringMapLength(Map<String, String> map) {
+        long size = 0;
+        if (map != null) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                size += ENTRY_OVERHEAD + length(entry.getKey()) + length(entry.getValue());
+            }
+        }
+        return size;
+    }
+
+    private static long multiMapLength(Map<String, Collection<String>> map) {
+        long size = 0;
+        if (map != null) {
+            for (Map.Entry<String, Collection<String>> entry : map.entrySet()) {
+                size += ENTRY_OVERHEAD + length(entry.getKey()) + length(entry.getValue());
+            }
+        }
+        return size;
+    }
+}
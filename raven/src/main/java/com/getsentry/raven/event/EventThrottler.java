@@ -0,0 +1,165 @@
+package com.getsentry.raven.event;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate of the events sharing the same {@link EventSignature}, before they are built.
+ * <p>
+ * Each signature gets a token bucket holding up to {@code burst} tokens and refilled with {@code rate} tokens per
+ * second; an event consumes a token and is dropped if there is none left. A single hot error is then limited to its
+ * own budget and can't fill the queue of the connection at the expense of the rare ones.
+ * <p>
+ * The buckets are kept in a bounded LRU split in stripes locked independently. The number of events dropped is
+ * kept with the bucket of each signature, it is lost when the bucket is evicted.
+ */
+public final class EventThrottler {
+    /**
+     * Default number of events of a signature which can be sent in a burst.
+     */
+    public static final int DEFAULT_BURST = 10;
+    /**
+     * Default maximum number of signatures tracked.
+     */
+    public static final int DEFAULT_CAPACITY = 1000;
+    private static final int STRIPES = 16;
+    private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private final EventSignature eventSignature;
+    private final double tokensPerNano;
+    private final double burst;
+    private final Stripe[] stripes;
+
+    /**
+     * Creates a throttler.
+     *
+     * @param eventSignature calculator of the signatures of the events.
+     * @param rate           number of events per second allowed for each signature.
+     * @param burst          number of events of a signature which can be sent in a burst.
+     * @param capacity       maximum number of signatures tracked.
+     */
+    public EventThrottler(EventSignature eventSignature, double rate, int burst, int capacity) {
+        if (rate <= 0 || burst < 1) {
+            throw new IllegalArgumentException("The rate must be positive and the burst at least 1, got rate="
+                + rate + " and burst=" + burst);
+        }
+        this.eventSignature = eventSignature;
+        this.tokensPerNano = rate / NANOS_PER_SECOND;
+        this.burst = burst;
+        this.stripes = new Stripe[STRIPES];
+        int stripeCapacity = Math.max(1, (capacity + STRIPES - 1) / STRIPES);
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(stripeCapacity);
+        }
+    }
+
+    /**
+     * Consumes a token for an event which isn't built yet.
+     *
+     * @param messageTemplate message of the event before its parameters are formatted, may be null.
+     * @param throwable       exception of the event, may be null.
+     * @return true if the event can be built and sent, false if it must be dropped.
+     */
+    public boolean tryAcquire(String messageTemplate, Throwable throwable) {
+        long signature = eventSignature.compute(messageTemplate, throwable);
+        if (signature == EventSignature.NO_SIGNATURE) {
+            return true;
+        }
+        Stripe stripe = stripes[(int) (signature ^ (signature >>> Integer.SIZE)) & (STRIPES - 1)];
+        synchronized (stripe) {
+            long now = System.nanoTime();
+            Bucket bucket = stripe.get(signature);
+            if (bucket == null) {
+                bucket = new Bucket(describe(messageTemplate, throwable), burst, now);
+                stripe.put(signature, bucket);
+                if (stripe.size() > stripe.capacity) {
+                    Iterator<Bucket> iterator = stripe.values().iterator();
+                    iterator.next();
+                    iterator.remove();
+                }
+            } else {
+                bucket.tokens = Math.min(burst, bucket.tokens + (now - bucket.lastRefill) * tokensPerNano);
+                bucket.lastRefill = now;
+            }
+            if (bucket.tokens >= 1) {
+                bucket.tokens--;
+                return true;
+            }
+            bucket.dropped++;
+            return false;
+        }
+    }
+
+    private static String describe(String messageTemplate, Throwable throwable) {
+        if (throwable == null) {
+            return messageTemplate;
+        }
+        String exceptionClassName = throwable.getClass().getName();
+        return messageTemplate != null ? exceptionClassName + ": " + messageTemplate : exceptionClassName;
+    }
+
+    /**
+     * Returns the number of events dropped for each signature currently tracked.
+     * <p>
+     * Signatures are described by their exception class and message template, the counts of signatures with the
+     * same description are added up.
+     *
+     * @return an unmodifiable snapshot of the number of dropped events by signature, without the signatures which
+     * haven't dropped any event.
+     */
+    public Map<String, Long> getDroppedCounts() {
+        Map<String, Long> droppedCounts = new HashMap<>();
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                for (Bucket bucket : stripe.values()) {
+                    if (bucket.dropped > 0) {
+                        Long dropped = droppedCounts.get(bucket.description);
+                        droppedCounts.put(bucket.description, dropped != null ? dropped + bucket.dropped
+                            : bucket.dropped);
+                    }
+                }
+            }
+        }
+        return Collections.unmodifiableMap(droppedCounts);
+    }
+
+    @Override
+    public String toString() {
+        return "EventThrottler{"
+            + "rate=" + tokensPerNano * NANOS_PER_SECOND
+            + ", burst=" + burst
+            + '}';
+    }
+
+    /**
+     * Token bucket of a signature.
+     */
+    private static final class Bucket {
+        private final String description;
+        private double tokens;
+        private long lastRefill;
+        private long dropped;
+
+        private Bucket(String description, double tokens, long lastRefill) {
+            this.description = description;
+            this.tokens = tokens;
+            this.lastRefill = lastRefill;
+        }
+    }
+
+    /**
+     * Part of the LRU of the buckets, guarded by its own monitor.
+     */
+    private static final class Stripe extends LinkedHashMap<Long, Bucket> {
+        private static final float LOAD_FACTOR = 0.75f;
+        private final int capacity;
+
+        private Stripe(int capacity) {
+            super(capacity, LOAD_FACTOR, true);
+            this.capacity = capacity;
+        }
+    }
+}
@@ -0,0 +1,358 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import com.getsentry.raven.event.interfaces.SentryInterface;
+import com.getsentry.raven.event.interfaces.StackTraceInterface;
+import com.getsentry.raven.util.CompactCollections;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.io.Closeable;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryNotificationInfo;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Degrades the events while the heap is close to its limit, so that Raven doesn't make a memory problem worse.
+ * <p>
+ * The pressure is the highest ratio of used to maximum memory of the heap pools right after a garbage collection.
+ * The governor enters the degraded mode when the pressure reaches {@code threshold} and leaves it when it falls
+ * below {@code recovery}. It is evaluated when the JVM notifies that a pool exceeds its collection usage threshold
+ * (set to {@code threshold} on the pools which don't have one yet) and after each garbage collection on the JVMs
+ * emitting GC notifications; otherwise it is polled at most once per second while degraded.
+ * <p>
+ * In the degraded mode, the events less severe than {@code minLevel} are dropped before being built, and the other
+ * ones are sent without breadcrumbs, extras and HTTP data, with their stack traces cut to {@code maxFrames}. These
+ * details aren't even gathered for the events which aren't built yet (see {@link #degrade(EventBuilder)}).
+ */
+public final class HeapPressureGovernor implements Closeable {
+    /**
+     * Default ratio of the heap used after a garbage collection at which the events are degraded.
+     */
+    public static final double DEFAULT_THRESHOLD = 0.9;
+    /**
+     * Default difference between the threshold and the ratio at which the events aren't degraded anymore.
+     */
+    public static final double DEFAULT_HYSTERESIS = 0.1;
+    /**
+     * Default level under which the events are dropped in the degraded mode.
+     */
+    public static final Event.Level DEFAULT_MIN_LEVEL = Event.Level.ERROR;
+    /**
+     * Default number of frames kept in the stack traces in the degraded mode.
+     */
+    public static final int DEFAULT_MAX_FRAMES = 20;
+    /**
+     * Type of the notifications sent by the HotSpot garbage collectors after a collection.
+     */
+    static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    private static final Logger logger = LoggerFactory.getLogger(HeapPressureGovernor.class);
+    private static final long POLL_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+    private static final int PERCENT = 100;
+    private final double threshold;
+    private final double recovery;
+    private final Event.Level minLevel;
+    private final int maxFrames;
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    /**
+     * Collection usage thresholds set by this governor, restored to 0 when it is closed.
+     */
+    private final Map<MemoryPoolMXBean, Long> thresholdsSet = new HashMap<>();
+    private final NotificationListener listener = new NotificationListener() {
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            String type = notification.getType();
+            if (GC_NOTIFICATION.equals(type)
+                || MemoryNotificationInfo.MEMORY_COLLECTION_THRESHOLD_EXCEEDED.equals(type)) {
+                evaluate();
+            }
+        }
+    };
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong degradedCount = new AtomicLong();
+    private volatile boolean degraded;
+    private volatile long lastEvaluation;
+
+    /**
+     * Creates a governor and subscribes to the memory and garbage collection notifications of the JVM.
+     *
+     * @param threshold ratio of the heap used after a garbage collection at which the events are degraded.
+     * @param recovery  ratio of the heap used after a garbage collection under which the events aren't degraded
+     *                  anymore.
+     * @param minLevel  level under which the events are dropped in the degraded mode.
+     * @param maxFrames number of frames kept in the stack traces in the degraded mode.
+     */
+    public HeapPressureGovernor(double threshold, double recovery, Event.Level minLevel, int maxFrames) {
+        if (threshold <= 0 || threshold > 1 || recovery < 0 || recovery > threshold || maxFrames < 0) {
+            throw new IllegalArgumentException("Invalid threshold " + threshold + ", recovery " + recovery
+                + " or maximum number of frames " + maxFrames);
+        }
+        this.threshold = threshold;
+        this.recovery = recovery;
+        this.minLevel = minLevel;
+        this.maxFrames = maxFrames;
+        subscribe();
+    }
+
+    private void subscribe() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() != MemoryType.HEAP || !pool.isCollectionUsageThresholdSupported()) {
+                continue;
+            }
+            heapPools.add(pool);
+            long max = pool.getUsage().getMax();
+            // Thresholds are global to the JVM, an existing one is left as is
+            if (max > 0 && pool.getCollectionUsageThreshold() == 0) {
+                long poolThreshold = (long) (max * threshold);
+                pool.setCollectionUsageThreshold(poolThreshold);
+                thresholdsSet.put(pool, poolThreshold);
+            } else if (max > 0) {
+                logger.debug("The collection usage threshold of the heap pool '{}' is already set, keeping it.",
+                    pool.getName());
+            }
+        }
+        addListener(ManagementFactory.getMemoryMXBean());
+        for (GarbageCollectorMXBean garbageCollector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            addListener(garbageCollector);
+        }
+    }
+
+    private void addListener(Object bean) {
+        if (bean instanceof NotificationEmitter) {
+            NotificationEmitter emitter = (NotificationEmitter) bean;
+            emitter.addNotificationListener(listener, null, null);
+            emitters.add(emitter);
+        }
+    }
+
+    /**
+     * Measures the pressure on the heap and updates the mode accordingly.
+     */
+    void evaluate() {
+        double pressure = 0;
+        for (MemoryPoolMXBean pool : heapPools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            if (usage != null && usage.getMax() > 0) {
+                pressure = Math.max(pressure, (double) usage.getUsed() / usage.getMax());
+            }
+        }
+        evaluate(pressure);
+    }
+
+    /**
+     * Updates the mode according to the given pressure.
+     *
+     * @param pressure ratio of the heap used after a garbage collection.
+     */
+    synchronized void evaluate(double pressure) {
+        lastEvaluation = System.nanoTime();
+        if (!degraded && pressure >= threshold) {
+            degraded = true;
+            degradedCount.incrementAndGet();
+            logger.warn("The heap is {}% full after garbage collection, degrading the events sent to Sentry.",
+                Math.round(pressure * PERCENT));
+        } else if (degraded && pressure < recovery) {
+            degraded = false;
+            logger.info("The heap is {}% full after garbage collection, the events sent to Sentry aren't degraded "
+                + "anymore.", Math.round(pressure * PERCENT));
+        }
+    }
+
+    /**
+     * Returns whether the events are currently degraded.
+     *
+     * @return true if the heap is under pressure.
+     */
+    public boolean isDegraded() {
+        if (degraded && System.nanoTime() - lastEvaluation >= POLL_INTERVAL) {
+            // Recovery relies on polling if the JVM doesn't notify the garbage collections
+            evaluate();
+        }
+        return degraded;
+    }
+
+    /**
+     * Returns whether an event must be dropped because the heap is under pressure.
+     * <p>
+     * This doesn't count the event, {@link #recordDropped()} must be called once the event is actually dropped.
+     *
+     * @param level level of the event, an event without level isn't dropped.
+     * @return true if the event must be dropped.
+     */
+    public boolean isDegraded(Event.Level level) {
+        return level != null && minLevel != null && level.ordinal() > minLevel.ordinal() && isDegraded();
+    }
+
+    /**
+     * Counts an event dropped because the heap was under pressure.
+     */
+    public void recordDropped() {
+        droppedCount.incrementAndGet();
+    }
+
+    /**
+     * Prepares an event which isn't built yet to be degraded if the heap is under pressure, so that its
+     * breadcrumbs, extras and HTTP data aren't gathered at all.
+     *
+     * @param eventBuilder builder of the event, before the builder helpers are run.
+     */
+    public void degrade(EventBuilder eventBuilder) {
+        if (isDegraded()) {
+            eventBuilder.withoutDetails();
+        }
+    }
+
+    /**
+     * Returns the event to send in place of a built event, stripped from its largest details if the heap is under
+     * pressure.
+     *
+     * @param event built event.
+     * @return the event itself if the events aren't degraded or if it has nothing to strip, otherwise a copy of the
+     * event without breadcrumbs, extras and HTTP data, and with its stack traces cut.
+     */
+    public Event degrade(Event event) {
+        if (!isDegraded() || !hasDetailsToStrip(event)) {
+            return event;
+        }
+        Event degradedEvent = new Event(event.getId());
+        degradedEvent.setMessage(event.getMessage());
+        degradedEvent.setTimestamp(event.getTimestamp());
+        degradedEvent.setLevel(event.getLevel());
+        degradedEvent.setLogger(event.getLogger());
+        degradedEvent.setPlatform(event.getPlatform());
+        degradedEvent.setCulprit(event.getCulprit());
+        degradedEvent.setTags(event.getTags());
+        degradedEvent.setRelease(event.getRelease());
+        degradedEvent.setEnvironment(event.getEnvironment());
+        degradedEvent.setServerName(event.getServerName());
+        degradedEvent.setFingerprint(event.getFingerprint());
+        degradedEvent.setChecksum(event.getChecksum());
+        degradedEvent.setBreadcrumbs(Collections.<Breadcrumb>emptyList());
+        degradedEvent.setExtra(Collections.<String, Object>emptyMap());
+        Map<String, SentryInterface> sentryInterfaces = new HashMap<>();
+        for (Map.Entry<String, SentryInterface> entry : event.getSentryInterfaces().entrySet()) {
+            SentryInterface sentryInterface = degrade(entry.getValue());
+            if (sentryInterface != null) {
+                sentryInterfaces.put(entry.getKey(), sentryInterface);
+            }
+        }
+        degradedEvent.setSentryInterfaces(CompactCollections.freezeMap(sentryInterfaces));
+        return degradedEvent;
+    }
+
+    private boolean hasDetailsToStrip(Event event) {
+        if (!event.getBreadcrumbs().isEmpty() || !event.getExtra().isEmpty()) {
+            return true;
+        }
+        for (SentryInterface sentryInterface : event.getSentryInterfaces().values()) {
+            if (sentryInterface instanceof HttpInterface) {
+                return true;
+            } else if (sentryInterface instanceof StackTraceInterface) {
+                if (isTooLong((StackTraceInterface) sentryInterface)) {
+                    return true;
+                }
+            } else if (sentryInterface instanceof ExceptionInterface) {
+                for (SentryException exception : ((ExceptionInterface) sentryInterface).getExceptions()) {
+                    if (isTooLong(exception.getStackTraceInterface())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean isTooLong(StackTraceInterface stackTrace) {
+        return stackTrace != null && stackTrace.getStackTrace().length > maxFrames;
+    }
+
+    private SentryInterface degrade(SentryInterface sentryInterface) {
+        if (sentryInterface instanceof HttpInterface) {
+            return null;
+        } else if (sentryInterface instanceof StackTraceInterface) {
+            return new StackTraceInterface((StackTraceInterface) sentryInterface, maxFrames);
+        } else if (sentryInterface instanceof ExceptionInterface) {
+            Deque<SentryException> exceptions = new ArrayDeque<>();
+            for (SentryException exception : ((ExceptionInterface) sentryInterface).getExceptions()) {
+                StackTraceInterface stackTrace = exception.getStackTraceInterface();
+                exceptions.add(new SentryException(exception.getExceptionMessage(),
+                    exception.getExceptionClassName(), exception.getExceptionPackageName(),
+                    stackTrace != null ? new StackTraceInterface(stackTrace, maxFrames) : null));
+            }
+            return new ExceptionInterface(exceptions);
+        }
+        return sentryInterface;
+    }
+
+    /**
+     * Returns the number of events dropped because the heap was under pressure.
+     *
+     * @return the number of events dropped.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Returns the number of times the degraded mode was entered.
+     *
+     * @return the number of times the heap came under pressure.
+     */
+    public long getDegradedCount() {
+        return degradedCount.get();
+    }
+
+    /**
+     * Unsubscribes from the notifications of the JVM.
+     * <p>
+     * The collection usage thresholds set by the governor are reset, unless they were changed since.
+     */
+    @Override
+    public void close() {
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : thresholdsSet.entrySet()) {
+            MemoryPoolMXBean pool = entry.getKey();
+            if (pool.getCollectionUsageThreshold() == entry.getValue()) {
+                pool.setCollectionUsageThreshold(0);
+            }
+        }
+        thresholdsSet.clear();
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException e) {
+                logger.debug("The heap pressure listener was already removed.", e);
+            }
+        }
+        emitters.clear();
+    }
+
+    @Override
+    public String toString() {
+        return "HeapPressureGovernor{"
+            + "threshold=" + threshold
+            + ", recovery=" + recovery
+            + ", minLevel=" + minLevel
+            + ", maxFrames=" + maxFrames
+            + ", degraded=" + degraded
+            + '}';
+    }
+}
@@ -0,0 +1,173 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.RavenContext;
+import com.getsentry.raven.util.LoggerPrefixMap;
+import com.getsentry.raven.util.Util;
+
+import java.util.Collections;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Records the log records which aren't sent as events as breadcrumbs of a {@link RavenContext}.
+ * <p>
+ * Logging appenders see far more records below their threshold than above it, so the breadcrumbs are written with
+ * a compact encoding: the level is one of the constant breadcrumb levels, the category is the name of the logger and
+ * the message is kept as is unless it exceeds the byte budget. No {@link Breadcrumb} is created.
+ * <p>
+ * Loggers can be sampled, the sampling rate of a logger is the one configured for its longest prefix (1 by default).
+ * Callers should check {@link #isSampled(String)} before formatting the message of the record.
+ */
+public class LogBreadcrumbRecorder {
+    /**
+     * Default maximum size, in bytes once encoded in UTF-8, of the message of a breadcrumb.
+     */
+    public static final int DEFAULT_MAX_BYTES = 256;
+    /**
+     * Category of the breadcrumbs recorded for records without a logger name.
+     */
+    public static final String DEFAULT_CATEGORY = "log";
+    /**
+     * Breadcrumb level of the informational records.
+     */
+    private static final String INFO = "info";
+    /**
+     * Characters below this one take a single byte in UTF-8.
+     */
+    private static final char ONE_BYTE_LIMIT = 0x80;
+    /**
+     * Characters below this one take at most two bytes in UTF-8.
+     */
+    private static final char TWO_BYTES_LIMIT = 0x800;
+    /**
+     * Maximum size of a single character in UTF-8 (surrogate pairs take 4 bytes for 2 characters).
+     */
+    private static final int MAX_BYTES_PER_CHAR = 3;
+    /**
+     * Size of a surrogate pair in UTF-8.
+     */
+    private static final int SURROGATE_PAIR_BYTES = 4;
+    private volatile LoggerPrefixMap<Double> sampleRates =
+        new LoggerPrefixMap<>(Collections.<String, Double>emptyMap(), 1d);
+    private volatile int maxBytes = DEFAULT_MAX_BYTES;
+
+    /**
+     * Returns whether a record of the given logger should be recorded.
+     *
+     * @param loggerName name of the logger, may be null.
+     * @return true if the record is kept by the sampling of its logger.
+     */
+    public boolean isSampled(String loggerName) {
+        double sampleRate = sampleRates.get(loggerName);
+        if (sampleRate >= 1) {
+            return true;
+        } else if (sampleRate <= 0) {
+            return false;
+        }
+        return ThreadLocalRandom.current().nextDouble() < sampleRate;
+    }
+
+    /**
+     * Records a log record as a breadcrumb of the given context, without checking the sampling.
+     *
+     * @param context    context in which the breadcrumb is recorded.
+     * @param timestamp  time at which the record was logged, in milliseconds since the epoch.
+     * @param level      level of the record.
+     * @param loggerName name of the logger, may be null.
+     * @param message    formatted message of the record, may be null.
+     */
+    public void record(RavenContext context, long timestamp, Event.Level level, String loggerName, String message) {
+        context.recordBreadcrumb(timestamp, breadcrumbLevel(level),
+            loggerName != null ? loggerName : DEFAULT_CATEGORY,
+            message != null ? truncate(message, maxBytes) : "");
+    }
+
+    /**
+     * Transforms an {@link Event.Level} into the level of a breadcrumb.
+     *
+     * @param level level of the log record, may be null.
+     * @return the breadcrumb level, a constant.
+     */
+    static String breadcrumbLevel(Event.Level level) {
+        if (level == null) {
+            return INFO;
+        }
+        switch (level) {
+            case FATAL:
+                return "critical";
+            case ERROR:
+                return "error";
+            case WARNING:
+                return "warning";
+            case DEBUG:
+                return "debug";
+            default:
+                return INFO;
+        }
+    }
+
+    /**
+     * Truncates a message so that it doesn't exceed the given size once encoded in UTF-8.
+     * <p>
+     * The size is computed from the characters without encoding the message, surrogate pairs are never split.
+     *
+     * @param message  message to truncate.
+     * @param maxBytes maximum size of the message in UTF-8.
+     * @return the message itself if it fits, its longest fitting prefix otherwise.
+     */
+    static String truncate(String message, int maxBytes) {
+        int length = message.length();
+        if (length * MAX_BYTES_PER_CHAR <= maxBytes) {
+            return message;
+        }
+        int bytes = 0;
+        int i = 0;
+        while (i < length) {
+            char c = message.charAt(i);
+            int chars = 1;
+            int size;
+            if (c < ONE_BYTE_LIMIT) {
+                size = 1;
+            } else if (c < TWO_BYTES_LIMIT) {
+                size = 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                && Character.isLowSurrogate(message.charAt(i + 1))) {
+                size = SURROGATE_PAIR_BYTES;
+                chars = 2;
+            } else {
+                size = MAX_BYTES_PER_CHAR;
+            }
+            if (bytes + size > maxBytes) {
+                return message.substring(0, i);
+            }
+            bytes += size;
+            i += chars;
+        }
+        return message;
+    }
+
+    /**
+     * Sets the sampling rates of the loggers.
+     *
+     * @param sampleRates comma-delimited logger name prefixes and rates between 0 and 1, e.g.
+     *                    "com.example:0.1,org.hibernate:0". Loggers without a rate are always recorded.
+     */
+    public void setSampleRates(String sampleRates) {
+        this.sampleRates = new LoggerPrefixMap<>(Util.parseSampleRates(sampleRates), 1d);
+    }
+
+    /**
+     * Sets the maximum size of the message of a breadcrumb, longer messages are truncated.
+     *
+     * @param maxBytes maximum size in bytes once encoded in UTF-8.
+     */
+    public void setMaxBytes(int maxBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("The maximum size of a breadcrumb can't be negative.");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    public int getMaxBytes() {
+        return maxBytes;
+    }
+}
@@ -1,13 +1,8 @@
 package com.getsentry.raven.event.helper;
 
 import com.getsentry.raven.Raven;
-import com.getsentry.raven.event.Breadcrumb;
 import com.getsentry.raven.event.EventBuilder;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-
 /**
  * {@link EventBuilderHelper} that extracts and sends any data attached to the
  * provided {@link Raven}'s {@link com.getsentry.raven.RavenContext}.
@@ -30,12 +25,9 @@ public class ContextBuilderHelper implements EventBuilderHelper {
 
     @Override
     public void helpBuildingEvent(EventBuilder eventBuilder) {
-        List<Breadcrumb> breadcrumbs = new ArrayList<>();
-        Iterator<Breadcrumb> iter = raven.getContext().getBreadcrumbs();
-        while (iter.hasNext()) {
-            breadcrumbs.add(iter.next());
-        }
-        eventBuilder.withBreadcrumbs(breadcrumbs);
+        if (eventBuilder.isSkippingDetails())
+            return;
+        eventBuilder.withBreadcrumbs(raven.getContext().getBreadcrumbSnapshot());
     }
 
 }
@@ -0,0 +1,83 @@
+package com.getsentry.raven.event.helper;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of the time spent by one {@link EventBuilderHelper} while helping to build events.
+ * <p>
+ * The values are only collected when the builder helper timing is enabled on the
+ * {@link com.getsentry.raven.Raven} instance, otherwise all the counters stay at zero.
+ */
+public final class EventBuilderHelperStats {
+    private final EventBuilderHelper helper;
+    private final int priority;
+    private final long invocations;
+    private final long totalTimeNanos;
+    private final long maxTimeNanos;
+    private final long slowInvocations;
+
+    /**
+     * Creates a snapshot of the statistics of a builder helper.
+     *
+     * @param helper          builder helper concerned by the statistics.
+     * @param priority        priority of the builder helper, lower priorities run first.
+     * @param invocations     number of timed invocations of the builder helper.
+     * @param totalTimeNanos  total time spent in the timed invocations, in nanoseconds.
+     * @param maxTimeNanos    longest timed invocation, in nanoseconds.
+     * @param slowInvocations number of invocations that went over the slow builder helper threshold.
+     */
+    public EventBuilderHelperStats(EventBuilderHelper helper, int priority, long invocations, long totalTimeNanos,
+                                   long maxTimeNanos, long slowInvocations) {
+        this.helper = helper;
+        this.priority = priority;
+        this.invocations = invocations;
+        this.totalTimeNanos = totalTimeNanos;
+        this.maxTimeNanos = maxTimeNanos;
+        this.slowInvocations = slowInvocations;
+    }
+
+    public EventBuilderHelper getHelper() {
+        return helper;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getInvocations() {
+        return invocations;
+    }
+
+    public long getTotalTimeNanos() {
+        return totalTimeNanos;
+    }
+
+    public long getMaxTimeNanos() {
+        return maxTimeNanos;
+    }
+
+    public long getSlowInvocations() {
+        return slowInvocations;
+    }
+
+    /**
+     * Returns the average time spent in one invocation of the builder helper.
+     *
+     * @return average time of an invocation in nanoseconds, 0 if the helper hasn't been timed yet.
+     */
+    public long getAverageTimeNanos() {
+        return invocations == 0 ? 0 : totalTimeNanos / invocations;
+    }
+
+    @Override
+    public String toString() {
+        return "EventBuilderHelperStats{"
+            + "helper=" + helper
+            + ", priority=" + priority
+            + ", invocations=" + invocations
+            + ", averageTimeMicros=" + TimeUnit.NANOSECONDS.toMicros(getAverageTimeNanos())
+            + ", maxTimeMicros=" + TimeUnit.NANOSECONDS.toMicros(maxTimeNanos)
+            + ", slowInvocations=" + slowInvocations
+            + '}';
+    }
+}
@@ -44,6 +44,8 @@ public class HttpEventBuilderHelper implements EventBuilderHelper {
     }
 
     private void addHttpInterface(EventBuilder eventBuilder, HttpServletRequest servletRequest) {
+        if (eventBuilder.isSkippingDetails())
+            return;
         eventBuilder.withSentryInterface(new HttpInterface(servletRequest, remoteAddressResolver), false);
     }
 
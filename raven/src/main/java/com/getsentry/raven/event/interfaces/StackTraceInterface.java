@@ -44,6 +44,20 @@ public class StackTraceInterface implements SentryInterface {
         framesCommonWithEnclosing = stackTrace.length - 1 - m;
     }
 
+    /**
+     * Creates a StackTrace for an {@link com.getsentry.raven.event.Event} keeping only its most recent frames.
+     *
+     * @param stackTraceInterface StackTrace to truncate.
+     * @param maxFrames           maximum number of frames kept.
+     */
+    public StackTraceInterface(StackTraceInterface stackTraceInterface, int maxFrames) {
+        StackTraceElement[] fullStackTrace = stackTraceInterface.stackTrace;
+        int removedFrames = Math.max(0, fullStackTrace.length - maxFrames);
+        this.stackTrace = Arrays.copyOf(fullStackTrace, fullStackTrace.length - removedFrames);
+        // The frames in common are the oldest ones, the first to be removed
+        this.framesCommonWithEnclosing = Math.max(0, stackTraceInterface.framesCommonWithEnclosing - removedFrames);
+    }
+
     @Override
     public String getInterfaceName() {
         return STACKTRACE_INTERFACE;
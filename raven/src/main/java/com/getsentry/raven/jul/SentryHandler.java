@@ -6,10 +6,13 @@ import com.getsentry.raven.config.Lookup;
 import com.getsentry.raven.dsn.Dsn;
 import com.getsentry.raven.dsn.InvalidDsnException;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.LogBreadcrumbRecorder;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
 import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.util.CompactCollections;
 import com.getsentry.raven.util.Util;
 import org.slf4j.MDC;
 
@@ -19,6 +22,7 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.ResourceBundle;
 import java.util.Set;
 import java.util.logging.ErrorManager;
 import java.util.logging.Filter;
@@ -89,6 +93,26 @@ public class SentryHandler extends Handler {
      * Might be empty in which case no mapped tags are set.
      */
     protected Set<String> extraTags = Collections.emptySet();
+    /**
+     * If true, only a snapshot of the log record is taken on the logging thread, the event is built by the
+     * thread of the Raven connection (when the connection is asynchronous).
+     */
+    protected boolean deferred;
+    /**
+     * If set, only log records with level = minLevel and up are sent as events.
+     * <p>
+     * Might be null in which case every record reaching the handler is sent.
+     */
+    protected Level minLevel;
+    /**
+     * If true, the log records below {@link #minLevel} are recorded as breadcrumbs of the current
+     * {@link com.getsentry.raven.RavenContext} instead of being discarded.
+     */
+    protected boolean breadcrumbs;
+    /**
+     * Sampling and size limits of the breadcrumbs recorded from the log records below {@link #minLevel}.
+     */
+    protected final LogBreadcrumbRecorder breadcrumbRecorder = new LogBreadcrumbRecorder();
 
     /**
      * Creates an instance of SentryHandler.
@@ -100,6 +124,11 @@ public class SentryHandler extends Handler {
         setServerName(Lookup.lookup("serverName"));
         setTags(Lookup.lookup("tags"));
         setExtraTags(Lookup.lookup("extraTags"));
+        setDeferred(Boolean.parseBoolean(Lookup.lookup("deferred")));
+        setBreadcrumbs(Boolean.parseBoolean(Lookup.lookup("breadcrumbs")));
+        setBreadcrumbSampleRates(Lookup.lookup("breadcrumbSampleRates"));
+        setBreadcrumbMaxBytes(Util.parseInteger(Lookup.lookup("breadcrumbMaxBytes"),
+            LogBreadcrumbRecorder.DEFAULT_MAX_BYTES));
 
         retrieveProperties();
         this.setFilter(new DropRavenFilter());
@@ -182,6 +211,26 @@ public class SentryHandler extends Handler {
         if (extraTagsProperty != null) {
             setExtraTags(extraTagsProperty);
         }
+        String deferredProperty = manager.getProperty(className + ".deferred");
+        if (deferredProperty != null) {
+            setDeferred(Boolean.parseBoolean(deferredProperty));
+        }
+        String minLevelProperty = manager.getProperty(className + ".minLevel");
+        if (minLevelProperty != null) {
+            setMinLevel(minLevelProperty);
+        }
+        String breadcrumbsProperty = manager.getProperty(className + ".breadcrumbs");
+        if (breadcrumbsProperty != null) {
+            setBreadcrumbs(Boolean.parseBoolean(breadcrumbsProperty));
+        }
+        String breadcrumbSampleRatesProperty = manager.getProperty(className + ".breadcrumbSampleRates");
+        if (breadcrumbSampleRatesProperty != null) {
+            setBreadcrumbSampleRates(breadcrumbSampleRatesProperty);
+        }
+        String breadcrumbMaxBytesProperty = manager.getProperty(className + ".breadcrumbMaxBytes");
+        if (breadcrumbMaxBytesProperty != null) {
+            setBreadcrumbMaxBytes(Integer.parseInt(breadcrumbMaxBytesProperty));
+        }
         setPrintfStyle(Boolean.valueOf(manager.getProperty(className + ".printfStyle")));
     }
 
@@ -195,8 +244,20 @@ public class SentryHandler extends Handler {
         try {
             if (raven == null)
                 initRaven();
-            Event event = buildEvent(record);
-            raven.sendEvent(event);
+            if (minLevel != null && record.getLevel().intValue() < minLevel.intValue()) {
+                if (breadcrumbs)
+                    recordBreadcrumb(record);
+                return;
+            }
+            if (!raven.isSampled(getLevel(record.getLevel()), record.getLoggerName())
+                || raven.isThrottled(record.getMessage(), record.getThrown()))
+                return;
+            if (deferred) {
+                raven.sendEvent(createDeferredEvent(record));
+            } else {
+                Event event = buildEvent(record);
+                raven.sendEvent(event);
+            }
         } catch (Exception e) {
             reportError("An exception occurred while creating a new event in Raven", e, ErrorManager.WRITE_FAILURE);
         } finally {
@@ -204,6 +265,41 @@ public class SentryHandler extends Handler {
         }
     }
 
+    /**
+     * Records a log record below {@link #minLevel} as a breadcrumb of the current context, if its logger is
+     * sampled.
+     *
+     * @param record Log generated.
+     */
+    protected void recordBreadcrumb(LogRecord record) {
+        if (breadcrumbRecorder.isSampled(record.getLoggerName())) {
+            breadcrumbRecorder.record(raven.getContext(), record.getMillis(), getLevel(record.getLevel()),
+                record.getLoggerName(), formatBreadcrumbMessage(record));
+        }
+    }
+
+    /**
+     * Formats the message of a log record recorded as a breadcrumb.
+     *
+     * @param record Log generated.
+     * @return the formatted message, the raw message if it can't be formatted.
+     */
+    private String formatBreadcrumbMessage(LogRecord record) {
+        String message = record.getMessage();
+        ResourceBundle resourceBundle = record.getResourceBundle();
+        if (message != null && resourceBundle != null && resourceBundle.containsKey(message)) {
+            message = resourceBundle.getString(message);
+        }
+        if (message == null || record.getParameters() == null) {
+            return message;
+        }
+        try {
+            return formatMessage(message, record.getParameters());
+        } catch (Exception e) {
+            return message;
+        }
+    }
+
     /**
      * Initialises the Raven instance.
      */
@@ -228,8 +324,44 @@ public class SentryHandler extends Handler {
      * @return Event containing details provided by the logging system.
      */
     protected Event buildEvent(LogRecord record) {
-        EventBuilder eventBuilder = new EventBuilder()
-                .withLevel(getLevel(record.getLevel()))
+        EventBuilder eventBuilder = new EventBuilder();
+        fillEventBuilder(eventBuilder, record, MDC.getMDCAdapter().getCopyOfContextMap());
+        raven.runBuilderHelpers(eventBuilder);
+        return eventBuilder.build();
+    }
+
+    /**
+     * Takes a snapshot of the log record and wraps it in an event built later on by the Raven connection.
+     * <p>
+     * Everything depending on the logging thread (MDC, source of the record) is computed right away.
+     *
+     * @param record Log generated.
+     * @return Event built later on with the details provided by the logging system.
+     */
+    protected DeferredEvent createDeferredEvent(final LogRecord record) {
+        // Infers the caller of the record while it's still on the stack
+        record.getSourceClassName();
+        final Map<String, String> mdc = MDC.getMDCAdapter().getCopyOfContextMap();
+        return new DeferredEvent(getLevel(record.getLevel()), record.getMessage(), record.getThrown()) {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                fillEventBuilder(builder, record, mdc);
+            }
+        };
+    }
+
+    /**
+     * Adds the details provided by the logging system to an {@link EventBuilder}.
+     * <p>
+     * When the handler is {@link #deferred}, this method is called by the thread of the Raven connection, after
+     * the builder helpers, without replacing the values they set.
+     *
+     * @param eventBuilder event builder to fill.
+     * @param record       Log generated.
+     * @param mdc          copy of the MDC of the thread which logged the record, may be null.
+     */
+    protected void fillEventBuilder(EventBuilder eventBuilder, LogRecord record, Map<String, String> mdc) {
+        eventBuilder.withLevel(getLevel(record.getLevel()))
                 .withTimestamp(new Date(record.getMillis()))
                 .withLogger(record.getLoggerName());
 
@@ -267,7 +399,6 @@ public class SentryHandler extends Handler {
             eventBuilder.withCulprit(record.getLoggerName());
         }
 
-        Map<String, String> mdc = MDC.getMDCAdapter().getCopyOfContextMap();
         if (mdc != null) {
             for (Map.Entry<String, String> mdcEntry : mdc.entrySet()) {
                 if (extraTags.contains(mdcEntry.getKey())) {
@@ -278,9 +409,7 @@ public class SentryHandler extends Handler {
             }
         }
 
-        for (Map.Entry<String, String> tagEntry : tags.entrySet()) {
-            eventBuilder.withTag(tagEntry.getKey(), tagEntry.getValue());
-        }
+        eventBuilder.withBaseTags(tags);
 
         eventBuilder.withExtra(THREAD_ID, record.getThreadID());
 
@@ -295,9 +424,6 @@ public class SentryHandler extends Handler {
         if (!Util.isNullOrEmpty(serverName)) {
             eventBuilder.withServerName(serverName.trim());
         }
-
-        raven.runBuilderHelpers(eventBuilder);
-        return eventBuilder.build();
     }
 
     /**
@@ -343,6 +469,32 @@ public class SentryHandler extends Handler {
         this.printfStyle = printfStyle;
     }
 
+    public void setDeferred(boolean deferred) {
+        this.deferred = deferred;
+    }
+
+    public void setMinLevel(String minLevel) {
+        this.minLevel = minLevel != null ? Level.parse(minLevel.trim()) : null;
+    }
+
+    public void setBreadcrumbs(boolean breadcrumbs) {
+        this.breadcrumbs = breadcrumbs;
+    }
+
+    /**
+     * Sets the sampling rates of the breadcrumbs recorded from the log records below {@link #minLevel}.
+     *
+     * @param breadcrumbSampleRates comma-delimited logger name prefixes and rates between 0 and 1, e.g.
+     *                              "com.example:0.1,org.hibernate:0".
+     */
+    public void setBreadcrumbSampleRates(String breadcrumbSampleRates) {
+        breadcrumbRecorder.setSampleRates(breadcrumbSampleRates);
+    }
+
+    public void setBreadcrumbMaxBytes(int breadcrumbMaxBytes) {
+        breadcrumbRecorder.setMaxBytes(breadcrumbMaxBytes);
+    }
+
     public void setRavenFactory(String ravenFactory) {
         this.ravenFactory = ravenFactory;
     }
@@ -365,7 +517,7 @@ public class SentryHandler extends Handler {
      *                     "tag1:value1,tag2:value2".
      */
     public void setTags(String tags) {
-        this.tags = Util.parseTags(tags);
+        this.tags = CompactCollections.freezeMap(Util.parseTags(tags));
     }
 
     public void setExtraTags(String extraTags) {
@@ -0,0 +1,277 @@
+package com.getsentry.raven.metrics;
+
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes the costs of the events to their logger and to their culprit, to find which ones produce most of the
+ * payload and of the time spent by Raven.
+ * <p>
+ * The costs ({@link Cost}) are reported by {@link RavenMetrics} as the events go through the pipeline and aggregated
+ * in two bounded sketches, one by logger and one by culprit, which keep the top keys by the ranking cost. The costs
+ * are estimates which may be slightly too high, the memory used doesn't depend on the number of loggers or culprits.
+ * The sketches are striped by key so that the sending threads rarely wait for each other.
+ * <p>
+ * The report is available as an MBean once {@link #register(String)} is called, and can be logged periodically.
+ */
+public final class EventCostAccountant implements EventCostAccountantMBean, Closeable {
+    /**
+     * Default number of loggers and culprits kept.
+     */
+    public static final int DEFAULT_TOP = 20;
+    /**
+     * Default cost ranking the loggers and culprits.
+     */
+    public static final Cost DEFAULT_RANK = Cost.PAYLOAD_BYTES;
+    private static final Logger logger = LoggerFactory.getLogger(EventCostAccountant.class);
+    private static final int SKETCH_WIDTH = 1024;
+    private static final int SKETCH_DEPTH = 4;
+    private static final String NONE = "(none)";
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private final Cost rank;
+    private final StripedCostSketch loggers;
+    private final StripedCostSketch culprits;
+    private final ScheduledExecutorService reportExecutor;
+    private JmxRegistration registration;
+
+    /**
+     * Creates an accountant.
+     *
+     * @param top         number of loggers and culprits kept.
+     * @param rank        cost ranking the loggers and culprits.
+     * @param logInterval interval between two reports in the logs in milliseconds, 0 to never log the report.
+     */
+    public EventCostAccountant(int top, Cost rank, long logInterval) {
+        this.rank = rank;
+        int costs = Cost.values().length;
+        this.loggers = new StripedCostSketch(top, SKETCH_WIDTH, SKETCH_DEPTH, costs, rank.ordinal());
+        this.culprits = new StripedCostSketch(top, SKETCH_WIDTH, SKETCH_DEPTH, costs, rank.ordinal());
+        if (logInterval > 0) {
+            reportExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "raven-cost-report");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reportExecutor.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    logger.info(getReport());
+                }
+            }, logInterval, logInterval, TimeUnit.MILLISECONDS);
+        } else {
+            reportExecutor = null;
+        }
+    }
+
+    /**
+     * Records the time spent building an event.
+     *
+     * @param event event built.
+     * @param nanos time spent building the event, in nanoseconds.
+     */
+    public void recordBuild(Event event, long nanos) {
+        record(event, Cost.BUILD_TIME, nanos);
+    }
+
+    /**
+     * Records the payload of an event sent to Sentry.
+     *
+     * @param event event marshalled.
+     * @param bytes number of bytes written by the marshaller, after compression.
+     */
+    public void recordPayload(Event event, long bytes) {
+        record(event, Cost.PAYLOAD_BYTES, bytes);
+    }
+
+    /**
+     * Records an event sent to Sentry, counting the event and its estimated size.
+     *
+     * @param event event sent.
+     * @param nanos time spent sending the event, in nanoseconds.
+     */
+    public void recordSend(Event event, long nanos) {
+        String loggerKey = loggerOf(event);
+        String culpritKey = culpritOf(event);
+        loggers.add(loggerKey, Cost.EVENTS.ordinal(), 1, Cost.ESTIMATED_BYTES.ordinal(), event.getSizeEstimate());
+        loggers.add(loggerKey, Cost.SEND_TIME.ordinal(), nanos);
+        culprits.add(culpritKey, Cost.EVENTS.ordinal(), 1, Cost.ESTIMATED_BYTES.ordinal(), event.getSizeEstimate());
+        culprits.add(culpritKey, Cost.SEND_TIME.ordinal(), nanos);
+    }
+
+    /**
+     * Records a failed attempt to send an event to Sentry.
+     * <p>
+     * Only the failure and the time spent are recorded, the event is counted once it is sent, so that the events
+     * retried later aren't counted several times.
+     *
+     * @param event event which couldn't be sent.
+     * @param nanos time spent trying to send the event, in nanoseconds.
+     */
+    public void recordFailure(Event event, long nanos) {
+        loggers.add(loggerOf(event), Cost.FAILURES.ordinal(), 1, Cost.SEND_TIME.ordinal(), nanos);
+        culprits.add(culpritOf(event), Cost.FAILURES.ordinal(), 1, Cost.SEND_TIME.ordinal(), nanos);
+    }
+
+    private void record(Event event, Cost cost, long value) {
+        loggers.add(loggerOf(event), cost.ordinal(), value);
+        culprits.add(culpritOf(event), cost.ordinal(), value);
+    }
+
+    private static String loggerOf(Event event) {
+        return event.getLogger() != null ? event.getLogger() : NONE;
+    }
+
+    private static String culpritOf(Event event) {
+        return event.getCulprit() != null ? event.getCulprit() : NONE;
+    }
+
+    /**
+     * Returns the loggers with the highest ranking cost.
+     *
+     * @return the estimated costs by logger, indexed by {@link Cost#ordinal()}, from the most expensive logger.
+     */
+    public List<Map.Entry<String, long[]>> getLoggerCosts() {
+        return loggers.getTop();
+    }
+
+    /**
+     * Returns the culprits with the highest ranking cost.
+     *
+     * @return the estimated costs by culprit, indexed by {@link Cost#ordinal()}, from the most expensive culprit.
+     */
+    public List<Map.Entry<String, long[]>> getCulpritCosts() {
+        return culprits.getTop();
+    }
+
+    @Override
+    public String getRankedBy() {
+        return rank.name().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public String[] getTopLoggers() {
+        return format(getLoggerCosts());
+    }
+
+    @Override
+    public String[] getTopCulprits() {
+        return format(getCulpritCosts());
+    }
+
+    @Override
+    public void reset() {
+        loggers.clear();
+        culprits.clear();
+    }
+
+    /**
+     * Returns a readable report of the top loggers and culprits.
+     *
+     * @return the report, on several lines.
+     */
+    public String getReport() {
+        StringBuilder report = new StringBuilder("Event costs by ").append(getRankedBy()).append("\nTop loggers:");
+        for (String line : getTopLoggers()) {
+            report.append("\n  ").append(line);
+        }
+        report.append("\nTop culprits:");
+        for (String line : getTopCulprits()) {
+            report.append("\n  ").append(line);
+        }
+        return report.toString();
+    }
+
+    private static String[] format(List<Map.Entry<String, long[]>> top) {
+        String[] lines = new String[top.size()];
+        for (int i = 0; i < lines.length; i++) {
+            long[] costs = top.get(i).getValue();
+            lines[i] = String.format(Locale.ROOT,
+                "%s: events=%d, buildTime=%.1fms, estimatedBytes=%d, payloadBytes=%d, sendTime=%.1fms, failures=%d",
+                top.get(i).getKey(), costs[Cost.EVENTS.ordinal()], costs[Cost.BUILD_TIME.ordinal()] / NANOS_PER_MILLI,
+                costs[Cost.ESTIMATED_BYTES.ordinal()], costs[Cost.PAYLOAD_BYTES.ordinal()],
+                costs[Cost.SEND_TIME.ordinal()] / NANOS_PER_MILLI, costs[Cost.FAILURES.ordinal()]);
+        }
+        return lines;
+    }
+
+    /**
+     * Registers the report as the MBean {@code com.getsentry.raven:type=Accounting,name=<name>} of the platform
+     * MBean server, replacing the previous registration.
+     *
+     * @param name name identifying this instance among the other Raven instances of the JVM.
+     * @throws IllegalStateException if the MBean couldn't be registered, for example if the name is already used.
+     */
+    public synchronized void register(String name) {
+        unregister();
+        JmxRegistration newRegistration = new JmxRegistration();
+        newRegistration.register(RavenMetrics.JMX_DOMAIN + ":type=Accounting,name=" + JmxRegistration.quote(name),
+            this);
+        registration = newRegistration;
+    }
+
+    /**
+     * Removes the MBean of the report from the platform MBean server, if it was registered.
+     */
+    public synchronized void unregister() {
+        if (registration != null) {
+            registration.close();
+            registration = null;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Stops logging the report and unregisters the MBean.
+     */
+    @Override
+    public void close() {
+        if (reportExecutor != null) {
+            reportExecutor.shutdownNow();
+        }
+        unregister();
+    }
+
+    /**
+     * Cost attributed to the loggers and culprits.
+     */
+    public enum Cost {
+        /**
+         * Number of events sent.
+         */
+        EVENTS,
+        /**
+         * Time spent building the events, in nanoseconds.
+         */
+        BUILD_TIME,
+        /**
+         * Estimated size of the events before marshalling ({@link Event#getSizeEstimate()}), in bytes.
+         */
+        ESTIMATED_BYTES,
+        /**
+         * Size of the payload sent to Sentry, after compression, in bytes.
+         */
+        PAYLOAD_BYTES,
+        /**
+         * Time spent sending the events, including the failed attempts, in nanoseconds.
+         */
+        SEND_TIME,
+        /**
+         * Number of failed attempts to send the events.
+         */
+        FAILURES
+    }
+}
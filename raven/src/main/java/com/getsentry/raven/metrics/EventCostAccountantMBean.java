@@ -0,0 +1,32 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * JMX view of the {@link EventCostAccountant}.
+ */
+public interface EventCostAccountantMBean {
+    /**
+     * Returns the cost ranking the loggers and the culprits.
+     *
+     * @return the name of the ranking cost.
+     */
+    String getRankedBy();
+
+    /**
+     * Returns the estimated costs of the most expensive loggers, one logger per line.
+     *
+     * @return the report of the top loggers.
+     */
+    String[] getTopLoggers();
+
+    /**
+     * Returns the estimated costs of the most expensive culprits, one culprit per line.
+     *
+     * @return the report of the top culprits.
+     */
+    String[] getTopCulprits();
+
+    /**
+     * Forgets the costs recorded so far.
+     */
+    void reset();
+}
@@ -0,0 +1,15 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * Component of the pipeline reporting to {@link RavenMetrics}.
+ * <p>
+ * Components wrapping another one pass the metrics on to it.
+ */
+public interface Instrumented {
+    /**
+     * Sets the metrics the component reports to.
+     *
+     * @param metrics metrics to update, {@link RavenMetrics#DISABLED} to not report anything.
+     */
+    void setMetrics(RavenMetrics metrics);
+}
@@ -0,0 +1,62 @@
+package com.getsentry.raven.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * MBeans registered to the platform MBean server, unregistered together.
+ * <p>
+ * Kept apart from {@link RavenMetrics} so that {@code javax.management}, which isn't available everywhere (Android),
+ * is only loaded when the metrics are registered.
+ */
+final class JmxRegistration {
+    private static final Logger logger = LoggerFactory.getLogger(JmxRegistration.class);
+    private final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    private final List<ObjectName> objectNames = new ArrayList<>();
+
+    /**
+     * Quotes a name to use it as the value of a key of an object name.
+     *
+     * @param name name to quote.
+     * @return the quoted name.
+     */
+    static String quote(String name) {
+        return ObjectName.quote(name);
+    }
+
+    /**
+     * Registers an MBean, the MBeans already registered are unregistered if it fails.
+     *
+     * @param objectName object name of the MBean.
+     * @param mBean      MBean to register.
+     * @throws IllegalStateException if the MBean couldn't be registered.
+     */
+    void register(String objectName, Object mBean) {
+        try {
+            ObjectName name = new ObjectName(objectName);
+            mBeanServer.registerMBean(mBean, name);
+            objectNames.add(name);
+        } catch (JMException e) {
+            close();
+            throw new IllegalStateException("Couldn't register the MBean '" + objectName + "' to JMX", e);
+        }
+    }
+
+    void close() {
+        for (ObjectName objectName : objectNames) {
+            try {
+                mBeanServer.unregisterMBean(objectName);
+            } catch (JMException e) {
+                logger.debug("Couldn't unregister the MBean '{}'.", objectName, e);
+            }
+        }
+        objectNames.clear();
+    }
+}
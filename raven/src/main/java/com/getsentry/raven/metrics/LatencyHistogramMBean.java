@@ -0,0 +1,48 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * JMX view of a {@link LatencyHistogram}, durations are in microseconds.
+ */
+public interface LatencyHistogramMBean {
+    /**
+     * Returns the number of durations recorded.
+     *
+     * @return the number of durations recorded.
+     */
+    long getCount();
+
+    /**
+     * Returns the mean of the durations recorded.
+     *
+     * @return the mean duration, in microseconds.
+     */
+    double getMeanMicros();
+
+    /**
+     * Returns the median of the durations recorded.
+     *
+     * @return the median duration, in microseconds.
+     */
+    long getP50Micros();
+
+    /**
+     * Returns the 90th percentile of the durations recorded.
+     *
+     * @return the 90th percentile, in microseconds.
+     */
+    long getP90Micros();
+
+    /**
+     * Returns the 99th percentile of the durations recorded.
+     *
+     * @return the 99th percentile, in microseconds.
+     */
+    long getP99Micros();
+
+    /**
+     * Returns the longest duration recorded.
+     *
+     * @return the maximum duration, in microseconds.
+     */
+    long getMaxMicros();
+}
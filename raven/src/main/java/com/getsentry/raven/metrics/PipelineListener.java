@@ -0,0 +1,67 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * Listener notified as the events go through the stages of the pipeline of a {@link com.getsentry.raven.Raven}
+ * instance, to feed an external tracing or metrics system.
+ * <p>
+ * The listeners are called synchronously by the thread going through the stage, sometimes while holding a lock of
+ * the async queue: they must be fast, must not block and must not send events with Raven. They only receive
+ * primitive values, nothing is allocated to notify them. An exception thrown by a listener is logged and ignored.
+ * <p>
+ * Listeners are added with {@link com.getsentry.raven.Raven#addPipelineListener(PipelineListener)}, or found by
+ * {@link com.getsentry.raven.DefaultRavenFactory} with the {@link java.util.ServiceLoader} system.
+ * {@link PipelineListenerAdapter} implements every stage with an empty method.
+ */
+public interface PipelineListener {
+    /**
+     * Called when an event has been built, by {@link com.getsentry.raven.Raven} or by the async connection for the
+     * deferred events.
+     *
+     * @param nanos time spent building the event, in nanoseconds.
+     */
+    void onBuilt(long nanos);
+
+    /**
+     * Called when an event is handed over to the queue of the async connection.
+     */
+    void onEnqueued();
+
+    /**
+     * Called when an event is taken from the queue of the async connection to be sent.
+     *
+     * @param waitNanos time the event spent in the queue, in nanoseconds.
+     */
+    void onDequeued(long waitNanos);
+
+    /**
+     * Called when an event has been marshalled to the HTTP connection.
+     *
+     * @param nanos time spent marshalling the event, in nanoseconds.
+     * @param bytes number of bytes written by the marshaller.
+     */
+    void onMarshalled(long nanos, long bytes);
+
+    /**
+     * Called when an event has been sent to Sentry.
+     *
+     * @param nanos time spent sending the event, in nanoseconds.
+     */
+    void onSent(long nanos);
+
+    /**
+     * Called when an event couldn't be sent to Sentry.
+     *
+     * @param nanos time spent trying to send the event, in nanoseconds.
+     */
+    void onFailed(long nanos);
+
+    /**
+     * Called when an event is stored in the buffer after a failure.
+     */
+    void onBuffered();
+
+    /**
+     * Called when an event is dropped because the queue of the async connection is full.
+     */
+    void onDropped();
+}
@@ -0,0 +1,38 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * {@link PipelineListener} ignoring every stage, to extend when only some of the stages are of interest.
+ */
+public abstract class PipelineListenerAdapter implements PipelineListener {
+    @Override
+    public void onBuilt(long nanos) {
+    }
+
+    @Override
+    public void onEnqueued() {
+    }
+
+    @Override
+    public void onDequeued(long waitNanos) {
+    }
+
+    @Override
+    public void onMarshalled(long nanos, long bytes) {
+    }
+
+    @Override
+    public void onSent(long nanos) {
+    }
+
+    @Override
+    public void onFailed(long nanos) {
+    }
+
+    @Override
+    public void onBuffered() {
+    }
+
+    @Override
+    public void onDropped() {
+    }
+}
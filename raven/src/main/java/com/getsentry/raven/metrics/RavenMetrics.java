@@ -0,0 +1,551 @@
+package com.getsentry.raven.metrics;
+
+import com.getsentry.raven.event.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counters, gauges and latency histograms of the pipeline of a {@link com.getsentry.raven.Raven} instance.
+ * <p>
+ * The components of the pipeline implementing {@link Instrumented} report to the metrics they are given: the
+ * counters are {@link StripedCounter}s and the durations are recorded in {@link LatencyHistogram}s, neither of them
+ * takes a lock. The gauges are read from the components when the metrics are read.
+ * <p>
+ * The metrics can be exposed as JMX MBeans with {@link #register(String)}, under the domain {@value #JMX_DOMAIN}.
+ * <p>
+ * Every stage reported is also dispatched to the {@link PipelineListener}s added to the metrics, even if the metrics
+ * themselves aren't recorded. Without listener, the dispatch is a loop over an empty array.
+ * {@link #DISABLED} is a shared instance ignoring everything, used by the components which aren't instrumented.
+ */
+public final class RavenMetrics implements RavenMetricsMBean {
+    /**
+     * Metrics ignoring everything reported to them.
+     */
+    public static final RavenMetrics DISABLED = new RavenMetrics(false);
+    /**
+     * JMX domain of the MBeans.
+     */
+    public static final String JMX_DOMAIN = "com.getsentry.raven";
+    private static final Logger logger = LoggerFactory.getLogger(RavenMetrics.class);
+    private static final PipelineListener[] NO_LISTENERS = new PipelineListener[0];
+    private final boolean enabled;
+    private final StripedCounter eventsCaptured = new StripedCounter();
+    private final StripedCounter eventsEnqueued = new StripedCounter();
+    private final StripedCounter eventsDropped = new StripedCounter();
+    private final StripedCounter eventsSent = new StripedCounter();
+    private final StripedCounter eventsFailed = new StripedCounter();
+    private final StripedCounter eventsBuffered = new StripedCounter();
+    private final StripedCounter eventsReplayed = new StripedCounter();
+    private final StripedCounter lockdowns = new StripedCounter();
+    private final StripedCounter marshalledBytes = new StripedCounter();
+    private final LatencyHistogram captureLatency = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private final LatencyHistogram marshallingLatency = new LatencyHistogram();
+    private final LatencyHistogram httpRoundTrip = new LatencyHistogram();
+    // Not NO_LISTENERS, which is initialized after DISABLED
+    private volatile PipelineListener[] listeners = new PipelineListener[0];
+    private volatile EventCostAccountant costAccountant;
+    private volatile Gauge queueDepth;
+    private volatile Gauge queuedBytes;
+    private volatile Gauge bufferSize;
+    private volatile Gauge bufferBytes;
+    private JmxRegistration registration;
+
+    /**
+     * Creates metrics recording what is reported to them.
+     */
+    public RavenMetrics() {
+        this(true);
+    }
+
+    /**
+     * Creates metrics dispatching the stages to their listeners, recording the metrics only if enabled.
+     *
+     * @param enabled whether the counters, gauges and histograms are recorded.
+     */
+    public RavenMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds a listener notified of the stages reported to these metrics.
+     * <p>
+     * The listener is ignored if these metrics are {@link #DISABLED}, which is shared.
+     *
+     * @param listener listener to add.
+     */
+    public synchronized void addPipelineListener(PipelineListener listener) {
+        if (this == DISABLED) {
+            logger.warn("The pipeline listener '{}' can't be added to the shared disabled metrics, ignoring it.",
+                listener);
+            return;
+        }
+        PipelineListener[] current = listeners;
+        PipelineListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = listener;
+        listeners = updated;
+    }
+
+    /**
+     * Removes a listener added to these metrics.
+     *
+     * @param listener listener to remove.
+     */
+    public synchronized void removePipelineListener(PipelineListener listener) {
+        List<PipelineListener> updated = new ArrayList<>(Arrays.asList(listeners));
+        if (updated.remove(listener)) {
+            listeners = updated.isEmpty() ? NO_LISTENERS : updated.toArray(new PipelineListener[updated.size()]);
+        }
+    }
+
+    public List<PipelineListener> getPipelineListeners() {
+        return Collections.unmodifiableList(Arrays.asList(listeners));
+    }
+
+    public EventCostAccountant getCostAccountant() {
+        return costAccountant;
+    }
+
+    /**
+     * Sets the accountant attributing the costs of the events to their logger and culprit.
+     * <p>
+     * The accountant is ignored if these metrics are {@link #DISABLED}, which is shared.
+     *
+     * @param costAccountant accountant to use, null to not attribute the costs.
+     */
+    public void setCostAccountant(EventCostAccountant costAccountant) {
+        if (this == DISABLED) {
+            if (costAccountant != null) {
+                logger.warn("The shared disabled metrics can't attribute costs, ignoring the cost accountant.");
+            }
+            return;
+        }
+        this.costAccountant = costAccountant;
+    }
+
+    /**
+     * Records an event given to {@link com.getsentry.raven.Raven#sendEvent} and the time it took to hand it over to
+     * the connection.
+     *
+     * @param nanos duration of the call, in nanoseconds.
+     */
+    public void recordCapture(long nanos) {
+        if (enabled) {
+            eventsCaptured.increment();
+            captureLatency.record(nanos);
+        }
+    }
+
+    /**
+     * Records an event built by {@link com.getsentry.raven.Raven} or by the async connection.
+     *
+     * @param event event built.
+     * @param nanos time spent building the event, in nanoseconds.
+     */
+    public void recordBuilt(Event event, long nanos) {
+        EventCostAccountant accountant = costAccountant;
+        if (accountant != null) {
+            accountant.recordBuild(event, nanos);
+        }
+        dispatch(Stage.BUILT, nanos, 0);
+    }
+
+    /**
+     * Records an event added to the queue of the async connection.
+     */
+    public void recordEnqueued() {
+        if (enabled) {
+            eventsEnqueued.increment();
+        }
+        dispatch(Stage.ENQUEUED, 0, 0);
+    }
+
+    /**
+     * Records an event dropped because the queue of the async connection was full.
+     */
+    public void recordDropped() {
+        if (enabled) {
+            eventsDropped.increment();
+        }
+        dispatch(Stage.DROPPED, 0, 0);
+    }
+
+    /**
+     * Records the time an event spent in the queue of the async connection.
+     *
+     * @param nanos time spent in the queue, in nanoseconds.
+     */
+    public void recordQueueWait(long nanos) {
+        if (enabled) {
+            queueWait.record(nanos);
+        }
+        dispatch(Stage.DEQUEUED, nanos, 0);
+    }
+
+    /**
+     * Records an event sent to Sentry.
+     *
+     * @param event event sent.
+     * @param nanos time spent sending the event, in nanoseconds.
+     */
+    public void recordSent(Event event, long nanos) {
+        if (enabled) {
+            eventsSent.increment();
+        }
+        EventCostAccountant accountant = costAccountant;
+        if (accountant != null) {
+            accountant.recordSend(event, nanos);
+        }
+        dispatch(Stage.SENT, nanos, 0);
+    }
+
+    /**
+     * Records an event which couldn't be sent to Sentry.
+     *
+     * @param event event which couldn't be sent.
+     * @param nanos time spent trying to send the event, in nanoseconds.
+     */
+    public void recordFailed(Event event, long nanos) {
+        if (enabled) {
+            eventsFailed.increment();
+        }
+        EventCostAccountant accountant = costAccountant;
+        if (accountant != null) {
+            accountant.recordFailure(event, nanos);
+        }
+        dispatch(Stage.FAILED, nanos, 0);
+    }
+
+    /**
+     * Records a lockdown of the connection.
+     */
+    public void recordLockdown() {
+        if (enabled) {
+            lockdowns.increment();
+        }
+    }
+
+    /**
+     * Records an event stored in the buffer.
+     */
+    public void recordBuffered() {
+        if (enabled) {
+            eventsBuffered.increment();
+        }
+        dispatch(Stage.BUFFERED, 0, 0);
+    }
+
+    /**
+     * Records a buffered event sent by the flusher.
+     */
+    public void recordReplayed() {
+        if (enabled) {
+            eventsReplayed.increment();
+        }
+    }
+
+    /**
+     * Records the marshalling of an event.
+     *
+     * @param event event marshalled.
+     * @param nanos duration of the marshalling, in nanoseconds.
+     * @param bytes number of bytes written by the marshaller.
+     */
+    public void recordMarshalling(Event event, long nanos, long bytes) {
+        if (enabled) {
+            marshallingLatency.record(nanos);
+            marshalledBytes.add(bytes);
+        }
+        EventCostAccountant accountant = costAccountant;
+        if (accountant != null) {
+            accountant.recordPayload(event, bytes);
+        }
+        dispatch(Stage.MARSHALLED, nanos, bytes);
+    }
+
+    /**
+     * Records the round trip of an HTTP request to Sentry.
+     *
+     * @param nanos duration of the request, in nanoseconds.
+     */
+    public void recordHttpRoundTrip(long nanos) {
+        if (enabled) {
+            httpRoundTrip.record(nanos);
+        }
+    }
+
+    /**
+     * Sets the gauge of the number of events in the queue of the async connection.
+     *
+     * @param gauge gauge reading the depth of the queue.
+     */
+    public void setQueueDepth(Gauge gauge) {
+        if (enabled) {
+            this.queueDepth = gauge;
+        }
+    }
+
+    /**
+     * Sets the gauge of the estimated size of the events in the queue of the async connection.
+     *
+     * @param gauge gauge reading the number of bytes queued.
+     */
+    public void setQueuedBytes(Gauge gauge) {
+        if (enabled) {
+            this.queuedBytes = gauge;
+        }
+    }
+
+    /**
+     * Sets the gauge of the number of events in the buffer.
+     *
+     * @param gauge gauge reading the number of events buffered.
+     */
+    public void setBufferSize(Gauge gauge) {
+        if (enabled) {
+            this.bufferSize = gauge;
+        }
+    }
+
+    /**
+     * Sets the gauge of the size of the events in the buffer.
+     *
+     * @param gauge gauge reading the number of bytes buffered.
+     */
+    public void setBufferBytes(Gauge gauge) {
+        if (enabled) {
+            this.bufferBytes = gauge;
+        }
+    }
+
+    public LatencyHistogram getCaptureLatency() {
+        return captureLatency;
+    }
+
+    public LatencyHistogram getQueueWait() {
+        return queueWait;
+    }
+
+    public LatencyHistogram getMarshallingLatency() {
+        return marshallingLatency;
+    }
+
+    public LatencyHistogram getHttpRoundTrip() {
+        return httpRoundTrip;
+    }
+
+    @Override
+    public long getEventsCaptured() {
+        return eventsCaptured.get();
+    }
+
+    @Override
+    public long getEventsEnqueued() {
+        return eventsEnqueued.get();
+    }
+
+    @Override
+    public long getEventsDropped() {
+        return eventsDropped.get();
+    }
+
+    @Override
+    public long getEventsSent() {
+        return eventsSent.get();
+    }
+
+    @Override
+    public long getEventsFailed() {
+        return eventsFailed.get();
+    }
+
+    @Override
+    public long getEventsBuffered() {
+        return eventsBuffered.get();
+    }
+
+    @Override
+    public long getEventsReplayed() {
+        return eventsReplayed.get();
+    }
+
+    @Override
+    public long getLockdowns() {
+        return lockdowns.get();
+    }
+
+    @Override
+    public long getMarshalledBytes() {
+        return marshalledBytes.get();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        return read(queueDepth);
+    }
+
+    @Override
+    public long getQueuedBytes() {
+        return read(queuedBytes);
+    }
+
+    @Override
+    public long getBufferSize() {
+        return read(bufferSize);
+    }
+
+    @Override
+    public long getBufferBytes() {
+        return read(bufferBytes);
+    }
+
+    private static long read(Gauge gauge) {
+        return gauge != null ? gauge.getValue() : 0;
+    }
+
+    /**
+     * Notifies the listeners of a stage, a failing listener doesn't prevent the others from being notified.
+     *
+     * @param stage stage reached by the event.
+     * @param nanos duration of the stage, in nanoseconds, if the stage has one.
+     * @param bytes number of bytes written, if the stage has some.
+     */
+    private void dispatch(Stage stage, long nanos, long bytes) {
+        PipelineListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            try {
+                stage.notify(current[i], nanos, bytes);
+            } catch (RuntimeException e) {
+                logger.warn("The pipeline listener '{}' failed.", current[i], e);
+            }
+        }
+    }
+
+    /**
+     * Registers the metrics and the latency histograms as MBeans of the platform MBean server.
+     * <p>
+     * The metrics are registered as {@code com.getsentry.raven:type=Raven,name=<name>} and the histograms as
+     * {@code com.getsentry.raven:type=Latency,raven=<name>,name=<histogram>}. Registering the metrics again replaces
+     * the previous registration.
+     *
+     * @param name name identifying this instance among the other Raven instances of the JVM.
+     * @throws IllegalStateException if the MBeans couldn't be registered, for example if the name is already used.
+     */
+    public synchronized void register(String name) {
+        if (!enabled) {
+            return;
+        }
+        unregister();
+        JmxRegistration newRegistration = new JmxRegistration();
+        String quotedName = JmxRegistration.quote(name);
+        newRegistration.register(JMX_DOMAIN + ":type=Raven,name=" + quotedName, this);
+        registerLatency(newRegistration, quotedName, "capture", captureLatency);
+        registerLatency(newRegistration, quotedName, "queueWait", queueWait);
+        registerLatency(newRegistration, quotedName, "marshalling", marshallingLatency);
+        registerLatency(newRegistration, quotedName, "httpRoundTrip", httpRoundTrip);
+        registration = newRegistration;
+    }
+
+    private static void registerLatency(JmxRegistration registration, String quotedName, String histogramName,
+                                        LatencyHistogram histogram) {
+        registration.register(JMX_DOMAIN + ":type=Latency,raven=" + quotedName + ",name=" + histogramName, histogram);
+    }
+
+    /**
+     * Removes the MBeans of these metrics from the platform MBean server, if they were registered.
+     */
+    public synchronized void unregister() {
+        if (registration != null) {
+            registration.close();
+            registration = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RavenMetrics{"
+            + "enabled=" + enabled
+            + ", eventsCaptured=" + eventsCaptured
+            + ", eventsSent=" + eventsSent
+            + ", eventsFailed=" + eventsFailed
+            + ", eventsDropped=" + getEventsDropped()
+            + '}';
+    }
+
+    /**
+     * Value read from a component when the metrics are read.
+     */
+    public interface Gauge {
+        /**
+         * Reads the current value.
+         *
+         * @return the current value.
+         */
+        long getValue();
+    }
+
+    /**
+     * Stage of the pipeline dispatched to the listeners, calling the method of the listener for the stage.
+     */
+    private enum Stage {
+        BUILT {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onBuilt(nanos);
+            }
+        },
+        ENQUEUED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onEnqueued();
+            }
+        },
+        DROPPED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onDropped();
+            }
+        },
+        DEQUEUED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onDequeued(nanos);
+            }
+        },
+        SENT {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onSent(nanos);
+            }
+        },
+        FAILED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onFailed(nanos);
+            }
+        },
+        BUFFERED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onBuffered();
+            }
+        },
+        MARSHALLED {
+            @Override
+            void notify(PipelineListener listener, long nanos, long bytes) {
+                listener.onMarshalled(nanos, bytes);
+            }
+        };
+
+        abstract void notify(PipelineListener listener, long nanos, long bytes);
+    }
+}
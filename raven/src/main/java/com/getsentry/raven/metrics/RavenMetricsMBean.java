@@ -0,0 +1,97 @@
+package com.getsentry.raven.metrics;
+
+/**
+ * JMX view of the counters and gauges of {@link RavenMetrics}.
+ */
+public interface RavenMetricsMBean {
+    /**
+     * Returns the number of events given to {@link com.getsentry.raven.Raven#sendEvent}.
+     *
+     * @return the number of events captured.
+     */
+    long getEventsCaptured();
+
+    /**
+     * Returns the number of events added to the queue of the async connection.
+     *
+     * @return the number of events enqueued.
+     */
+    long getEventsEnqueued();
+
+    /**
+     * Returns the number of events dropped because the queue of the async connection was full.
+     *
+     * @return the number of events dropped by the overflow policy.
+     */
+    long getEventsDropped();
+
+    /**
+     * Returns the number of events successfully sent to Sentry.
+     *
+     * @return the number of events sent.
+     */
+    long getEventsSent();
+
+    /**
+     * Returns the number of events which couldn't be sent to Sentry.
+     *
+     * @return the number of failed attempts to send an event.
+     */
+    long getEventsFailed();
+
+    /**
+     * Returns the number of events stored in the buffer after a failure.
+     *
+     * @return the number of events buffered.
+     */
+    long getEventsBuffered();
+
+    /**
+     * Returns the number of buffered events sent by the flusher.
+     *
+     * @return the number of events replayed from the buffer.
+     */
+    long getEventsReplayed();
+
+    /**
+     * Returns the number of lockdowns of the connection after a failure.
+     *
+     * @return the number of lockdowns.
+     */
+    long getLockdowns();
+
+    /**
+     * Returns the number of bytes written by the marshaller.
+     *
+     * @return the number of bytes marshalled.
+     */
+    long getMarshalledBytes();
+
+    /**
+     * Returns the number of events waiting in the queue of the async connection.
+     *
+     * @return the current depth of the queue.
+     */
+    long getQueueDepth();
+
+    /**
+     * Returns the estimated size of the events waiting in the queue of the async connection.
+     *
+     * @return the number of bytes queued.
+     */
+    long getQueuedBytes();
+
+    /**
+     * Returns the number of events currently stored in the buffer.
+     *
+     * @return the number of events in the buffer.
+     */
+    long getBufferSize();
+
+    /**
+     * Returns the size of the events currently stored in the buffer.
+     *
+     * @return the number of bytes in the buffer.
+     */
+    long getBufferBytes();
+}
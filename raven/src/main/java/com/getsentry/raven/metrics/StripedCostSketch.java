@@ -0,0 +1,115 @@
+package com.getsentry.raven.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Thread-safe {@link TopCostSketch} split by key in several sketches locked independently, so that the threads
+ * recording the costs of different keys don't contend for the same lock.
+ * <p>
+ * Each stripe is a sketch of the same depth and a fraction of the width, keeping its own top keys, the memory used is
+ * then the same as a single sketch. The top keys of the stripes are merged when they are read.
+ */
+final class StripedCostSketch {
+    private static final int STRIPES = 8;
+    private static final int MIX_MULTIPLIER = 0x85EBCA6B;
+    private static final int STRIPE_SHIFT = Integer.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+    private final int top;
+    private final int rankCost;
+    private final TopCostSketch[] stripes = new TopCostSketch[STRIPES];
+
+    /**
+     * Creates a sketch.
+     *
+     * @param top      number of keys kept.
+     * @param width    number of cells in each row of the sketch, shared by the stripes.
+     * @param depth    number of rows of the sketch.
+     * @param costs    number of costs recorded for each key.
+     * @param rankCost index of the cost ranking the keys.
+     */
+    StripedCostSketch(int top, int width, int depth, int costs, int rankCost) {
+        this.top = top;
+        this.rankCost = rankCost;
+        int stripeWidth = Math.max(1, width / STRIPES);
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new TopCostSketch(top, stripeWidth, depth, costs, rankCost);
+        }
+    }
+
+    /**
+     * Adds a cost to a key.
+     *
+     * @param key   key to which the cost is attributed.
+     * @param cost  index of the cost.
+     * @param value value to add to the cost.
+     */
+    void add(String key, int cost, long value) {
+        TopCostSketch stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.add(key, cost, value);
+        }
+    }
+
+    /**
+     * Adds two costs to a key at once.
+     *
+     * @param key    key to which the costs are attributed.
+     * @param cost1  index of the first cost.
+     * @param value1 value to add to the first cost.
+     * @param cost2  index of the second cost.
+     * @param value2 value to add to the second cost.
+     */
+    void add(String key, int cost1, long value1, int cost2, long value2) {
+        TopCostSketch stripe = stripeOf(key);
+        synchronized (stripe) {
+            stripe.add(key, cost1, value1);
+            stripe.add(key, cost2, value2);
+        }
+    }
+
+    /**
+     * Returns the keys with the highest ranking cost, with the estimate of each cost.
+     * <p>
+     * The stripes are read one after the other, the result isn't an atomic snapshot.
+     *
+     * @return the estimated costs of the top keys, by key, from the highest ranking cost to the lowest.
+     */
+    List<Map.Entry<String, long[]>> getTop() {
+        List<Map.Entry<String, long[]>> merged = new ArrayList<>();
+        for (TopCostSketch stripe : stripes) {
+            synchronized (stripe) {
+                merged.addAll(stripe.getTop());
+            }
+        }
+        Collections.sort(merged, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+                long value1 = o1.getValue()[rankCost];
+                long value2 = o2.getValue()[rankCost];
+                return value1 < value2 ? 1 : (value1 == value2 ? 0 : -1);
+            }
+        });
+        return merged.size() > top ? new ArrayList<>(merged.subList(0, top)) : merged;
+    }
+
+    /**
+     * Forgets every key and cost.
+     */
+    void clear() {
+        for (TopCostSketch stripe : stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Picks the stripe of a key from the high bits of its mixed hash, the sketches use the low bits.
+     */
+    private TopCostSketch stripeOf(String key) {
+        return stripes[(key.hashCode() * MIX_MULTIPLIER) >>> STRIPE_SHIFT];
+    }
+}
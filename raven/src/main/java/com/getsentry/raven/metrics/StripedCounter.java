@@ -0,0 +1,55 @@
+package com.getsentry.raven.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counter spreading its increments over several cells to avoid contention between threads, a replacement for
+ * {@code LongAdder} which isn't available in Java 7.
+ * <p>
+ * Each thread updates the cell picked by its identifier, the cells are padded so that two of them never share a
+ * cache line. Reading the counter adds up the cells, it is then more expensive than updating it.
+ */
+public final class StripedCounter {
+    private static final int STRIPES = 16;
+    /**
+     * Distance between two cells in the array, 8 longs filling a 64 bytes cache line.
+     */
+    private static final int PADDING = 8;
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PADDING);
+
+    /**
+     * Adds one to the counter.
+     */
+    public void increment() {
+        add(1);
+    }
+
+    /**
+     * Adds a value to the counter.
+     *
+     * @param value value to add.
+     */
+    public void add(long value) {
+        cells.getAndAdd(((int) Thread.currentThread().getId() & (STRIPES - 1)) * PADDING, value);
+    }
+
+    /**
+     * Returns the current value of the counter.
+     * <p>
+     * The value isn't an atomic snapshot, the increments made while reading it may or may not be included.
+     *
+     * @return the sum of the increments.
+     */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++) {
+            sum += cells.get(i * PADDING);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
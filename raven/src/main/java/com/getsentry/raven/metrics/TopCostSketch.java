@@ -0,0 +1,192 @@
+package com.getsentry.raven.metrics;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bounded aggregation of costs by key, keeping the keys with the highest cost.
+ * <p>
+ * Every cost is added to a count-min sketch with one counter per cost in each cell, so the memory used doesn't depend
+ * on the number of keys; estimates can only be too high, by a fraction of the total cost which decreases with the
+ * width of the sketch. The keys with the highest estimate of the ranking cost are kept in a min-heap of bounded size,
+ * a key replaces the root of the heap once its estimate exceeds it.
+ * <p>
+ * This class isn't thread-safe.
+ */
+final class TopCostSketch {
+    private static final int MIX_MULTIPLIER = 0x9E3779B9;
+    private static final int MIX_SHIFT = 16;
+    private final int width;
+    private final int depth;
+    private final int costs;
+    private final int rankCost;
+    private final long[] cells;
+    private final int[] indexes;
+    private final String[] heapKeys;
+    private final long[] heapValues;
+    private final Map<String, Integer> heapPositions = new HashMap<>();
+    private int heapSize;
+
+    /**
+     * Creates a sketch.
+     *
+     * @param top      number of keys kept.
+     * @param width    number of cells in each row of the sketch.
+     * @param depth    number of rows of the sketch.
+     * @param costs    number of costs recorded for each key.
+     * @param rankCost index of the cost ranking the keys.
+     */
+    TopCostSketch(int top, int width, int depth, int costs, int rankCost) {
+        this.width = width;
+        this.depth = depth;
+        this.costs = costs;
+        this.rankCost = rankCost;
+        this.cells = new long[width * depth * costs];
+        this.indexes = new int[depth];
+        this.heapKeys = new String[top];
+        this.heapValues = new long[top];
+    }
+
+    /**
+     * Adds a cost to a key.
+     *
+     * @param key   key to which the cost is attributed.
+     * @param cost  index of the cost.
+     * @param value value to add to the cost.
+     */
+    void add(String key, int cost, long value) {
+        locate(key);
+        for (int row = 0; row < depth; row++) {
+            cells[indexes[row] + cost] += value;
+        }
+        if (cost == rankCost && heapKeys.length > 0) {
+            offer(key, estimate(rankCost));
+        }
+    }
+
+    /**
+     * Returns the keys with the highest ranking cost, with the estimate of each cost.
+     *
+     * @return the estimated costs of the top keys, by key, from the highest ranking cost to the lowest.
+     */
+    List<Map.Entry<String, long[]>> getTop() {
+        List<Map.Entry<String, long[]>> top = new ArrayList<>(heapSize);
+        for (int i = 0; i < heapSize; i++) {
+            locate(heapKeys[i]);
+            long[] estimates = new long[costs];
+            for (int cost = 0; cost < costs; cost++) {
+                estimates[cost] = estimate(cost);
+            }
+            top.add(new AbstractMap.SimpleImmutableEntry<>(heapKeys[i], estimates));
+        }
+        Collections.sort(top, new Comparator<Map.Entry<String, long[]>>() {
+            @Override
+            public int compare(Map.Entry<String, long[]> o1, Map.Entry<String, long[]> o2) {
+                long value1 = o1.getValue()[rankCost];
+                long value2 = o2.getValue()[rankCost];
+                return value1 < value2 ? 1 : (value1 == value2 ? 0 : -1);
+            }
+        });
+        return top;
+    }
+
+    /**
+     * Forgets every key and cost.
+     */
+    void clear() {
+        Arrays.fill(cells, 0);
+        Arrays.fill(heapKeys, null);
+        heapPositions.clear();
+        heapSize = 0;
+    }
+
+    /**
+     * Computes the first cell of the key in each row, with double hashing.
+     */
+    private void locate(String key) {
+        int hash1 = key.hashCode();
+        int hash2 = hash1 * MIX_MULTIPLIER;
+        hash2 ^= hash2 >>> MIX_SHIFT;
+        hash2 |= 1;
+        for (int row = 0; row < depth; row++) {
+            int column = ((hash1 + row * hash2) & Integer.MAX_VALUE) % width;
+            indexes[row] = (row * width + column) * costs;
+        }
+    }
+
+    /**
+     * Returns the estimate of a cost for the last key located.
+     */
+    private long estimate(int cost) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            estimate = Math.min(estimate, cells[indexes[row] + cost]);
+        }
+        return estimate;
+    }
+
+    private void offer(String key, long value) {
+        Integer position = heapPositions.get(key);
+        if (position != null) {
+            heapValues[position] = value;
+            siftDown(position);
+        } else if (heapSize < heapKeys.length) {
+            place(key, value, heapSize);
+            heapSize++;
+            siftUp(heapSize - 1);
+        } else if (value > heapValues[0]) {
+            heapPositions.remove(heapKeys[0]);
+            place(key, value, 0);
+            siftDown(0);
+        }
+    }
+
+    private void place(String key, long value, int position) {
+        heapKeys[position] = key;
+        heapValues[position] = value;
+        heapPositions.put(key, position);
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (heapValues[parent] <= heapValues[position]) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < heapSize && heapValues[left] < heapValues[smallest]) {
+                smallest = left;
+            }
+            if (right < heapSize && heapValues[right] < heapValues[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = heapKeys[i];
+        long value = heapValues[i];
+        place(heapKeys[j], heapValues[j], i);
+        place(key, value, j);
+    }
+}
@@ -23,6 +23,25 @@ public class RavenServletRequestListener implements ServletRequestListener {
         return THREAD_REQUEST.get();
     }
 
+    /**
+     * Binds a request to the current thread in place of the current one.
+     * <p>
+     * Used to propagate the request to the threads working on it, see
+     * {@link com.getsentry.raven.RavenContextSnapshot}.
+     *
+     * @param request request to bind to the current thread, null to unbind the current request.
+     * @return the request previously bound to the current thread, null if there was none.
+     */
+    public static HttpServletRequest swapServletRequest(HttpServletRequest request) {
+        HttpServletRequest previous = THREAD_REQUEST.get();
+        if (request != null) {
+            THREAD_REQUEST.set(request);
+        } else {
+            THREAD_REQUEST.remove();
+        }
+        return previous;
+    }
+
     @Override
     public void requestDestroyed(ServletRequestEvent servletRequestEvent) {
         THREAD_REQUEST.remove();
@@ -0,0 +1,313 @@
+package com.getsentry.raven.util;
+
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Immutable, array-backed collections used to freeze the content of an {@link com.getsentry.raven.event.Event}.
+ * <p>
+ * Events are usually small (a handful of tags and extras) but can be kept in memory for a long time, for example
+ * while queued in an {@link com.getsentry.raven.connection.AsyncConnection} during an outage. A {@code HashMap}
+ * wrapped in a {@code Collections.unmodifiableMap} costs a table, one node per entry and the wrapper itself, which
+ * is often more than the actual payload.<br>
+ * The collections returned here store their content in a single array, are immutable by themselves (no wrapper
+ * is needed) and empty collections are replaced by the shared {@link Collections} singletons.
+ * <p>
+ * Lookups on the maps are linear, they are meant to be iterated (by a marshaller), not queried.
+ */
+public final class CompactCollections {
+
+    private CompactCollections() {
+    }
+
+    /**
+     * Returns an immutable copy of the given map, preserving its iteration order.
+     *
+     * @param map map to freeze, may be null.
+     * @param <K> type of the keys.
+     * @param <V> type of the values.
+     * @return the shared empty map if {@code map} is null or empty, {@code map} itself if it has already been
+     * frozen, an array-backed copy otherwise.
+     */
+    public static <K, V> Map<K, V> freezeMap(Map<K, V> map) {
+        if (map == null || map.isEmpty()) {
+            return Collections.emptyMap();
+        } else if (map instanceof Frozen) {
+            return map;
+        }
+        return new ArrayMap<>(map);
+    }
+
+    /**
+     * Returns an immutable view of two frozen maps layered on top of each other, without merging them.
+     * <p>
+     * Entries of {@code overlay} take precedence over the entries of {@code base} with the same key. Iterating the
+     * view goes through the entries of {@code base} that aren't shadowed by {@code overlay}, then through the
+     * entries of {@code overlay}.
+     *
+     * @param base    shared map, usually the same instance for many events; must be immutable.
+     * @param overlay map specific to one event; must be immutable.
+     * @param <K>     type of the keys.
+     * @param <V>     type of the values.
+     * @return {@code overlay} if {@code base} is empty, {@code base} if {@code overlay} is empty, a layered view
+     * otherwise.
+     */
+    public static <K, V> Map<K, V> layerMaps(Map<K, V> base, Map<K, V> overlay) {
+        if (base.isEmpty()) {
+            return overlay;
+        } else if (overlay.isEmpty()) {
+            return base;
+        }
+        return new LayeredMap<>(base, overlay);
+    }
+
+    /**
+     * Returns an immutable copy of the given list.
+     *
+     * @param list list to freeze, may be null.
+     * @param <E> type of the elements.
+     * @return the shared empty list if {@code list} is null or empty, {@code list} itself if it has already been
+     * frozen (or is {@link Frozen}), an array-backed copy otherwise.
+     */
+    public static <E> List<E> freezeList(List<E> list) {
+        if (list == null || list.isEmpty()) {
+            return Collections.emptyList();
+        } else if (list instanceof Frozen) {
+            return list;
+        }
+        return new ArrayBackedList<>(list.toArray());
+    }
+
+    /**
+     * Marker of the immutable collections which don't need to be copied when frozen.
+     * <p>
+     * Implementations must not be modifiable, neither directly nor through a view, and must be serializable.
+     */
+    public interface Frozen {
+    }
+
+    /**
+     * Immutable map storing its keys and values in a single array ({@code k0, v0, k1, v1, ...}).
+     *
+     * @param <K> type of the keys.
+     * @param <V> type of the values.
+     */
+    private static final class ArrayMap<K, V> extends AbstractMap<K, V> implements Serializable, Frozen {
+        private static final long serialVersionUID = 5497312487617305829L;
+        private final Object[] table;
+        private transient Set<Map.Entry<K, V>> entrySet;
+
+        private ArrayMap(Map<K, V> map) {
+            table = new Object[map.size() * 2];
+            int i = 0;
+            for (Map.Entry<K, V> entry : map.entrySet()) {
+                table[i++] = entry.getKey();
+                table[i++] = entry.getValue();
+            }
+        }
+
+        private int indexOf(Object key) {
+            for (int i = 0; i < table.length; i += 2) {
+                if (key == null ? table[i] == null : key.equals(table[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int size() {
+            return table.length / 2;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return indexOf(key) >= 0;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public V get(Object key) {
+            int index = indexOf(key);
+            return index >= 0 ? (V) table[index + 1] : null;
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new EntrySet();
+            }
+            return entrySet;
+        }
+
+        /**
+         * View of the entries of the map, entries are created while iterating.
+         */
+        private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+            @Override
+            public int size() {
+                return ArrayMap.this.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<Map.Entry<K, V>>() {
+                    private int index = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return index < table.length;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Map.Entry<K, V> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        Map.Entry<K, V> entry = new SimpleImmutableEntry<>((K) table[index], (V) table[index + 1]);
+                        index += 2;
+                        return entry;
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Immutable view of an overlay map on top of a base map.
+     *
+     * @param <K> type of the keys.
+     * @param <V> type of the values.
+     */
+    private static final class LayeredMap<K, V> extends AbstractMap<K, V> implements Serializable, Frozen {
+        private static final long serialVersionUID = -2091562385728829341L;
+        private final Map<K, V> base;
+        private final Map<K, V> overlay;
+        private transient Set<Map.Entry<K, V>> entrySet;
+
+        private LayeredMap(Map<K, V> base, Map<K, V> overlay) {
+            this.base = base;
+            this.overlay = overlay;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return overlay.containsKey(key) || base.containsKey(key);
+        }
+
+        @Override
+        public V get(Object key) {
+            if (overlay.containsKey(key)) {
+                return overlay.get(key);
+            }
+            return base.get(key);
+        }
+
+        @Override
+        public Set<Map.Entry<K, V>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new EntrySet();
+            }
+            return entrySet;
+        }
+
+        /**
+         * View of the entries of both maps, computed while iterating.
+         */
+        private final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+            @Override
+            public int size() {
+                int size = overlay.size();
+                for (K key : base.keySet()) {
+                    if (!overlay.containsKey(key)) {
+                        size++;
+                    }
+                }
+                return size;
+            }
+
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new Iterator<Map.Entry<K, V>>() {
+                    private final Iterator<Map.Entry<K, V>> baseIterator = base.entrySet().iterator();
+                    private Iterator<Map.Entry<K, V>> overlayIterator;
+                    private Map.Entry<K, V> next = nextBaseEntry();
+
+                    private Map.Entry<K, V> nextBaseEntry() {
+                        while (baseIterator.hasNext()) {
+                            Map.Entry<K, V> entry = baseIterator.next();
+                            if (!overlay.containsKey(entry.getKey())) {
+                                return entry;
+                            }
+                        }
+                        return null;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next != null || overlayIterator == null || overlayIterator.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<K, V> next() {
+                        if (next != null) {
+                            Map.Entry<K, V> entry = next;
+                            next = nextBaseEntry();
+                            return entry;
+                        }
+                        if (overlayIterator == null) {
+                            overlayIterator = overlay.entrySet().iterator();
+                        }
+                        return overlayIterator.next();
+                    }
+
+                    @Override
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        }
+    }
+
+    /**
+     * Immutable list backed by an array.
+     *
+     * @param <E> type of the elements.
+     */
+    private static final class ArrayBackedList<E> extends AbstractList<E>
+        implements RandomAccess, Serializable, Frozen {
+        private static final long serialVersionUID = -3481296183523071047L;
+        private final Object[] elements;
+
+        private ArrayBackedList(Object[] elements) {
+            this.elements = elements;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            return (E) elements[index];
+        }
+
+        @Override
+        public int size() {
+            return elements.length;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.getsentry.raven.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Immutable association of values to logger name prefixes, following the hierarchy of the loggers.
+ * <p>
+ * A prefix applies to the logger with the same name and to its descendants: {@code com.example} matches
+ * {@code com.example} and {@code com.example.Foo}, but not {@code com.examples}. When several prefixes match a
+ * logger name, the longest one wins.
+ * <p>
+ * Logger names are few and looked up for every log record, so the value found for each name is cached. The cache
+ * is emptied when it reaches {@link #CACHE_SIZE} entries.
+ *
+ * @param <V> type of the values.
+ */
+public final class LoggerPrefixMap<V> {
+    /**
+     * Maximum number of logger names for which the resolved value is cached.
+     */
+    private static final int CACHE_SIZE = 1000;
+    /**
+     * Placeholder for the logger names resolved to a null value (ConcurrentHashMap doesn't support null values).
+     */
+    private static final Object NULL_VALUE = new Object();
+    private final Map<String, V> values;
+    private final V defaultValue;
+    private final ConcurrentMap<String, Object> resolved = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a map associating values to logger name prefixes.
+     *
+     * @param values       values by logger name prefix.
+     * @param defaultValue value of the logger names which don't match any prefix, may be null.
+     */
+    public LoggerPrefixMap(Map<String, V> values, V defaultValue) {
+        this.values = new HashMap<>(values);
+        this.defaultValue = defaultValue;
+    }
+
+    /**
+     * Returns the value associated to the longest prefix of a logger name.
+     *
+     * @param loggerName name of the logger, may be null.
+     * @return the value associated to the longest prefix of the logger name, the default value if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(String loggerName) {
+        if (loggerName == null || values.isEmpty()) {
+            return defaultValue;
+        }
+        Object value = resolved.get(loggerName);
+        if (value == null) {
+            value = resolve(loggerName);
+            if (resolved.size() >= CACHE_SIZE) {
+                resolved.clear();
+            }
+            resolved.put(loggerName, value != null ? value : NULL_VALUE);
+        }
+        return value != NULL_VALUE ? (V) value : null;
+    }
+
+    /**
+     * Returns whether any prefix has been associated to a value.
+     *
+     * @return true if no prefix is defined, in which case every logger name is associated to the default value.
+     */
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    private V resolve(String loggerName) {
+        String prefix = loggerName;
+        while (true) {
+            if (values.containsKey(prefix)) {
+                return values.get(prefix);
+            }
+            int lastDot = prefix.lastIndexOf('.');
+            if (lastDot < 0) {
+                return defaultValue;
+            }
+            prefix = prefix.substring(0, lastDot);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "LoggerPrefixMap{"
+            + "values=" + values
+            + ", defaultValue=" + defaultValue
+            + '}';
+    }
+}
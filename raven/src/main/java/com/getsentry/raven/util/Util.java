@@ -65,6 +65,25 @@ public final class Util {
         return new HashSet<>(Arrays.asList(extraTagsString.split(",")));
     }
 
+    /**
+     * Parses the provided sample rates string into a Map of String -&gt; Double.
+     *
+     * @param sampleRatesString comma-delimited keys and rates between 0 and 1, e.g. "key1:0.1,key2:1".
+     * @return Map of sample rates e.g. (key1 -&gt; 0.1, key2 -&gt; 1.0)
+     */
+    public static Map<String, Double> parseSampleRates(String sampleRatesString) {
+        Map<String, Double> sampleRates = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : parseTags(sampleRatesString).entrySet()) {
+            double sampleRate = Double.parseDouble(entry.getValue().trim());
+            if (!(sampleRate >= 0 && sampleRate <= 1)) {
+                throw new IllegalArgumentException("Invalid sample rate for '" + entry.getKey() + "': "
+                    + entry.getValue());
+            }
+            sampleRates.put(entry.getKey().trim(), sampleRate);
+        }
+        return sampleRates;
+    }
+
     /**
      * Parses the provided string value into an integer value.
      * <p>If the string is null or empty this returns the default value.</p>
@@ -2,16 +2,23 @@ package com.getsentry.raven;
 
 import com.getsentry.raven.event.Breadcrumb;
 import com.getsentry.raven.event.BreadcrumbBuilder;
+import com.getsentry.raven.event.Breadcrumbs;
 import org.hamcrest.Matchers;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.emptyCollectionOf;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 
 public class RavenContextTest {
 
@@ -86,4 +93,79 @@ public class RavenContextTest {
 
     }
 
+    @Test
+    public void breadcrumbsRecordedInActiveContextsKeepTheMostRecentOnes() {
+        RavenContext context = new RavenContext(2);
+        context.activate();
+        try {
+            Breadcrumbs.record("info", "foo", "test1");
+            Breadcrumbs.record("info", "foo", "test2");
+            Breadcrumbs.record("default", "warning", "bar", null, Collections.singletonMap("key", "value"));
+        } finally {
+            context.deactivate();
+        }
+
+        List<Breadcrumb> breadcrumbs = new ArrayList<>();
+        Iterator<Breadcrumb> iter = context.getBreadcrumbs();
+        while (iter.hasNext()) {
+            breadcrumbs.add(iter.next());
+        }
+
+        assertThat(breadcrumbs, hasSize(2));
+        assertThat(breadcrumbs.get(0).getMessage(), equalTo("test2"));
+        assertThat(breadcrumbs.get(1).getType(), equalTo("default"));
+        assertThat(breadcrumbs.get(1).getLevel(), equalTo("warning"));
+        assertThat(breadcrumbs.get(1).getData(), equalTo(Collections.singletonMap("key", "value")));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void invalidBreadcrumbIsRejected() {
+        RavenContext context = new RavenContext();
+        context.activate();
+        try {
+            Breadcrumbs.record("info", null, "test");
+        } finally {
+            context.deactivate();
+        }
+    }
+
+    @Test
+    public void breadcrumbSnapshotIsNotAffectedByLaterBreadcrumbs() {
+        RavenContext context = new RavenContext(2);
+        context.activate();
+        try {
+            Breadcrumbs.record("info", "foo", "test1");
+            Breadcrumbs.record("info", "foo", "test2");
+            Breadcrumbs.record("info", "foo", "test3");
+            List<Breadcrumb> snapshot = context.getBreadcrumbSnapshot();
+            for (int i = 4; i < 10; i++) {
+                Breadcrumbs.record("info", "foo", "test" + i);
+            }
+            context.clear();
+            Breadcrumbs.record("info", "foo", "test10");
+
+            assertThat(snapshot, hasSize(2));
+            assertThat(snapshot.get(0).getMessage(), equalTo("test2"));
+            assertThat(snapshot.get(1).getMessage(), equalTo("test3"));
+            assertThat(context.getBreadcrumbSnapshot(), hasSize(1));
+            assertThat(context.getBreadcrumbSnapshot().get(0).getMessage(), equalTo("test10"));
+        } finally {
+            context.deactivate();
+        }
+    }
+
+    @Test
+    public void breadcrumbSnapshotIsSerializable() throws Exception {
+        RavenContext context = new RavenContext();
+        context.recordBreadcrumb(new BreadcrumbBuilder().setLevel("info").setCategory("foo").setMessage("test").build());
+        List<Breadcrumb> snapshot = context.getBreadcrumbSnapshot();
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+        objectOutputStream.writeObject(snapshot);
+        ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+
+        assertThat(is.readObject(), equalTo((Object) snapshot));
+    }
+
 }
@@ -4,14 +4,28 @@ import mockit.Injectable;
 import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
+import com.getsentry.raven.connection.AbstractConnection;
 import com.getsentry.raven.connection.Connection;
+import com.getsentry.raven.connection.FlushableConnection;
+import com.getsentry.raven.connection.SendFuture;
 import com.getsentry.raven.event.Event;
 import com.getsentry.raven.event.EventBuilder;
+import com.getsentry.raven.event.EventBuilderSupplier;
+import com.getsentry.raven.event.EventSampler;
 import com.getsentry.raven.event.helper.EventBuilderHelper;
+import com.getsentry.raven.event.helper.EventBuilderHelperStats;
 import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.metrics.PipelineListener;
+import com.getsentry.raven.metrics.PipelineListenerAdapter;
+import com.getsentry.raven.metrics.RavenMetrics;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -67,6 +81,25 @@ public class RavenTest {
         }};
     }
 
+    @Test
+    public void testEventsExcludedBySamplingAreNotBuilt() throws Exception {
+        raven.addBuilderHelper(mockEventBuilderHelper);
+        Map<Event.Level, Double> levelSampleRates = new HashMap<>();
+        levelSampleRates.put(Event.Level.INFO, 0d);
+        raven.setSampler(new EventSampler(1, levelSampleRates, Collections.singletonMap("com.example.noisy", 0d)));
+
+        raven.sendMessage("message");
+        raven.sendEvent(new EventBuilder().withLevel(Event.Level.ERROR).withLogger("com.example.noisy.Foo"));
+        raven.sendException(new RuntimeException());
+
+        new Verifications() {{
+            mockEventBuilderHelper.helpBuildingEvent((EventBuilder) any);
+            times = 1;
+            mockConnection.send((Event) any);
+            times = 1;
+        }};
+    }
+
     @Test
     public void testSendMessage() throws Exception {
         final String message = "e960981e-656d-4404-9b1d-43b483d3f32c";
@@ -141,6 +174,39 @@ public class RavenTest {
         }};
     }
 
+    @Test
+    public void testBuilderHelpersRunByPriorityThenInsertionOrder() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        raven.addBuilderHelper(new RecordingBuilderHelper("second", calls));
+        raven.addBuilderHelper(new RecordingBuilderHelper("third", calls));
+        raven.addBuilderHelper(new RecordingBuilderHelper("first", calls), -1);
+        raven.addBuilderHelper(new RecordingBuilderHelper("last", calls), 1);
+
+        raven.runBuilderHelpers(new EventBuilder());
+
+        assertThat(calls, contains("first", "second", "third", "last"));
+    }
+
+    @Test
+    public void testBuilderHelpersAreTimedWhenEnabled() throws Exception {
+        final List<String> calls = new ArrayList<>();
+        EventBuilderHelper builderHelper = new RecordingBuilderHelper("timed", calls);
+        raven.addBuilderHelper(builderHelper);
+        raven.setSlowBuilderHelperThreshold(0);
+
+        raven.runBuilderHelpers(new EventBuilder());
+        raven.setBuilderHelperTimingEnabled(true);
+        raven.runBuilderHelpers(new EventBuilder());
+        raven.runBuilderHelpers(new EventBuilder());
+
+        EventBuilderHelperStats stats = raven.getBuilderHelperStats().get(0);
+        assertThat(calls, hasSize(3));
+        assertThat(stats.getHelper(), is(builderHelper));
+        assertThat(stats.getInvocations(), is(2L));
+        assertThat(stats.getMaxTimeNanos(), is(lessThanOrEqualTo(stats.getTotalTimeNanos())));
+        assertThat(stats.getSlowInvocations(), is(0L));
+    }
+
     @Test
     public void testCloseConnectionSuccessful() throws Exception {
         raven.closeConnection();
@@ -225,4 +291,157 @@ public class RavenTest {
             assertThat(event.getSentryInterfaces(), hasKey(ExceptionInterface.EXCEPTION_INTERFACE));
         }};
     }
+
+    @Test
+    public void testPipelineListenersAreNotifiedOfBuiltEvents() throws Exception {
+        final List<Long> builds = new ArrayList<>();
+        raven.addPipelineListener(new PipelineListenerAdapter() {
+            @Override
+            public void onBuilt(long nanos) {
+                builds.add(nanos);
+            }
+        });
+
+        raven.sendEvent(new EventBuilder().withMessage("message"));
+
+        assertThat(builds, hasSize(1));
+        assertThat(builds.get(0), is(greaterThanOrEqualTo(0L)));
+    }
+
+    @Test
+    public void testPipelineListenersAreKeptWhenTheMetricsChange() throws Exception {
+        PipelineListener listener = new PipelineListenerAdapter() {
+        };
+        raven.addPipelineListener(listener);
+
+        RavenMetrics metrics = new RavenMetrics();
+        raven.setMetrics(metrics);
+        raven.setMetrics(null);
+
+        assertThat(metrics.getPipelineListeners(), contains(listener));
+        assertThat(raven.getMetrics().isEnabled(), is(false));
+        assertThat(raven.getMetrics().getPipelineListeners(), contains(listener));
+    }
+
+    @Test
+    public void testEventsNeverSampledAreNotAccepted() throws Exception {
+        raven.setSampler(new EventSampler(1, Collections.singletonMap(Event.Level.DEBUG, 0d),
+            Collections.<String, Double>emptyMap()));
+
+        assertThat(raven.isAccepted(Event.Level.DEBUG, "logger"), is(false));
+        assertThat(raven.isAccepted(Event.Level.ERROR, "logger"), is(true));
+    }
+
+    @Test
+    public void testEventsNotAcceptedByTheConnectionAreNotAccepted(@Injectable final AbstractConnection connection)
+        throws Exception {
+        new NonStrictExpectations() {{
+            connection.isAccepting(Event.Level.ERROR);
+            result = false;
+        }};
+        raven.setConnection(connection);
+
+        assertThat(raven.isAccepted(Event.Level.ERROR, null), is(false));
+    }
+
+    @Test
+    public void testLazyEventIsOnlyBuiltWhenAccepted() throws Exception {
+        final List<String> built = new ArrayList<>();
+        raven.setSampler(new EventSampler(1, Collections.singletonMap(Event.Level.DEBUG, 0d),
+            Collections.<String, Double>emptyMap()));
+        EventBuilderSupplier supplier = new EventBuilderSupplier() {
+            @Override
+            public EventBuilder get() {
+                built.add("built");
+                return new EventBuilder().withMessage("expensive");
+            }
+        };
+
+        assertThat(raven.sendEvent(Event.Level.DEBUG, "logger", supplier), is(false));
+        assertThat(built, is(empty()));
+        assertThat(raven.sendEvent(Event.Level.WARNING, "logger", supplier), is(true));
+
+        new Verifications() {{
+            Event event;
+            mockConnection.send(event = withCapture());
+            assertThat(event.getLevel(), equalTo(Event.Level.WARNING));
+            assertThat(event.getLogger(), equalTo("logger"));
+            assertThat(event.getMessage(), equalTo("expensive"));
+        }};
+        assertThat(built, hasSize(1));
+    }
+
+    @Test
+    public void testSubmittedEventIsSentSynchronously() throws Exception {
+        SendFuture future = raven.submitEvent(new EventBuilder().withMessage("message"));
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is(true));
+        new Verifications() {{
+            mockConnection.send((Event) any);
+        }};
+    }
+
+    @Test
+    public void testSubmittedEventFailingCompletesTheFuture() throws Exception {
+        final RuntimeException exception = new RuntimeException();
+        new NonStrictExpectations() {{
+            mockConnection.send((Event) any);
+            result = exception;
+        }};
+
+        SendFuture future = raven.submitEvent(mockEvent);
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.getFailure(), is((Throwable) exception));
+    }
+
+    @Test
+    public void testSubmittedEventNotSampledIsDropped() throws Exception {
+        raven.setSampler(new EventSampler(1, Collections.singletonMap(Event.Level.DEBUG, 0d),
+            Collections.<String, Double>emptyMap()));
+
+        SendFuture future = raven.submitEvent(new EventBuilder().withLevel(Event.Level.DEBUG));
+
+        assertThat(future.isDropped(), is(true));
+        new Verifications() {{
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testFlushWithoutFlushableConnectionSucceeds() throws Exception {
+        assertThat(raven.flush(1L), is(true));
+    }
+
+    @Test
+    public void testFlushIsDelegatedToTheConnection(@Injectable final FlushableConnection connection)
+        throws Exception {
+        new NonStrictExpectations() {{
+            connection.flush(anyLong);
+            result = false;
+        }};
+        raven.setConnection(connection);
+
+        assertThat(raven.flush(100L), is(false));
+        new Verifications() {{
+            connection.flush(100L);
+        }};
+    }
+
+    private static final class RecordingBuilderHelper implements EventBuilderHelper {
+        private final String name;
+        private final List<String> calls;
+
+        private RecordingBuilderHelper(String name, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Override
+        public void helpBuildingEvent(EventBuilder eventBuilder) {
+            calls.add(name);
+        }
+    }
 }
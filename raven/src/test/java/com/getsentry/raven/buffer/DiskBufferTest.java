@@ -8,6 +8,7 @@ import org.testng.annotations.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -58,6 +59,21 @@ public class DiskBufferTest extends BufferTest {
         assertThat(eventCount(buffer.getEvents()), equalTo(0));
     }
 
+    @Test
+    public void testMaxBytes() throws IOException {
+        buffer.add(new EventBuilder().build());
+        long eventBytes = buffer.getStoredBytes();
+        assertThat(eventBytes > 0, equalTo(true));
+        delete(BUFFER_DIR);
+
+        buffer = new DiskBuffer(BUFFER_DIR, maxEvents, eventBytes + eventBytes / 2);
+        buffer.add(new EventBuilder().build());
+        // the second event doesn't fit in the remaining bytes
+        buffer.add(new EventBuilder().build());
+        assertThat(eventCount(buffer.getEvents()), equalTo(1));
+        assertThat(buffer.getStoredBytes(), equalTo(eventBytes));
+    }
+
     @Test
     public void testNonEvent() throws IOException {
         // create a file in the buffer dir that dosn't match the event pattern
@@ -95,4 +111,35 @@ public class DiskBufferTest extends BufferTest {
         }
         return count;
     }
+
+    @Test
+    public void testAddAllStopsAtMaxEvents() throws IOException {
+        int added = buffer.addAll(Arrays.asList(new EventBuilder().build(), new EventBuilder().build(),
+            new EventBuilder().build()));
+
+        assertThat(added, equalTo(2));
+        assertThat(eventCount(buffer.getEvents()), equalTo(2));
+        assertThat(buffer.addAll(Arrays.asList(new EventBuilder().build())), equalTo(0));
+    }
+
+    @Test
+    public void testStoredEventsAreCountedAsTheyAreAddedAndDiscarded() throws IOException {
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+        buffer.add(event1);
+        buffer.add(event2);
+
+        assertThat(buffer.getNumStoredEvents(), equalTo(2));
+        File eventFile = new File(BUFFER_DIR, event1.getId().toString() + DiskBuffer.FILE_SUFFIX);
+        long eventBytes = eventFile.length();
+        buffer.discard(event2);
+        assertThat(buffer.getNumStoredEvents(), equalTo(1));
+        assertThat(buffer.getStoredBytes(), equalTo(eventBytes));
+
+        // deleted behind the back of the buffer, recounted when the events are listed
+        assertThat(eventFile.delete(), equalTo(true));
+        assertThat(eventCount(buffer.getEvents()), equalTo(0));
+        assertThat(buffer.getNumStoredEvents(), equalTo(0));
+        assertThat(buffer.getStoredBytes(), equalTo(0L));
+    }
 }
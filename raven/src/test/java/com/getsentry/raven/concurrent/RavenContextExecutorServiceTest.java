@@ -0,0 +1,111 @@
+package com.getsentry.raven.concurrent;
+
+import com.getsentry.raven.Raven;
+import com.getsentry.raven.RavenContext;
+import com.getsentry.raven.connection.Connection;
+import com.getsentry.raven.event.Breadcrumbs;
+import com.getsentry.raven.servlet.RavenServletRequestListener;
+import mockit.Injectable;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RavenContextExecutorServiceTest {
+    private ExecutorService executorService;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        executorService = new RavenContextExecutorService(Executors.newSingleThreadExecutor());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void testBreadcrumbsRecordedInTheContextsOfTheSubmittingThread() throws Exception {
+        RavenContext context = new RavenContext();
+        context.activate();
+        try {
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                    Breadcrumbs.record("info", "foo", "from the executor");
+                }
+            }).get();
+        } finally {
+            context.deactivate();
+        }
+
+        assertThat(context.getBreadcrumbSnapshot(), hasSize(1));
+        assertThat(context.getBreadcrumbSnapshot().get(0).getMessage(), is("from the executor"));
+    }
+
+    @Test
+    public void testStateOfTheExecutorThreadRestoredAfterTheTask() throws Exception {
+        RavenContext context = new RavenContext();
+        context.activate();
+        try {
+            executorService.submit(new Runnable() {
+                @Override
+                public void run() {
+                }
+            }).get();
+        } finally {
+            context.deactivate();
+        }
+
+        List<RavenContext> activeContexts = executorService.submit(new Callable<List<RavenContext>>() {
+            @Override
+            public List<RavenContext> call() throws Exception {
+                return RavenContext.getActiveContexts();
+            }
+        }).get();
+        assertThat(activeContexts, not(hasItem(context)));
+    }
+
+    @Test
+    public void testNoContextCreatedToPropagateTheState(@Injectable Connection mockConnection) throws Exception {
+        new Raven(mockConnection);
+        List<RavenContext> activeContexts = RavenContext.getActiveContexts();
+
+        List<RavenContext> propagatedContexts = executorService.submit(new Callable<List<RavenContext>>() {
+            @Override
+            public List<RavenContext> call() throws Exception {
+                return RavenContext.getActiveContexts();
+            }
+        }).get();
+
+        assertThat(propagatedContexts, is(activeContexts));
+        assertThat(RavenContext.getActiveContexts(), is(activeContexts));
+    }
+
+    @Test
+    public void testServletRequestPropagated(@Injectable final HttpServletRequest mockHttpServletRequest)
+        throws Exception {
+        RavenServletRequestListener.swapServletRequest(mockHttpServletRequest);
+        HttpServletRequest request;
+        try {
+            request = executorService.submit(new Callable<HttpServletRequest>() {
+                @Override
+                public HttpServletRequest call() throws Exception {
+                    return RavenServletRequestListener.getServletRequest();
+                }
+            }).get();
+        } finally {
+            RavenServletRequestListener.swapServletRequest(null);
+        }
+
+        assertThat(request, is(sameInstance(mockHttpServletRequest)));
+    }
+}
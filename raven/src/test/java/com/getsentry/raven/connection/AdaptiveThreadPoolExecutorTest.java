@@ -0,0 +1,133 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class AdaptiveThreadPoolExecutorTest extends BaseTest {
+    private AdaptiveThreadPoolExecutor executor;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        executor = new AdaptiveThreadPoolExecutor(1, 4, 10L, new LinkedBlockingQueue<Runnable>(),
+            Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy(), TimeUnit.MILLISECONDS.toNanos(10));
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testGrowsUpToTheMaximumWhenSendsAreSlow() throws Exception {
+        for (int i = 0; i < 40; i++) {
+            executor.execute(sleeping(50));
+        }
+
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return executor.getCorePoolSize() == 4;
+            }
+        });
+        assertThat(executor.getAverageSendTime(), is(greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50))));
+        assertThat(executor.getLargestPoolSize(), is(lessThanOrEqualTo(4)));
+    }
+
+    @Test
+    public void testShrinksBackWhenSendsAreFast() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            executor.execute(sleeping(50));
+        }
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return executor.getCorePoolSize() > 1;
+            }
+        });
+
+        waitUntilTrue(10000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                executor.execute(sleeping(0));
+                return executor.getCorePoolSize() == 1 && executor.getPoolSize() == 1;
+            }
+        });
+        assertThat(executor.getArrivalRate(), is(greaterThan(0d)));
+    }
+
+    @Test
+    public void testIdlePoolStopsItsThreads() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            executor.execute(sleeping(50));
+        }
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return executor.getPoolSize() > 1;
+            }
+        });
+
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return executor.getPoolSize() == 0;
+            }
+        });
+        assertThat(executor.getCompletedTaskCount(), is(20L));
+    }
+
+    @Test
+    public void testRejectedEventsAreHandedToTheHandlerSet() throws Exception {
+        final AtomicInteger rejected = new AtomicInteger();
+        RejectedExecutionHandler handler = new RejectedExecutionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+                rejected.incrementAndGet();
+            }
+        };
+        AdaptiveThreadPoolExecutor boundedExecutor = new AdaptiveThreadPoolExecutor(1, 1, 10L,
+            new LinkedBlockingQueue<Runnable>(1), Executors.defaultThreadFactory(), handler);
+        try {
+            for (int i = 0; i < 5; i++) {
+                boundedExecutor.execute(sleeping(100));
+            }
+
+            assertThat(rejected.get(), is(3));
+            assertThat(boundedExecutor.getRejectedExecutionHandler(), is(handler));
+        } finally {
+            boundedExecutor.shutdownNow();
+        }
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testAtLeastOneThreadIsRequired() throws Exception {
+        new AdaptiveThreadPoolExecutor(0, 4, 10L, new LinkedBlockingQueue<Runnable>(),
+            Executors.defaultThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    private static Runnable sleeping(final long millis) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(millis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -3,12 +3,27 @@ package com.getsentry.raven.connection;
 import mockit.*;
 import com.getsentry.raven.Raven;
 import com.getsentry.raven.environment.RavenEnvironment;
+import com.getsentry.raven.event.DeferredEvent;
 import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AsyncConnectionTest {
     @Tested
@@ -153,4 +168,285 @@ public class AsyncConnectionTest {
         // Ensure that the shutdown hooks for the used @Tested instance are removed
         asyncConnection.close();
     }
+
+    @Test
+    public void testQueuedDeferredEventBuiltWhenExecuted() throws Exception {
+        final List<Runnable> queue = new ArrayList<>();
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    queue.add(command);
+                }
+            };
+        }};
+        final String message = "b1c0a6e4-6d0f-4f3e-9d4e-2b0a9a5ed2c1";
+        final DeferredEvent deferredEvent = new DeferredEvent() {
+            @Override
+            protected void completeEvent(EventBuilder builder) {
+                builder.withMessage(message);
+            }
+        };
+
+        asyncConnection.send(deferredEvent);
+        new Verifications() {{
+            mockConnection.send((Event) any);
+            times = 0;
+        }};
+        queue.get(0).run();
+
+        new Verifications() {{
+            Event event;
+            mockConnection.send(event = withCapture());
+            assertThat(event.getId(), is(deferredEvent.getId()));
+            assertThat(event.getMessage(), is(message));
+        }};
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testFutureCompletedWhenQueuedEventSent(@Injectable final Event mockEvent) throws Exception {
+        final List<Runnable> queue = new ArrayList<>();
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    queue.add(command);
+                }
+            };
+        }};
+        SendFuture future = new SendFuture();
+
+        asyncConnection.send(mockEvent, future);
+        assertThat(future.isDone(), is(false));
+        assertThat(asyncConnection.flush(1L), is(false));
+        queue.get(0).run();
+
+        assertThat(future.get(), is(true));
+        assertThat(asyncConnection.flush(1L), is(true));
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testFutureFailedWhenConnectionFails(@Injectable final Event mockEvent) throws Exception {
+        final RuntimeException exception = new RuntimeException("b7f4c2de-3a51-4f0b-8d6e-91c3d7a2e5f0");
+        new NonStrictExpectations() {{
+            mockExecutorService.execute((Runnable) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void execute(Runnable command) {
+                    command.run();
+                }
+            };
+            mockConnection.send(mockEvent);
+            result = exception;
+        }};
+        SendFuture future = new SendFuture();
+
+        asyncConnection.send(mockEvent, future);
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.getFailure(), is((Throwable) exception));
+        assertThat(asyncConnection.flush(1L), is(true));
+
+        // Ensure that the shutdown hooks for the used @Tested instance are removed
+        asyncConnection.close();
+    }
+
+    @Test
+    public void testFutureDroppedWhenClosed(@Injectable final Event mockEvent) throws Exception {
+        asyncConnection.close();
+        SendFuture future = new SendFuture();
+
+        asyncConnection.send(mockEvent, future);
+
+        assertThat(future.isDropped(), is(true));
+        new Verifications() {{
+            mockExecutorService.execute((Runnable) any);
+            times = 0;
+        }};
+    }
+
+    @Test
+    public void testFlushWaitsForTheEventsOfARealExecutor(@Injectable final Event mockEvent) throws Exception {
+        asyncConnection.close();
+        final CountDownLatch sending = new CountDownLatch(1);
+        new NonStrictExpectations() {{
+            mockConnection.send(mockEvent);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void send(Event event) throws InterruptedException {
+                    sending.await();
+                }
+            };
+        }};
+        ExecutorService executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        AsyncConnection connection = new AsyncConnection(mockConnection, executorService, false, mockTimeout);
+        SendFuture future = new SendFuture();
+
+        connection.send(mockEvent, future);
+        assertThat(connection.flush(10L), is(false));
+        sending.countDown();
+
+        assertThat(connection.flush(10000L), is(true));
+        assertThat(future.isSent(), is(true));
+        connection.close();
+    }
+
+    @Test
+    public void testFlushDoesNotWaitForTheEventsSentMeanwhile() throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        final CountDownLatch sending = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        new NonStrictExpectations() {{
+            mockConnection.send((Event) any);
+            result = new Delegate<Void>() {
+                @SuppressWarnings("unused")
+                public void send(Event event) throws InterruptedException {
+                    sending.countDown();
+                    released.await();
+                    // Slower than the sender, the queue is never empty
+                    Thread.sleep(1);
+                }
+            };
+        }};
+        ExecutorService executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        final AsyncConnection connection = new AsyncConnection(mockConnection, executorService, false, 10L);
+        SendFuture future = new SendFuture();
+        connection.send(new EventBuilder().build(), future);
+        sending.await();
+        final AtomicBoolean stopped = new AtomicBoolean();
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                while (!stopped.get()) {
+                    connection.send(new EventBuilder().build());
+                }
+            }
+        };
+        sender.start();
+
+        try {
+            released.countDown();
+            assertThat(connection.flush(10000L), is(true));
+            assertThat(future.isSent(), is(true));
+        } finally {
+            stopped.set(true);
+            sender.join();
+            connection.close();
+        }
+    }
+
+    @Test
+    public void testEventsLeftAtForcedShutdownAreSpilled() throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        BlockingSpillableConnection spillableConnection = new BlockingSpillableConnection();
+        ExecutorService executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>());
+        AsyncConnection connection = new AsyncConnection(spillableConnection, executorService, false, 10L);
+        Event queuedEvent = new EventBuilder().build();
+        SendFuture future = new SendFuture();
+
+        connection.send(new EventBuilder().build());
+        spillableConnection.sending.await();
+        connection.send(queuedEvent, future);
+        connection.close();
+
+        assertThat(spillableConnection.spilledEvents, contains(queuedEvent));
+        assertThat(future.isDropped(), is(true));
+        assertThat(connection.flush(1L), is(true));
+    }
+
+    @Test
+    public void testEventsRejectedByAFullQueueAreSpilledAndReplayed() throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        BlockingSpillableConnection spillableConnection = new BlockingSpillableConnection();
+        ExecutorService executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(1), new AsyncConnection.SpillPolicy());
+        AsyncConnection connection = new AsyncConnection(spillableConnection, executorService, false, 10000L);
+        Event spilledEvent = new EventBuilder().build();
+
+        connection.send(new EventBuilder().build());
+        spillableConnection.sending.await();
+        connection.send(new EventBuilder().build());
+        assertThat(connection.isAccepting(Event.Level.DEBUG), is(true));
+        connection.send(spilledEvent);
+
+        assertThat(spillableConnection.spilledEvents, contains(spilledEvent));
+        assertThat(spillableConnection.replays.get(), is(0));
+        spillableConnection.released.countDown();
+        assertThat(connection.flush(10000L), is(true));
+        assertThat(spillableConnection.replays.get(), is(1));
+        connection.close();
+    }
+
+    @Test
+    public void testEventsRejectedByAFullSharedLaneAreSpilledAndReplayed() throws Exception {
+        // Ensure that the shutdown hooks for the unused @Tested instance are removed
+        asyncConnection.close();
+        BlockingSpillableConnection spillableConnection = new BlockingSpillableConnection();
+        ExecutorService executorService = new SharedDispatcher(1, Thread.NORM_PRIORITY).newLane(
+            new LinkedBlockingQueue<Runnable>(1), new AsyncConnection.SpillPolicy(), 1);
+        AsyncConnection connection = new AsyncConnection(spillableConnection, executorService, false, 10000L);
+        Event spilledEvent = new EventBuilder().build();
+
+        connection.send(new EventBuilder().build());
+        spillableConnection.sending.await();
+        connection.send(new EventBuilder().build());
+        assertThat(connection.isAccepting(Event.Level.DEBUG), is(true));
+        connection.send(spilledEvent);
+
+        assertThat(spillableConnection.spilledEvents, contains(spilledEvent));
+        spillableConnection.released.countDown();
+        assertThat(connection.flush(10000L), is(true));
+        assertThat(spillableConnection.replays.get(), is(1));
+        connection.close();
+    }
+
+    private static final class BlockingSpillableConnection implements SpillableConnection {
+        private final CountDownLatch sending = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+        private final List<Event> spilledEvents = new CopyOnWriteArrayList<>();
+        private final AtomicInteger replays = new AtomicInteger();
+
+        @Override
+        public int spill(List<Event> events) {
+            spilledEvents.addAll(events);
+            return events.size();
+        }
+
+        @Override
+        public void replay() {
+            replays.incrementAndGet();
+        }
+
+        @Override
+        public void send(Event event) throws ConnectionException {
+            sending.countDown();
+            try {
+                released.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void addEventSendFailureCallback(EventSendFailureCallback eventSendFailureCallback) {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
 }
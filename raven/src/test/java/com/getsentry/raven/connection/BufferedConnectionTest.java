@@ -10,6 +10,7 @@ import org.testng.annotations.Test;
 import org.testng.collections.Lists;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -101,4 +102,24 @@ public class BufferedConnectionTest extends BaseTest {
         assertThat(bufferedEvents.size(), equalTo(0));
         assertThat(sentEvents.get(0), equalTo(event));
     }
+
+    @Test
+    public void testSpilledEventsAreReplayed() throws Exception {
+        connectionUp = false;
+        Event event1 = new EventBuilder().build();
+        Event event2 = new EventBuilder().build();
+
+        assertThat(bufferedConnection.spill(Arrays.asList(event1, event2)), equalTo(2));
+        assertThat(bufferedEvents, equalTo(Arrays.asList(event1, event2)));
+        assertThat(sentEvents.size(), equalTo(0));
+
+        connectionUp = true;
+        waitUntilTrue(1000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return bufferedEvents.size() == 0;
+            }
+        });
+        assertThat(sentEvents, equalTo(Arrays.asList(event1, event2)));
+    }
 }
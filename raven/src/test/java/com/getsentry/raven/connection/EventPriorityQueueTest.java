@@ -0,0 +1,218 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import mockit.Injectable;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventPriorityQueueTest {
+    @Injectable
+    private Connection mockConnection = null;
+    private AsyncConnection asyncConnection;
+
+    @BeforeMethod
+    public void setUp() {
+        asyncConnection = new AsyncConnection(mockConnection, null, false, 0);
+    }
+
+    private Runnable submitter(Event.Level level) {
+        return asyncConnection.new EventSubmitter(new EventBuilder().withLevel(level).build());
+    }
+
+    private static List<Event.Level> drainLevels(EventPriorityQueue queue) {
+        List<Runnable> runnables = new ArrayList<>();
+        queue.drainTo(runnables);
+        List<Event.Level> levels = new ArrayList<>();
+        for (Runnable runnable : runnables) {
+            levels.add(((AsyncConnection.EventSubmitter) runnable).getLevel());
+        }
+        return levels;
+    }
+
+    @Test
+    public void testSevereEventsAreDequeuedFirstWithoutStarvingOthers() {
+        EventPriorityQueue queue = new EventPriorityQueue(100, 0, false);
+        for (int i = 0; i < 10; i++) {
+            queue.offer(submitter(Event.Level.DEBUG));
+            queue.offer(submitter(Event.Level.ERROR));
+        }
+
+        List<Event.Level> levels = drainLevels(queue);
+
+        // A round takes up to 8 errors and 1 debug event
+        assertThat(levels.subList(0, 8), everyItem(is(Event.Level.ERROR)));
+        assertThat(levels.get(8), is(Event.Level.DEBUG));
+        assertThat(levels.subList(9, 11), everyItem(is(Event.Level.ERROR)));
+        assertThat(levels.subList(11, 20), everyItem(is(Event.Level.DEBUG)));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    @Test
+    public void testReservedCapacityIsKeptForErrors() {
+        EventPriorityQueue queue = new EventPriorityQueue(3, 1, false);
+
+        assertThat(queue.offer(submitter(Event.Level.WARNING)), is(true));
+        assertThat(queue.offer(submitter(Event.Level.WARNING)), is(true));
+        // The last slot is reserved
+        assertThat(queue.offer(submitter(Event.Level.WARNING)), is(false));
+        assertThat(queue.offer(submitter(Event.Level.ERROR)), is(true));
+
+        assertThat(queue.size(), is(3));
+        assertThat(queue.getShedCount(), is(1L));
+    }
+
+    @Test
+    public void testLowestSeverityIsShedFirst() {
+        EventPriorityQueue queue = new EventPriorityQueue(3, 0, false);
+        queue.offer(submitter(Event.Level.INFO));
+        queue.offer(submitter(Event.Level.DEBUG));
+        queue.offer(submitter(Event.Level.WARNING));
+
+        assertThat(queue.offer(submitter(Event.Level.FATAL)), is(true));
+        assertThat(queue.offer(submitter(Event.Level.ERROR)), is(true));
+        // Nothing less severe than a warning is left
+        assertThat(queue.offer(submitter(Event.Level.WARNING)), is(false));
+
+        assertThat(drainLevels(queue), contains(Event.Level.FATAL, Event.Level.ERROR, Event.Level.WARNING));
+        assertThat(queue.getShedCount(), is(3L));
+    }
+
+    @Test
+    public void testOldestEventOfTheSameLevelIsShedWhenAllowed() {
+        EventPriorityQueue queue = new EventPriorityQueue(2, 0, true);
+        Runnable oldest = submitter(Event.Level.ERROR);
+        queue.offer(oldest);
+        queue.offer(submitter(Event.Level.ERROR));
+
+        assertThat(queue.offer(submitter(Event.Level.ERROR)), is(true));
+        assertThat(queue.contains(oldest), is(false));
+        assertThat(queue.size(), is(2));
+    }
+
+    @Test
+    public void testOldestEventsAreShedToFitTheByteBudget() {
+        Runnable small = submitter(Event.Level.INFO);
+        int eventSize = ((AsyncConnection.EventSubmitter) small).getSizeEstimate();
+        EventPriorityQueue queue = new EventPriorityQueue(100, 3L * eventSize, 0, true, false);
+        queue.offer(small);
+        queue.offer(submitter(Event.Level.ERROR));
+        queue.offer(submitter(Event.Level.DEBUG));
+        assertThat(queue.getQueuedBytes(), is(3L * eventSize));
+
+        Event large = new EventBuilder().withLevel(Event.Level.DEBUG).withMessage(new String(new char[eventSize]))
+            .build();
+        assertThat(queue.offer(asyncConnection.new EventSubmitter(large)), is(true));
+
+        // The two oldest events made room for the large one, the order of arrival is kept
+        assertThat(drainLevels(queue), contains(Event.Level.DEBUG, Event.Level.DEBUG));
+        assertThat(queue.getShedCount(), is(2L));
+        assertThat(queue.getQueuedBytes(), is(0L));
+    }
+
+    @Test
+    public void testEventLargerThanTheByteBudgetIsRejected() {
+        Runnable event = submitter(Event.Level.FATAL);
+        int eventSize = ((AsyncConnection.EventSubmitter) event).getSizeEstimate();
+        EventPriorityQueue queue = new EventPriorityQueue(100, eventSize - 1, 0, true, true);
+
+        assertThat(queue.offer(event), is(false));
+        assertThat(queue.isEmpty(), is(true));
+        assertThat(queue.getShedCount(), is(1L));
+    }
+
+    @Test
+    public void testEventsWithoutLevelAreHandledAsErrors() {
+        EventPriorityQueue queue = new EventPriorityQueue(10, 0, false);
+        queue.offer(submitter(Event.Level.WARNING));
+        queue.offer(submitter(null));
+
+        assertThat(drainLevels(queue), contains(null, Event.Level.WARNING));
+    }
+
+    @Test
+    public void testAdmissionFollowsTheSheddingRules() {
+        EventPriorityQueue queue = new EventPriorityQueue(2, 1, false);
+        queue.offer(submitter(Event.Level.INFO));
+
+        assertThat(queue.isAccepting(Event.Level.DEBUG), is(false));
+        assertThat(queue.isAccepting(Event.Level.ERROR), is(true));
+
+        queue.offer(submitter(Event.Level.ERROR));
+
+        assertThat(queue.isAccepting(Event.Level.INFO), is(false));
+        assertThat(queue.isAccepting(Event.Level.ERROR), is(true));
+        assertThat(queue.isAccepting(null), is(true));
+    }
+
+    @Test
+    public void testFifoQueueAcceptsOnlyWhenItHasRoom() {
+        EventPriorityQueue queue = new EventPriorityQueue(1, -1, 0, false, false);
+
+        assertThat(queue.isAccepting(Event.Level.DEBUG), is(true));
+        queue.offer(submitter(Event.Level.DEBUG));
+
+        assertThat(queue.isAccepting(Event.Level.FATAL), is(false));
+    }
+
+    @Test
+    public void testPutWaitsForRoomWhenThereIsNothingToShed() throws Exception {
+        final EventPriorityQueue queue = new EventPriorityQueue(1, 0, false);
+        queue.offer(submitter(Event.Level.ERROR));
+        final Runnable waiting = submitter(Event.Level.ERROR);
+        final CountDownLatch put = new CountDownLatch(1);
+        Thread putter = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    queue.put(waiting);
+                    put.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        putter.start();
+
+        assertThat(put.await(50, TimeUnit.MILLISECONDS), is(false));
+        queue.poll();
+
+        assertThat(put.await(5, TimeUnit.SECONDS), is(true));
+        assertThat(queue.poll(), is(waiting));
+        assertThat(queue.getRejectedCount(), is(0L));
+    }
+
+    @Test
+    public void testTimedOfferShedsLessSevereEventsWithoutWaiting() throws Exception {
+        EventPriorityQueue queue = new EventPriorityQueue(1, 0, false);
+        queue.offer(submitter(Event.Level.DEBUG));
+
+        assertThat(queue.offer(submitter(Event.Level.ERROR), 1, TimeUnit.DAYS), is(true));
+        assertThat(queue.offer(submitter(Event.Level.ERROR), 10, TimeUnit.MILLISECONDS), is(false));
+        assertThat(drainLevels(queue), contains(Event.Level.ERROR));
+        assertThat(queue.getRejectedCount(), is(1L));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testPutRefusesAnEventLargerThanTheByteBudget() throws Exception {
+        Runnable event = submitter(Event.Level.FATAL);
+        int eventSize = ((AsyncConnection.EventSubmitter) event).getSizeEstimate();
+        EventPriorityQueue queue = new EventPriorityQueue(100, eventSize - 1, 0, true, true);
+
+        queue.put(event);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class,
+        expectedExceptionsMessageRegExp = "The reserved capacity must be .*")
+    public void testReservedCapacityLargerThanTheQueueIsRefused() {
+        new EventPriorityQueue(10, 11, false);
+    }
+}
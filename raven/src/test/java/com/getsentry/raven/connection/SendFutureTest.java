@@ -0,0 +1,98 @@
+package com.getsentry.raven.connection;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class SendFutureTest {
+    @Test
+    public void testSentEventReturnsTrue() throws Exception {
+        SendFuture future = new SendFuture();
+
+        future.markSent();
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.isSent(), is(true));
+        assertThat(future.get(), is(true));
+    }
+
+    @Test
+    public void testDroppedEventReturnsFalse() throws Exception {
+        SendFuture future = SendFuture.dropped();
+
+        assertThat(future.isDone(), is(true));
+        assertThat(future.isDropped(), is(true));
+        assertThat(future.get(1, TimeUnit.MILLISECONDS), is(false));
+    }
+
+    @Test
+    public void testFailedEventThrowsTheFailure() throws Exception {
+        SendFuture future = new SendFuture();
+        RuntimeException exception = new RuntimeException("d3a9e6b1-52c4-4c8f-a0e7-6f1b8c2d4e93");
+
+        future.markFailed(exception);
+
+        try {
+            future.get();
+            throw new AssertionError("The failure should have been thrown");
+        } catch (ExecutionException e) {
+            assertThat(e.getCause(), is(sameInstance((Throwable) exception)));
+        }
+    }
+
+    @Test
+    public void testFirstCompletionWins() throws Exception {
+        SendFuture future = new SendFuture();
+
+        future.markDropped();
+        future.markSent();
+        future.markFailed(new RuntimeException());
+
+        assertThat(future.isDropped(), is(true));
+        assertThat(future.get(), is(false));
+    }
+
+    @Test(expectedExceptions = TimeoutException.class)
+    public void testPendingEventTimesOut() throws Exception {
+        new SendFuture().get(1, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void testGetWaitsForTheCompletion() throws Exception {
+        final SendFuture future = new SendFuture();
+        final CountDownLatch waiting = new CountDownLatch(1);
+        Thread sender = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    waiting.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                future.markSent();
+            }
+        };
+        sender.start();
+
+        waiting.countDown();
+
+        assertThat(future.get(10, TimeUnit.SECONDS), is(true));
+        sender.join();
+    }
+
+    @Test
+    public void testCannotBeCancelled() throws Exception {
+        SendFuture future = new SendFuture();
+
+        assertThat(future.cancel(true), is(false));
+        assertThat(future.isCancelled(), is(false));
+        assertThat(future.isDone(), is(false));
+    }
+}
@@ -0,0 +1,253 @@
+package com.getsentry.raven.connection;
+
+import com.getsentry.raven.BaseTest;
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import mockit.Injectable;
+import mockit.Verifications;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class SharedDispatcherTest extends BaseTest {
+    private SharedDispatcher dispatcher;
+    private CountDownLatch released;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        dispatcher = new SharedDispatcher(2, Thread.NORM_PRIORITY);
+        released = new CountDownLatch(1);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        released.countDown();
+    }
+
+    @Test
+    public void testBusyLaneDoesNotStarveTheOthers() throws Exception {
+        SharedDispatcher.Lane slowLane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        SharedDispatcher.Lane fastLane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 2);
+        final AtomicInteger done = new AtomicInteger();
+
+        for (int i = 0; i < 5; i++) {
+            slowLane.execute(blocking());
+        }
+        for (int i = 0; i < 20; i++) {
+            fastLane.execute(new Runnable() {
+                @Override
+                public void run() {
+                    done.incrementAndGet();
+                }
+            });
+        }
+
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return done.get() == 20;
+            }
+        });
+        assertThat(slowLane.getInFlightCount(), is(1));
+        assertThat(slowLane.getQueue().size(), is(4));
+    }
+
+    @Test
+    public void testShutdownLaneSendsTheQueuedEvents() throws Exception {
+        SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        lane.execute(blocking());
+        lane.execute(blocking());
+
+        lane.shutdown();
+
+        assertThat(lane.isShutdown(), is(true));
+        assertThat(lane.awaitTermination(10, TimeUnit.MILLISECONDS), is(false));
+        released.countDown();
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(dispatcher.getLaneCount(), is(0));
+    }
+
+    @Test
+    public void testShutdownNowReturnsTheQueuedEvents() throws Exception {
+        final SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        lane.execute(blocking());
+        lane.execute(blocking());
+        lane.execute(blocking());
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return lane.getInFlightCount() == 1;
+            }
+        });
+
+        List<Runnable> tasks = lane.shutdownNow();
+
+        assertThat(tasks, hasSize(2));
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testFullLaneRejectsToItsHandler() throws Exception {
+        final AtomicInteger rejected = new AtomicInteger();
+        final SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(1),
+            new ThreadPoolExecutor.DiscardPolicy(), 1);
+        lane.setRejectionHandler(new SharedDispatcher.LaneRejectionHandler() {
+            @Override
+            public void rejectedExecution(Runnable runnable, SharedDispatcher.Lane lane) {
+                rejected.incrementAndGet();
+            }
+        });
+        lane.execute(blocking());
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return lane.getInFlightCount() == 1;
+            }
+        });
+
+        lane.execute(blocking());
+        lane.execute(blocking());
+
+        assertThat(rejected.get(), is(1));
+    }
+
+    @Test(expectedExceptions = RejectedExecutionException.class)
+    public void testFullLaneAppliesTheAbortPolicy() throws Exception {
+        SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(1),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        lane.shutdown();
+
+        lane.execute(blocking());
+    }
+
+    @Test
+    public void testShutdownNowOnlyInterruptsTheEventsOfTheLane() throws Exception {
+        final SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        final SharedDispatcher.Lane otherLane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        final AtomicInteger interrupted = new AtomicInteger();
+        final CountDownLatch otherDone = new CountDownLatch(1);
+        lane.execute(blocking());
+        otherLane.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+                otherDone.countDown();
+            }
+        });
+        waitUntilTrue(5000, new Callable<Boolean>() {
+            @Override
+            public Boolean call() throws Exception {
+                return lane.getInFlightCount() == 1 && otherLane.getInFlightCount() == 1;
+            }
+        });
+
+        lane.shutdownNow();
+
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        released.countDown();
+        otherDone.await();
+        assertThat(interrupted.get(), is(0));
+    }
+
+    @Test
+    public void testWorkersStopWithTheLastLane() throws Exception {
+        SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        SharedDispatcher.Lane otherLane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+
+        lane.shutdown();
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        assertThat(dispatcher.isStopped(), is(false));
+        otherLane.shutdown();
+        assertThat(otherLane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+
+        assertThat(dispatcher.isStopped(), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testStoppedDispatcherHasNoNewLane() throws Exception {
+        SharedDispatcher.Lane lane = dispatcher.newLane(new LinkedBlockingQueue<Runnable>(),
+            new ThreadPoolExecutor.AbortPolicy(), 1);
+        lane.shutdown();
+        lane.awaitTermination(5, TimeUnit.SECONDS);
+
+        dispatcher.newLane(new LinkedBlockingQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy(), 1);
+    }
+
+    @Test
+    public void testSharedLaneAfterTheLastOneStartsNewWorkers() throws Exception {
+        SharedDispatcher.Lane lane = SharedDispatcher.newSharedLane(1, Thread.NORM_PRIORITY,
+            new LinkedBlockingQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy(), 1);
+        lane.shutdown();
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+        final CountDownLatch sent = new CountDownLatch(1);
+
+        SharedDispatcher.Lane newLane = SharedDispatcher.newSharedLane(1, Thread.NORM_PRIORITY,
+            new LinkedBlockingQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy(), 1);
+        newLane.execute(new Runnable() {
+            @Override
+            public void run() {
+                sent.countDown();
+            }
+        });
+
+        assertThat(sent.await(5, TimeUnit.SECONDS), is(true));
+        newLane.shutdown();
+        assertThat(newLane.awaitTermination(5, TimeUnit.SECONDS), is(true));
+    }
+
+    @Test
+    public void testAsyncConnectionSendsWithTheSharedWorkers(@Injectable final Connection mockConnection)
+        throws Exception {
+        AsyncConnection connection = new AsyncConnection(mockConnection,
+            dispatcher.newLane(new LinkedBlockingQueue<Runnable>(), new ThreadPoolExecutor.AbortPolicy(), 1),
+            false, 1000L);
+        final Event event = new EventBuilder().build();
+
+        connection.send(event);
+
+        assertThat(connection.flush(5000L), is(true));
+        connection.close();
+        new Verifications() {{
+            mockConnection.send(event);
+            mockConnection.close();
+        }};
+        assertThat(dispatcher.getLaneCount(), is(0));
+    }
+
+    private Runnable blocking() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+}
@@ -9,6 +9,8 @@ import org.testng.annotations.Test;
 
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.UUID;
 
 import static mockit.Deencapsulation.getField;
@@ -252,6 +254,22 @@ public class EventBuilderTest {
         assertThat(event.getTags().entrySet(), hasSize(1));
     }
 
+    @Test
+    public void builtEventWithBaseTagsHasLayeredTags() throws Exception {
+        final Map<String, String> baseTags = new HashMap<>();
+        baseTags.put("baseKey", "baseValue");
+        baseTags.put("tagKey", "baseTagValue");
+        final EventBuilder eventBuilder = new EventBuilder();
+        eventBuilder.withBaseTags(baseTags);
+        eventBuilder.withTag("tagKey", "tagValue");
+
+        final Event event = eventBuilder.build();
+
+        assertThat(event.getTags(), hasEntry("baseKey", "baseValue"));
+        assertThat(event.getTags(), hasEntry("tagKey", "tagValue"));
+        assertThat(event.getTags().entrySet(), hasSize(2));
+    }
+
     @Test
     public void builtEventWithNoServerNameUsesDefaultIfSearchTimesOut()
             throws Exception {
@@ -0,0 +1,185 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.MessageInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventDeduplicatorTest {
+    private final EventSignature eventSignature = new EventSignature(EventSignature.DEFAULT_FRAMES,
+        Collections.singletonList("java."));
+    private final List<Event> summaries = new ArrayList<>();
+    private EventDeduplicator deduplicator;
+
+    @BeforeMethod
+    public void setUp() {
+        summaries.clear();
+        deduplicator = new EventDeduplicator(eventSignature, EventDeduplicator.DEFAULT_WINDOW,
+            EventDeduplicator.DEFAULT_CAPACITY);
+        deduplicator.setSummaryCallback(new EventDeduplicator.SummaryCallback() {
+            @Override
+            public void sendSummary(DeferredEvent summary) {
+                summaries.add(summary.build());
+            }
+        });
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        deduplicator.close();
+    }
+
+    private static Throwable newException(String message) {
+        return new IllegalStateException(message);
+    }
+
+    @Test
+    public void testSignatureIgnoresMessageParameters() {
+        // Created at the same call site, the line numbers of the frames are part of the signature
+        Throwable[] exceptions = new Throwable[2];
+        for (int i = 0; i < exceptions.length; i++) {
+            exceptions[i] = newException("exception " + i);
+        }
+        Throwable first = exceptions[0];
+        Throwable second = exceptions[1];
+
+        long signature = eventSignature.compute("Failed {}", first);
+
+        assertThat(eventSignature.compute("Failed {}", second), is(signature));
+        assertThat(eventSignature.compute("Failed again {}", first), is(not(signature)));
+        assertThat(eventSignature.compute("Failed {}", new IllegalArgumentException()), is(not(signature)));
+        assertThat(eventSignature.compute(null, null), is(EventSignature.NO_SIGNATURE));
+    }
+
+    @Test
+    public void testBuiltEventHasTheSameSignature() {
+        Throwable throwable = newException("message");
+        Event event = new EventBuilder()
+            .withMessage("Failed 42")
+            .withSentryInterface(new MessageInterface("Failed {}", "42"))
+            .withSentryInterface(new ExceptionInterface(throwable))
+            .build();
+
+        assertThat(eventSignature.compute(event), is(eventSignature.compute("Failed {}", throwable)));
+    }
+
+    @Test
+    public void testBuiltEventWithTheCausesFirstHasTheSameSignature() {
+        Throwable throwable = new IllegalStateException("message", newException("cause"));
+        Deque<SentryException> exceptions = new ArrayDeque<>();
+        for (SentryException exception : SentryException.extractExceptionQueue(throwable)) {
+            // Stacked the way the logback appender does, from the outermost exception to the root cause
+            exceptions.push(exception);
+        }
+        Event event = new EventBuilder()
+            .withSentryInterface(new MessageInterface("Failed {}", "42"))
+            .withSentryInterface(new ExceptionInterface(exceptions))
+            .build();
+
+        assertThat(eventSignature.compute(event), is(eventSignature.compute("Failed {}", throwable)));
+    }
+
+    @Test
+    public void testDuplicatesAreSummarized() {
+        long signature = eventSignature.compute("Failed {}", newException("message"));
+
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.SEND));
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.SUMMARIZE));
+        deduplicator.summarize(signature, EventDeduplicator.summaryOf(new EventBuilder().withMessage("Failed 2")
+            .build()));
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.DROP));
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.DROP));
+        assertThat(summaries, is(empty()));
+
+        deduplicator.close();
+
+        assertThat(summaries, hasSize(1));
+        assertThat(summaries.get(0).getMessage(), is("Failed 2"));
+        assertThat(summaries.get(0).getExtra(), hasEntry(EventDeduplicator.REPEAT_COUNT, (Object) 3));
+    }
+
+    @Test
+    public void testEventsWithoutSignatureAreAlwaysSent() {
+        assertThat(deduplicator.offer(EventSignature.NO_SIGNATURE), is(EventDeduplicator.Decision.SEND));
+        assertThat(deduplicator.offer(EventSignature.NO_SIGNATURE), is(EventDeduplicator.Decision.SEND));
+    }
+
+    @Test
+    public void testEvictedSignatureSendsItsSummary() {
+        deduplicator.close();
+        deduplicator = new EventDeduplicator(eventSignature, EventDeduplicator.DEFAULT_WINDOW, 1);
+        deduplicator.setSummaryCallback(new EventDeduplicator.SummaryCallback() {
+            @Override
+            public void sendSummary(DeferredEvent summary) {
+                summaries.add(summary.build());
+            }
+        });
+        // Signatures of the same segment, the capacity of a segment is 1
+        long signature = 16;
+        long otherSignature = 32;
+        deduplicator.offer(signature);
+        deduplicator.offer(signature);
+        deduplicator.summarize(signature, EventDeduplicator.summaryOf(new EventBuilder().build()));
+
+        assertThat(deduplicator.offer(otherSignature), is(EventDeduplicator.Decision.SEND));
+        assertThat(summaries, hasSize(1));
+        assertThat(summaries.get(0).getExtra(), hasEntry(EventDeduplicator.REPEAT_COUNT, (Object) 1));
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.SEND));
+    }
+
+    @Test
+    public void testWindowClosedBeforeItsSummaryIsHandedOverSendsItLater() {
+        long signature = eventSignature.compute("Failed {}", newException("message"));
+        deduplicator.offer(signature);
+        assertThat(deduplicator.offer(signature), is(EventDeduplicator.Decision.SUMMARIZE));
+
+        deduplicator.close();
+        assertThat(summaries, is(empty()));
+        deduplicator.summarize(signature, EventDeduplicator.summaryOf(new EventBuilder().withMessage("Failed 2")
+            .build()));
+
+        assertThat(summaries, hasSize(1));
+        assertThat(summaries.get(0).getExtra(), hasEntry(EventDeduplicator.REPEAT_COUNT, (Object) 1));
+        assertThat(deduplicator.getLostDuplicateCount(), is(0L));
+    }
+
+    @Test
+    public void testSweeperThreadIsNamed() throws Exception {
+        long signature = eventSignature.compute("Failed {}", newException("message"));
+        deduplicator.close();
+        deduplicator = new EventDeduplicator(eventSignature, 50, EventDeduplicator.DEFAULT_CAPACITY);
+        final List<String> threadNames = new ArrayList<>();
+        deduplicator.setSummaryCallback(new EventDeduplicator.SummaryCallback() {
+            @Override
+            public void sendSummary(DeferredEvent summary) {
+                synchronized (threadNames) {
+                    threadNames.add(Thread.currentThread().getName());
+                    threadNames.notifyAll();
+                }
+            }
+        });
+        deduplicator.offer(signature);
+        deduplicator.offer(signature);
+        deduplicator.summarize(signature, EventDeduplicator.summaryOf(new EventBuilder().build()));
+
+        synchronized (threadNames) {
+            long deadline = System.currentTimeMillis() + 1000;
+            while (threadNames.isEmpty() && System.currentTimeMillis() < deadline) {
+                threadNames.wait(100);
+            }
+        }
+
+        assertThat(threadNames, contains("raven-dedup-sweeper"));
+    }
+}
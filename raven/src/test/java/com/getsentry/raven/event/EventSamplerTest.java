@@ -0,0 +1,53 @@
+package com.getsentry.raven.event;
+
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.is;
+
+public class EventSamplerTest {
+
+    @Test
+    public void testSampleAllKeepsEveryEvent() {
+        assertThat(EventSampler.SAMPLE_ALL.isSampled(Event.Level.DEBUG, "com.example"), is(true));
+        assertThat(EventSampler.SAMPLE_ALL.isSampled(null, null), is(true));
+    }
+
+    @Test
+    public void testLevelRatesOverrideTheGlobalRate() {
+        Map<Event.Level, Double> levelSampleRates = new HashMap<>();
+        levelSampleRates.put(Event.Level.WARNING, 0.01);
+        levelSampleRates.put(Event.Level.ERROR, 1d);
+        EventSampler sampler = new EventSampler(0.5, levelSampleRates, Collections.<String, Double>emptyMap());
+
+        assertThat(sampler.getSampleRate(Event.Level.WARNING, null), closeTo(0.01, 1e-9));
+        assertThat(sampler.getSampleRate(Event.Level.ERROR, null), closeTo(1, 1e-9));
+        assertThat(sampler.getSampleRate(Event.Level.INFO, null), closeTo(0.5, 1e-9));
+        assertThat(sampler.getSampleRate(null, null), closeTo(0.5, 1e-9));
+    }
+
+    @Test
+    public void testLoggerRatesFollowTheLoggerHierarchy() {
+        Map<String, Double> loggerSampleRates = new HashMap<>();
+        loggerSampleRates.put("com.example", 0.5);
+        loggerSampleRates.put("com.example.noisy", 0d);
+        EventSampler sampler = new EventSampler(1, Collections.singletonMap(Event.Level.DEBUG, 0.5),
+            loggerSampleRates);
+
+        assertThat(sampler.getSampleRate(Event.Level.ERROR, "com.example.Foo"), closeTo(0.5, 1e-9));
+        assertThat(sampler.getSampleRate(Event.Level.DEBUG, "com.example.Foo"), closeTo(0.25, 1e-9));
+        assertThat(sampler.getSampleRate(Event.Level.ERROR, "com.examples.Foo"), closeTo(1, 1e-9));
+        assertThat(sampler.isSampled(Event.Level.FATAL, "com.example.noisy.Foo"), is(false));
+        assertThat(sampler.isSampled(Event.Level.FATAL, "org.example.Foo"), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new EventSampler(1.5, Collections.<Event.Level, Double>emptyMap(), Collections.<String, Double>emptyMap());
+    }
+}
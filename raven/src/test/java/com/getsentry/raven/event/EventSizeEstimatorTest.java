@@ -0,0 +1,41 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import org.testng.annotations.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventSizeEstimatorTest {
+    @Test
+    public void testEstimateIsComputedWhenBuilt() {
+        Event event = new EventBuilder().withMessage("message").build();
+
+        assertThat(event.getSizeEstimate(), is(EventSizeEstimator.estimate(event)));
+        assertThat(event.getSizeEstimate(), is(greaterThanOrEqualTo(EventSizeEstimator.EVENT_OVERHEAD)));
+    }
+
+    @Test
+    public void testStringsAndFramesAreCounted() {
+        Event small = new EventBuilder().withMessage("message").build();
+        Event longMessage = new EventBuilder().withMessage(new String(new char[10000])).build();
+        Throwable throwable = new IllegalStateException();
+        Event exception = new EventBuilder().withMessage("message")
+            .withSentryInterface(new ExceptionInterface(throwable)).build();
+
+        assertThat(longMessage.getSizeEstimate() - small.getSizeEstimate(), is(10000 - "message".length()));
+        assertThat(exception.getSizeEstimate() - small.getSizeEstimate(),
+            is(greaterThanOrEqualTo(throwable.getStackTrace().length * EventSizeEstimator.FRAME_SIZE)));
+    }
+
+    @Test
+    public void testDeferredEventEstimate() {
+        Throwable throwable = new IllegalStateException("failure", new IllegalArgumentException());
+
+        int estimate = EventSizeEstimator.estimate("Failed {}", throwable);
+
+        assertThat(estimate, is(greaterThan(EventSizeEstimator.estimate("Failed {}", null))));
+        assertThat(estimate, is(greaterThanOrEqualTo((throwable.getStackTrace().length
+            + throwable.getCause().getStackTrace().length) * EventSizeEstimator.FRAME_SIZE)));
+    }
+}
@@ -0,0 +1,52 @@
+package com.getsentry.raven.event;
+
+import org.testng.annotations.Test;
+
+import java.util.Collections;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventThrottlerTest {
+    private final EventSignature eventSignature = new EventSignature(EventSignature.DEFAULT_FRAMES,
+        Collections.singletonList("java."));
+
+    @Test
+    public void testEventsOverTheBurstAreDropped() {
+        EventThrottler throttler = new EventThrottler(eventSignature, 0.001, 2, EventThrottler.DEFAULT_CAPACITY);
+        Throwable throwable = new IllegalStateException();
+
+        assertThat(throttler.tryAcquire("Failed {}", throwable), is(true));
+        assertThat(throttler.tryAcquire("Failed {}", throwable), is(true));
+        assertThat(throttler.tryAcquire("Failed {}", throwable), is(false));
+        assertThat(throttler.tryAcquire("Failed {}", throwable), is(false));
+        // Other signatures have their own budget
+        assertThat(throttler.tryAcquire("Other failure", null), is(true));
+
+        assertThat(throttler.getDroppedCounts(), is(Collections.singletonMap(
+            "java.lang.IllegalStateException: Failed {}", 2L)));
+    }
+
+    @Test
+    public void testEventsWithoutSignatureAreNeverDropped() {
+        EventThrottler throttler = new EventThrottler(eventSignature, 0.001, 1, EventThrottler.DEFAULT_CAPACITY);
+
+        assertThat(throttler.tryAcquire(null, null), is(true));
+        assertThat(throttler.tryAcquire(null, null), is(true));
+        assertThat(throttler.getDroppedCounts().isEmpty(), is(true));
+    }
+
+    @Test
+    public void testTokensAreRefilled() throws Exception {
+        EventThrottler throttler = new EventThrottler(eventSignature, 1000, 1, EventThrottler.DEFAULT_CAPACITY);
+
+        assertThat(throttler.tryAcquire("message", null), is(true));
+        Thread.sleep(10);
+        assertThat(throttler.tryAcquire("message", null), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidRate() {
+        new EventThrottler(eventSignature, 0, 1, EventThrottler.DEFAULT_CAPACITY);
+    }
+}
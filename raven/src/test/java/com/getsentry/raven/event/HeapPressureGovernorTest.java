@@ -0,0 +1,155 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.event.interfaces.ExceptionInterface;
+import com.getsentry.raven.event.interfaces.HttpInterface;
+import com.getsentry.raven.event.interfaces.SentryException;
+import mockit.Injectable;
+import mockit.NonStrictExpectations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class HeapPressureGovernorTest {
+    @Injectable
+    private HttpInterface mockHttpInterface = null;
+    private HeapPressureGovernor governor;
+
+    @BeforeMethod
+    public void setUp() {
+        governor = new HeapPressureGovernor(0.9, 0.8, Event.Level.ERROR, 2);
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        governor.close();
+    }
+
+    private static List<Breadcrumb> breadcrumbs() {
+        return Collections.singletonList(new BreadcrumbBuilder()
+            .setLevel("info")
+            .setCategory("test")
+            .setMessage("crumb")
+            .build());
+    }
+
+    @Test
+    public void testDegradedModeHasHysteresis() {
+        assertThat(governor.isDegraded(), is(false));
+
+        governor.evaluate(0.95);
+        assertThat(governor.isDegraded(), is(true));
+        governor.evaluate(0.85);
+        assertThat(governor.isDegraded(), is(true));
+        governor.evaluate(0.5);
+        assertThat(governor.isDegraded(), is(false));
+
+        assertThat(governor.getDegradedCount(), is(1L));
+    }
+
+    @Test
+    public void testLowLevelEventsAreDroppedUnderPressure() {
+        assertThat(governor.isDegraded(Event.Level.WARNING), is(false));
+
+        governor.evaluate(0.95);
+
+        assertThat(governor.isDegraded(Event.Level.WARNING), is(true));
+        assertThat(governor.isDegraded(Event.Level.DEBUG), is(true));
+        assertThat(governor.isDegraded(Event.Level.ERROR), is(false));
+        assertThat(governor.isDegraded(null), is(false));
+        assertThat(governor.getDroppedCount(), is(0L));
+        governor.recordDropped();
+        assertThat(governor.getDroppedCount(), is(1L));
+    }
+
+    @Test
+    public void testDetailsAreNotGatheredUnderPressure() {
+        governor.evaluate(0.95);
+        EventBuilder eventBuilder = new EventBuilder().withExtra("before", "value");
+
+        governor.degrade(eventBuilder);
+        Event event = eventBuilder
+            .withExtra("key", "value")
+            .withBaseExtras(Collections.<String, Object>singletonMap("base", "value"))
+            .withBreadcrumbs(breadcrumbs())
+            .build();
+
+        assertThat(eventBuilder.isSkippingDetails(), is(true));
+        assertThat(event.getExtra().isEmpty(), is(true));
+        assertThat(event.getBreadcrumbs(), is(empty()));
+        assertThat(governor.degrade(event), is(sameInstance(event)));
+    }
+
+    @Test
+    public void testThresholdsAreResetOnClose() {
+        governor.close();
+        Map<MemoryPoolMXBean, Long> thresholds = new HashMap<>();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.isCollectionUsageThresholdSupported()) {
+                thresholds.put(pool, pool.getCollectionUsageThreshold());
+            }
+        }
+
+        new HeapPressureGovernor(0.9, 0.8, Event.Level.ERROR, 2).close();
+
+        for (Map.Entry<MemoryPoolMXBean, Long> entry : thresholds.entrySet()) {
+            assertThat(entry.getKey().getCollectionUsageThreshold(), is(entry.getValue()));
+        }
+    }
+
+    @Test
+    public void testEventsAreNotDegradedWithoutPressure() {
+        Event event = new EventBuilder().withExtra("key", "value").build();
+
+        assertThat(governor.degrade(event), is(sameInstance(event)));
+    }
+
+    @Test
+    public void testDegradedEventIsStripped() {
+        new NonStrictExpectations() {{
+            mockHttpInterface.getInterfaceName();
+            result = HttpInterface.HTTP_INTERFACE;
+        }};
+        Throwable throwable = new IllegalStateException("failure");
+        Event event = new EventBuilder()
+            .withMessage("message")
+            .withLevel(Event.Level.ERROR)
+            .withTag("tag", "value")
+            .withExtra("key", "value")
+            .withBreadcrumbs(breadcrumbs())
+            .withSentryInterface(mockHttpInterface)
+            .withSentryInterface(new ExceptionInterface(throwable))
+            .build();
+        governor.evaluate(0.95);
+
+        Event degradedEvent = governor.degrade(event);
+
+        assertThat(degradedEvent.getId(), is(event.getId()));
+        assertThat(degradedEvent.getMessage(), is("message"));
+        assertThat(degradedEvent.getTags(), hasEntry("tag", "value"));
+        assertThat(degradedEvent.getExtra().isEmpty(), is(true));
+        assertThat(degradedEvent.getBreadcrumbs(), is(empty()));
+        assertThat(degradedEvent.getSentryInterfaces(), not(hasKey(HttpInterface.HTTP_INTERFACE)));
+        ExceptionInterface exceptionInterface = (ExceptionInterface) degradedEvent.getSentryInterfaces()
+            .get(ExceptionInterface.EXCEPTION_INTERFACE);
+        SentryException exception = exceptionInterface.getExceptions().getFirst();
+        assertThat(exception.getExceptionMessage(), is("failure"));
+        assertThat(exception.getStackTraceInterface().getStackTrace(), is(Arrays.copyOf(throwable.getStackTrace(), 2)));
+        assertThat(degradedEvent.getSizeEstimate(), is(lessThan(event.getSizeEstimate())));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRecoveryAboveThreshold() {
+        new HeapPressureGovernor(0.5, 0.8, Event.Level.ERROR, 2);
+    }
+}
@@ -0,0 +1,64 @@
+package com.getsentry.raven.event;
+
+import com.getsentry.raven.RavenContext;
+import org.testng.annotations.Test;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+
+public class LogBreadcrumbRecorderTest {
+
+    @Test
+    public void testRecordCompactBreadcrumb() {
+        RavenContext context = new RavenContext();
+        LogBreadcrumbRecorder recorder = new LogBreadcrumbRecorder();
+
+        recorder.record(context, 42L, Event.Level.DEBUG, "com.example.Foo", "message");
+        recorder.record(context, 43L, Event.Level.INFO, null, null);
+
+        List<Breadcrumb> breadcrumbs = context.getBreadcrumbSnapshot();
+        assertThat(breadcrumbs, hasSize(2));
+        assertThat(breadcrumbs.get(0), equalTo(new BreadcrumbBuilder()
+            .setTimestamp(new Date(42L))
+            .setLevel("debug")
+            .setCategory("com.example.Foo")
+            .setMessage("message")
+            .build()));
+        assertThat(breadcrumbs.get(1).getCategory(), is(LogBreadcrumbRecorder.DEFAULT_CATEGORY));
+        assertThat(breadcrumbs.get(1).getMessage(), is(""));
+    }
+
+    @Test
+    public void testSamplingFollowsLoggerHierarchy() {
+        LogBreadcrumbRecorder recorder = new LogBreadcrumbRecorder();
+        recorder.setSampleRates("com.example:0,com.example.kept:1");
+
+        assertThat(recorder.isSampled("com.example"), is(false));
+        assertThat(recorder.isSampled("com.example.Foo"), is(false));
+        assertThat(recorder.isSampled("com.example.kept.Foo"), is(true));
+        assertThat(recorder.isSampled("com.examples"), is(true));
+        assertThat(recorder.isSampled(null), is(true));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidSampleRate() {
+        new LogBreadcrumbRecorder().setSampleRates("com.example:2");
+    }
+
+    @Test
+    public void testTruncateToByteBudget() {
+        assertThat(LogBreadcrumbRecorder.truncate("short", 100), is("short"));
+        assertThat(LogBreadcrumbRecorder.truncate("abcdef", 4), is("abcd"));
+        // 'é' takes 2 bytes, it isn't cut in half
+        assertThat(LogBreadcrumbRecorder.truncate("aé€b", 2), is("a"));
+        assertThat(LogBreadcrumbRecorder.truncate("aé€b", 6), is("aé€"));
+        // Surrogate pairs take 4 bytes and are never split
+        assertThat(LogBreadcrumbRecorder.truncate("a😀b", 4), is("a"));
+        assertThat(LogBreadcrumbRecorder.truncate("a😀b", 5), is("a😀"));
+    }
+}
@@ -1,6 +1,7 @@
 package com.getsentry.raven.jul;
 
 import mockit.Injectable;
+import mockit.NonStrictExpectations;
 import mockit.Tested;
 import mockit.Verifications;
 import com.getsentry.raven.Raven;
@@ -11,6 +12,7 @@ import com.getsentry.raven.event.interfaces.MessageInterface;
 import com.getsentry.raven.event.interfaces.SentryException;
 import com.getsentry.raven.event.interfaces.SentryInterface;
 import org.hamcrest.Matchers;
+import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.DataProvider;
 import org.testng.annotations.Test;
 
@@ -31,6 +33,14 @@ public class SentryHandlerEventBuildingTest {
     @Injectable
     private Raven mockRaven = null;
 
+    @BeforeMethod
+    public void setUp() throws Exception {
+        new NonStrictExpectations() {{
+            mockRaven.isSampled((Event.Level) any, anyString);
+            result = true;
+        }};
+    }
+
     private void assertNoErrorsInErrorManager() throws Exception {
         new Verifications() {{
             errorManager.error(anyString, (Exception) any, anyInt);
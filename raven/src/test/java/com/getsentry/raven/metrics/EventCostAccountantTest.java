@@ -0,0 +1,94 @@
+package com.getsentry.raven.metrics;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class EventCostAccountantTest {
+    @Test
+    public void testCostsAreAttributedToTheLoggerAndTheCulprit() {
+        EventCostAccountant costAccountant = new EventCostAccountant(10, EventCostAccountant.Cost.PAYLOAD_BYTES, 0);
+        Event noisy = new EventBuilder().withLogger("com.example.Noisy").withCulprit("com.example.Noisy.run").build();
+        Event quiet = new EventBuilder().withLogger("com.example.Quiet").build();
+
+        for (int i = 0; i < 3; i++) {
+            costAccountant.recordPayload(noisy, 1000);
+            costAccountant.recordSend(noisy, 10);
+        }
+        costAccountant.recordPayload(quiet, 100);
+        costAccountant.recordSend(quiet, 10);
+
+        assertThat(costAccountant.getLoggerCosts().get(0).getKey(), is("com.example.Noisy"));
+        assertThat(costAccountant.getLoggerCosts().get(0).getValue()[EventCostAccountant.Cost.EVENTS.ordinal()],
+            is(3L));
+        assertThat(costAccountant.getLoggerCosts().get(1).getKey(), is("com.example.Quiet"));
+        assertThat(costAccountant.getCulpritCosts().get(0).getKey(), is("com.example.Noisy.run"));
+        assertThat(costAccountant.getCulpritCosts().get(1).getKey(), is("(none)"));
+        assertThat(costAccountant.getTopLoggers()[0], startsWith("com.example.Noisy: events=3"));
+        assertThat(costAccountant.getReport(), containsString("Top culprits:"));
+    }
+
+    @Test
+    public void testFailuresAreNotCountedAsEvents() {
+        EventCostAccountant costAccountant = new EventCostAccountant(10, EventCostAccountant.Cost.SEND_TIME, 0);
+        Event event = new EventBuilder().withLogger("com.example.Retried").build();
+
+        costAccountant.recordFailure(event, 10);
+        costAccountant.recordFailure(event, 10);
+        costAccountant.recordSend(event, 10);
+
+        long[] costs = costAccountant.getLoggerCosts().get(0).getValue();
+        assertThat(costs[EventCostAccountant.Cost.EVENTS.ordinal()], is(1L));
+        assertThat(costs[EventCostAccountant.Cost.ESTIMATED_BYTES.ordinal()], is((long) event.getSizeEstimate()));
+        assertThat(costs[EventCostAccountant.Cost.FAILURES.ordinal()], is(2L));
+        assertThat(costs[EventCostAccountant.Cost.SEND_TIME.ordinal()], is(30L));
+    }
+
+    @Test
+    public void testTopKeysAreMergedAcrossStripes() {
+        EventCostAccountant costAccountant = new EventCostAccountant(3, EventCostAccountant.Cost.EVENTS, 0);
+        for (int i = 0; i < 20; i++) {
+            Event event = new EventBuilder().withLogger("logger" + i).build();
+            for (int j = 0; j <= i; j++) {
+                costAccountant.recordSend(event, 10);
+            }
+        }
+
+        assertThat(costAccountant.getLoggerCosts(), hasSize(3));
+        assertThat(costAccountant.getLoggerCosts().get(0).getKey(), is("logger19"));
+        assertThat(costAccountant.getLoggerCosts().get(1).getKey(), is("logger18"));
+        assertThat(costAccountant.getLoggerCosts().get(2).getKey(), is("logger17"));
+    }
+
+    @Test
+    public void testReset() {
+        EventCostAccountant costAccountant = new EventCostAccountant(10, EventCostAccountant.Cost.SEND_TIME, 0);
+        costAccountant.recordSend(new EventBuilder().build(), 10);
+
+        costAccountant.reset();
+
+        assertThat(costAccountant.getTopLoggers(), is(emptyArray()));
+        assertThat(costAccountant.getRankedBy(), is("send_time"));
+    }
+
+    @Test
+    public void testRegisterAndClose() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(RavenMetrics.JMX_DOMAIN + ":type=Accounting,name="
+            + ObjectName.quote("accounting-test"));
+        EventCostAccountant costAccountant = new EventCostAccountant(10, EventCostAccountant.DEFAULT_RANK, 0);
+
+        costAccountant.register("accounting-test");
+        assertThat(mBeanServer.getAttribute(objectName, "RankedBy"), is((Object) "payload_bytes"));
+        costAccountant.close();
+
+        assertThat(mBeanServer.isRegistered(objectName), is(false));
+    }
+}
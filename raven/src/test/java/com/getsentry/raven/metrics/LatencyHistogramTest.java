@@ -0,0 +1,61 @@
+package com.getsentry.raven.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testEmptyHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        assertThat(histogram.getCount(), is(0L));
+        assertThat(histogram.getPercentile(0.99), is(0L));
+        assertThat(histogram.getMeanMicros(), is(0.0));
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        assertThat(histogram.getCount(), is(10L));
+        assertThat(histogram.getPercentile(0.5), is(5L));
+        assertThat(histogram.getPercentile(1), is(10L));
+    }
+
+    @Test
+    public void testPercentilesHaveBoundedError() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long i = 1; i <= 1000; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+        }
+
+        long p50 = histogram.getPercentile(0.5);
+        long p99 = histogram.getPercentile(0.99);
+
+        assertThat(p50, is(both(greaterThanOrEqualTo(TimeUnit.MICROSECONDS.toNanos(500)))
+            .and(lessThanOrEqualTo((long) (TimeUnit.MICROSECONDS.toNanos(500) * 1.125)))));
+        assertThat(p99, is(both(greaterThanOrEqualTo(TimeUnit.MICROSECONDS.toNanos(990)))
+            .and(lessThanOrEqualTo(TimeUnit.MICROSECONDS.toNanos(1000)))));
+        assertThat(histogram.getMaxMicros(), is(1000L));
+        assertThat(histogram.getMeanMicros(), is(closeTo(500.5, 0.01)));
+    }
+
+    @Test
+    public void testExtremeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+
+        assertThat(histogram.getCount(), is(2L));
+        assertThat(histogram.getPercentile(0.5), is(0L));
+        assertThat(histogram.getPercentile(1), is(Long.MAX_VALUE));
+    }
+}
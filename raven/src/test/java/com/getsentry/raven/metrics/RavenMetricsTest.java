@@ -0,0 +1,186 @@
+package com.getsentry.raven.metrics;
+
+import com.getsentry.raven.event.Event;
+import com.getsentry.raven.event.EventBuilder;
+import org.testng.annotations.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class RavenMetricsTest {
+    private static final Event EVENT = new EventBuilder().withMessage("message").build();
+
+    @Test
+    public void testDisabledMetricsIgnoreEverything() {
+        RavenMetrics.DISABLED.recordCapture(1000);
+        RavenMetrics.DISABLED.recordSent(EVENT, 1000);
+        RavenMetrics.DISABLED.setQueueDepth(new RavenMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 1;
+            }
+        });
+
+        assertThat(RavenMetrics.DISABLED.isEnabled(), is(false));
+        assertThat(RavenMetrics.DISABLED.getEventsCaptured(), is(0L));
+        assertThat(RavenMetrics.DISABLED.getEventsSent(), is(0L));
+        assertThat(RavenMetrics.DISABLED.getQueueDepth(), is(0L));
+        assertThat(RavenMetrics.DISABLED.getCaptureLatency().getCount(), is(0L));
+    }
+
+    @Test
+    public void testCountersAndGauges() {
+        RavenMetrics metrics = new RavenMetrics();
+        metrics.recordCapture(1000);
+        metrics.recordEnqueued();
+        metrics.recordDropped();
+        metrics.recordMarshalling(EVENT, 2000, 512);
+        metrics.setBufferSize(new RavenMetrics.Gauge() {
+            @Override
+            public long getValue() {
+                return 3;
+            }
+        });
+
+        assertThat(metrics.getEventsCaptured(), is(1L));
+        assertThat(metrics.getEventsEnqueued(), is(1L));
+        assertThat(metrics.getEventsDropped(), is(1L));
+        assertThat(metrics.getMarshalledBytes(), is(512L));
+        assertThat(metrics.getBufferSize(), is(3L));
+        assertThat(metrics.getQueuedBytes(), is(0L));
+        assertThat(metrics.getCaptureLatency().getCount(), is(1L));
+        assertThat(metrics.getMarshallingLatency().getCount(), is(1L));
+    }
+
+    @Test
+    public void testStagesAreDispatchedToTheListeners() {
+        final List<String> stages = new ArrayList<>();
+        RavenMetrics metrics = new RavenMetrics(false);
+        metrics.addPipelineListener(new PipelineListenerAdapter() {
+            @Override
+            public void onEnqueued() {
+                stages.add("enqueued");
+            }
+
+            @Override
+            public void onMarshalled(long nanos, long bytes) {
+                stages.add("marshalled " + bytes);
+            }
+
+            @Override
+            public void onSent(long nanos) {
+                stages.add("sent " + nanos);
+            }
+        });
+
+        metrics.recordEnqueued();
+        metrics.recordMarshalling(EVENT, 10, 512);
+        metrics.recordSent(EVENT, 20);
+
+        assertThat(stages, contains("enqueued", "marshalled 512", "sent 20"));
+        assertThat(metrics.getEventsEnqueued(), is(0L));
+    }
+
+    @Test
+    public void testFailingListenerDoesNotStopTheOthers() {
+        final List<Long> sent = new ArrayList<>();
+        RavenMetrics metrics = new RavenMetrics();
+        PipelineListenerAdapter failing = new PipelineListenerAdapter() {
+            @Override
+            public void onSent(long nanos) {
+                throw new IllegalStateException();
+            }
+        };
+        metrics.addPipelineListener(failing);
+        metrics.addPipelineListener(new PipelineListenerAdapter() {
+            @Override
+            public void onSent(long nanos) {
+                sent.add(nanos);
+            }
+        });
+
+        metrics.recordSent(EVENT, 30);
+        metrics.removePipelineListener(failing);
+        metrics.recordSent(EVENT, 40);
+
+        assertThat(sent, contains(30L, 40L));
+        assertThat(metrics.getEventsSent(), is(2L));
+        assertThat(metrics.getPipelineListeners(), hasSize(1));
+    }
+
+    @Test
+    public void testCostsAreAttributedToTheAccountant() {
+        RavenMetrics metrics = new RavenMetrics(false);
+        EventCostAccountant costAccountant = new EventCostAccountant(10, EventCostAccountant.Cost.PAYLOAD_BYTES, 0);
+        metrics.setCostAccountant(costAccountant);
+
+        metrics.recordBuilt(EVENT, 100);
+        metrics.recordMarshalling(EVENT, 10, 512);
+        metrics.recordFailed(EVENT, 5);
+        metrics.recordSent(EVENT, 20);
+
+        long[] costs = costAccountant.getLoggerCosts().get(0).getValue();
+        assertThat(costs[EventCostAccountant.Cost.EVENTS.ordinal()], is(1L));
+        assertThat(costs[EventCostAccountant.Cost.BUILD_TIME.ordinal()], is(100L));
+        assertThat(costs[EventCostAccountant.Cost.PAYLOAD_BYTES.ordinal()], is(512L));
+        assertThat(costs[EventCostAccountant.Cost.SEND_TIME.ordinal()], is(25L));
+        assertThat(costs[EventCostAccountant.Cost.FAILURES.ordinal()], is(1L));
+    }
+
+    @Test
+    public void testListenersAreIgnoredByTheDisabledMetrics() {
+        final List<String> stages = new ArrayList<>();
+        RavenMetrics.DISABLED.addPipelineListener(new PipelineListenerAdapter() {
+            @Override
+            public void onEnqueued() {
+                stages.add("enqueued");
+            }
+        });
+        RavenMetrics.DISABLED.setCostAccountant(new EventCostAccountant(10, EventCostAccountant.Cost.EVENTS, 0));
+
+        RavenMetrics.DISABLED.recordEnqueued();
+
+        assertThat(stages, is(empty()));
+        assertThat(RavenMetrics.DISABLED.getPipelineListeners(), is(empty()));
+        assertThat(RavenMetrics.DISABLED.getCostAccountant(), is(nullValue()));
+    }
+
+    @Test
+    public void testRegisterAndUnregister() throws Exception {
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName(RavenMetrics.JMX_DOMAIN + ":type=Raven,name="
+            + ObjectName.quote("metrics-test"));
+        ObjectName latencyName = new ObjectName(RavenMetrics.JMX_DOMAIN + ":type=Latency,raven="
+            + ObjectName.quote("metrics-test") + ",name=capture");
+        RavenMetrics metrics = new RavenMetrics();
+        metrics.recordSent(EVENT, 1000);
+
+        metrics.register("metrics-test");
+        try {
+            assertThat(mBeanServer.getAttribute(objectName, "EventsSent"), is((Object) 1L));
+            assertThat(mBeanServer.isRegistered(latencyName), is(true));
+        } finally {
+            metrics.unregister();
+        }
+
+        assertThat(mBeanServer.isRegistered(objectName), is(false));
+        assertThat(mBeanServer.isRegistered(latencyName), is(false));
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void testRegisteringTheSameNameTwiceFails() {
+        RavenMetrics metrics = new RavenMetrics();
+        metrics.register("metrics-test-duplicate");
+        try {
+            new RavenMetrics().register("metrics-test-duplicate");
+        } finally {
+            metrics.unregister();
+        }
+    }
+}
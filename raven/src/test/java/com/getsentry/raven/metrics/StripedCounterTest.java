@@ -0,0 +1,43 @@
+package com.getsentry.raven.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class StripedCounterTest {
+    @Test
+    public void testIncrementsAreAddedUp() {
+        StripedCounter counter = new StripedCounter();
+
+        counter.increment();
+        counter.add(41);
+
+        assertThat(counter.get(), is(42L));
+    }
+
+    @Test
+    public void testConcurrentIncrementsAreNotLost() throws Exception {
+        final StripedCounter counter = new StripedCounter();
+        final int threads = 8;
+        final int increments = 10000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < increments; j++) {
+                        counter.increment();
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+
+        done.await();
+
+        assertThat(counter.get(), is((long) threads * increments));
+    }
+}
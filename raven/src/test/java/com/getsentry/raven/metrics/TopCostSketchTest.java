@@ -0,0 +1,81 @@
+package com.getsentry.raven.metrics;
+
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class TopCostSketchTest {
+    @Test
+    public void testCostsAreAddedUpByKey() {
+        TopCostSketch sketch = new TopCostSketch(10, 1024, 4, 2, 0);
+
+        sketch.add("a", 0, 10);
+        sketch.add("a", 1, 3);
+        sketch.add("a", 0, 5);
+        sketch.add("b", 0, 7);
+
+        List<Map.Entry<String, long[]>> top = sketch.getTop();
+        assertThat(top, hasSize(2));
+        assertThat(top.get(0).getKey(), is("a"));
+        assertThat(top.get(0).getValue()[0], is(15L));
+        assertThat(top.get(0).getValue()[1], is(3L));
+        assertThat(top.get(1).getKey(), is("b"));
+        assertThat(top.get(1).getValue()[0], is(7L));
+    }
+
+    @Test
+    public void testOnlyTheMostExpensiveKeysAreKept() {
+        TopCostSketch sketch = new TopCostSketch(3, 1024, 4, 1, 0);
+        for (int i = 0; i < 100; i++) {
+            sketch.add("cheap-" + i, 0, 1);
+        }
+        for (int i = 0; i < 3; i++) {
+            sketch.add("expensive-" + i, 0, 1000 + i);
+        }
+
+        List<Map.Entry<String, long[]>> top = sketch.getTop();
+
+        assertThat(top, hasSize(3));
+        assertThat(top.get(0).getKey(), is("expensive-2"));
+        assertThat(top.get(1).getKey(), is("expensive-1"));
+        assertThat(top.get(2).getKey(), is("expensive-0"));
+    }
+
+    @Test
+    public void testOtherCostsDontRankTheKeys() {
+        TopCostSketch sketch = new TopCostSketch(3, 1024, 4, 2, 0);
+
+        sketch.add("a", 1, 1000);
+
+        assertThat(sketch.getTop(), is(empty()));
+    }
+
+    @Test
+    public void testEstimatesNeverUnderestimate() {
+        TopCostSketch sketch = new TopCostSketch(5, 16, 2, 1, 0);
+        for (int i = 0; i < 200; i++) {
+            sketch.add("key-" + i, 0, i);
+        }
+
+        for (Map.Entry<String, long[]> entry : sketch.getTop()) {
+            long actual = Long.parseLong(entry.getKey().substring("key-".length()));
+            assertThat(entry.getValue()[0], is(greaterThanOrEqualTo(actual)));
+        }
+    }
+
+    @Test
+    public void testClear() {
+        TopCostSketch sketch = new TopCostSketch(3, 1024, 4, 1, 0);
+        sketch.add("a", 0, 10);
+
+        sketch.clear();
+
+        assertThat(sketch.getTop(), is(empty()));
+        sketch.add("b", 0, 1);
+        assertThat(sketch.getTop().get(0).getValue()[0], is(1L));
+    }
+}
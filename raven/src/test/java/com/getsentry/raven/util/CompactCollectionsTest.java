@@ -0,0 +1,118 @@
+package com.getsentry.raven.util;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.*;
+
+public class CompactCollectionsTest {
+    @Test
+    public void emptyMapIsSharedSingleton() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(new LinkedHashMap<String, String>());
+
+        assertThat(frozen, is(sameInstance(Collections.<String, String>emptyMap())));
+    }
+
+    @Test
+    public void emptyListIsSharedSingleton() throws Exception {
+        List<String> frozen = CompactCollections.freezeList(new ArrayList<String>());
+
+        assertThat(frozen, is(sameInstance(Collections.<String>emptyList())));
+    }
+
+    @Test
+    public void frozenMapKeepsContentAndOrder() throws Exception {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("b", 1);
+        map.put("a", 2);
+        map.put(null, null);
+
+        Map<String, Object> frozen = CompactCollections.freezeMap(map);
+
+        assertThat(frozen, is(equalTo(map)));
+        assertThat(frozen.keySet(), contains("b", "a", null));
+        assertThat(frozen.get("a"), is((Object) 2));
+        assertThat(frozen.containsKey(null), is(true));
+        assertThat(frozen.get("c"), is(nullValue()));
+    }
+
+    @Test
+    public void frozenMapIsNotFrozenTwice() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(Collections.singletonMap("key", "value"));
+
+        assertThat(CompactCollections.freezeMap(frozen), is(sameInstance(frozen)));
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void frozenMapIsImmutable() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(Collections.singletonMap("key", "value"));
+
+        frozen.put("other", "value");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void frozenMapIteratorIsImmutable() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(Collections.singletonMap("key", "value"));
+
+        frozen.entrySet().iterator().next().setValue("other");
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void frozenListIsImmutable() throws Exception {
+        List<String> list = new ArrayList<>();
+        list.add("element");
+        List<String> frozen = CompactCollections.freezeList(list);
+
+        frozen.set(0, "other");
+    }
+
+    @Test
+    public void frozenMapIsSerializable() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(Collections.singletonMap("key", "value"));
+
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream);
+        objectOutputStream.writeObject(frozen);
+        ObjectInputStream is = new ObjectInputStream(new ByteArrayInputStream(byteArrayOutputStream.toByteArray()));
+
+        assertThat(is.readObject(), is((Object) frozen));
+    }
+
+    @Test
+    public void layeredMapPrefersOverlayEntries() throws Exception {
+        Map<String, String> base = new LinkedHashMap<>();
+        base.put("shared", "base");
+        base.put("baseOnly", "base");
+        Map<String, String> overlay = new LinkedHashMap<>();
+        overlay.put("shared", "overlay");
+        overlay.put("overlayOnly", "overlay");
+
+        Map<String, String> layered = CompactCollections.layerMaps(CompactCollections.freezeMap(base),
+            CompactCollections.freezeMap(overlay));
+
+        assertThat(layered.entrySet(), hasSize(3));
+        assertThat(layered.keySet(), contains("baseOnly", "shared", "overlayOnly"));
+        assertThat(layered.get("shared"), is("overlay"));
+        assertThat(layered.get("baseOnly"), is("base"));
+        assertThat(layered.get("overlayOnly"), is("overlay"));
+    }
+
+    @Test
+    public void layeredMapWithEmptyLayerIsTheOtherLayer() throws Exception {
+        Map<String, String> frozen = CompactCollections.freezeMap(Collections.singletonMap("key", "value"));
+        Map<String, String> empty = Collections.emptyMap();
+
+        assertThat(CompactCollections.layerMaps(frozen, empty), is(sameInstance(frozen)));
+        assertThat(CompactCollections.layerMaps(empty, frozen), is(sameInstance(frozen)));
+    }
+}